@@ -0,0 +1,106 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing the OXPath microbenchmarks
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+
+import uk.ac.ox.comlab.diadem.oxpath.bench.dom.StaticBrowser;
+
+/**
+ * The static HTML pages of the benchmarks.  Every <tt>.html</tt> file of the fixture directory is served by the static
+ * browser at {@code BASEURL} followed by the file name.
+ * @author AndrewJSel
+ *
+ */
+public class BenchmarkFixtures {
+
+	/**
+	 * Uses the pages of the directory
+	 * @param iDirectory the fixture directory
+	 * @throws IOException if {@code iDirectory} isn't a directory
+	 */
+	public BenchmarkFixtures(File iDirectory) throws IOException {
+		if (!iDirectory.isDirectory()) throw new IOException("Fixture directory " + iDirectory + " doesn't exist");
+		this.directory = iDirectory;
+	}
+
+	/**
+	 * Returns a new static browser serving the pages
+	 * @return a new static browser serving the pages
+	 * @throws IOException if a page can't be read or isn't well-formed
+	 */
+	public StaticBrowser newBrowser() throws IOException {
+		StaticBrowser browser = new StaticBrowser();
+		File[] pages = this.directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return f.isFile() && f.getName().endsWith(".html");
+			}
+		});
+		for (File page : pages) browser.register(url(page.getName()), page);
+		return browser;
+	}
+
+	/**
+	 * Returns a new static browser showing the page
+	 * @param page file name of the page
+	 * @return a new static browser showing the page
+	 * @throws IOException if a page can't be read or isn't well-formed
+	 */
+	public StaticBrowser newBrowser(String page) throws IOException {
+		StaticBrowser browser = this.newBrowser();
+		browser.navigate(url(page), true);
+		return browser;
+	}
+
+	/**
+	 * Returns the URL of the page
+	 * @param page file name of the page
+	 * @return the URL of the page
+	 */
+	public static String url(String page) {
+		return BASEURL + page;
+	}
+
+	/**
+	 * location of the fixture directory
+	 */
+	public static final String BASEURL = "http://fixtures.oxpath/";
+	/**
+	 * first page of the listing fixture (60 items, with a link to a second page of 60 items)
+	 */
+	public static final String LISTING = "listing-1.html";
+	/**
+	 * the fixture directory
+	 */
+	private final File directory;
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing the OXPath microbenchmarks
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench;
+
+/**
+ * Measurements of a benchmark: throughput over the measured iterations and the bytes allocated per operation
+ * @author AndrewJSel
+ *
+ */
+public class BenchmarkResult {
+
+	/**
+	 * Creates the result
+	 * @param iName name of the benchmark
+	 * @param iThroughputs operations per second of each measured iteration
+	 * @param iBytesPerOperation bytes allocated per operation, or -1 if the JVM doesn't count allocations
+	 */
+	public BenchmarkResult(String iName, double[] iThroughputs, long iBytesPerOperation) {
+		this.name = iName;
+		this.throughputs = iThroughputs.clone();
+		this.bytesPerOperation = iBytesPerOperation;
+	}
+
+	/**
+	 * Returns the name of the benchmark
+	 * @return the name of the benchmark
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the mean throughput of the measured iterations
+	 * @return the mean throughput, in operations per second
+	 */
+	public double getMean() {
+		double sum = 0;
+		for (double t : this.throughputs) sum += t;
+		return sum / this.throughputs.length;
+	}
+
+	/**
+	 * Returns the standard deviation of the throughput of the measured iterations
+	 * @return the standard deviation of the throughput, in operations per second
+	 */
+	public double getDeviation() {
+		if (this.throughputs.length < 2) return 0;
+		double mean = this.getMean();
+		double sum = 0;
+		for (double t : this.throughputs) sum += (t - mean) * (t - mean);
+		return Math.sqrt(sum / (this.throughputs.length - 1));
+	}
+
+	/**
+	 * Returns the bytes allocated per operation
+	 * @return the bytes allocated per operation, or -1 if the JVM doesn't count allocations
+	 */
+	public long getBytesPerOperation() {
+		return this.bytesPerOperation;
+	}
+
+	/**
+	 * Formats the result as a row of the runner's table
+	 * @return the result as a row of the runner's table
+	 */
+	@Override
+	public String toString() {
+		return String.format(ROW, this.name, this.getMean(), this.getDeviation(), (this.bytesPerOperation < 0)?"n/a":Long.toString(this.bytesPerOperation));
+	}
+
+	/**
+	 * format of a row of the runner's table
+	 */
+	static final String ROW = "%-36s %14.1f %12.1f %12s";
+	/**
+	 * header of the runner's table
+	 */
+	static final String HEADER = String.format("%-36s %14s %12s %12s", "benchmark", "ops/s", "+/-", "B/op");
+	/**
+	 * name of the benchmark
+	 */
+	private final String name;
+	/**
+	 * operations per second of each measured iteration
+	 */
+	private final double[] throughputs;
+	/**
+	 * bytes allocated per operation, or -1 if unknown
+	 */
+	private final long bytesPerOperation;
+}
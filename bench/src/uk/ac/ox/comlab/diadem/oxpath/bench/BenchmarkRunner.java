@@ -0,0 +1,187 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing the OXPath microbenchmarks
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the OXPath microbenchmarks against the static browser, without a browser or network.  Each benchmark runs
+ * {@code warmups} unmeasured iterations, then {@code iterations} measured ones, each repeating the operation for
+ * {@code iterationMillis}.  Allocation per operation is read from the thread allocation counter of HotSpot, where available.
+ * <p>
+ * Usage: <tt>BenchmarkRunner [fixture-directory [name-regex]]</tt>; the fixture directory defaults to <tt>bench/fixtures</tt>.
+ * @author AndrewJSel
+ *
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Creates a runner
+	 * @param iWarmups number of unmeasured iterations
+	 * @param iIterations number of measured iterations
+	 * @param iIterationMillis duration of an iteration, in milliseconds
+	 * @param iOut stream for the results
+	 */
+	public BenchmarkRunner(int iWarmups, int iIterations, long iIterationMillis, PrintStream iOut) {
+		this.warmups = iWarmups;
+		this.iterations = iIterations;
+		this.iterationNanos = iIterationMillis * 1000000L;
+		this.out = iOut;
+	}
+
+	/**
+	 * Runs all benchmarks of the suites whose name matches the filter
+	 * @param args fixture directory and name filter, both optional
+	 * @throws Exception in case of benchmark error
+	 */
+	public static void main(String[] args) throws Exception {
+		BenchmarkFixtures fixtures = new BenchmarkFixtures(new File((args.length > 0)?args[0]:"bench/fixtures"));
+		Pattern filter = Pattern.compile((args.length > 1)?args[1]:".*");
+		List<OXPathBenchmark> benchmarks = new ArrayList<OXPathBenchmark>();
+		benchmarks.addAll(NodeListBenchmarks.create(fixtures));
+		benchmarks.addAll(MemoBenchmarks.create(fixtures));
+		benchmarks.addAll(EvaluationBenchmarks.create(fixtures));
+		benchmarks.addAll(ExtractorBenchmarks.create(fixtures));
+		benchmarks.addAll(ParserBenchmarks.create(fixtures));
+		new BenchmarkRunner(WARMUPS, ITERATIONS, ITERATIONMILLIS, System.out).run(benchmarks, filter);
+	}
+
+	/**
+	 * Runs the benchmarks whose name matches the filter, printing a row of results for each
+	 * @param benchmarks the benchmarks
+	 * @param filter pattern to find in the names of the benchmarks to run
+	 * @return the measurements
+	 * @throws Exception in case of benchmark error
+	 */
+	public List<BenchmarkResult> run(List<OXPathBenchmark> benchmarks, Pattern filter) throws Exception {
+		List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+		this.out.println(BenchmarkResult.HEADER);
+		for (OXPathBenchmark benchmark : benchmarks) {
+			if (!filter.matcher(benchmark.getName()).find()) continue;
+			BenchmarkResult result = this.run(benchmark);
+			this.out.println(result);
+			results.add(result);
+		}
+		return results;
+	}
+
+	/**
+	 * Runs the benchmark
+	 * @param benchmark the benchmark
+	 * @return the measurements
+	 * @throws Exception in case of benchmark error
+	 */
+	public BenchmarkResult run(OXPathBenchmark benchmark) throws Exception {
+		benchmark.setUp();
+		try {
+			for (int i = 0; i < this.warmups; i++) this.iterate(benchmark);
+			double[] throughputs = new double[this.iterations];
+			long operations = 0;
+			long allocated = 0;
+			for (int i = 0; i < this.iterations; i++) {
+				long before = allocatedBytes();
+				long start = System.nanoTime();
+				long count = this.iterate(benchmark);
+				long elapsed = System.nanoTime() - start;
+				allocated += allocatedBytes() - before;
+				operations += count;
+				throughputs[i] = count * 1E9 / elapsed;
+			}
+			return new BenchmarkResult(benchmark.getName(), throughputs, (allocatedBytes() < 0)?-1:allocated / operations);
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * Repeats the operation for the duration of an iteration
+	 * @param benchmark the benchmark
+	 * @return the number of operations performed
+	 * @throws Exception in case of benchmark error
+	 */
+	private long iterate(OXPathBenchmark benchmark) throws Exception {
+		long end = System.nanoTime() + this.iterationNanos;
+		long count = 0;
+		do {
+			this.sink = benchmark.run();
+			count++;
+		} while (System.nanoTime() < end);
+		return count;
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread
+	 * @return the bytes allocated by the current thread, or -1 if the JVM doesn't count them
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * default number of unmeasured iterations
+	 */
+	public static final int WARMUPS = 3;
+	/**
+	 * default number of measured iterations
+	 */
+	public static final int ITERATIONS = 5;
+	/**
+	 * default duration of an iteration, in milliseconds
+	 */
+	public static final long ITERATIONMILLIS = 1000;
+	/**
+	 * number of unmeasured iterations
+	 */
+	private final int warmups;
+	/**
+	 * number of measured iterations
+	 */
+	private final int iterations;
+	/**
+	 * duration of an iteration, in nanoseconds
+	 */
+	private final long iterationNanos;
+	/**
+	 * stream for the results
+	 */
+	private final PrintStream out;
+	/**
+	 * consumes the results of the operations
+	 */
+	private volatile Object sink;
+}
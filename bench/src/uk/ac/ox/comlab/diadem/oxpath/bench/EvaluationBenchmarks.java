@@ -0,0 +1,131 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing the OXPath microbenchmarks
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench;
+
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.helpers.NOPLogger;
+
+import uk.ac.ox.comlab.diadem.oxpath.bench.dom.StaticBrowser;
+import uk.ac.ox.comlab.diadem.oxpath.core.PreparedOXPath;
+
+/**
+ * End-to-end benchmarks of the evaluation of compiled expressions over the listing pages, discarding the extracted output
+ * @author AndrewJSel
+ *
+ */
+public class EvaluationBenchmarks {
+
+	/**
+	 * Returns the benchmarks of the suite
+	 * @param fixtures the pages of the benchmarks
+	 * @return the benchmarks of the suite
+	 * @throws Exception in case of error reading the pages
+	 */
+	public static List<OXPathBenchmark> create(BenchmarkFixtures fixtures) throws Exception {
+		List<OXPathBenchmark> benchmarks = new ArrayList<OXPathBenchmark>();
+		benchmarks.add(new EvaluationBenchmark("evaluate.path", fixtures, LISTING + "//div[@class='item']/span[@class='rating']"));
+		benchmarks.add(new EvaluationBenchmark("evaluate.extract", fixtures, LISTING + "//div[@class='item']:<item>"
+				+ "[./h2:<title=string(.)>][.//span[@class='price']:<price=string(.)>]"));
+		benchmarks.add(new EvaluationBenchmark("evaluate.predicates", fixtures, LISTING
+				+ "//div[@class='item'][position()<30][./ul/li]/h2/a[contains(@href,'item')]"));
+		benchmarks.add(new EvaluationBenchmark("evaluate.style", fixtures, LISTING + "//div[@class='item']/span[@class='price']/style::color"));
+		benchmarks.add(new EvaluationBenchmark("evaluate.click", fixtures, LISTING + "/(//a[@class='next']/{click/})*{0,1}"
+				+ "//div[@class='item']:<item>[./h2:<title=string(.)>]"));
+		return benchmarks;
+	}
+
+	/**
+	 * Benchmark evaluating a compiled expression
+	 * @author AndrewJSel
+	 *
+	 */
+	static class EvaluationBenchmark extends OXPathBenchmark {
+
+		/**
+		 * Creates the benchmark
+		 * @param iName name of the benchmark
+		 * @param iFixtures the pages of the benchmark
+		 * @param iExpression the expression
+		 */
+		EvaluationBenchmark(String iName, BenchmarkFixtures iFixtures, String iExpression) {
+			super(iName);
+			this.fixtures = iFixtures;
+			this.expression = iExpression;
+		}
+
+		@Override
+		public void setUp() throws Exception {
+			this.browser = this.fixtures.newBrowser();
+			this.query = PreparedOXPath.compile(this.expression);
+			this.out = new ObjectOutputStream(new NullOutputStream());
+		}
+
+		@Override
+		public Object run() throws Exception {
+			return this.query.evaluate(this.browser, NOPLogger.NOP_LOGGER, this.out);
+		}
+
+		@Override
+		public void tearDown() throws Exception {
+			this.out.close();
+			this.browser.shutdown();
+		}
+
+		/**
+		 * the pages of the benchmark
+		 */
+		private final BenchmarkFixtures fixtures;
+		/**
+		 * the expression
+		 */
+		private final String expression;
+		/**
+		 * browser serving the pages
+		 */
+		private StaticBrowser browser;
+		/**
+		 * the compiled expression
+		 */
+		private PreparedOXPath query;
+		/**
+		 * sink of the extracted output
+		 */
+		private ObjectOutputStream out;
+	}
+
+	/**
+	 * prefix of the expressions, loading the first listing page
+	 */
+	static final String LISTING = "doc(\"" + BenchmarkFixtures.url(BenchmarkFixtures.LISTING) + "\")";
+}
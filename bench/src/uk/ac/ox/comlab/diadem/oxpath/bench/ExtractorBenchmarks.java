@@ -0,0 +1,244 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing the OXPath microbenchmarks
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import uk.ac.ox.comlab.diadem.oxpath.core.extraction.OXPathExtractor;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+import uk.ac.ox.comlab.diadem.oxpath.output.OXPathBinaryInputStream;
+import uk.ac.ox.comlab.diadem.oxpath.output.OXPathBinaryOutputStream;
+import uk.ac.ox.comlab.diadem.oxpath.output.OXPathExtractionChannel;
+
+/**
+ * Benchmarks of the extraction of a record set of {@code BATCH} nodes through {@code OXPathExtractor}: serialized and discarded,
+ * serialized over a loopback socket to a reading thread (as {@code OXPathNavigator} used to hand nodes to its output handler),
+ * the same in the binary format of {@code OXPathBinaryOutputStream}, and handed to a reading thread through an {@code OXPathExtractionChannel}.  Serializing streams are reset after each record
+ * set, as their table of written objects otherwise grows over the run.
+ * @author AndrewJSel
+ *
+ */
+public class ExtractorBenchmarks {
+
+	/**
+	 * Returns the benchmarks of the suite
+	 * @param fixtures the pages of the benchmarks
+	 * @return the benchmarks of the suite
+	 * @throws Exception in case of error reading the pages
+	 */
+	public static List<OXPathBenchmark> create(BenchmarkFixtures fixtures) throws Exception {
+		OXPathContextNode[] elements = NodeListBenchmarks.elements(fixtures.newBrowser(BenchmarkFixtures.LISTING));
+		List<OXPathBenchmark> benchmarks = new ArrayList<OXPathBenchmark>();
+		benchmarks.add(new ExtractorBenchmark("extract.records" + BATCH, elements, false));
+		benchmarks.add(new ExtractorBenchmark("extract.valuedRecords" + BATCH, elements, true));
+		benchmarks.add(new ExtractorBenchmark("extract.socketRecords" + BATCH, elements, true) {
+			@Override
+			ObjectOutputStream open() throws IOException {
+				ServerSocket server = new ServerSocket(0);
+				try {
+					final Socket client = new Socket("localhost", server.getLocalPort());
+					OutputStream sent = server.accept().getOutputStream();
+					this.reader = drain(new InputOpener() {
+						@Override
+						public ObjectInputStream open() throws IOException {
+							return new ObjectInputStream(client.getInputStream());
+						}
+					});
+					return new ObjectOutputStream(sent);
+				} finally {
+					server.close();
+				}
+			}
+		});
+		benchmarks.add(new ExtractorBenchmark("extract.binaryRecords" + BATCH, elements, true) {
+			@Override
+			ObjectOutputStream open() throws IOException {
+				return new OXPathBinaryOutputStream(new NullOutputStream());
+			}
+		});
+		benchmarks.add(new ExtractorBenchmark("extract.binarySocketRecords" + BATCH, elements, true) {
+			@Override
+			ObjectOutputStream open() throws IOException {
+				ServerSocket server = new ServerSocket(0);
+				try {
+					final Socket client = new Socket("localhost", server.getLocalPort());
+					OutputStream sent = server.accept().getOutputStream();
+					this.reader = drain(new InputOpener() {
+						@Override
+						public ObjectInputStream open() throws IOException {
+							return OXPathBinaryInputStream.open(client.getInputStream());
+						}
+					});
+					return new OXPathBinaryOutputStream(sent);
+				} finally {
+					server.close();
+				}
+			}
+		});
+		benchmarks.add(new ExtractorBenchmark("extract.channelRecords" + BATCH, elements, true) {
+			@Override
+			ObjectOutputStream open() throws IOException {
+				final OXPathExtractionChannel channel = new OXPathExtractionChannel();
+				this.reader = drain(new InputOpener() {
+					@Override
+					public ObjectInputStream open() {
+						return channel.getInputStream();
+					}
+				});
+				return channel.getOutputStream();
+			}
+		});
+		return benchmarks;
+	}
+
+	/**
+	 * Benchmark extracting records of an item node with a title child
+	 * @author AndrewJSel
+	 *
+	 */
+	static class ExtractorBenchmark extends OXPathBenchmark {
+
+		/**
+		 * Creates the benchmark
+		 * @param iName name of the benchmark
+		 * @param iElements context nodes of the extracted nodes
+		 * @param iValued {@code true} if the child nodes carry a value, {@code false} otherwise
+		 */
+		ExtractorBenchmark(String iName, OXPathContextNode[] iElements, boolean iValued) {
+			super(iName);
+			this.elements = iElements;
+			this.valued = iValued;
+		}
+
+		/**
+		 * Returns the stream the extractor writes into; by default a stream discarding the serialized output
+		 * @return the stream the extractor writes into
+		 * @throws IOException in case the stream can't be opened
+		 */
+		ObjectOutputStream open() throws IOException {
+			return new ObjectOutputStream(new NullOutputStream());
+		}
+
+		@Override
+		public void setUp() throws Exception {
+			this.out = this.open();
+		}
+
+		@Override
+		public Object run() throws Exception {
+			OXPathExtractor extractor = new OXPathExtractor(this.out);
+			Integer last = null;
+			for (int i = 0; i < BATCH; i += 2) {
+				OXPathContextNode element = this.elements[i % this.elements.length];
+				Integer item = extractor.extractNode(element.getNode(), "item", 0);
+				last = (this.valued)
+						? extractor.extractNode(element.getNode(), "title", item, "title " + i)
+						: extractor.extractNode(element.getNode(), "title", item);
+			}
+			extractor.endExtraction();
+			this.out.reset();
+			return last;
+		}
+
+		@Override
+		public void tearDown() throws Exception {
+			this.out.close();
+			if (this.reader != null) this.reader.join();
+		}
+
+		/**
+		 * context nodes of the extracted nodes
+		 */
+		private final OXPathContextNode[] elements;
+		/**
+		 * {@code true} if the child nodes carry a value, {@code false} otherwise
+		 */
+		private final boolean valued;
+		/**
+		 * sink of the extracted output
+		 */
+		private ObjectOutputStream out;
+		/**
+		 * thread reading the extracted output, if any
+		 */
+		Thread reader;
+	}
+
+	/**
+	 * Opens the reading end of a stream on a new daemon thread, which reads objects until the stream ends
+	 * @param input opens the reading end
+	 * @return the started thread
+	 */
+	static Thread drain(final InputOpener input) {
+		Thread reader = new Thread("extraction reader") {
+			@Override
+			public void run() {
+				try {
+					ObjectInputStream in = input.open();
+					while (true) in.readObject();
+				} catch (Exception e) {
+					//end of stream
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+		return reader;
+	}
+
+	/**
+	 * Opens the reading end of a stream
+	 * @author AndrewJSel
+	 *
+	 */
+	interface InputOpener {
+
+		/**
+		 * Opens the reading end of a stream
+		 * @return the reading end of a stream
+		 * @throws IOException in case the stream can't be opened
+		 */
+		ObjectInputStream open() throws IOException;
+	}
+
+	/**
+	 * number of nodes extracted by an operation
+	 */
+	static final int BATCH = 1000;
+}
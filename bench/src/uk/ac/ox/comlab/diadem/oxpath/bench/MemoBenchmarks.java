@@ -0,0 +1,208 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing the OXPath microbenchmarks
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNode;
+import uk.ac.ox.comlab.diadem.oxpath.core.MemoizedPAATEval_;
+import uk.ac.ox.comlab.diadem.oxpath.core.PAATEval_;
+import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATState;
+import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATStateEvalIterative;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathType;
+import uk.ac.ox.comlab.diadem.oxpath.parser.OXPathParser;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathMemoizer;
+
+/**
+ * Benchmarks of the memoization of eval_, comparing the reflective {@code OXPathMemoizer} proxy with the typed
+ * {@code MemoizedPAATEval_} over a constant eval_, so that only the cost of the memo is measured.  Each operation looks up a
+ * batch of {@code BATCH} keys, formed from the nodes of a parsed expression and the elements of the listing page.
+ * @author AndrewJSel
+ *
+ */
+public class MemoBenchmarks {
+
+	/**
+	 * Returns the benchmarks of the suite
+	 * @param fixtures the pages of the benchmarks
+	 * @return the benchmarks of the suite
+	 * @throws Exception in case of error reading the pages
+	 */
+	public static List<OXPathBenchmark> create(BenchmarkFixtures fixtures) throws Exception {
+		OXPathContextNode[] elements = NodeListBenchmarks.elements(fixtures.newBrowser(BenchmarkFixtures.LISTING));
+		List<Node> astNodes = new ArrayList<Node>();
+		collect(OXPathParser.getJJTreeFromString(EXPRESSION), astNodes);
+		final DOMNode[] contexts = new DOMNode[BATCH];
+		final Node[] asts = new Node[BATCH];
+		final PAATStateEvalIterative[] states = new PAATStateEvalIterative[BATCH];
+		for (int i = 0; i < BATCH; i++) {
+			OXPathContextNode element = elements[i % elements.length];
+			contexts[i] = element.getNode();
+			asts[i] = astNodes.get(i % astNodes.size());
+			states[i] = new PAATState.Builder(element).setPosition(i % 16 + 1).setLast(16).buildNode();
+		}
+		final DOMDocument page = contexts[0].getOwnerDocument();
+		List<OXPathBenchmark> benchmarks = new ArrayList<OXPathBenchmark>();
+		benchmarks.add(new MemoBenchmark("memo.proxyHit" + BATCH, contexts, asts, states) {
+			@Override
+			PAATEval_ memoize() {
+				return OXPathMemoizer.memoize(CONSTANT);
+			}
+		});
+		benchmarks.add(new MemoBenchmark("memo.typedHit" + BATCH, contexts, asts, states) {
+			@Override
+			PAATEval_ memoize() {
+				return new MemoizedPAATEval_(CONSTANT);
+			}
+		});
+		benchmarks.add(new MemoBenchmark("memo.proxyFill" + BATCH, contexts, asts, states) {
+			@Override
+			PAATEval_ memoize() {
+				return OXPathMemoizer.memoize(CONSTANT);
+			}
+
+			@Override
+			public Object run() throws Exception {
+				this.memo.clear(page);
+				return super.run();
+			}
+		});
+		benchmarks.add(new MemoBenchmark("memo.typedFill" + BATCH, contexts, asts, states) {
+			@Override
+			PAATEval_ memoize() {
+				return new MemoizedPAATEval_(CONSTANT);
+			}
+
+			@Override
+			public Object run() throws Exception {
+				this.memo.clear(page);
+				return super.run();
+			}
+		});
+		return benchmarks;
+	}
+
+	/**
+	 * Adds the node and its descendants to the list
+	 * @param node the root of the subtree
+	 * @param nodes the list
+	 */
+	private static void collect(Node node, List<Node> nodes) {
+		nodes.add(node);
+		for (int i = 0; i < node.jjtGetNumChildren(); i++) collect(node.jjtGetChild(i), nodes);
+	}
+
+	/**
+	 * Benchmark calling a memoized eval_ with each key of the batch; the memo is filled in {@code setUp}
+	 * @author AndrewJSel
+	 *
+	 */
+	abstract static class MemoBenchmark extends OXPathBenchmark {
+
+		/**
+		 * Creates the benchmark
+		 * @param iName name of the benchmark
+		 * @param iContexts context nodes of the keys
+		 * @param iAsts AST nodes of the keys
+		 * @param iStates states of the keys
+		 */
+		MemoBenchmark(String iName, DOMNode[] iContexts, Node[] iAsts, PAATStateEvalIterative[] iStates) {
+			super(iName);
+			this.contexts = iContexts;
+			this.asts = iAsts;
+			this.states = iStates;
+		}
+
+		/**
+		 * Returns the memoized constant eval_
+		 * @return the memoized constant eval_
+		 */
+		abstract PAATEval_ memoize();
+
+		@Override
+		public void setUp() throws Exception {
+			this.memo = this.memoize();
+			this.run();
+		}
+
+		@Override
+		public Object run() throws Exception {
+			Object result = null;
+			for (int i = 0; i < this.contexts.length; i++) result = this.memo.eval_(this.contexts[i], this.asts[i], this.states[i]);
+			return result;
+		}
+
+		/**
+		 * context nodes of the keys
+		 */
+		private final DOMNode[] contexts;
+		/**
+		 * AST nodes of the keys
+		 */
+		private final Node[] asts;
+		/**
+		 * states of the keys
+		 */
+		private final PAATStateEvalIterative[] states;
+		/**
+		 * the memoized eval_
+		 */
+		PAATEval_ memo;
+	}
+
+	/**
+	 * number of keys looked up by an operation
+	 */
+	static final int BATCH = 1024;
+	/**
+	 * expression providing the AST nodes of the keys
+	 */
+	static final String EXPRESSION = "doc(\"" + BenchmarkFixtures.url(BenchmarkFixtures.LISTING) + "\")//div[@class='item']:<item>"
+			+ "[./h2:<title=string(.)>][.//span[@class='price']:<price=string(.)>][.//span[@class='rating']:<rating=string(.)>]";
+	/**
+	 * eval_ returning the empty result without evaluating
+	 */
+	static final PAATEval_ CONSTANT = new PAATEval_() {
+		@Override
+		public OXPathType eval_(DOMNode context, Node astNode, PAATStateEvalIterative state) throws OXPathException {
+			return OXPathType.EMPTYRESULT;
+		}
+
+		@Override
+		public Boolean clear(DOMDocument page) {
+			return false;
+		}
+	};
+}
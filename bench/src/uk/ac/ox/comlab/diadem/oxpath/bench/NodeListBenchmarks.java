@@ -0,0 +1,138 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing the OXPath microbenchmarks
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import diadem.common.web.dom.DOMNode;
+import uk.ac.ox.comlab.diadem.oxpath.bench.dom.StaticBrowser;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathNodeList;
+
+/**
+ * Benchmarks of {@code OXPathNodeList}, the document-ordered node sets of the evaluation, over the elements of the listing page
+ * @author AndrewJSel
+ *
+ */
+public class NodeListBenchmarks {
+
+	/**
+	 * Returns the benchmarks of the suite
+	 * @param fixtures the pages of the benchmarks
+	 * @return the benchmarks of the suite
+	 * @throws Exception in case of error reading the pages
+	 */
+	public static List<OXPathBenchmark> create(BenchmarkFixtures fixtures) throws Exception {
+		final OXPathContextNode[] nodes = elements(fixtures.newBrowser(BenchmarkFixtures.LISTING));
+		final OXPathContextNode[] evens = new OXPathContextNode[(nodes.length + 1) / 2];
+		final OXPathContextNode[] odds = new OXPathContextNode[nodes.length / 2];
+		for (int i = 0; i < nodes.length; i++) {
+			if (i % 2 == 0) evens[i / 2] = nodes[i];
+			else odds[i / 2] = nodes[i];
+		}
+		List<OXPathBenchmark> benchmarks = new ArrayList<OXPathBenchmark>();
+		benchmarks.add(new OXPathBenchmark("nodelist.addInOrder") {
+			@Override
+			public Object run() {
+				OXPathNodeList list = new OXPathNodeList();
+				for (OXPathContextNode node : nodes) list.add(node);
+				return list;
+			}
+		});
+		benchmarks.add(new OXPathBenchmark("nodelist.addReversedAndIterate") {
+			@Override
+			public Object run() {
+				OXPathNodeList list = new OXPathNodeList();
+				for (int i = nodes.length - 1; i >= 0; i--) list.add(nodes[i]);
+				int count = 0;
+				for (OXPathContextNode node : list) count += node.getLast();
+				return count;
+			}
+		});
+		benchmarks.add(new OXPathBenchmark("nodelist.addAllInterleaved") {
+			@Override
+			public Object run() {
+				OXPathNodeList list = new OXPathNodeList();
+				OXPathNodeList other = new OXPathNodeList();
+				for (OXPathContextNode node : evens) list.add(node);
+				for (OXPathContextNode node : odds) other.add(node);
+				list.addAll(other);
+				return list;
+			}
+		});
+		benchmarks.add(new OXPathBenchmark("nodelist.contains") {
+			@Override
+			public void setUp() {
+				this.list = new OXPathNodeList();
+				for (OXPathContextNode node : evens) this.list.add(node);
+			}
+
+			@Override
+			public Object run() {
+				int count = 0;
+				for (OXPathContextNode node : nodes) {
+					if (this.list.contains(node)) count++;
+				}
+				return count;
+			}
+
+			/**
+			 * the even elements of the page
+			 */
+			private OXPathNodeList list;
+		});
+		benchmarks.add(new OXPathBenchmark("nodelist.emptyAndSingleton") {
+			@Override
+			public Object run() {
+				int count = 0;
+				for (OXPathContextNode node : nodes) {
+					count += new OXPathNodeList().size();
+					count += new OXPathNodeList(node).size();
+				}
+				return count;
+			}
+		});
+		return benchmarks;
+	}
+
+	/**
+	 * Returns the elements of the page in the browser, in document order
+	 * @param browser the browser
+	 * @return the elements of the page, as context nodes
+	 */
+	static OXPathContextNode[] elements(StaticBrowser browser) {
+		List<OXPathContextNode> nodes = new ArrayList<OXPathContextNode>();
+		for (DOMNode node : browser.getContentDOMWindow().getDocument().getElementsByTagName("*")) {
+			nodes.add(new OXPathContextNode(node, 0, 0));
+		}
+		return nodes.toArray(new OXPathContextNode[nodes.size()]);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing the OXPath microbenchmarks
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench;
+
+/**
+ * A microbenchmark: {@code run} is the measured operation, repeated by the {@code BenchmarkRunner} after {@code setUp} and
+ * before {@code tearDown}.  Operations that take well under a microsecond repeat their work in a batch, so that timing doesn't
+ * dominate; their names say the batch size.
+ * @author AndrewJSel
+ *
+ */
+public abstract class OXPathBenchmark {
+
+	/**
+	 * Creates the benchmark
+	 * @param iName name of the benchmark, as <tt>suite.operation</tt>
+	 */
+	protected OXPathBenchmark(String iName) {
+		this.name = iName;
+	}
+
+	/**
+	 * Returns the name of the benchmark
+	 * @return the name of the benchmark
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Prepares the state of the benchmark; not measured
+	 * @throws Exception in case of error
+	 */
+	public void setUp() throws Exception {}
+
+	/**
+	 * Performs the measured operation once
+	 * @return a result of the operation, consumed by the runner so that the work can't be optimized away
+	 * @throws Exception in case of error
+	 */
+	public abstract Object run() throws Exception;
+
+	/**
+	 * Releases the state of the benchmark; not measured
+	 * @throws Exception in case of error
+	 */
+	public void tearDown() throws Exception {}
+
+	@Override
+	public String toString() {
+		return (this.getClass().getSimpleName() + "[" + this.name + "]");
+	}
+
+	/**
+	 * name of the benchmark
+	 */
+	private final String name;
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing the OXPath microbenchmarks
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.ox.comlab.diadem.oxpath.core.PreparedOXPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.OXPathParser;
+
+/**
+ * Benchmarks of the preparation of an expression: parsing alone, parsing and decoration, and lookup in the plan cache
+ * @author AndrewJSel
+ *
+ */
+public class ParserBenchmarks {
+
+	/**
+	 * Returns the benchmarks of the suite
+	 * @param fixtures the pages of the benchmarks
+	 * @return the benchmarks of the suite
+	 */
+	public static List<OXPathBenchmark> create(BenchmarkFixtures fixtures) {
+		List<OXPathBenchmark> benchmarks = new ArrayList<OXPathBenchmark>();
+		benchmarks.add(new OXPathBenchmark("parse.parse") {
+			@Override
+			public Object run() throws Exception {
+				return OXPathParser.getJJTreeFromString(EXPRESSION);
+			}
+		});
+		benchmarks.add(new OXPathBenchmark("parse.prepare") {
+			@Override
+			public Object run() throws Exception {
+				return PreparedOXPath.prepare(EXPRESSION);
+			}
+		});
+		benchmarks.add(new OXPathBenchmark("parse.compileCached") {
+			@Override
+			public Object run() throws Exception {
+				return PreparedOXPath.compile(EXPRESSION);
+			}
+		});
+		return benchmarks;
+	}
+
+	/**
+	 * expression of the benchmarks, with steps, predicates, extraction markers and a Kleene star over an action
+	 */
+	static final String EXPRESSION = EvaluationBenchmarks.LISTING + "/(//a[@class='next']/{click/})*{0,1}"
+			+ "//div[@class='item'][not(@style)]:<item>[./h2:<title=string(.)>][.//span[@class='price']:<price=string(.)>]";
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Stack;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.configuration.Configuration;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import diadem.common.factsfinder.dom.FactSerializer;
+import diadem.common.web.DialogsService;
+import diadem.common.web.WebBrowser;
+import diadem.common.web.dom.DOMWalkerBrowserBacked;
+import diadem.common.web.dom.DOMWindow;
+import diadem.common.web.dom.xpath.DOMXPathEvaluator;
+import diadem.common.web.listener.BrowserLocationListener;
+import diadem.common.web.listener.BrowserProgressListener;
+import diadem.common.web.listener.BrowserStatusTextListener;
+import diadem.common.web.listener.BrowserTitleListener;
+import diadem.common.web.listener.OpenNewWindowListener;
+
+/**
+ * In-memory stand-in of the {@code WebBrowser}, serving static pages registered by URL.  The pages are well-formed (X)HTML,
+ * parsed without namespaces so that plain XPath name tests match them.  Each navigation loads a fresh copy of the registered
+ * page into the single window of the browser, so pages have their own identity (and memoized data) as in a real browser;
+ * <tt>back</tt> and <tt>forward</tt> return to the loaded copies.  There are no scripts, style sheets, layout or network.
+ * A browser is meant to be used by one thread at a time.
+ * @author AndrewJSel
+ *
+ */
+public class StaticBrowser implements WebBrowser {
+
+	/**
+	 * Creates a browser without pages
+	 */
+	public StaticBrowser() {
+		this.window = new StaticWindow(this);
+	}
+
+	/**
+	 * Registers the page at the URL
+	 * @param url location of the page
+	 * @param markup well-formed (X)HTML of the page
+	 * @throws IOException if the page isn't well-formed
+	 */
+	public void register(String url, String markup) throws IOException {
+		this.register(url, new ByteArrayInputStream(markup.getBytes("UTF-8")));
+	}
+
+	/**
+	 * Registers the page at the URL
+	 * @param url location of the page
+	 * @param file file holding the well-formed (X)HTML of the page
+	 * @throws IOException if the file can't be read or the page isn't well-formed
+	 */
+	public void register(String url, File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			this.register(url, in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Registers the page at the URL
+	 * @param url location of the page
+	 * @param in stream of the well-formed (X)HTML of the page
+	 * @throws IOException if the stream can't be read or the page isn't well-formed
+	 */
+	public void register(String url, InputStream in) throws IOException {
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(false);
+			factory.setValidating(false);
+			factory.setFeature(LOADDTD, false);
+			DocumentBuilder builder = factory.newDocumentBuilder();
+			this.pages.put(url, builder.parse(in));
+		} catch (ParserConfigurationException e) {
+			throw new IOException("Can't create a parser for " + url, e);
+		} catch (SAXException e) {
+			throw new IOException("Page " + url + " isn't well-formed", e);
+		}
+	}
+
+	/**
+	 * Returns {@code true} if a page is registered at the URL
+	 * @param url location of the page
+	 * @return {@code true} if a page is registered at the URL, {@code false} otherwise
+	 */
+	public boolean isRegistered(String url) {
+		return this.pages.containsKey(url);
+	}
+
+	/**
+	 * Returns the number of pages loaded since the browser was created
+	 * @return the number of pages loaded since the browser was created
+	 */
+	public long getLoads() {
+		return this.loads;
+	}
+
+	/**
+	 * Navigates to the URL if a page is registered there
+	 * @param url location of the page
+	 * @return {@code true} if the window navigated, {@code false} otherwise
+	 */
+	boolean follow(String url) {
+		if (!this.pages.containsKey(url)) return false;
+		this.navigate(url, true);
+		return true;
+	}
+
+	/**
+	 * Pushes the page on the back history, forgetting the oldest page beyond {@code MAXHISTORY} pages
+	 * @param page the page left
+	 */
+	private void remember(StaticDocument page) {
+		this.backHistory.push(page);
+		if (this.backHistory.size() > MAXHISTORY) this.backHistory.remove(0);
+	}
+
+	@Override
+	public DOMWindow getContentDOMWindow() {
+		return this.window;
+	}
+
+	@Override
+	public DOMWindow window() {
+		return this.window;
+	}
+
+	@Override
+	public void setWindowSize(int width, int height) {}
+
+	@Deprecated
+	@Override
+	public DOMWalkerBrowserBacked getDOMWalker(Configuration configuration, FactSerializer serializer, boolean flag) {
+		throw new UnsupportedOperationException("DOM walkers aren't supported by the static browser");
+	}
+
+	@Deprecated
+	@Override
+	public DOMWalkerBrowserBacked getDOMWalker(FactSerializer serializer) {
+		throw new UnsupportedOperationException("DOM walkers aren't supported by the static browser");
+	}
+
+	@Deprecated
+	@Override
+	public void navigate(String url) {
+		this.navigate(url, true);
+	}
+
+	/**
+	 * Loads a fresh copy of the page registered at the URL, or empties the window for <tt>about:blank</tt>
+	 * @param url location of the page
+	 * @param wait ignored, as loading is synchronous
+	 * @throws IllegalArgumentException if no page is registered at the URL
+	 */
+	@Override
+	public void navigate(String url, boolean wait) {
+		Document page = this.pages.get(url);
+		if (page == null && !BLANK.equals(url)) throw new IllegalArgumentException("No page registered at " + url);
+		StaticDocument current = this.window.getDocument();
+		if (current != null) this.remember(current);
+		this.forwardHistory.clear();
+		if (page == null) {
+			this.window.close();
+			return;
+		}
+		this.window.load(new StaticDocument((Document) page.cloneNode(true), url, this.window));
+		this.loads++;
+	}
+
+	@Override
+	public String getLocationURL() {
+		StaticDocument current = this.window.getDocument();
+		return (current == null)?BLANK:current.getURL();
+	}
+
+	@Override
+	public void close() {
+		this.window.close();
+	}
+
+	@Override
+	public void back(boolean wait) {
+		if (this.backHistory.isEmpty()) return;
+		StaticDocument current = this.window.getDocument();
+		if (current != null) this.forwardHistory.push(current);
+		this.window.load(this.backHistory.pop());
+	}
+
+	@Override
+	public void forward(boolean wait) {
+		if (this.forwardHistory.isEmpty()) return;
+		StaticDocument current = this.window.getDocument();
+		if (current != null) this.remember(current);
+		this.window.load(this.forwardHistory.pop());
+	}
+
+	@Override
+	public void enableFeatures(FeatureType... features) {}
+
+	@Override
+	public void disableFeatures(FeatureType... features) {}
+
+	@Override
+	public DOMXPathEvaluator getOXPathEvaluator() {
+		StaticDocument current = this.window.getDocument();
+		return (current == null)?null:current.getXPathEvaluator();
+	}
+
+	@Override
+	public void addProgressListener(BrowserProgressListener listener) {}
+
+	@Override
+	public void removeProgressListener(BrowserProgressListener listener) {}
+
+	@Override
+	public void addLocationListener(BrowserLocationListener listener) {}
+
+	@Override
+	public void removeLocationListener(BrowserLocationListener listener) {}
+
+	@Override
+	public void addTitleListener(BrowserTitleListener listener) {}
+
+	@Override
+	public void removeTitleListener(BrowserTitleListener listener) {}
+
+	@Override
+	public void addStatusTextListener(BrowserStatusTextListener listener) {}
+
+	@Override
+	public void removeStatusTextListener(BrowserStatusTextListener listener) {}
+
+	@Override
+	public Object getWindowFrame() {
+		return null;
+	}
+
+	/**
+	 * Replaces the page in the window with a fresh copy
+	 */
+	@Override
+	public void refresh() {
+		StaticDocument current = this.window.getDocument();
+		if (current == null) return;
+		this.window.load(new StaticDocument((Document) this.pages.get(current.getURL()).cloneNode(true), current.getURL(), this.window));
+		this.loads++;
+	}
+
+	@Override
+	public void stop() {}
+
+	@Override
+	public boolean isBackEnabled() {
+		return !this.backHistory.isEmpty();
+	}
+
+	@Override
+	public boolean isForwardEnabled() {
+		return !this.forwardHistory.isEmpty();
+	}
+
+	@Override
+	public Object evaluate(String script) {
+		throw new UnsupportedOperationException("Scripts aren't supported by the static browser");
+	}
+
+	@Override
+	public void setDialogsService(DialogsService service) {}
+
+	@Override
+	public void setZoom(int zoom) {}
+
+	@Override
+	public void enableSilentPromptService(boolean enable) {}
+
+	@Override
+	public void addOpenNewWindowListener(OpenNewWindowListener listener) {}
+
+	@Override
+	public void removeOpenNewWindowListener(OpenNewWindowListener listener) {}
+
+	/**
+	 * Closes the window and forgets the history
+	 */
+	@Override
+	public void shutdown() {
+		this.window.close();
+		this.backHistory.clear();
+		this.forwardHistory.clear();
+	}
+
+	@Override
+	public void cleanCache() {}
+
+	@Override
+	public void removeAllCookies() {}
+
+	/**
+	 * maximum number of pages in the back history
+	 */
+	private static final int MAXHISTORY = 64;
+	/**
+	 * location of the empty window
+	 */
+	private static final String BLANK = "about:blank";
+	/**
+	 * parser feature for loading external DTDs, disabled so that pages with a doctype load offline
+	 */
+	private static final String LOADDTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+	/**
+	 * registered pages by URL
+	 */
+	private final Map<String,Document> pages = new HashMap<String,Document>();
+	/**
+	 * the single window of the browser
+	 */
+	private final StaticWindow window;
+	/**
+	 * pages left by navigation or <tt>forward</tt>
+	 */
+	private final Stack<StaticDocument> backHistory = new Stack<StaticDocument>();
+	/**
+	 * pages left by <tt>back</tt>
+	 */
+	private final Stack<StaticDocument> forwardHistory = new Stack<StaticDocument>();
+	/**
+	 * number of pages loaded
+	 */
+	private long loads = 0;
+}
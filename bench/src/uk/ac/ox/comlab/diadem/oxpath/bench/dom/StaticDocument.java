@@ -0,0 +1,257 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMElement;
+import diadem.common.web.dom.DOMNode;
+import diadem.common.web.dom.DOMNodeList;
+import diadem.common.web.dom.DOMWindow;
+import diadem.common.web.dom.xpath.DOMXPathResult;
+
+/**
+ * {@code DOMDocument} over an in-memory W3C DOM page, loaded into a {@code StaticWindow}.  The document hands out the wrappers
+ * of its nodes, one per node, stored as user data on the wrapped nodes.
+ * @author AndrewJSel
+ *
+ */
+public class StaticDocument extends StaticNode implements DOMDocument {
+
+	/**
+	 * Wraps the page
+	 * @param iDocument the page, owned by this object from now on
+	 * @param iURL the location of the page
+	 * @param iWindow the window holding the page
+	 */
+	StaticDocument(Document iDocument, String iURL, StaticWindow iWindow) {
+		super(null, iDocument);
+		this.url = iURL;
+		this.window = iWindow;
+		this.evaluator = new StaticXPathEvaluator(this);
+		iDocument.setUserData(WRAPPER, this, null);
+	}
+
+	/**
+	 * Returns the wrapper of the node
+	 * @param n a node of the page
+	 * @return the wrapper of the node, or {@code null} if {@code n} is {@code null}
+	 */
+	public DOMNode wrap(Node n) {
+		if (n == null) return null;
+		DOMNode wrapper = (DOMNode) n.getUserData(WRAPPER);
+		if (wrapper == null) {
+			wrapper = (n.getNodeType() == Node.ELEMENT_NODE)?new StaticElement(this, (Element) n):new StaticNode(this, n);
+			n.setUserData(WRAPPER, wrapper, null);
+		}
+		return wrapper;
+	}
+
+	/**
+	 * Returns the wrappers of the nodes
+	 * @param list nodes of the page
+	 * @return the wrappers of the nodes
+	 */
+	DOMNodeList wrap(NodeList list) {
+		List<DOMNode> nodes = new ArrayList<DOMNode>(list.getLength());
+		for (int i = 0; i < list.getLength(); i++) nodes.add(this.wrap(list.item(i)));
+		return new StaticNodeList(nodes);
+	}
+
+	/**
+	 * Returns the location of the page
+	 * @return the location of the page
+	 */
+	public String getURL() {
+		return this.url;
+	}
+
+	/**
+	 * Returns the XPath evaluator of the page
+	 * @return the XPath evaluator of the page
+	 */
+	StaticXPathEvaluator getEvaluator() {
+		return this.evaluator;
+	}
+
+	/**
+	 * Navigates the window of the page to the target, resolved against the location of the page, if the target is registered
+	 * with the browser
+	 * @param target the target of a link or form
+	 * @return {@code true} if the window navigated, {@code false} otherwise
+	 */
+	boolean follow(String target) {
+		if (target == null) return false;
+		String resolved;
+		try {
+			resolved = URI.create(this.url).resolve(target).toString();
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return this.window.getStaticBrowser().follow(resolved);
+	}
+
+	/**
+	 * Returns the first element matching the criteria; {@code css} and {@code xy} aren't supported
+	 * @param criteria the kind of {@code value}
+	 * @param value id, name, tag name or XPath expression of the element
+	 * @return the first matching element, or {@code null} if there is none
+	 */
+	@Override
+	public DOMElement selectElementBy(CRITERIA criteria, String value) {
+		switch (criteria) {
+		case id:
+			return this.getElementById(value);
+		case name:
+			return first(this.getElementsByName(value));
+		case tagname:
+			return first(this.getElementsByTagName(value));
+		case xpath:
+			DOMNode found = this.evaluator.evaluate(value, this, null, DOMXPathResult.FIRST_ORDERED_NODE_TYPE, null).getSingleNodeValue();
+			return (found instanceof DOMElement)?(DOMElement) found:null;
+		default:
+			throw new UnsupportedOperationException("Selection by " + criteria + " isn't supported by the static browser");
+		}
+	}
+
+	@Override
+	public DOMElement getDocumentElement() {
+		return (DOMElement) this.wrap(((Document) this.node).getDocumentElement());
+	}
+
+	@Override
+	public DOMNodeList getElementsByName(String name) {
+		return this.elementsWith("name", name);
+	}
+
+	/**
+	 * Returns the first element with the <tt>id</tt> attribute (the pages have no DTD declaring ID attributes)
+	 * @param id the identifier
+	 * @return the first element with the identifier, or {@code null} if there is none
+	 */
+	@Override
+	public DOMElement getElementById(String id) {
+		return first(this.elementsWith("id", id));
+	}
+
+	@Override
+	public DOMNodeList getElementsByTagName(String tagName) {
+		return this.wrap(((Document) this.node).getElementsByTagName(tagName));
+	}
+
+	@Override
+	public DOMElement elementByPosition(int x, int y) {
+		throw new UnsupportedOperationException("Static pages have no layout");
+	}
+
+	@Override
+	public DOMWindow getEnclosingWindow() {
+		return this.window;
+	}
+
+	@Override
+	public DOMElement createElement(String tagName) {
+		return (DOMElement) this.wrap(((Document) this.node).createElement(tagName));
+	}
+
+	/**
+	 * The document is its own page
+	 * @return {@code null}, as for browser documents
+	 */
+	@Override
+	public DOMDocument getOwnerDocument() {
+		return null;
+	}
+
+	@Override
+	public DOMElement querySelector(String selector) {
+		throw new UnsupportedOperationException("CSS selectors aren't supported by the static browser");
+	}
+
+	@Override
+	public DOMNodeList querySelectorAll(String selector) {
+		throw new UnsupportedOperationException("CSS selectors aren't supported by the static browser");
+	}
+
+	@Override
+	public String toString() {
+		return (this.getClass().getSimpleName() + "[" + this.url + "]");
+	}
+
+	/**
+	 * Returns the elements whose attribute has the value
+	 * @param attribute name of the attribute
+	 * @param value value of the attribute
+	 * @return the elements whose attribute has the value, in document order
+	 */
+	private DOMNodeList elementsWith(String attribute, String value) {
+		List<DOMNode> nodes = new ArrayList<DOMNode>();
+		NodeList all = ((Document) this.node).getElementsByTagName("*");
+		for (int i = 0; i < all.getLength(); i++) {
+			Element element = (Element) all.item(i);
+			if (element.hasAttribute(attribute) && element.getAttribute(attribute).equals(value)) nodes.add(this.wrap(element));
+		}
+		return new StaticNodeList(nodes);
+	}
+
+	/**
+	 * Returns the first node of the list as an element
+	 * @param list element list
+	 * @return the first node of the list, or {@code null} if the list is empty
+	 */
+	private static DOMElement first(DOMNodeList list) {
+		return (list.getLength() == 0)?null:(DOMElement) list.item(0);
+	}
+
+	/**
+	 * user data key of the wrappers
+	 */
+	private static final String WRAPPER = "oxpath.bench.wrapper";
+	/**
+	 * location of the page
+	 */
+	private final String url;
+	/**
+	 * the window holding the page
+	 */
+	private final StaticWindow window;
+	/**
+	 * the XPath evaluator of the page
+	 */
+	private final StaticXPathEvaluator evaluator;
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import diadem.common.web.dom.DOMBoundingClientRect;
+import diadem.common.web.dom.DOMCSSStyleDeclaration;
+import diadem.common.web.dom.DOMElement;
+import diadem.common.web.dom.DOMNodeList;
+import diadem.common.web.dom.DOMWindow;
+import diadem.common.web.dom.HTMLUtil;
+
+/**
+ * {@code DOMElement} over an element of an in-memory W3C DOM.  Without scripts, the only actions with an effect are following
+ * links (clicks on <tt>a</tt> elements with a registered <tt>href</tt>), typing (which sets the <tt>value</tt> attribute) and
+ * submitting a form with a registered <tt>action</tt> by typing with enter.  All other events leave the page unchanged.
+ * @author AndrewJSel
+ *
+ */
+public class StaticElement extends StaticNode implements DOMElement {
+
+	/**
+	 * Wraps the element; only called by {@code StaticDocument.wrap}
+	 * @param iDocument the page of the element
+	 * @param iElement the wrapped element
+	 */
+	StaticElement(StaticDocument iDocument, Element iElement) {
+		super(iDocument, iElement);
+	}
+
+	/**
+	 * Returns the inline style of the element; static pages have no style sheets
+	 * @return the inline style of the element
+	 */
+	@Override
+	public DOMCSSStyleDeclaration getComputedStyle() {
+		return new StaticStyle((Element) this.node);
+	}
+
+	@Override
+	public DOMBoundingClientRect getBoundingClientRect() {
+		throw new UnsupportedOperationException("Static pages have no layout");
+	}
+
+	@Override
+	public void setAttribute(String name, String value) {
+		((Element) this.node).setAttribute(name, value);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		((Element) this.node).removeAttribute(name);
+	}
+
+	/**
+	 * Returns the value of the attribute
+	 * @param name name of the attribute
+	 * @return the value of the attribute, or {@code null} if the element has no such attribute
+	 */
+	@Override
+	public String getAttribute(String name) {
+		Element element = (Element) this.node;
+		return element.hasAttribute(name)?element.getAttribute(name):null;
+	}
+
+	@Override
+	public boolean click(boolean wait) {
+		this.click();
+		return true;
+	}
+
+	/**
+	 * Follows the link of an <tt>a</tt> element if its target is registered with the browser
+	 * @return the window after the click
+	 */
+	@Override
+	public DOMWindow click() {
+		if (this.node.getNodeName().equalsIgnoreCase("a")) this.document.follow(this.getAttribute("href"));
+		return this.document.getEnclosingWindow();
+	}
+
+	@Override
+	public DOMWindow fireMouseEvent(String type) {
+		if (type.equals("click")) return this.click();
+		return this.document.getEnclosingWindow();
+	}
+
+	@Override
+	public DOMWindow fireFocusEvent(String type) {
+		return this.document.getEnclosingWindow();
+	}
+
+	@Override
+	public DOMWindow fireKeyboardEvent(String type, char key) {
+		return this.document.getEnclosingWindow();
+	}
+
+	/**
+	 * Sets the <tt>value</tt> attribute to the text
+	 * @param text the text typed
+	 * @return the window after typing
+	 */
+	@Override
+	public DOMWindow type(String text) {
+		this.setAttribute("value", text);
+		return this.document.getEnclosingWindow();
+	}
+
+	/**
+	 * Sets the <tt>value</tt> attribute to the text, then submits the enclosing form if its target is registered with the browser
+	 * @param text the text typed
+	 * @return the window after submitting
+	 */
+	@Override
+	public DOMWindow typeAndEnter(String text) {
+		this.type(text);
+		for (Node n = this.node.getParentNode(); n != null; n = n.getParentNode()) {
+			if (n.getNodeName().equalsIgnoreCase("form")) {
+				this.document.follow(((Element) n).getAttribute("action"));
+				break;
+			}
+		}
+		return this.document.getEnclosingWindow();
+	}
+
+	/**
+	 * Serializes the children of the element
+	 * @return the markup of the children of the element
+	 */
+	@Override
+	public String getInnerHTML() {
+		StringBuilder sb = new StringBuilder();
+		for (Node n = this.node.getFirstChild(); n != null; n = n.getNextSibling()) sb.append(serialize(n));
+		return sb.toString();
+	}
+
+	@Override
+	public HTMLUtil htmlUtil() {
+		throw new UnsupportedOperationException("Form controls aren't supported by the static browser");
+	}
+
+	@Override
+	public DOMWindow mouseover() {
+		return this.document.getEnclosingWindow();
+	}
+
+	@Override
+	public DOMWindow focus() {
+		return this.document.getEnclosingWindow();
+	}
+
+	@Override
+	public DOMWindow sendClick(float x, float y) {
+		return this.click();
+	}
+
+	@Override
+	public DOMElement querySelector(String selector) {
+		throw new UnsupportedOperationException("CSS selectors aren't supported by the static browser");
+	}
+
+	@Override
+	public DOMNodeList querySelectorAll(String selector) {
+		throw new UnsupportedOperationException("CSS selectors aren't supported by the static browser");
+	}
+}
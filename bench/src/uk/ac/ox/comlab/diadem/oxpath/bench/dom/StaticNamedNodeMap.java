@@ -0,0 +1,77 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import org.w3c.dom.NamedNodeMap;
+
+import diadem.common.web.dom.DOMNamedNodeMap;
+import diadem.common.web.dom.DOMNode;
+
+/**
+ * {@code DOMNamedNodeMap} over the attributes of an element of an in-memory W3C DOM
+ * @author AndrewJSel
+ *
+ */
+public class StaticNamedNodeMap implements DOMNamedNodeMap<DOMNode> {
+
+	/**
+	 * Wraps the attributes
+	 * @param iDocument the page of the attributes
+	 * @param iAttributes the wrapped attributes
+	 */
+	StaticNamedNodeMap(StaticDocument iDocument, NamedNodeMap iAttributes) {
+		this.document = iDocument;
+		this.attributes = iAttributes;
+	}
+
+	@Override
+	public long getLength() {
+		return this.attributes.getLength();
+	}
+
+	@Override
+	public DOMNode item(int index) {
+		return this.document.wrap(this.attributes.item(index));
+	}
+
+	@Override
+	public DOMNode getNamedItem(String name) {
+		return this.document.wrap(this.attributes.getNamedItem(name));
+	}
+
+	/**
+	 * the page of the attributes
+	 */
+	private final StaticDocument document;
+	/**
+	 * the wrapped attributes
+	 */
+	private final NamedNodeMap attributes;
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import java.io.StringWriter;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Node;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNamedNodeMap;
+import diadem.common.web.dom.DOMNode;
+import diadem.common.web.dom.DOMNodeList;
+import diadem.common.web.dom.event.DOMEventListener;
+import diadem.common.web.dom.xpath.DOMXPathEvaluator;
+
+/**
+ * {@code DOMNode} over a node of an in-memory W3C DOM.  There is one wrapper per node (see {@code StaticDocument.wrap}), so
+ * wrappers compare by identity.  Static pages have no scripts, so event listeners are ignored.
+ * @author AndrewJSel
+ *
+ */
+public class StaticNode implements DOMNode {
+
+	/**
+	 * Wraps the node; only called by {@code StaticDocument.wrap}
+	 * @param iDocument the page of the node
+	 * @param iNode the wrapped node
+	 */
+	StaticNode(StaticDocument iDocument, Node iNode) {
+		this.document = iDocument;
+		this.node = iNode;
+	}
+
+	/**
+	 * Returns the wrapped node
+	 * @return the wrapped node
+	 */
+	public Node getNode() {
+		return this.node;
+	}
+
+	/**
+	 * Returns the page of the node
+	 * @return the page of the node (the node itself for a page)
+	 */
+	StaticDocument page() {
+		return (this.document == null)?(StaticDocument) this:this.document;
+	}
+
+	/**
+	 * Returns the wrapped node of {@code other}
+	 * @param other a node of the static browser
+	 * @return the wrapped node of {@code other}
+	 */
+	static Node unwrap(DOMNode other) {
+		if (!(other instanceof StaticNode)) throw new IllegalArgumentException("Node " + other + " doesn't belong to the static browser");
+		return ((StaticNode) other).node;
+	}
+
+	@Override
+	public void addEventListener(String type, DOMEventListener listener, boolean useCapture) {}
+
+	@Override
+	public void removeEventListener(String type, DOMEventListener listener, boolean useCapture) {}
+
+	@Override
+	public Type getNodeType() {
+		return TYPES[this.node.getNodeType() - 1];
+	}
+
+	@Override
+	public DOMNodeList getChildNodes() {
+		return this.page().wrap(this.node.getChildNodes());
+	}
+
+	@Override
+	public String getNodeValue() {
+		return this.node.getNodeValue();
+	}
+
+	@Override
+	public DOMNode getParentNode() {
+		return this.page().wrap(this.node.getParentNode());
+	}
+
+	@Override
+	public String getLocalName() {
+		String local = this.node.getLocalName();
+		return (local == null)?this.node.getNodeName():local;
+	}
+
+	@Override
+	public DOMNamedNodeMap<DOMNode> getAttributes() {
+		return (this.node.getAttributes() == null)?null:new StaticNamedNodeMap(this.page(), this.node.getAttributes());
+	}
+
+	@Override
+	public String getNodeName() {
+		return this.node.getNodeName();
+	}
+
+	/**
+	 * Serializes the node and its subtree
+	 * @return the markup of the node
+	 */
+	@Override
+	public String toPrettyHTML() {
+		return serialize(this.node);
+	}
+
+	@Override
+	public String getTextContent() {
+		return this.node.getTextContent();
+	}
+
+	/**
+	 * Returns {@code true} if {@code other} lies in the subtree of this node
+	 * @param other the candidate descendant
+	 * @return {@code true} if {@code other} lies in the subtree of this node, {@code false} otherwise
+	 */
+	@Override
+	public boolean isDescendant(DOMNode other) {
+		return (this.node.compareDocumentPosition(unwrap(other)) & Node.DOCUMENT_POSITION_CONTAINED_BY) != 0;
+	}
+
+	/**
+	 * Static pages aren't rendered, so a node is visible unless the inline style of the node or of an ancestor hides it
+	 * @return {@code false} if an inline style hides the node, {@code true} otherwise
+	 */
+	@Override
+	public boolean isVisible() {
+		for (Node n = this.node; n != null; n = n.getParentNode()) {
+			if (n.getNodeType() == Node.ELEMENT_NODE && StaticStyle.hides(n)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public DOMXPathEvaluator getXPathEvaluator() {
+		return this.page().getEvaluator();
+	}
+
+	@Override
+	public short compareDocumentPosition(DOMNode other) {
+		return this.node.compareDocumentPosition(unwrap(other));
+	}
+
+	@Override
+	public DOMDocument getOwnerDocument() {
+		return this.document;
+	}
+
+	@Override
+	public boolean isSameNode(DOMNode other) {
+		return (other instanceof StaticNode) && this.node.isSameNode(((StaticNode) other).node);
+	}
+
+	@Override
+	public DOMNode appendChild(DOMNode child) {
+		return this.page().wrap(this.node.appendChild(unwrap(child)));
+	}
+
+	@Override
+	public DOMNode removeChild(DOMNode child) {
+		return this.page().wrap(this.node.removeChild(unwrap(child)));
+	}
+
+	@Override
+	public DOMNode replaceChild(DOMNode newChild, DOMNode oldChild) {
+		return this.page().wrap(this.node.replaceChild(unwrap(newChild), unwrap(oldChild)));
+	}
+
+	@Override
+	public DOMNode insertBefore(DOMNode newChild, DOMNode refChild) {
+		return this.page().wrap(this.node.insertBefore(unwrap(newChild), (refChild == null)?null:unwrap(refChild)));
+	}
+
+	@Override
+	public void setTextContent(String text) {
+		this.node.setTextContent(text);
+	}
+
+	@Override
+	public DOMNode getPreviousSibling() {
+		return this.page().wrap(this.node.getPreviousSibling());
+	}
+
+	@Override
+	public DOMNode getNextSibling() {
+		return this.page().wrap(this.node.getNextSibling());
+	}
+
+	@Override
+	public DOMNode getLastChild() {
+		return this.page().wrap(this.node.getLastChild());
+	}
+
+	@Override
+	public DOMNode getFirstChild() {
+		return this.page().wrap(this.node.getFirstChild());
+	}
+
+	@Override
+	public String toString() {
+		return (this.getClass().getSimpleName() + "[" + this.node.getNodeName() + "]");
+	}
+
+	/**
+	 * Serializes the node and its subtree without an XML declaration
+	 * @param n the node
+	 * @return the markup of the node
+	 */
+	static String serialize(Node n) {
+		if (n.getNodeType() == Node.TEXT_NODE || n.getNodeType() == Node.ATTRIBUTE_NODE) return n.getNodeValue();
+		try {
+			Transformer transformer = TransformerFactory.newInstance().newTransformer();
+			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+			transformer.setOutputProperty(OutputKeys.METHOD, "html");
+			StringWriter out = new StringWriter();
+			transformer.transform(new DOMSource(n), new StreamResult(out));
+			return out.toString();
+		} catch (TransformerException e) {
+			throw new IllegalStateException("Can't serialize " + n.getNodeName(), e);
+		}
+	}
+
+	/**
+	 * node types, indexed by the W3C node type minus one
+	 */
+	private static final Type[] TYPES = Type.values();
+	/**
+	 * the page of the node ({@code null} for a page)
+	 */
+	protected final StaticDocument document;
+	/**
+	 * the wrapped node
+	 */
+	protected final Node node;
+}
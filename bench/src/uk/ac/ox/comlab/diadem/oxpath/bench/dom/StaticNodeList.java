@@ -0,0 +1,73 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import diadem.common.web.dom.DOMNode;
+import diadem.common.web.dom.DOMNodeList;
+
+/**
+ * {@code DOMNodeList} over a snapshot of wrapped nodes
+ * @author AndrewJSel
+ *
+ */
+public class StaticNodeList implements DOMNodeList {
+
+	/**
+	 * Creates the list; the list takes ownership of {@code iNodes}
+	 * @param iNodes the nodes of the list
+	 */
+	StaticNodeList(List<DOMNode> iNodes) {
+		this.nodes = iNodes;
+	}
+
+	@Override
+	public Iterator<DOMNode> iterator() {
+		return Collections.unmodifiableList(this.nodes).iterator();
+	}
+
+	@Override
+	public DOMNode item(long index) {
+		return (index < 0 || index >= this.nodes.size())?null:this.nodes.get((int) index);
+	}
+
+	@Override
+	public long getLength() {
+		return this.nodes.size();
+	}
+
+	/**
+	 * the nodes of the list
+	 */
+	private final List<DOMNode> nodes;
+}
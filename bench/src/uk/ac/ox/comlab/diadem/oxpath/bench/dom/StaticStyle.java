@@ -0,0 +1,111 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import diadem.common.web.dom.DOMCSSStyleDeclaration;
+
+/**
+ * {@code DOMCSSStyleDeclaration} over the inline <tt>style</tt> attribute of an element.  Static pages have no style sheets
+ * and no cascade, so the inline style is the computed style.
+ * @author AndrewJSel
+ *
+ */
+public class StaticStyle implements DOMCSSStyleDeclaration {
+
+	/**
+	 * Creates the style of the element
+	 * @param iElement the element
+	 */
+	StaticStyle(Element iElement) {
+		this.element = iElement;
+	}
+
+	/**
+	 * Returns the value of the property
+	 * @param property name of the property
+	 * @return the value of the property, or the empty string if the inline style doesn't set it
+	 */
+	@Override
+	public String getPropertyValue(String property) {
+		String value = parse(this.element).get(property.trim().toLowerCase());
+		return (value == null)?"":value;
+	}
+
+	@Override
+	public void setProperty(String property, String value) {
+		Map<String,String> properties = parse(this.element);
+		properties.put(property.trim().toLowerCase(), value.trim());
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String,String> p : properties.entrySet()) sb.append(p.getKey()).append(": ").append(p.getValue()).append("; ");
+		this.element.setAttribute(STYLE, sb.toString().trim());
+	}
+
+	/**
+	 * Returns {@code true} if the inline style of the element hides it
+	 * @param n an element
+	 * @return {@code true} if the inline style of the element sets <tt>display: none</tt> or <tt>visibility: hidden</tt>
+	 */
+	static boolean hides(Node n) {
+		Element e = (Element) n;
+		if (!e.hasAttribute(STYLE)) return false;
+		Map<String,String> properties = parse(e);
+		return "none".equals(properties.get("display")) || "hidden".equals(properties.get("visibility"));
+	}
+
+	/**
+	 * Parses the inline style of the element
+	 * @param e the element
+	 * @return the properties of the inline style, in declaration order
+	 */
+	private static Map<String,String> parse(Element e) {
+		Map<String,String> properties = new LinkedHashMap<String,String>();
+		for (String declaration : e.getAttribute(STYLE).split(";")) {
+			int colon = declaration.indexOf(':');
+			if (colon < 0) continue;
+			properties.put(declaration.substring(0, colon).trim().toLowerCase(), declaration.substring(colon + 1).trim());
+		}
+		return properties;
+	}
+
+	/**
+	 * name of the style attribute
+	 */
+	private static final String STYLE = "style";
+	/**
+	 * the styled element
+	 */
+	private final Element element;
+}
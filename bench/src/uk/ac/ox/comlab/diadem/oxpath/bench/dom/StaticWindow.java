@@ -0,0 +1,135 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import diadem.common.web.WebBrowser;
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMWindow;
+import diadem.common.web.dom.event.DOMEventListener;
+
+/**
+ * {@code DOMWindow} of the static browser.  The browser has a single window, which navigation never replaces, so a window is
+ * never just opened.
+ * @author AndrewJSel
+ *
+ */
+public class StaticWindow implements DOMWindow {
+
+	/**
+	 * Creates an empty window
+	 * @param iBrowser the browser of the window
+	 */
+	StaticWindow(StaticBrowser iBrowser) {
+		this.browser = iBrowser;
+	}
+
+	/**
+	 * Shows the page in the window
+	 * @param page the page
+	 */
+	void load(StaticDocument page) {
+		this.document = page;
+	}
+
+	/**
+	 * Returns the browser of the window
+	 * @return the browser of the window
+	 */
+	StaticBrowser getStaticBrowser() {
+		return this.browser;
+	}
+
+	@Override
+	public void addEventListener(String type, DOMEventListener listener, boolean useCapture) {}
+
+	@Override
+	public void removeEventListener(String type, DOMEventListener listener, boolean useCapture) {}
+
+	@Override
+	public StaticDocument getDocument() {
+		return this.document;
+	}
+
+	@Override
+	public DOMDocument document() {
+		return this.document;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public void setName(String iName) {
+		this.name = iName;
+	}
+
+	/**
+	 * Closes the window; the next navigation of the browser reopens it
+	 */
+	@Override
+	public void close() {
+		this.document = null;
+	}
+
+	@Override
+	public WebBrowser getBrowser() {
+		return this.browser;
+	}
+
+	@Override
+	public int getScrollX() {
+		return 0;
+	}
+
+	@Override
+	public int getScrollY() {
+		return 0;
+	}
+
+	@Override
+	public boolean isJustOpened() {
+		return false;
+	}
+
+	/**
+	 * the browser of the window
+	 */
+	private final StaticBrowser browser;
+	/**
+	 * the page in the window
+	 */
+	private StaticDocument document;
+	/**
+	 * name of the window
+	 */
+	private String name = "";
+}
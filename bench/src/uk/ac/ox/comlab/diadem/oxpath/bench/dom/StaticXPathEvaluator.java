@@ -0,0 +1,113 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import diadem.common.web.dom.DOMNode;
+import diadem.common.web.dom.xpath.DOMXPathEvaluator;
+import diadem.common.web.dom.xpath.DOMXPathException;
+import diadem.common.web.dom.xpath.DOMXPathExpression;
+import diadem.common.web.dom.xpath.DOMXPathNSResolver;
+import diadem.common.web.dom.xpath.DOMXPathResult;
+
+/**
+ * {@code DOMXPathEvaluator} of a static page, on top of the XPath 1.0 engine of the JDK.  The pages are parsed without
+ * namespaces, so resolvers are ignored.
+ * @author AndrewJSel
+ *
+ */
+public class StaticXPathEvaluator implements DOMXPathEvaluator {
+
+	/**
+	 * Creates the evaluator of the page
+	 * @param iDocument the page
+	 */
+	StaticXPathEvaluator(StaticDocument iDocument) {
+		this.document = iDocument;
+	}
+
+	/**
+	 * Compiles the expression
+	 * @param expression XPath expression
+	 * @param resolver ignored
+	 * @return the compiled expression
+	 * @throws DOMXPathException in case of a malformed expression
+	 */
+	@Override
+	public synchronized DOMXPathExpression createExpression(String expression, DOMXPathNSResolver resolver) throws DOMXPathException {
+		if (this.xpath == null) this.xpath = XPathFactory.newInstance().newXPath();
+		try {
+			return new StaticXPathExpression(this.document, this.xpath.compile(expression));
+		} catch (XPathExpressionException e) {
+			throw new DOMXPathException(DOMXPathException.INVALID_EXPRESSION_ERR, "Malformed expression " + expression + ": " + e.getMessage());
+		}
+	}
+
+	@Override
+	public DOMXPathNSResolver createNSResolver(DOMNode node) {
+		return NORESOLVER;
+	}
+
+	/**
+	 * Compiles and evaluates the expression
+	 * @param expression XPath expression
+	 * @param context the context node
+	 * @param resolver ignored
+	 * @param type the requested result type (a constant of {@code DOMXPathResult})
+	 * @param result ignored
+	 * @return the result of the expression
+	 * @throws DOMXPathException in case of a malformed expression, or if the result can't be converted to {@code type}
+	 */
+	@Override
+	public DOMXPathResult evaluate(String expression, DOMNode context, DOMXPathNSResolver resolver, short type, Object result) throws DOMXPathException {
+		return (DOMXPathResult) this.createExpression(expression, resolver).evaluate(context, type, result);
+	}
+
+	/**
+	 * resolver of pages without namespaces
+	 */
+	private static final DOMXPathNSResolver NORESOLVER = new DOMXPathNSResolver() {
+		@Override
+		public String lookupNamespaceURI(String prefix) {
+			return null;
+		}
+	};
+	/**
+	 * the page
+	 */
+	private final StaticDocument document;
+	/**
+	 * XPath engine, created on first use
+	 */
+	private XPath xpath;
+}
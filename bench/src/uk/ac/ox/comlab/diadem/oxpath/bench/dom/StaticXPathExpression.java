@@ -0,0 +1,150 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import diadem.common.web.dom.DOMNode;
+import diadem.common.web.dom.xpath.DOMXPathException;
+import diadem.common.web.dom.xpath.DOMXPathExpression;
+import diadem.common.web.dom.xpath.DOMXPathResult;
+
+/**
+ * {@code DOMXPathExpression} over an expression compiled by the XPath 1.0 engine of the JDK.  The JDK engine can't evaluate
+ * to "any type", so for {@code ANY_TYPE} the type of the expression is inferred on its first evaluation and kept (XPath 1.0
+ * types are static): a node-set if the expression converts to one, a boolean if its string value is <tt>true</tt> or
+ * <tt>false</tt>, a number if its string value is the string of its number value, and a string otherwise.  The inference
+ * misreads string expressions whose first value looks like a number or boolean, which the fixtures avoid.  Node-sets of
+ * {@code ANY_TYPE} are returned as iterators, as by the browser.
+ * @author AndrewJSel
+ *
+ */
+public class StaticXPathExpression implements DOMXPathExpression {
+
+	/**
+	 * Wraps the compiled expression
+	 * @param iDocument the page the expression belongs to
+	 * @param iExpression the compiled expression
+	 */
+	StaticXPathExpression(StaticDocument iDocument, XPathExpression iExpression) {
+		this.document = iDocument;
+		this.expression = iExpression;
+	}
+
+	/**
+	 * Evaluates the expression
+	 * @param context the context node
+	 * @param type the requested result type (a constant of {@code DOMXPathResult})
+	 * @param result ignored
+	 * @return the result, a {@code DOMXPathResult}
+	 * @throws DOMXPathException if the result can't be converted to {@code type}
+	 */
+	@Override
+	public synchronized Object evaluate(DOMNode context, short type, Object result) throws DOMXPathException {
+		Node item = StaticNode.unwrap(context);
+		try {
+			short kind = (type == DOMXPathResult.ANY_TYPE)?this.inferType(item):type;
+			switch (kind) {
+			case DOMXPathResult.NUMBER_TYPE:
+				return new StaticXPathResult((Double) this.expression.evaluate(item, XPathConstants.NUMBER));
+			case DOMXPathResult.STRING_TYPE:
+				return new StaticXPathResult((String) this.expression.evaluate(item, XPathConstants.STRING));
+			case DOMXPathResult.BOOLEAN_TYPE:
+				return new StaticXPathResult((Boolean) this.expression.evaluate(item, XPathConstants.BOOLEAN));
+			default:
+				NodeList nodes = (NodeList) this.expression.evaluate(item, XPathConstants.NODESET);
+				List<DOMNode> wrapped = new ArrayList<DOMNode>(nodes.getLength());
+				for (int i = 0; i < nodes.getLength(); i++) wrapped.add(this.document.wrap(nodes.item(i)));
+				return new StaticXPathResult(kind, wrapped);
+			}
+		} catch (XPathExpressionException e) {
+			throw new DOMXPathException(DOMXPathException.TYPE_ERR, "Can't evaluate to type " + type + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the type of the expression, inferring it on the first call
+	 * @param item the context node
+	 * @return the result type of the expression
+	 * @throws XPathExpressionException in case of evaluation error
+	 */
+	private short inferType(Node item) throws XPathExpressionException {
+		if (this.inferred < 0) {
+			short kind;
+			try {
+				this.expression.evaluate(item, XPathConstants.NODESET);
+				kind = DOMXPathResult.UNORDERED_NODE_ITERATOR_TYPE;
+			} catch (XPathExpressionException e) {
+				String string = (String) this.expression.evaluate(item, XPathConstants.STRING);
+				if (string.equals("true") || string.equals("false")) kind = DOMXPathResult.BOOLEAN_TYPE;
+				else {
+					Double number = (Double) this.expression.evaluate(item, XPathConstants.NUMBER);
+					kind = (toXPathString(number.doubleValue()).equals(string))?DOMXPathResult.NUMBER_TYPE:DOMXPathResult.STRING_TYPE;
+				}
+			}
+			this.inferred = kind;
+		}
+		return this.inferred;
+	}
+
+	/**
+	 * Converts the number to a string by the rules of the XPath 1.0 <tt>string()</tt> function
+	 * @param number the number
+	 * @return the string value of the number
+	 */
+	private static String toXPathString(double number) {
+		if (Double.isNaN(number)) return "NaN";
+		if (Double.isInfinite(number)) return (number > 0)?"Infinity":"-Infinity";
+		if (number == Math.rint(number) && Math.abs(number) < 1e15) return Long.toString((long) number);
+		return new BigDecimal(Double.toString(number)).stripTrailingZeros().toPlainString();
+	}
+
+	/**
+	 * the page the expression belongs to
+	 */
+	private final StaticDocument document;
+	/**
+	 * the compiled expression
+	 */
+	private final XPathExpression expression;
+	/**
+	 * inferred result type for {@code ANY_TYPE}, or -1 before the first such evaluation
+	 */
+	private short inferred = -1;
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing an in-memory stand-in of the web browser, for benchmarking OXPath without a browser or network
+ */
+package uk.ac.ox.comlab.diadem.oxpath.bench.dom;
+
+import java.util.List;
+
+import diadem.common.web.dom.DOMNode;
+import diadem.common.web.dom.xpath.DOMXPathException;
+import diadem.common.web.dom.xpath.DOMXPathResult;
+
+/**
+ * {@code DOMXPathResult} of the static browser.  Node results are snapshots in document order, whatever the requested node
+ * type, and iterators over them never become invalid (static pages don't change while iterated).
+ * @author AndrewJSel
+ *
+ */
+public class StaticXPathResult implements DOMXPathResult {
+
+	/**
+	 * Creates a number result
+	 * @param number the value
+	 */
+	StaticXPathResult(Double number) {
+		this(NUMBER_TYPE, number, null, false, null);
+	}
+
+	/**
+	 * Creates a string result
+	 * @param string the value
+	 */
+	StaticXPathResult(String string) {
+		this(STRING_TYPE, 0, string, false, null);
+	}
+
+	/**
+	 * Creates a boolean result
+	 * @param bool the value
+	 */
+	StaticXPathResult(Boolean bool) {
+		this(BOOLEAN_TYPE, 0, null, bool.booleanValue(), null);
+	}
+
+	/**
+	 * Creates a node result
+	 * @param iType one of the node result types of {@code DOMXPathResult}
+	 * @param iNodes the nodes in document order
+	 */
+	StaticXPathResult(short iType, List<DOMNode> iNodes) {
+		this(iType, 0, null, false, iNodes);
+	}
+
+	/**
+	 * Creates a result
+	 * @param iType the type of the result
+	 * @param iNumber the number value
+	 * @param iString the string value
+	 * @param iBoolean the boolean value
+	 * @param iNodes the nodes
+	 */
+	private StaticXPathResult(short iType, double iNumber, String iString, boolean iBoolean, List<DOMNode> iNodes) {
+		this.type = iType;
+		this.number = iNumber;
+		this.string = iString;
+		this.bool = iBoolean;
+		this.nodes = iNodes;
+	}
+
+	@Override
+	public short getResultType() {
+		return this.type;
+	}
+
+	@Override
+	public double getNumberValue() throws DOMXPathException {
+		this.check(this.type == NUMBER_TYPE);
+		return this.number;
+	}
+
+	@Override
+	public String getStringValue() throws DOMXPathException {
+		this.check(this.type == STRING_TYPE);
+		return this.string;
+	}
+
+	@Override
+	public boolean getBooleanValue() throws DOMXPathException {
+		this.check(this.type == BOOLEAN_TYPE);
+		return this.bool;
+	}
+
+	@Override
+	public DOMNode getSingleNodeValue() throws DOMXPathException {
+		this.check(this.type == ANY_UNORDERED_NODE_TYPE || this.type == FIRST_ORDERED_NODE_TYPE);
+		return this.nodes.isEmpty()?null:this.nodes.get(0);
+	}
+
+	@Override
+	public boolean getInvalidIteratorState() {
+		return false;
+	}
+
+	@Override
+	public long getSnapshotLength() throws DOMXPathException {
+		this.check(this.type == UNORDERED_NODE_SNAPSHOT_TYPE || this.type == ORDERED_NODE_SNAPSHOT_TYPE);
+		return this.nodes.size();
+	}
+
+	@Override
+	public DOMNode iterateNext() throws DOMXPathException {
+		this.check(this.type == UNORDERED_NODE_ITERATOR_TYPE || this.type == ORDERED_NODE_ITERATOR_TYPE);
+		return (this.next < this.nodes.size())?this.nodes.get(this.next++):null;
+	}
+
+	@Override
+	public DOMNode snapshotItem(int index) throws DOMXPathException {
+		this.check(this.type == UNORDERED_NODE_SNAPSHOT_TYPE || this.type == ORDERED_NODE_SNAPSHOT_TYPE);
+		return (index < 0 || index >= this.nodes.size())?null:this.nodes.get(index);
+	}
+
+	/**
+	 * Throws a type error unless the accessor fits the type of the result
+	 * @param fits {@code true} if the accessor fits the type of the result
+	 * @throws DOMXPathException if the accessor doesn't fit the type of the result
+	 */
+	private void check(boolean fits) throws DOMXPathException {
+		if (!fits) throw new DOMXPathException(DOMXPathException.TYPE_ERR, "Wrong accessor for a result of type " + this.type);
+	}
+
+	/**
+	 * the type of the result
+	 */
+	private final short type;
+	/**
+	 * the number value
+	 */
+	private final double number;
+	/**
+	 * the string value
+	 */
+	private final String string;
+	/**
+	 * the boolean value
+	 */
+	private final boolean bool;
+	/**
+	 * the nodes, in document order
+	 */
+	private final List<DOMNode> nodes;
+	/**
+	 * index of the next node of an iterator
+	 */
+	private int next = 0;
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.event.DOMEvent;
+import diadem.common.web.dom.event.DOMEventListener;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
+
+/**
+ * Results of action-free prefixes per rendered page.  After a relative action on the i-th node of a context set, PAAT finds the
+ * node again on the page by evaluating the action-free prefix of the action and taking its i-th result.  Actions that leave 
+ * the page as it was (e.g. filling in a field) would evaluate the same prefix on the same page for every node of the set; 
+ * the memo keeps the results as an array, so each further node is found in constant time.
+ * <p>
+ * The results of a page are dropped as soon as the page changes: the memo listens to the DOM mutation events of each page it 
+ * holds results for, and forgets the page when PAAT closes it ({@code clear(page)}).  Results outlive the end of the branch 
+ * that computed them, as the next branch may return to the page unchanged.  Pages are held in least recently used 
+ * order, at most {@code MAXPAGES} at once.
+ * <p>
+ * Not every browser delivers mutation events, and a page that delivers none can't be told apart from a page that doesn't 
+ * change.  Results are therefore only reused on a page once it has delivered a mutation event (so its changes are known to be
+ * reported); the results of other pages are recorded but never returned.
+ * @author AndrewJSel
+ *
+ */
+final class ActionFreePrefixMemo {
+
+	/**
+	 * Returns the results of the prefix on the page, if they are known, the page reports its changes and hasn't changed since
+	 * @param page the rendered page
+	 * @param prefix the action-free prefix
+	 * @param end the action ending the prefix
+	 * @return the results of the prefix in document order, or {@code null} if not known
+	 */
+	synchronized OXPathContextNode[] get(DOMDocument page, Node prefix, Node end) {
+		Page entry = this.pages.get(page);
+		return (entry == null)?null:entry.get(prefix, end);
+	}
+
+	/**
+	 * Records the results of the prefix on the page
+	 * @param page the rendered page
+	 * @param prefix the action-free prefix
+	 * @param end the action ending the prefix
+	 * @param results the results of the prefix in document order
+	 */
+	synchronized void put(DOMDocument page, Node prefix, Node end, OXPathContextNode[] results) {
+		Page entry = this.pages.get(page);
+		if (entry == null) {
+			entry = new Page(page);
+			this.pages.put(page, entry);
+		}
+		entry.put(prefix, end, results);
+	}
+
+	/**
+	 * Forgets the page, and stops listening to its changes
+	 * @param page the page
+	 */
+	synchronized void clear(DOMDocument page) {
+		Page entry = this.pages.remove(page);
+		if (entry != null) entry.detach();
+	}
+
+	/**
+	 * The results of the prefixes on a page, dropped whenever the page changes
+	 */
+	private static final class Page implements DOMEventListener {
+
+		/**
+		 * Creates the entry, listening to the changes of the page
+		 * @param iDocument the page
+		 */
+		Page(DOMDocument iDocument) {
+			this.document = iDocument;
+			for (String type : MUTATIONS) iDocument.addEventListener(type, this, true);
+		}
+
+		/**
+		 * Returns the results of the prefix, if the page reports its changes
+		 * @param prefix the action-free prefix
+		 * @param end the action ending the prefix
+		 * @return the results of the prefix, or {@code null} if not known or not to be trusted
+		 */
+		synchronized OXPathContextNode[] get(Node prefix, Node end) {
+			if (!this.live) return null;
+			Map<Node,OXPathContextNode[]> byEnd = this.results.get(prefix);
+			return (byEnd == null)?null:byEnd.get(end);
+		}
+
+		/**
+		 * Records the results of the prefix
+		 * @param prefix the action-free prefix
+		 * @param end the action ending the prefix
+		 * @param iResults the results of the prefix
+		 */
+		synchronized void put(Node prefix, Node end, OXPathContextNode[] iResults) {
+			Map<Node,OXPathContextNode[]> byEnd = this.results.get(prefix);
+			if (byEnd == null) {
+				byEnd = new IdentityHashMap<Node,OXPathContextNode[]>();
+				this.results.put(prefix, byEnd);
+			}
+			byEnd.put(end, iResults);
+		}
+
+		/**
+		 * Drops the results, as the page has changed, and from now on trusts the page to report its changes; events may be 
+		 * delivered on a thread of the browser
+		 * @param event the mutation event
+		 */
+		@Override
+		public synchronized void handleEvent(DOMEvent event) {
+			this.results.clear();
+			this.live = true;
+		}
+
+		/**
+		 * Stops listening to the changes of the page, ignoring pages already closed
+		 */
+		void detach() {
+			try {
+				for (String type : MUTATIONS) this.document.removeEventListener(type, this, true);
+			}
+			catch (RuntimeException ignored) {}
+		}
+
+		/**
+		 * the page
+		 */
+		private final DOMDocument document;
+		/**
+		 * the results by prefix and action ending the prefix
+		 */
+		private final Map<Node,Map<Node,OXPathContextNode[]>> results = new IdentityHashMap<Node,Map<Node,OXPathContextNode[]>>();
+		/**
+		 * {@code true} once the page has delivered a mutation event
+		 */
+		private boolean live = false;
+	}
+
+	/**
+	 * Maximum number of pages with results held at once
+	 */
+	static final int MAXPAGES = 64;
+
+	/**
+	 * the names of the DOM mutation events
+	 */
+	private static final String[] MUTATIONS = uk.ac.ox.comlab.diadem.oxpath.utils.DOMEvent.getMutationEventNames();
+
+	/**
+	 * the pages with results, least recently used first
+	 */
+	private final Map<DOMDocument,Page> pages = new LinkedHashMap<DOMDocument,Page>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<DOMDocument,Page> eldest) {
+			if (this.size() <= MAXPAGES) return false;
+			eldest.getValue().detach();
+			return true;
+		}
+	};
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.io.IOException;
+
+import diadem.common.web.WebBrowser;
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMElement;
+import uk.ac.ox.comlab.diadem.oxpath.core.domlookup.NodeReference;
+import uk.ac.ox.comlab.diadem.oxpath.dom.PageSettler;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+import uk.ac.ox.comlab.diadem.oxpath.model.language.Action;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+
+/**
+ * Recipe for reproducing a page in another browser: the URL PAAT last navigated to, followed by the actions taken since, each 
+ * with a {@code NodeReference} to the node it was taken on.  Trails are immutable; {@code append} returns a new trail sharing 
+ * its prefix with the old one, so recording a trail for every page PAAT visits costs one step object per action.
+ * @author AndrewJSel
+ *
+ */
+final class ActionTrail {
+
+	/**
+	 * Creates a trail
+	 * @param iURL the URL the trail starts from
+	 * @param iPrevious the trail up to the last step, or {@code null} for a trail without steps
+	 * @param iReference reference to the node of the last step
+	 * @param iAction action of the last step
+	 * @param iLength number of steps
+	 */
+	private ActionTrail(String iURL, ActionTrail iPrevious, NodeReference iReference, Action iAction, int iLength) {
+		this.url = iURL;
+		this.previous = iPrevious;
+		this.reference = iReference;
+		this.action = iAction;
+		this.length = iLength;
+	}
+
+	/**
+	 * Returns the trail of the page reached by navigating to the URL
+	 * @param url the URL
+	 * @return the trail of the page reached by navigating to the URL
+	 */
+	static ActionTrail start(String url) {
+		return new ActionTrail(url, null, null, null, 0);
+	}
+
+	/**
+	 * Returns the trail of the page reached by taking the action on the referenced node of this trail's page
+	 * @param iReference reference to the node the action is taken on
+	 * @param iAction the action
+	 * @return the extended trail
+	 */
+	ActionTrail append(NodeReference iReference, Action iAction) {
+		return new ActionTrail(this.url, this, iReference, iAction, this.length + 1);
+	}
+
+	/**
+	 * Reproduces the page of this trail in the browser, by navigating to the URL and taking each action of the trail in turn
+	 * @param browser the browser to reproduce the page in
+	 * @param settler how to wait for the page to settle after each action
+	 * @return the reproduced page
+	 * @throws OXPathException in case the URL can't be loaded or an action fails
+	 */
+	DOMDocument replay(WebBrowser browser, PageSettler settler) throws OXPathException {
+		ActionTrail[] steps = new ActionTrail[this.length];
+		for (ActionTrail step = this; step.previous != null; step = step.previous) steps[step.length - 1] = step;
+		try {
+			browser.navigate(this.url, true);
+			DOMDocument page = browser.getContentDOMWindow().getDocument();
+			for (ActionTrail step : steps) {
+				OXPathContextNode context = step.reference.getRenderedNode(page);
+				if (context.getNode() == null) throw new OXPathException("Action target not found while replaying page from " + this.url);
+				page = PAATEvalVisitor.performAction((DOMElement)context.getNode(), step.action, settler).getOwnerDocument();
+			}
+			return page;
+		}
+		catch (IOException e) {
+			throw new OXPathException("Error replaying page from " + this.url + ": " + e);
+		}
+	}
+
+	/**
+	 * Returns the number of actions taken after navigating to the URL
+	 * @return the number of actions of the trail
+	 */
+	int length() {
+		return this.length;
+	}
+
+	/**
+	 * Returns the URL and number of actions of the trail
+	 * @return a readable rendering of the trail
+	 */
+	@Override
+	public String toString() {
+		return (this.getClass() + "[" + this.url + " + " + this.length + " actions]");
+	}
+
+	/**
+	 * URL the trail starts from
+	 */
+	private final String url;
+	/**
+	 * trail up to the last step, or {@code null} for a trail without steps
+	 */
+	private final ActionTrail previous;
+	/**
+	 * reference to the node of the last step
+	 */
+	private final NodeReference reference;
+	/**
+	 * action of the last step
+	 */
+	private final Action action;
+	/**
+	 * number of steps
+	 */
+	private final int length;
+}
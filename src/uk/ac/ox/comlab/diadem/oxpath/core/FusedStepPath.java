@@ -0,0 +1,188 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.language.AxisType;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTSimpleOXPathStepPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathPredicate;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+import uk.ac.ox.comlab.diadem.oxpath.utils.PrintVisitor;
+
+/**
+ * A maximal run of plain XPath steps (with their XPath-expressible predicates) beginning at an {@code ASTSimpleOXPathStepPath},
+ * collapsed into a single XPath expression.  eval_ evaluates the whole run with one browser call per context node, instead of
+ * one call per step and intermediate node, then continues with the remaining steps (the tail) as usual.
+ * <p>
+ * A step joins the run only if its axis and node test are XPath and everything in its step list up to the next step are 
+ * XPath-expressible predicates (see {@code XPathFusionVisitor}); the run therefore never crosses actions, extraction markers, 
+ * node test operators, optional predicates or OXPath axes and node tests.  Predicates using <tt>position()</tt> or 
+ * <tt>last()</tt> are fused too, as the browser computes proximity positions per step exactly as PAAT does.
+ * <p>
+ * Fusion plans only depend on the AST, so they are computed once per step path and shared by all evaluations of the tree.
+ * @author AndrewJSel
+ *
+ */
+public final class FusedStepPath {
+
+	/**
+	 * Returns the fusion plan for the run of steps beginning at {@code node}
+	 * @param node the first step of the run
+	 * @return the fusion plan, or {@code null} if fusing would not save any browser calls (the run is a single step without 
+	 * predicates, or the first step isn't plain XPath)
+	 * @throws OXPathException in case of malformed AST
+	 */
+	public static FusedStepPath forStepPath(ASTSimpleOXPathStepPath node) throws OXPathException {
+		synchronized (plans) {
+			FusedStepPath plan = plans.get(node);
+			if (plan == null) {
+				plan = FusedStepPath.build(node);
+				plans.put(node, plan);
+			}
+			return (plan == NOTFUSED)?null:plan;
+		}
+	}
+
+	/**
+	 * Builds the fusion plan for the run of steps beginning at {@code node}
+	 * @param node the first step of the run
+	 * @return the fusion plan, or {@code NOTFUSED}
+	 * @throws OXPathException in case of malformed AST
+	 */
+	private static FusedStepPath build(ASTSimpleOXPathStepPath node) throws OXPathException {
+		XPathFusionVisitor visitor = new XPathFusionVisitor();
+		StringBuilder xpath = new StringBuilder();
+		int steps = 0;
+		boolean predicates = false;
+		boolean forward = true;
+		ASTSimpleOXPathStepPath current = node;
+		while (current != null) {
+			String step = XPathFusionVisitor.renderStep(current.getStep());
+			if (step == null) break;
+			StringBuilder segment = new StringBuilder(step);
+			Node next = (current.hasList())?current.jjtGetChild(0):null;
+			boolean stepPredicates = false;
+			while (next instanceof ASTXPathPredicate) {
+				ASTXPathPredicate predicate = (ASTXPathPredicate) next;
+				String rendered = visitor.renderPredicate(predicate);
+				if (rendered == null) break;
+				segment.append(rendered);
+				stepPredicates = true;
+				next = (predicate.hasList())?predicate.jjtGetChild(1):null;
+			}
+			//the step joins the run only if its whole step list was rendered
+			if (next != null && !(next instanceof ASTSimpleOXPathStepPath)) break;
+			if (steps > 0) xpath.append(PrintVisitor.SLASH);
+			xpath.append(segment);
+			steps++;
+			predicates |= stepPredicates;
+			forward = current.getStep().getAxis().getType().equals(AxisType.FORWARD);
+			current = (ASTSimpleOXPathStepPath) next;
+		}
+		if (steps == 0 || (steps == 1 && !predicates)) return NOTFUSED;
+		return new FusedStepPath(xpath.toString(), forward, current);
+	}
+
+	/**
+	 * Constructs the fusion plan
+	 * @param iXPath the fused XPath expression
+	 * @param iForward {@code true} if the last fused step uses a forward axis
+	 * @param iTail the first step not fused, or {@code null} if the run covers the rest of the path
+	 */
+	private FusedStepPath(String iXPath, boolean iForward, ASTSimpleOXPathStepPath iTail) {
+		this.xpath = iXPath;
+		this.forward = iForward;
+		this.tail = (iTail == null)?null:new WeakReference<ASTSimpleOXPathStepPath>(iTail);
+	}
+
+	/**
+	 * Returns the fused XPath expression, evaluated relative to the context node
+	 * @return the fused XPath expression
+	 */
+	public String getXPath() {
+		return this.xpath;
+	}
+
+	/**
+	 * Returns {@code true} if the last fused step uses a forward axis (and its results are in document order)
+	 * @return {@code true} if the last fused step uses a forward axis
+	 */
+	public boolean isForward() {
+		return this.forward;
+	}
+
+	/**
+	 * Returns {@code true} if steps follow the fused run
+	 * @return {@code true} if steps follow the fused run
+	 */
+	public boolean hasTail() {
+		return this.tail != null;
+	}
+
+	/**
+	 * Returns the first step following the fused run
+	 * @return the first step following the fused run, or {@code null} if there is none
+	 */
+	public ASTSimpleOXPathStepPath getTail() {
+		return (this.tail == null)?null:this.tail.get();
+	}
+
+	@Override
+	public String toString() {
+		return (this.getClass() + "[" + this.xpath + ", forward=" + this.forward + ", tail=" + this.getTail() + "]");
+	}
+
+	/**
+	 * the fused XPath expression
+	 */
+	private final String xpath;
+	/**
+	 * {@code true} if the last fused step uses a forward axis
+	 */
+	private final boolean forward;
+	/**
+	 * first step following the fused run; weakly held, as it is reachable from the step path keying this plan (a strong reference
+	 * would keep the key, and so the whole tree, alive in {@code plans})
+	 */
+	private final WeakReference<ASTSimpleOXPathStepPath> tail;
+
+	/**
+	 * marks step paths where fusion doesn't apply
+	 */
+	private static final FusedStepPath NOTFUSED = new FusedStepPath("", true, null);
+	/**
+	 * fusion plans of the step paths seen so far; weakly held, so plans are dropped with their trees
+	 */
+	private static final Map<ASTSimpleOXPathStepPath,FusedStepPath> plans = new WeakHashMap<ASTSimpleOXPathStepPath,FusedStepPath>();
+}
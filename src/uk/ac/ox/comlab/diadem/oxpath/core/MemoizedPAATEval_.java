@@ -0,0 +1,138 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNode;
+import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATStateEvalIterative;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathType;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathMemoStatistics;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathMemoStore;
+
+/**
+ * Memoizing wrapper of the eval_ visitor.  Results are keyed by the AST node (by identity), the context node and the position 
+ * and last of the state (the components of state equality), and stored per page in an {@code OXPathMemoStore}.  Replaces the 
+ * reflective {@code OXPathMemoizer} proxy with the same semantics, including {@code clear(page)}.  The state itself is never 
+ * retained, so callers may pass reusable {@code PAATStateFrame} objects.
+ * @author AndrewJSel
+ *
+ */
+public class MemoizedPAATEval_ implements PAATEval_ {
+
+	/**
+	 * Wraps the eval_ visitor with a store bounded by the default maximum number of entries
+	 * @param iEval_ the eval_ visitor to memoize
+	 */
+	public MemoizedPAATEval_(PAATEval_ iEval_) {
+		this(iEval_, new OXPathMemoStore());
+	}
+
+	/**
+	 * Wraps the eval_ visitor
+	 * @param iEval_ the eval_ visitor to memoize
+	 * @param iMemo the store holding the memoized results
+	 */
+	public MemoizedPAATEval_(PAATEval_ iEval_, OXPathMemoStore iMemo) {
+		this.eval_ = iEval_;
+		this.memo = iMemo;
+	}
+
+	/**
+	 * Returns the memoized result of eval_, evaluating it on the first call with these arguments
+	 * @param context the context node
+	 * @param astNode the node in the AST to evaluate over
+	 * @param state the state of the evaluation
+	 * @return evaluation result
+	 * @throws OXPathException in case of exception in the wrapped eval_
+	 */
+	@Override
+	public OXPathType eval_(DOMNode context, Node astNode, PAATStateEvalIterative state) throws OXPathException {
+		DOMDocument page = OXPathMemoStore.pageOf(context);
+		OXPathContextNode node = state.getContextNode();
+		int position = state.getPosition();
+		int last = state.getLast();
+		//position and last are packed into the int component of the key, unless either doesn't fit in 16 bits
+		Object wide = null;
+		int packed;
+		if ((position & ~SHORTMASK) == 0 && (last & ~SHORTMASK) == 0) packed = (position << 16) | last;
+		else {
+			wide = Long.valueOf(((long) position << 32) | (last & 0xffffffffL));
+			packed = -1;
+		}
+		Object memo = this.memo.get(page, astNode, node, wide, packed);
+		if (memo != OXPathMemoStore.MISS) return (OXPathType) memo;
+		OXPathType result = this.eval_.eval_(context, astNode, state);
+		this.memo.put(page, astNode, node, wide, packed, result);
+		return result;
+	}
+
+	/**
+	 * Clears all memoized data for the input {@code DOMDocument}
+	 * @param page {@code DOMDocument} we are removing all memoized results for, presumably because the page is being closed in PAAT
+	 * @return {@code true} if any results were memoized for the page, {@code false} otherwise
+	 */
+	@Override
+	public Boolean clear(DOMDocument page) {
+		return this.memo.clear(page);
+	}
+
+	/**
+	 * Returns the counters of the memoized results of the page
+	 * @param page the page
+	 * @return the counters of the memoized results of the page
+	 */
+	public OXPathMemoStatistics getStatistics(DOMDocument page) {
+		return this.memo.getStatistics(page);
+	}
+
+	/**
+	 * Returns the counters of all memoized results, including those of cleared and evicted pages
+	 * @return the counters of all memoized results
+	 */
+	public OXPathMemoStatistics getStatistics() {
+		return this.memo.getStatistics();
+	}
+
+	/**
+	 * mask of the values of position and last that are packed into the int component of a key
+	 */
+	private static final int SHORTMASK = 0xffff;
+	/**
+	 * the wrapped eval_ visitor
+	 */
+	private final PAATEval_ eval_;
+	/**
+	 * memoized results
+	 */
+	private final OXPathMemoStore memo;
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import diadem.common.web.WebBrowser;
+import diadem.common.web.dom.impl.BrowserFactory;
+import diadem.common.web.dom.impl.BrowserFactory.Engine;
+import diadem.common.web.listener.BrowserLocationListener;
+import diadem.common.web.listener.LocationEvent;
+
+/**
+ * Pool of warm {@code WebBrowser} instances, so evaluations don't pay the start-up of a browser (seconds for SWT Mozilla) each
+ * time.  The pool serves both whole evaluations (see {@code OXPathNavigator.evaluateOXPathQuery(Node, OXPathBrowserPool, Logger, ObjectOutputStream)})
+ * and the independent action branches PAAT evaluates in parallel (see 
+ * {@code PAATEvalVisitor.newInstance(WebBrowser, OXPathBrowserPool, Logger, ObjectOutputStream)}).  A browser is leased with 
+ * {@code lease()} (or {@code acquire()}) and given back with {@code Lease.release()} (or {@code release(browser)}):
+ * <pre>
+ * OXPathBrowserPool.Lease lease = pool.lease();
+ * try {
+ *     ... lease.getBrowser() ...
+ * }
+ * finally {
+ *     lease.release();
+ * }
+ * </pre>
+ * <p>
+ * The browsers are started when the pool is created.  A released browser is reset (loading stopped, cookies removed, blank page 
+ * loaded) and checked: a browser failing the reset, or that has loaded {@code maxPages} pages, or released while the heap in 
+ * use exceeds {@code maxHeapBytes} (see {@code setRecycling}), is shut down and replaced by a new browser started on a thread 
+ * of its own, so neither the releasing nor the leasing thread waits for the start-up.  Browsers given to the pool as instances
+ * rather than created by a {@code Factory} can't be replaced, so are kept whatever their state.  The back history of a browser
+ * can't be cleared through {@code WebBrowser}; it is bounded by recycling.  Counters of the pool, including the time spent 
+ * waiting for leases, are available through {@code getStatistics()}.
+ * <p>
+ * Browsers must accept calls from any thread (the SWT Mozilla binding runs each call on the browser's own UI thread).
+ * @author AndrewJSel
+ *
+ */
+public class OXPathBrowserPool {
+
+	/**
+	 * Creator of the browsers of a pool
+	 */
+	public interface Factory {
+
+		/**
+		 * Starts a new browser
+		 * @return the new browser
+		 */
+		WebBrowser newBrowser();
+	}
+
+	/**
+	 * A browser leased from the pool
+	 */
+	public static final class Lease {
+
+		/**
+		 * Creates the lease
+		 * @param iPool the pool the browser is leased from
+		 * @param iEntry the browser
+		 * @param iWaitNanos time waited for the lease, in nanoseconds
+		 */
+		Lease(OXPathBrowserPool iPool, Entry iEntry, long iWaitNanos) {
+			this.pool = iPool;
+			this.entry = iEntry;
+			this.waitNanos = iWaitNanos;
+		}
+
+		/**
+		 * Returns the leased browser
+		 * @return the leased browser
+		 * @throws IllegalStateException if the lease is released
+		 */
+		public WebBrowser getBrowser() {
+			if (this.released) throw new IllegalStateException("The browser lease is released");
+			return this.entry.browser;
+		}
+
+		/**
+		 * Returns the time waited for the lease
+		 * @return the time waited for the lease, in nanoseconds
+		 */
+		public long getWaitNanos() {
+			return this.waitNanos;
+		}
+
+		/**
+		 * Gives the browser back to the pool; releasing again has no effect
+		 */
+		public void release() {
+			synchronized (this) {
+				if (this.released) return;
+				this.released = true;
+			}
+			this.pool.giveBack(this.entry);
+		}
+
+		/**
+		 * the pool the browser is leased from
+		 */
+		private final OXPathBrowserPool pool;
+		/**
+		 * the browser
+		 */
+		private final Entry entry;
+		/**
+		 * time waited for the lease, in nanoseconds
+		 */
+		private final long waitNanos;
+		/**
+		 * {@code true} once the browser is given back
+		 */
+		private boolean released = false;
+	}
+
+	/**
+	 * Creates a pool of the input browsers; the browsers are reset on release but never replaced
+	 * @param browsers the browsers of the pool
+	 * @throws IllegalArgumentException if {@code browsers} is empty
+	 */
+	public OXPathBrowserPool(Collection<WebBrowser> browsers) {
+		if (browsers.isEmpty()) throw new IllegalArgumentException("a browser pool needs at least one browser");
+		this.factory = null;
+		for (WebBrowser browser : browsers) this.idle.add(new Entry(browser));
+		this.live = browsers.size();
+	}
+
+	/**
+	 * Creates a pool of browsers of {@code iFactory}, starting all of them before returning
+	 * @param iFactory creator of the browsers of the pool
+	 * @param size number of browsers in the pool
+	 * @throws IllegalArgumentException if {@code size} isn't positive
+	 */
+	public OXPathBrowserPool(Factory iFactory, int size) {
+		if (size <= 0) throw new IllegalArgumentException("a browser pool needs at least one browser: " + size);
+		this.factory = iFactory;
+		try {
+			for (int i = 0; i < size; i++) this.idle.add(new Entry(iFactory.newBrowser()));
+		}
+		catch (RuntimeException e) {
+			for (Entry entry : this.idle) entry.browser.shutdown();
+			throw e;
+		}
+		this.live = size;
+	}
+
+	/**
+	 * Creates a pool of new SWT Mozilla browsers
+	 * @param size number of browsers in the pool
+	 * @return a pool of {@code size} new browsers
+	 * @throws IllegalArgumentException if {@code size} isn't positive
+	 */
+	public static OXPathBrowserPool newInstance(int size) {
+		return new OXPathBrowserPool(MOZILLA, size);
+	}
+
+	/**
+	 * Sets when browsers are replaced by new ones; neither limit is set by default
+	 * @param iMaxPages number of pages a browser loads before it is replaced, or 0 for no limit.  Pages are counted by the 
+	 * location changes the browser reports, and at least one page is counted per lease.
+	 * @param iMaxHeapBytes heap in use (by {@code Runtime}) above which a browser released is replaced, or 0 for no limit
+	 */
+	public synchronized void setRecycling(int iMaxPages, long iMaxHeapBytes) {
+		if (iMaxPages < 0 || iMaxHeapBytes < 0) throw new IllegalArgumentException("Recycling limits can't be negative");
+		this.maxPages = iMaxPages;
+		this.maxHeapBytes = iMaxHeapBytes;
+	}
+
+	/**
+	 * Leases an idle browser, waiting for one to be released if all are in use
+	 * @return the lease
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 * @throws IllegalStateException if the pool is shut down, or has lost all its browsers
+	 */
+	public Lease lease() throws InterruptedException {
+		return this.lease(-1);
+	}
+
+	/**
+	 * Leases an idle browser, waiting at most {@code timeout} for one to be released if all are in use
+	 * @param timeout the longest wait
+	 * @param unit the unit of {@code timeout}
+	 * @return the lease, or {@code null} if no browser was released in time
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 * @throws IllegalStateException if the pool is shut down, or has lost all its browsers
+	 */
+	public Lease lease(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.lease(Math.max(0, unit.toNanos(timeout)));
+	}
+
+	/**
+	 * Leases an idle browser, returning the browser only; give it back with {@code release(browser)}
+	 * @return the leased browser
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 * @throws IllegalStateException if the pool is shut down, or has lost all its browsers
+	 */
+	public WebBrowser acquire() throws InterruptedException {
+		Lease lease = this.lease();
+		synchronized (this) {
+			this.anonymous.put(lease.entry.browser, lease);
+		}
+		return lease.entry.browser;
+	}
+
+	/**
+	 * Returns a browser leased with {@code acquire()} to the pool
+	 * @param browser the browser returned by {@code acquire()}
+	 * @throws IllegalArgumentException if the browser isn't leased with {@code acquire()}
+	 */
+	public void release(WebBrowser browser) {
+		Lease lease;
+		synchronized (this) {
+			lease = this.anonymous.remove(browser);
+		}
+		if (lease == null) throw new IllegalArgumentException("Browser not leased from this pool with acquire()");
+		lease.release();
+	}
+
+	/**
+	 * Returns the number of browsers of the pool, including those being started to replace recycled ones
+	 * @return the number of browsers in the pool
+	 */
+	public synchronized int size() {
+		return this.live;
+	}
+
+	/**
+	 * Returns a snapshot of the counters of the pool
+	 * @return a snapshot of the counters of the pool
+	 */
+	public synchronized OXPathBrowserPoolStatistics getStatistics() {
+		return new OXPathBrowserPoolStatistics(this.live, this.idle.size(), this.leased, this.warming, this.waiting, this.leases,
+				this.waitNanos, this.maxWaitNanos, this.recycled, this.failures);
+	}
+
+	/**
+	 * Shuts down the idle browsers of the pool, and the leased ones as they are released; threads waiting for a lease, and 
+	 * later leases, fail
+	 */
+	public void shutdown() {
+		List<Entry> closing;
+		synchronized (this) {
+			this.shut = true;
+			closing = new ArrayList<Entry>(this.idle);
+			this.live -= this.idle.size();
+			this.idle.clear();
+			this.notifyAll();
+		}
+		for (Entry entry : closing) entry.stop();
+	}
+
+	/**
+	 * Leases an idle browser
+	 * @param timeoutNanos the longest wait in nanoseconds, or a negative number to wait indefinitely
+	 * @return the lease, or {@code null} if no browser was released in time
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	private Lease lease(long timeoutNanos) throws InterruptedException {
+		long start = System.nanoTime();
+		synchronized (this) {
+			this.waiting++;
+			try {
+				while (this.idle.isEmpty()) {
+					if (this.shut) throw new IllegalStateException("The browser pool is shut down");
+					if (this.live == 0) throw new IllegalStateException("The browser pool has lost all its browsers");
+					if (timeoutNanos < 0) this.wait();
+					else {
+						long left = timeoutNanos - (System.nanoTime() - start);
+						if (left <= 0) return null;
+						TimeUnit.NANOSECONDS.timedWait(this, left);
+					}
+				}
+				if (this.shut) throw new IllegalStateException("The browser pool is shut down");
+			}
+			finally {
+				this.waiting--;
+			}
+			Entry entry = this.idle.removeFirst();
+			long waited = System.nanoTime() - start;
+			this.leased++;
+			this.leases++;
+			this.waitNanos += waited;
+			this.maxWaitNanos = Math.max(this.maxWaitNanos, waited);
+			entry.locationsAtLease = entry.locations;
+			return new Lease(this, entry, waited);
+		}
+	}
+
+	/**
+	 * Takes a released browser back: resets it and either makes it idle again or replaces it
+	 * @param entry the released browser
+	 */
+	private void giveBack(Entry entry) {
+		boolean healthy = entry.reset();
+		entry.pages += Math.max(1, entry.locations - entry.locationsAtLease);
+		boolean recycle;
+		synchronized (this) {
+			this.leased--;
+			if (this.shut) {
+				this.live--;
+				recycle = false;
+			}
+			else {
+				Runtime runtime = Runtime.getRuntime();
+				recycle = (this.factory != null) && (!healthy || (this.maxPages > 0 && entry.pages >= this.maxPages) 
+						|| (this.maxHeapBytes > 0 && runtime.totalMemory() - runtime.freeMemory() > this.maxHeapBytes));
+				if (!healthy) this.failures++;
+				if (recycle) {
+					this.recycled++;
+					this.warming++;
+				}
+				else {
+					this.idle.addLast(entry);
+					this.notifyAll();
+					return;
+				}
+			}
+		}
+		entry.stop();
+		if (recycle) this.replace();
+	}
+
+	/**
+	 * Starts a browser to replace a recycled one on a thread of its own
+	 */
+	private void replace() {
+		Thread warmer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Entry entry = null;
+				for (int attempt = 0; attempt < STARTATTEMPTS && entry == null; attempt++) {
+					try {
+						entry = new Entry(OXPathBrowserPool.this.factory.newBrowser());
+					}
+					catch (RuntimeException e) {
+						synchronized (OXPathBrowserPool.this) {
+							OXPathBrowserPool.this.failures++;
+						}
+					}
+				}
+				boolean stop = false;
+				synchronized (OXPathBrowserPool.this) {
+					OXPathBrowserPool.this.warming--;
+					if (entry == null || OXPathBrowserPool.this.shut) {
+						OXPathBrowserPool.this.live--;
+						stop = (entry != null);
+					}
+					else OXPathBrowserPool.this.idle.addLast(entry);
+					OXPathBrowserPool.this.notifyAll();
+				}
+				if (stop) entry.stop();
+			}
+		}, "oxpath-browser-warmer");
+		warmer.setDaemon(true);
+		warmer.start();
+	}
+
+	/**
+	 * A browser of the pool and its usage
+	 */
+	private static final class Entry implements BrowserLocationListener {
+
+		/**
+		 * Creates the entry, listening to the location changes of the browser
+		 * @param iBrowser the browser
+		 */
+		Entry(WebBrowser iBrowser) {
+			this.browser = iBrowser;
+			iBrowser.addLocationListener(this);
+		}
+
+		/**
+		 * Records nothing; locations are counted once changed
+		 * @param event the location event
+		 */
+		@Override
+		public void changing(LocationEvent event) {}
+
+		/**
+		 * Counts the location change
+		 * @param event the location event
+		 */
+		@Override
+		public void changed(LocationEvent event) {
+			this.locations++;
+		}
+
+		/**
+		 * Resets the browser for the next lease
+		 * @return {@code true} if the browser is in working order, {@code false} otherwise
+		 */
+		boolean reset() {
+			try {
+				this.browser.stop();
+				this.browser.removeAllCookies();
+				this.browser.navigate(BLANK, true);
+				return (this.browser.getContentDOMWindow() != null);
+			}
+			catch (RuntimeException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Shuts the browser down, ignoring failures
+		 */
+		void stop() {
+			try {
+				this.browser.removeLocationListener(this);
+				this.browser.shutdown();
+			}
+			catch (RuntimeException ignored) {}
+		}
+
+		/**
+		 * the browser
+		 */
+		final WebBrowser browser;
+		/**
+		 * number of location changes reported by the browser
+		 */
+		volatile int locations = 0;
+		/**
+		 * value of {@code locations} when the browser was last leased
+		 */
+		int locationsAtLease = 0;
+		/**
+		 * number of pages loaded by the browser, as counted on release
+		 */
+		int pages = 0;
+	}
+
+	/**
+	 * Creator of SWT Mozilla browsers
+	 */
+	public static final Factory MOZILLA = new Factory() {
+		@Override
+		public WebBrowser newBrowser() {
+			return BrowserFactory.newWebBrowser(Engine.SWT_MOZILLA, true);
+		}
+	};
+
+	/**
+	 * the page loaded by a browser when it is reset
+	 */
+	private static final String BLANK = "about:blank";
+
+	/**
+	 * number of attempts at starting a browser replacing a recycled one
+	 */
+	private static final int STARTATTEMPTS = 3;
+
+	/**
+	 * creator of replacement browsers, or {@code null} if browsers can't be replaced
+	 */
+	private final Factory factory;
+	/**
+	 * browsers not currently leased, the longest idle first
+	 */
+	private final LinkedList<Entry> idle = new LinkedList<Entry>();
+	/**
+	 * leases of the browsers leased with {@code acquire()}
+	 */
+	private final Map<WebBrowser, Lease> anonymous = new IdentityHashMap<WebBrowser, Lease>();
+	/**
+	 * number of browsers of the pool, idle, leased or being started
+	 */
+	private int live;
+	/**
+	 * number of browsers currently leased
+	 */
+	private int leased = 0;
+	/**
+	 * number of browsers being started to replace recycled ones
+	 */
+	private int warming = 0;
+	/**
+	 * number of threads waiting for a lease
+	 */
+	private int waiting = 0;
+	/**
+	 * number of leases granted
+	 */
+	private long leases = 0;
+	/**
+	 * total time waited for leases, in nanoseconds
+	 */
+	private long waitNanos = 0;
+	/**
+	 * longest time waited for a lease, in nanoseconds
+	 */
+	private long maxWaitNanos = 0;
+	/**
+	 * number of browsers replaced
+	 */
+	private long recycled = 0;
+	/**
+	 * number of failed browser resets and start-ups
+	 */
+	private long failures = 0;
+	/**
+	 * number of pages a browser loads before it is replaced, or 0 for no limit
+	 */
+	private int maxPages = 0;
+	/**
+	 * heap in use above which a browser released is replaced, or 0 for no limit
+	 */
+	private long maxHeapBytes = 0;
+	/**
+	 * {@code true} once the pool is shut down
+	 */
+	private boolean shut = false;
+}
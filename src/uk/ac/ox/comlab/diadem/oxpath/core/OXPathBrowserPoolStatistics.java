@@ -0,0 +1,213 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+/**
+ * Immutable snapshot of the counters of an {@code OXPathBrowserPool}
+ * @author AndrewJSel
+ *
+ */
+public final class OXPathBrowserPoolStatistics {
+
+	/**
+	 * Creates a snapshot
+	 * @param iSize number of browsers of the pool, idle, leased or being started
+	 * @param iIdle number of idle browsers
+	 * @param iLeased number of leased browsers
+	 * @param iWarming number of browsers being started to replace recycled ones
+	 * @param iWaiting number of threads waiting for a lease
+	 * @param iLeases number of leases granted
+	 * @param iWaitNanos total time waited for leases, in nanoseconds
+	 * @param iMaxWaitNanos longest time waited for a lease, in nanoseconds
+	 * @param iRecycled number of browsers replaced
+	 * @param iFailures number of failed browser resets and start-ups
+	 */
+	public OXPathBrowserPoolStatistics(int iSize, int iIdle, int iLeased, int iWarming, int iWaiting, long iLeases, long iWaitNanos,
+			long iMaxWaitNanos, long iRecycled, long iFailures) {
+		this.size = iSize;
+		this.idle = iIdle;
+		this.leased = iLeased;
+		this.warming = iWarming;
+		this.waiting = iWaiting;
+		this.leases = iLeases;
+		this.waitNanos = iWaitNanos;
+		this.maxWaitNanos = iMaxWaitNanos;
+		this.recycled = iRecycled;
+		this.failures = iFailures;
+	}
+
+	/**
+	 * Returns the number of browsers of the pool, idle, leased or being started
+	 * @return the number of browsers of the pool
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of idle browsers
+	 * @return the number of idle browsers
+	 */
+	public int getIdle() {
+		return this.idle;
+	}
+
+	/**
+	 * Returns the number of leased browsers
+	 * @return the number of leased browsers
+	 */
+	public int getLeased() {
+		return this.leased;
+	}
+
+	/**
+	 * Returns the number of browsers being started to replace recycled ones
+	 * @return the number of browsers being started
+	 */
+	public int getWarming() {
+		return this.warming;
+	}
+
+	/**
+	 * Returns the number of threads waiting for a lease
+	 * @return the number of threads waiting for a lease
+	 */
+	public int getWaiting() {
+		return this.waiting;
+	}
+
+	/**
+	 * Returns the fraction of the browsers of the pool that are leased
+	 * @return the fraction of the browsers that are leased, between 0 and 1
+	 */
+	public double getOccupancy() {
+		return (this.size == 0)?0:((double) this.leased / this.size);
+	}
+
+	/**
+	 * Returns the number of leases granted
+	 * @return the number of leases granted
+	 */
+	public long getLeases() {
+		return this.leases;
+	}
+
+	/**
+	 * Returns the total time waited for leases, in nanoseconds
+	 * @return the total time waited, in nanoseconds
+	 */
+	public long getWaitNanos() {
+		return this.waitNanos;
+	}
+
+	/**
+	 * Returns the mean time waited for a lease, in nanoseconds
+	 * @return the mean time waited, in nanoseconds
+	 */
+	public long getMeanWaitNanos() {
+		return (this.leases == 0)?0:(this.waitNanos / this.leases);
+	}
+
+	/**
+	 * Returns the longest time waited for a lease, in nanoseconds
+	 * @return the longest time waited, in nanoseconds
+	 */
+	public long getMaxWaitNanos() {
+		return this.maxWaitNanos;
+	}
+
+	/**
+	 * Returns the number of browsers replaced
+	 * @return the number of browsers replaced
+	 */
+	public long getRecycled() {
+		return this.recycled;
+	}
+
+	/**
+	 * Returns the number of failed browser resets and start-ups
+	 * @return the number of failures
+	 */
+	public long getFailures() {
+		return this.failures;
+	}
+
+	/**
+	 * Returns a readable rendering of the counters
+	 * @return a readable rendering of the counters
+	 */
+	@Override
+	public String toString() {
+		return ("browsers=" + this.size + ", idle=" + this.idle + ", leased=" + this.leased + ", warming=" + this.warming + ", waiting=" 
+				+ this.waiting + ", leases=" + this.leases + ", meanWaitMs=" + (this.getMeanWaitNanos() / 1000000) + ", maxWaitMs=" 
+				+ (this.maxWaitNanos / 1000000) + ", recycled=" + this.recycled + ", failures=" + this.failures);
+	}
+
+	/**
+	 * number of browsers of the pool, idle, leased or being started
+	 */
+	private final int size;
+	/**
+	 * number of idle browsers
+	 */
+	private final int idle;
+	/**
+	 * number of leased browsers
+	 */
+	private final int leased;
+	/**
+	 * number of browsers being started to replace recycled ones
+	 */
+	private final int warming;
+	/**
+	 * number of threads waiting for a lease
+	 */
+	private final int waiting;
+	/**
+	 * number of leases granted
+	 */
+	private final long leases;
+	/**
+	 * total time waited for leases, in nanoseconds
+	 */
+	private final long waitNanos;
+	/**
+	 * longest time waited for a lease, in nanoseconds
+	 */
+	private final long maxWaitNanos;
+	/**
+	 * number of browsers replaced
+	 */
+	private final long recycled;
+	/**
+	 * number of failed browser resets and start-ups
+	 */
+	private final long failures;
+}
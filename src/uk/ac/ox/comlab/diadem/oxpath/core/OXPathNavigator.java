@@ -32,8 +32,6 @@ package uk.ac.ox.comlab.diadem.oxpath.core;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.concurrent.CountDownLatch;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -51,8 +49,12 @@ import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATState;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathNodeList;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathType;
+import uk.ac.ox.comlab.diadem.oxpath.output.OXPathCSVOutputHandler;
+import uk.ac.ox.comlab.diadem.oxpath.output.OXPathExtractionChannel;
+import uk.ac.ox.comlab.diadem.oxpath.output.OXPathJSONLinesOutputHandler;
 import uk.ac.ox.comlab.diadem.oxpath.output.OXPathOutputHandler;
 import uk.ac.ox.comlab.diadem.oxpath.output.OXPathSimpleOutputHandler;
+import uk.ac.ox.comlab.diadem.oxpath.output.OXPathStreamingXMLOutputHandler;
 import uk.ac.ox.comlab.diadem.oxpath.output.OXPathXMLOutputHandler;
 import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
 import uk.ac.ox.comlab.diadem.oxpath.parser.OXPathParser;
@@ -68,7 +70,9 @@ public class OXPathNavigator {
 
 	/**
 	 * Main method; entry point to API when a .jar file
-	 * @param args 1st argument defines <b>mode</b>: (1) <i>--cloud</i> for cloud mode; (2) <i>--xml</i> for xml output; or, (3) <i>--simple</i> for printing out tuples.
+	 * @param args 1st argument defines <b>mode</b>: (1) <i>--cloud</i> for cloud mode; (2) <i>--xml</i> for xml output; (3) <i>--xmlstream</i> for xml output
+	 * written as it is extracted; (4) <i>--jsonl</i> and (5) <i>--csv</i> for JSON Lines and CSV output written as it is extracted; or,
+	 * (6) <i>--simple</i> for printing out tuples.
 	 * 2nd argument specifies a file containing formatted OXPath expressions.  Without mode specified, output defaults to local XML and only one argument (file expected).
 	 * In cloud mode, the second argument is a formatted OXPath expression.
 	 */
@@ -84,6 +88,18 @@ public class OXPathNavigator {
 					mode = Modes.XML;
 					filename = args[1];
 				}
+				else if (args[0].equals("--xmlstream")) {
+					mode = Modes.XMLSTREAM;
+					filename = args[1];
+				}
+				else if (args[0].equals("--jsonl")) {
+					mode = Modes.JSONL;
+					filename = args[1];
+				}
+				else if (args[0].equals("--csv")) {
+					mode = Modes.CSV;
+					filename = args[1];
+				}
 				else if (args[0].equals("--simple")) {
 					mode = Modes.SIMPLE;
 					filename = args[1];
@@ -95,14 +111,14 @@ public class OXPathNavigator {
 				OXPathNavigator.runOXPathLocal(mode,filename);
 			}
 		} catch (Exception e) {
-			System.out.println("Expect command line arguments as follows: [mode]? expression.  [mode] is either \"--cloud\", \"--xml\", or \"simple\".  Without mode specified, the default is xml mode.  The next command line argument is a file (containing formatted OXPath" +
+			System.out.println("Expect command line arguments as follows: [mode]? expression.  [mode] is either \"--cloud\", \"--xml\", \"--xmlstream\", \"--jsonl\", \"--csv\", or \"simple\".  Without mode specified, the default is xml mode.  The next command line argument is a file (containing formatted OXPath" +
 					"expression) for the local modes, and an expression for the cloud mode.");
 			e.printStackTrace();
 			System.exit(-1);
 		}
 	}
 	
-	private enum Modes { XML, SIMPLE }
+	private enum Modes { XML, XMLSTREAM, JSONL, CSV, SIMPLE }
 	
 	/**
 	 * A "main" method for running OXPath on the local machine, printing out an XML document/tuples at the end to the console
@@ -114,26 +130,42 @@ public class OXPathNavigator {
 		try {
 			Logger logger=LoggerFactory.getLogger(OXPathNavigator.class);
 			CountDownLatch latch = new CountDownLatch(1);		
-			ServerSocket dataServer = new ServerSocket(0);
+			//the handler runs in this JVM, so extraction nodes are handed over in memory rather than serialized over a socket
+			OXPathExtractionChannel channel = new OXPathExtractionChannel();
 			
 			boolean isXML = (mode.equals(Modes.XML))?true:false;
 			
+			boolean isStreaming = mode.equals(Modes.XMLSTREAM) || mode.equals(Modes.JSONL) || mode.equals(Modes.CSV);
+			
 			OXPathOutputHandler handler = (isXML)?
-										  new OXPathXMLOutputHandler("localhost",dataServer.getLocalPort(),logger,latch):
-				                          new OXPathSimpleOutputHandler("localhost",dataServer.getLocalPort(),logger);
+										  new OXPathXMLOutputHandler(channel,logger,latch):
+										  (mode.equals(Modes.XMLSTREAM))?
+										  new OXPathStreamingXMLOutputHandler(channel,logger,System.out,latch):
+										  (mode.equals(Modes.JSONL))?
+										  new OXPathJSONLinesOutputHandler(channel,logger,System.out,latch):
+										  (mode.equals(Modes.CSV))?
+										  new OXPathCSVOutputHandler(channel,logger,System.out,latch):
+				                          new OXPathSimpleOutputHandler(channel,logger);
 
 			handler.start();
 			
-			Socket listen = dataServer.accept();
-			ObjectOutputStream os = new ObjectOutputStream(listen.getOutputStream());
+			ObjectOutputStream os = channel.getOutputStream();
 			
 			FileReader reader = new FileReader(filename);
 			OXPathParser parser = new OXPathParser(reader);
 			Node root = parser.Expression();
 			WebBrowser browser = BrowserFactory.newWebBrowser(Engine.SWT_MOZILLA, true);
-			OXPathType result = evaluateOXPathQuery(root,browser,logger,os);
+			OXPathType result;
+			if (isStreaming) {
+				//records are written as soon as they are complete
+				PAATEvalVisitor pv = PAATEvalVisitor.newInstance(browser, logger, os);
+				pv.setRecordClosing(true);
+				result = pv.accept(root, new PAATState.Builder(new OXPathNodeList(OXPathContextNode.getNotionalContext())).buildSet());
+			}
+			else result = evaluateOXPathQuery(root,browser,logger,os);
 			
-			System.out.println(result);
+			//the streaming output is being written to the console, so the result is printed once it is complete
+			if (!isStreaming) System.out.println(result);
 			os.close();
 			
 
@@ -141,6 +173,11 @@ public class OXPathNavigator {
 				latch.await();
 				System.out.println(((OXPathXMLOutputHandler) handler).returnDocumentAsString());
 			}
+			else if (isStreaming) {
+				latch.await();
+				System.out.println();
+				System.out.println(result);
+			}
 			
 //			browser.close();
 			browser.shutdown();
@@ -172,7 +209,8 @@ public class OXPathNavigator {
 	}
 	
 	/**
-	 * Main API method for client use.  Evaluates an OXPath expression encoded as a <tt>String</tt> object.
+	 * Main API method for client use.  Evaluates an OXPath expression encoded as a <tt>String</tt> object.  The expression is
+	 * compiled through the plan cache (see {@code PreparedOXPath}), so repeated calls with the same expression are parsed only once.
 	 * @param in OXPath expression as a <tt>String</tt> object
 	 * @param browser web browsing engine for expression evaluation
 	 * @param logger the logger object for the process
@@ -182,7 +220,23 @@ public class OXPathNavigator {
 	 * @throws OXPathException in case of AST structure exception
 	 */
 	public static OXPathType evaluateOXPathQuery(String in, WebBrowser browser, Logger logger, ObjectOutputStream os) throws DOMException, ParserConfigurationException, OXPathException, Exception {
-		return evaluateOXPathQuery(OXPathParser.getJJTreeFromString(in), browser, logger, os);
+		return PreparedOXPath.compile(in).evaluate(browser, logger, os);
+	}
+
+	/**
+	 * Main API method for client use.  Evaluates an OXPath expression encoded as a <tt>String</tt> object on a browser leased from
+	 * {@code pool} for the evaluation, so repeated calls don't start a browser each.
+	 * @param in OXPath expression as a <tt>String</tt> object
+	 * @param pool the warm browsers to lease from
+	 * @param logger the logger object for the process
+	 * @param os output stream to send the extraction nodes
+	 * @return XML Document with extraction results
+	 * @throws ParserConfigurationException in case parser configuration error
+	 * @throws DOMException in case of XML Document exception 
+	 * @throws OXPathException in case of AST structure exception, or if interrupted while waiting for a browser
+	 */
+	public static OXPathType evaluateOXPathQuery(String in, OXPathBrowserPool pool, Logger logger, ObjectOutputStream os) throws DOMException, ParserConfigurationException, OXPathException, Exception {
+		return PreparedOXPath.compile(in).evaluate(pool, logger, os);
 	}
 	
 	/**
@@ -203,5 +257,53 @@ public class OXPathNavigator {
 		PAATEvalVisitor pv = PAATEvalVisitor.newInstance(browser, logger, os);
 		return pv.accept(n, new PAATState.Builder(new OXPathNodeList(OXPathContextNode.getNotionalContext())).buildSet());
 	}
+
+	/**
+	 * Main API method for client use.  Evaluates an OXPath expression over an Abstract Syntax Tree on a browser leased from 
+	 * {@code pool} for the evaluation; the browser is given back, and reset, once the evaluation is over.
+	 * @param n root of the AST
+	 * @param pool the warm browsers to lease from
+	 * @param logger the logger object for the process
+	 * @param os output stream to send the extraction nodes
+	 * @return XML Document with extraction results
+	 * @throws ParserConfigurationException in case parser configuration error
+	 * @throws DOMException in case of XML Document exception 
+	 * @throws OXPathException in case of AST structure exception, or if interrupted while waiting for a browser
+	 * @throws IOException in case of malformed xml
+	 * @throws SAXException in case of malformed xml
+	 */
+	public static OXPathType evaluateOXPathQuery(Node n, OXPathBrowserPool pool, Logger logger, ObjectOutputStream os) throws ParserConfigurationException, DOMException, OXPathException, SAXException, IOException {
+		OXPathBrowserPool.Lease lease;
+		try {
+			lease = pool.lease();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OXPathException("Interrupted while waiting for a browser of the pool");
+		}
+		try {
+			return evaluateOXPathQuery(n, lease.getBrowser(), logger, os);
+		}
+		finally {
+			lease.release();
+		}
+	}
+
+	/**
+	 *  Main API method for client use.  Evaluates an OXPath expression encoded as the root of an AST, evaluating the branches of 
+	 *  actions in parallel on the browsers of {@code pool} (see {@code PAATEvalVisitor.newInstance(WebBrowser, OXPathBrowserPool, Logger, ObjectOutputStream)}).
+	 * @param n root of the OXPath AST
+	 * @param browser web browsing engine for expression evaluation
+	 * @param pool the browsers for evaluating action branches
+	 * @param logger the logger object for the process
+	 * @param os output stream to send the extraction nodes
+	 * @return XML Document with extraction results
+	 * @throws OXPathException in case of AST structure exception
+	 */
+	public static OXPathType evaluateOXPathQuery(Node n, WebBrowser browser, OXPathBrowserPool pool, Logger logger, ObjectOutputStream os) throws OXPathException {
+		if (logger==null) logger = LoggerFactory.getLogger(OXPathNavigator.class);
+		PAATEvalVisitor pv = PAATEvalVisitor.newInstance(browser, pool, logger, os);
+		return pv.accept(n, new PAATState.Builder(new OXPathNodeList(OXPathContextNode.getNotionalContext())).buildSet());
+	}
 	
 }
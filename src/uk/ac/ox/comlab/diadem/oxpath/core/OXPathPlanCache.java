@@ -0,0 +1,171 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+
+/**
+ * Bounded cache of compiled OXPath expressions ({@code PreparedOXPath}), keyed by expression text.  When full, the least recently
+ * used plan is evicted.  Expressions are compiled outside the cache lock, so a slow parse doesn't block lookups of other 
+ * expressions; if two threads compile the same expression concurrently, the first plan stored wins and both threads return it.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathPlanCache {
+
+	/**
+	 * Returns the cache shared by {@code PreparedOXPath.compile}
+	 * @return the shared plan cache
+	 */
+	public static OXPathPlanCache getInstance() {
+		return OXPathPlanCache.instance;
+	}
+
+	/**
+	 * Constructs an empty cache
+	 * @param iCapacity maximum number of plans held by the cache
+	 */
+	public OXPathPlanCache(int iCapacity) {
+		this.setCapacity(iCapacity);
+	}
+
+	/**
+	 * Returns the plan for the expression, compiling and caching it on a miss
+	 * @param expression OXPath expression as a <tt>String</tt> object
+	 * @return the compiled expression
+	 * @throws OXPathException in case of parser exception or malformed AST
+	 */
+	public PreparedOXPath get(String expression) throws OXPathException {
+		synchronized (this.plans) {
+			PreparedOXPath plan = this.plans.get(expression);
+			if (plan != null) {
+				this.hits++;
+				return plan;
+			}
+			this.misses++;
+		}
+		PreparedOXPath compiled = PreparedOXPath.prepare(expression);
+		synchronized (this.plans) {
+			PreparedOXPath plan = this.plans.get(expression);
+			if (plan != null) return plan;
+			this.plans.put(expression, compiled);
+			return compiled;
+		}
+	}
+
+	/**
+	 * Sets the maximum number of plans held by the cache, evicting least recently used plans if necessary
+	 * @param iCapacity maximum number of plans held by the cache
+	 */
+	public void setCapacity(int iCapacity) {
+		if (iCapacity < 1) throw new IllegalArgumentException("Plan cache capacity must be positive, not " + iCapacity);
+		synchronized (this.plans) {
+			this.capacity = iCapacity;
+			while (this.plans.size() > this.capacity) {
+				this.plans.remove(this.plans.keySet().iterator().next());
+			}
+		}
+	}
+
+	/**
+	 * Removes all plans from the cache
+	 */
+	public void clear() {
+		synchronized (this.plans) {
+			this.plans.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of plans in the cache
+	 * @return the number of plans in the cache
+	 */
+	public int size() {
+		synchronized (this.plans) {
+			return this.plans.size();
+		}
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHits() {
+		synchronized (this.plans) {
+			return this.hits;
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that required compiling the expression
+	 * @return the number of lookups that required compiling the expression
+	 */
+	public long getMisses() {
+		synchronized (this.plans) {
+			return this.misses;
+		}
+	}
+
+	/**
+	 * plans in access order (least recently used first)
+	 */
+	private final Map<String,PreparedOXPath> plans = new LinkedHashMap<String,PreparedOXPath>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,PreparedOXPath> eldest) {
+			return this.size() > OXPathPlanCache.this.capacity;
+		}
+
+		private static final long serialVersionUID = 1L;
+	};
+	/**
+	 * maximum number of plans held by the cache
+	 */
+	private int capacity;
+	/**
+	 * number of lookups answered from the cache
+	 */
+	private long hits = 0;
+	/**
+	 * number of lookups that required compiling the expression
+	 */
+	private long misses = 0;
+
+	/**
+	 * Default capacity of the shared cache
+	 */
+	public static final int DEFAULTCAPACITY = 512;
+	/**
+	 * the cache shared by {@code PreparedOXPath.compile}
+	 */
+	private static final OXPathPlanCache instance = new OXPathPlanCache(DEFAULTCAPACITY);
+}
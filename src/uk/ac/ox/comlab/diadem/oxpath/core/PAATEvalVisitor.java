@@ -36,9 +36,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 
@@ -49,17 +50,24 @@ import diadem.common.web.dom.DOMNode;
 import diadem.common.web.dom.DOMWindow;
 
 import uk.ac.ox.comlab.diadem.oxpath.core.domlookup.DOMLookup;
-import uk.ac.ox.comlab.diadem.oxpath.core.domlookup.DOMLookupDocumentPosition;
+import uk.ac.ox.comlab.diadem.oxpath.core.domlookup.DOMLookupElementIndex;
 import uk.ac.ox.comlab.diadem.oxpath.core.domlookup.NodeReference;
+import uk.ac.ox.comlab.diadem.oxpath.core.extraction.AsyncExtractor;
+import uk.ac.ox.comlab.diadem.oxpath.core.extraction.AsyncExtractorStatistics;
 import uk.ac.ox.comlab.diadem.oxpath.core.extraction.Extractor;
+import uk.ac.ox.comlab.diadem.oxpath.core.extraction.MemoizedExtractor;
 import uk.ac.ox.comlab.diadem.oxpath.core.extraction.OXPathExtractor;
+import uk.ac.ox.comlab.diadem.oxpath.core.extraction.RecordLimitExtractor;
 import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATState;
 import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATStateEvalIterative;
 import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATStateEvalSet;
+import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATStateFrame;
 import uk.ac.ox.comlab.diadem.oxpath.dom.ActionEngine;
 import uk.ac.ox.comlab.diadem.oxpath.dom.ActionKeywords;
 import uk.ac.ox.comlab.diadem.oxpath.dom.FieldTypes;
+import uk.ac.ox.comlab.diadem.oxpath.dom.PageSettler;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathDocumentOrder;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathNodeList;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathType;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathType.OXPathTypes;
@@ -86,7 +94,7 @@ import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
 import uk.ac.ox.comlab.diadem.oxpath.parser.ast.SimpleNode;
 import uk.ac.ox.comlab.diadem.oxpath.parser.visitor.OXPathVisitorGenericAdaptor;
 import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
-import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathMemoizer;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathExpressionCache;
 
 
 /**
@@ -113,6 +121,41 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		return new PAATEvalVisitor(browser, iLogger, os);
 	}
 
+	/**
+	 * Call this method to instantiate a new {@code PAATEvalVisitor} instance that evaluates the branches of an action (one per 
+	 * context node) in parallel on the browsers of {@code pool}.  Each branch replays the URL and actions leading to its context 
+	 * page on a pooled browser, so only pages reached from a URL action through this visitor are parallelized; other action sets
+	 * (and the actions within a branch) are evaluated sequentially, as by {@code newInstance(browser, iLogger, os)}.  Extraction 
+	 * identifiers remain unique and each extraction node keeps its parent, but identifiers of different branches interleave.
+	 * @param browser browser object to evaluate on OXPath
+	 * @param pool the browsers for evaluating action branches
+	 * @param iLogger the logging environment to pass messages to
+	 * @param os the output stream to pipe away any {@code OXPathExtractionNode} instances
+	 * @return a new {@code PAATEvalVisitor} instance for evaluating an OXPath expression 
+	 */
+	public static PAATEvalVisitor newInstance(WebBrowser browser, OXPathBrowserPool pool, Logger iLogger, ObjectOutputStream os) {
+		PAATEvalVisitor visitor = new PAATEvalVisitor(browser, iLogger, os);
+		visitor.pool = pool;
+		return visitor;
+	}
+
+
+	/**
+	 * Call this method to instantiate a new {@code PAATEvalVisitor} instance whose output is written on a thread of its own (see 
+	 * {@code AsyncExtractor}), so a slow consumer of the output stream doesn't stall the evaluation.  At most {@code capacity} 
+	 * extraction nodes wait in memory; {@code policy} decides what happens to further ones.  Otherwise as 
+	 * {@code newInstance(browser, iLogger, os)}; the output is completely written once the evaluation returns.
+	 * @param browser browser object to evaluate on OXPath
+	 * @param iLogger the logging environment to pass messages to
+	 * @param os the output stream to pipe away any {@code OXPathExtractionNode} instances
+	 * @param capacity the number of extraction nodes (and close nodes) waiting in memory to be written
+	 * @param policy what happens to an extraction node while {@code capacity} nodes are waiting
+	 * @return a new {@code PAATEvalVisitor} instance for evaluating an OXPath expression 
+	 * @throws IllegalArgumentException if {@code capacity} isn't positive
+	 */
+	public static PAATEvalVisitor newInstance(WebBrowser browser, Logger iLogger, ObjectOutputStream os, int capacity, AsyncExtractor.OverflowPolicy policy) {
+		return new PAATEvalVisitor(browser, iLogger, os, capacity, policy);
+	}
 
 	/**
 	 * Constructor for initiating new PAATEvalVisitor object; must pass the PAAT Visitor a {@code WebBrowser} object to evaluate the expression over, 
@@ -122,10 +165,186 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 	 * @param os the output stream to pipe away any {@code OXPathExtractionNode} instances
 	 */
 	private PAATEvalVisitor(WebBrowser browser, Logger iLogger, ObjectOutputStream os) {
+		this(browser, iLogger, os, 0, null);
+	}
+
+	/**
+	 * Constructor for initiating new PAATEvalVisitor object, writing the output synchronously or, if {@code policy} is given, on a
+	 * thread of its own
+	 * @param browser browser object to evaluate on OXPath
+	 * @param iLogger the logging environment to pass messages to
+	 * @param os the output stream to pipe away any {@code OXPathExtractionNode} instances
+	 * @param capacity the number of extraction nodes waiting in memory to be written (ignored without {@code policy})
+	 * @param policy what happens to an extraction node while {@code capacity} nodes are waiting, or {@code null} to write the 
+	 * output synchronously
+	 */
+	private PAATEvalVisitor(WebBrowser browser, Logger iLogger, ObjectOutputStream os, int capacity, AsyncExtractor.OverflowPolicy policy) {
 		this.webclient = browser;
 		this.logger = iLogger;
-		this.extractor = OXPathMemoizer.memoize(new OXPathExtractor(os));
-		this.eval_visitor = OXPathMemoizer.memoize(new PAATEval_Visitor(this,this.extractor));
+		this.output = new OXPathExtractor(os);
+		this.async = (policy == null)?null:new AsyncExtractor(this.output, capacity, policy);
+		this.limiter = new RecordLimitExtractor((this.async == null)?this.output:this.async);
+		this.extractor = new MemoizedExtractor(this.limiter);
+		this.eval_visitor = new MemoizedPAATEval_(new PAATEval_Visitor(this,this.extractor));
+		this.stopSignal = new AtomicBoolean(false);
+		this.leased = null;
+	}
+
+	/**
+	 * Constructor for the visitor of a parallel action branch, evaluating on a browser leased from the pool and sharing the 
+	 * extractor, record limit, stop signal and streaming mode of the visitor that spawned the branch
+	 * @param browser the leased browser
+	 * @param spawner the visitor that spawned the branch
+	 */
+	private PAATEvalVisitor(WebBrowser browser, PAATEvalVisitor spawner) {
+		this.webclient = browser;
+		this.logger = spawner.logger;
+		this.output = spawner.output;
+		this.async = spawner.async;
+		this.limiter = spawner.limiter;
+		this.extractor = spawner.extractor;
+		this.eval_visitor = new MemoizedPAATEval_(new PAATEval_Visitor(this,this.extractor));
+		this.stopSignal = spawner.stopSignal;
+		this.streaming = spawner.streaming;
+		this.recordClosing = spawner.recordClosing;
+		this.settler = spawner.settler;
+		this.leased = browser;
+	}
+
+	/**
+	 * Switches streaming evaluation on or off (it is off by default).  When streaming, paths that distribute over their context 
+	 * set (see {@code StreamabilityVisitor}) receive the results of the preceding path in chunks of {@code STREAMCHUNK} nodes as 
+	 * they are produced, instead of as a single set once all are produced.  This brings the first records forward and bounds 
+	 * the intermediate sets held at once; sets are still built in full wherever <tt>position()</tt> or <tt>last()</tt> need them.
+	 * @param iStreaming {@code true} to stream, {@code false} to evaluate set by set
+	 */
+	public void setStreaming(boolean iStreaming) {
+		this.streaming = iStreaming;
+	}
+
+	/**
+	 * Returns {@code true} if streaming evaluation is on
+	 * @return {@code true} if streaming evaluation is on, {@code false} otherwise
+	 */
+	public boolean isStreaming() {
+		return this.streaming;
+	}
+
+	/**
+	 * Sets how the visitor waits for pages to settle after actions (see {@code PageSettler}); {@code PageSettler.DEFAULT} unless
+	 * set.  Each action waits until the page has had no mutation or load events for the quiet period of the settler, up to the 
+	 * <tt>wait=</tt> of the action or, without one, the bound of the settler.  Set before evaluating, so parallel branches share it.
+	 * @param iSettler the settler
+	 */
+	public void setPageSettler(PageSettler iSettler) {
+		if (iSettler == null) throw new IllegalArgumentException("The page settler can't be null");
+		this.settler = iSettler;
+	}
+
+	/**
+	 * Returns how the visitor waits for pages to settle after actions
+	 * @return the settler
+	 */
+	public PageSettler getPageSettler() {
+		return this.settler;
+	}
+
+	/**
+	 * Switches record closing on or off (it is off by default).  When on, the output carries a close node (see 
+	 * {@code OXPathExtractionNode.returnCloseNode}) for each extraction node as soon as PAAT is done with it and it can gain no 
+	 * further children, so consumers can emit and free complete records during the evaluation rather than at its end.  PAAT is 
+	 * done with an extraction node once the loop of its marker has evaluated the rest of the path on it; nodes of markers whose 
+	 * results may still reach further markers (see {@code RecordClosure}) are complete at the end of extraction instead.  Only 
+	 * switch it on for consumers that recognize close nodes.
+	 * @param iRecordClosing {@code true} to signal complete extraction nodes, {@code false} otherwise
+	 */
+	public void setRecordClosing(boolean iRecordClosing) {
+		this.recordClosing = iRecordClosing;
+		this.output.setClosing(iRecordClosing);
+	}
+
+	/**
+	 * Returns {@code true} if record closing is on
+	 * @return {@code true} if record closing is on, {@code false} otherwise
+	 */
+	public boolean isRecordClosing() {
+		return this.recordClosing;
+	}
+
+	/**
+	 * Switches document order keys on or off (they are off by default).  When on, each extraction node carries the key of its 
+	 * context node (see {@code OXPathExtractionNode.getOrderKey()}), so consumers such as {@code OXPathSiblingOrderOutputHandler}
+	 * can put siblings in document order, although PAAT extracts them across action branches in no fixed order.
+	 * @param iDocumentOrdering {@code true} to record document order keys, {@code false} otherwise
+	 */
+	public void setDocumentOrdering(boolean iDocumentOrdering) {
+		this.output.setOrdering(iDocumentOrdering);
+	}
+
+	/**
+	 * Returns {@code true} if document order keys are recorded
+	 * @return {@code true} if document order keys are recorded, {@code false} otherwise
+	 */
+	public boolean isDocumentOrdering() {
+		return this.output.isOrdering();
+	}
+
+	/**
+	 * Signals the extraction node of the marker as complete, if record closing is on and the marker's nodes are complete once 
+	 * the marker is evaluated on them
+	 * @param node the marker
+	 * @param id identifier of the extraction node
+	 * @throws OXPathException in case the signal can't be written
+	 */
+	void closeRecord(ASTOXPathExtractionMarker node, int id) throws OXPathException {
+		if (this.recordClosing && RecordClosure.closesAtMarker(node)) this.extractor.closeNode(id);
+	}
+
+	/**
+	 * Returns the counters of the output thread (queue depth, latencies, spills), if the output is written on a thread of its own
+	 * @return the counters of the output thread, or {@code null} if the output is written synchronously
+	 */
+	public AsyncExtractorStatistics getOutputStatistics() {
+		return (this.async == null)?null:this.async.getStatistics();
+	}
+
+	/**
+	 * Limits the output to the first {@code limit} records (extraction nodes directly below the results node).  Once the limit is
+	 * reached, PAAT completes the records already extracted and stops looking for new ones; records found regardless are 
+	 * suppressed, so the output holds exactly the first records.
+	 * @param limit the maximum number of records
+	 * @throws IllegalArgumentException if {@code limit} is negative
+	 */
+	public void setRecordLimit(int limit) {
+		this.limiter.setLimit(limit);
+	}
+
+	/**
+	 * Asks the evaluation to stop as soon as possible; may be called from any thread.  The evaluation returns normally, with the 
+	 * results found so far, and the output is ended as usual.
+	 */
+	public void stop() {
+		this.stopSignal.set(true);
+	}
+
+	/**
+	 * Returns {@code true} if {@code stop()} was called
+	 * @return {@code true} if {@code stop()} was called, {@code false} otherwise
+	 */
+	public boolean isStopped() {
+		return this.stopSignal.get();
+	}
+
+	/**
+	 * Returns {@code true} if evaluating further from the context node can't add to the output: the evaluation was stopped, the 
+	 * node is below a suppressed record, or the record limit was reached and the node isn't below any record yet
+	 * @param context the context node
+	 * @return {@code true} if evaluation from {@code context} can be skipped, {@code false} otherwise
+	 */
+	boolean skips(OXPathContextNode context) {
+		if (this.stopSignal.get()) return true;
+		if (context.getParent() == RecordLimitExtractor.SUPPRESSED || context.getLast() == RecordLimitExtractor.SUPPRESSED) return true;
+		return (context.getParent() == RecordLimitExtractor.RESULTS && context.getLast() == RecordLimitExtractor.RESULTS && this.limiter.isLimitReached());
 	}
 
 	/**
@@ -149,10 +368,16 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 	@Override
 	public OXPathType visitNode(ASTExpression node, PAATStateEvalSet data) throws OXPathException {
 		//decorate the tree with positional function information
-		new PrePAATVisitor().accept(node, null);
-		OXPathType result = this.accept(node.jjtGetChild(0), data);
-		this.endWalk();
-		return result;
+		PrePAATVisitor.decorate(node);
+		boolean walked = false;
+		try {
+			OXPathType result = this.accept(node.jjtGetChild(0), data);
+			this.endWalk();
+			walked = true;
+			return result;
+		} finally {
+			if (!walked) this.abortWalk();
+		}
 	}
 
 	/**
@@ -174,18 +399,22 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 			context.add(new OXPathContextNode(firstDomNode.getNode().getOwnerDocument().getDocumentElement(),firstDomNode.getParent(),firstDomNode.getLast()));
 		} 
 		else context = data.getContextSet();
+		if (this.streaming && node.hasComplexPath() && StreamabilityVisitor.isStreamable(node.jjtGetChild((node.hasSimplePath())?1:0))) {
+			return new OXPathType(this.evaluateStreaming(node, data, context));
+		}
 		//next, handle any simple expression via eval_
 		OXPathNodeList simpleResult;
 		if (node.hasSimplePath()) {
 			simpleResult = new OXPathNodeList();
 			int astSimple = numChild++;
+			PAATStateFrame frame = new PAATStateFrame(data);
 			Iterator<OXPathContextNode> iterator = context.iterator();
 			while (iterator.hasNext()) {
 				OXPathContextNode c = iterator.next();
+				if (this.skips(c)) continue;
 				boolean newProtect = (iterator.hasNext())?true:data.isDocumentProtected();
-				PAATStateEvalIterative newState = new PAATState.Builder(data).setContextNode(c).setDocumentProtect(newProtect).buildNode();
 				simpleResult.addAll(
-						this.eval_visitor.eval_(c.getNode(), node.jjtGetChild(astSimple), newState).nodeList());
+						this.eval_visitor.eval_(c.getNode(), node.jjtGetChild(astSimple), frame.set(c, newProtect)).nodeList());
 			}
 		}
 		else simpleResult = context;
@@ -198,6 +427,44 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		return complexResult;
 	}
 
+	/**
+	 * Evaluates an <tt>ASTRelativeOXPathLocationPath</tt> whose complex path distributes over its context set, passing the results
+	 * of the simple path on to the complex path in chunks of {@code STREAMCHUNK} nodes.  The page stays protected until the last 
+	 * chunk.  A node reached from several context nodes is passed on only the first time it is reached (as a member of the 
+	 * non-streamed simple result would be), so the complex path, and any actions and extraction markers in it, is evaluated once 
+	 * per node.
+	 * @param node query node (with a complex path)
+	 * @param data the PAAT-specific state information at {@code node}
+	 * @param context the context set ({@code node} isn't absolute, as absolute paths don't stream)
+	 * @return the result of the evaluation at {@code node}
+	 * @throws OXPathException in case of exception in the evaluation
+	 */
+	private OXPathNodeList evaluateStreaming(ASTRelativeOXPathLocationPath node, PAATStateEvalSet data, OXPathNodeList context) throws OXPathException {
+		Node simple = (node.hasSimplePath())?node.jjtGetChild(0):null;
+		Node complex = node.jjtGetChild((simple == null)?0:1);
+		OXPathNodeList result = new OXPathNodeList();
+		OXPathNodeList chunk = new OXPathNodeList();
+		PAATStateFrame frame = new PAATStateFrame(data);
+		//nodes already passed on, by DOM node and parent marker (the context set itself is free of duplicates)
+		Set<OXPathContextNode> sent = new HashSet<OXPathContextNode>();
+		for (OXPathContextNode c : context) {
+			if (this.skips(c)) continue;
+			Iterable<OXPathContextNode> produced;
+			if (simple == null) produced = new OXPathNodeList(c);
+			else produced = this.eval_visitor.eval_(c.getNode(), simple, frame.set(c, true)).nodeList();
+			for (OXPathContextNode p : produced) {
+				if (simple != null && !sent.add(new OXPathContextNode(p.getNode(), p.getParent(), 0))) continue;
+				chunk.add(p);
+				if (chunk.size() < STREAMCHUNK) continue;
+				result.addAll(this.accept(complex, new PAATState.Builder(data).setContextSet(chunk).setDocumentProtect(true).buildSet()).nodeList());
+				chunk = new OXPathNodeList();
+				if (this.isStopped()) return result;
+			}
+		}
+		if (!chunk.isEmpty()) result.addAll(this.accept(complex, new PAATState.Builder(data).setContextSet(chunk).buildSet()).nodeList());
+		return result;
+	}
+
 	/**
 	 * Evaluates <tt>ASTSimpleOXPathStepPathAspect</tt> types in the AST
 	 * @param node query node
@@ -233,7 +500,7 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		}
 		else {
 			if (node.getLowerBound()<1) result.addAll(context);
-			for (int i=0; i<node.getUpperBound() && !context.isEmpty(); i++) {
+			for (int i=0; i<node.getUpperBound() && !context.isEmpty() && !this.isStopped(); i++) {
 				PAATStateEvalSet state = new PAATState.Builder(data).setContextSet(context).setDocumentProtect((node.hasFollowingPath() || i < node.getUpperBound()-1)?true:data.isDocumentProtected()).buildSet();
 				context = this.accept(node.jjtGetChild(0), state).nodeList();
 				if (i>=node.getLowerBound()) {
@@ -260,62 +527,150 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		}
 		else {
 			OXPathNodeList context = data.getContextSet();
-			OXPathNodeList result = new OXPathNodeList();
 			if (context.isEmpty()) return OXPathType.EMPTYRESULT;
-			WebBrowser actionSetBrowser = (node.getAction().getActionType().equals(ActionType.URL))?null:context.first().getNode().getOwnerDocument().getEnclosingWindow().getBrowser();
-			ArrayList<NodeReference> references = this.domlookup.getNodeReferences(context);
+			final boolean isURL = node.getAction().getActionType().equals(ActionType.URL);
+			WebBrowser actionSetBrowser = (isURL)?null:context.first().getNode().getOwnerDocument().getEnclosingWindow().getBrowser();
+			PageSnapshot snapshot = new PageSnapshot(context, this.domlookup);
+			if (this.pool != null && !isURL && context.size() > 1) {
+				ActionTrail trail = this.trails.get(context.first().getNode().getOwnerDocument());
+				if (trail != null) return new OXPathType(this.evaluateBranchesInParallel(node, data, context.toArray(new OXPathContextNode[context.size()]), snapshot.getReferences(), trail));
+			}
+			OXPathNodeList result = new OXPathNodeList();
+			Iterator<OXPathContextNode> contextIterator = context.iterator();
 			for (int i=0; i<context.size(); i++) {
-				OXPathContextNode c = (node.getAction().getActionType().equals(ActionType.URL))?OXPathContextNode.getNotionalContext():references.get(i).getRenderedNode(actionSetBrowser.getContentDOMWindow().getDocument());
+				if (this.skips(contextIterator.next())) continue;
+				//the browser is back on the page of the context set, which may or may not be the document of the snapshot
+				OXPathContextNode c = (isURL)?OXPathContextNode.getNotionalContext():snapshot.restore(i, actionSetBrowser);
 				boolean newProtect = (i<context.size()-1)?true:data.isDocumentProtected();
-				OXPathContextNode newNode = this.takeAction(c, node.getAction(), newProtect, data.getCurrentAction());
-				final int newCurrentAction = this.currentAction;
-				if (!node.getAction().isAbsoluteAction()) {//calculate AFP
-					PAATStateEvalSet afpState = new PAATState.Builder(data).setContextSet(new OXPathNodeList(newNode)).setIsActionFreeNavigation(true).setCurrentAction(newCurrentAction).setActionFreePrefixEnd(node).buildSet();
-					OXPathNodeList afpSet = this.accept(data.getActionFreePrefix(), afpState).nodeList();
-					//multi-way set based evaluation doesn't happen often and aren't big sets, but they are expensive
-					if (afpSet.isEmpty()) continue;//we continue if there is no element after this AFP
-					Iterator<OXPathContextNode> iterator = afpSet.iterator();
-					OXPathContextNode afpNode = iterator.next();
-					try {
-						for (int j=0; j<i;j++) {
-							afpNode=iterator.next();
+				result.addAll(this.evaluateBranch(node, data, c, i, newProtect));
+			}
+			return new OXPathType(result);
+		}
+	}
+
+	/**
+	 * Evaluates the action of an <tt>ASTOXPathActionPath</tt> on a single node of the context set, followed by the rest of the path
+	 * @param node query node
+	 * @param data the PAAT-specific state information at {@code node}
+	 * @param c the (rendered) context node to take the action on
+	 * @param position position of {@code c} in the context set (used to find the node again after the action free prefix)
+	 * @param newProtect {@code true} if the page of {@code c} is protected, {@code false} otherwise
+	 * @return the result of the branch
+	 * @throws OXPathException in case of exception in the evaluation
+	 */
+	private OXPathNodeList evaluateBranch(ASTOXPathActionPath node, PAATStateEvalSet data, OXPathContextNode c, int position, boolean newProtect) throws OXPathException {
+		OXPathNodeList result = new OXPathNodeList();
+		OXPathContextNode newNode = this.takeAction(c, node.getAction(), newProtect, data.getCurrentAction());
+		final int newCurrentAction = this.currentAction;
+		if (!node.getAction().isAbsoluteAction()) {//calculate AFP, once per rendered page
+			DOMDocument newDocument = newNode.getNode().getOwnerDocument();
+			OXPathContextNode[] afpSet = this.afpMemo.get(newDocument, data.getActionFreePrefix(), node);
+			//a node since removed from the page shows the results are out of date, whether or not the event has arrived yet
+			if (afpSet != null && position < afpSet.length && afpSet[position].getNode().getParentNode() == null) afpSet = null;
+			if (afpSet == null) {
+				PAATStateEvalSet afpState = new PAATState.Builder(data).setContextSet(new OXPathNodeList(newNode)).setIsActionFreeNavigation(true).setCurrentAction(newCurrentAction).setActionFreePrefixEnd(node).buildSet();
+				OXPathNodeList afpList = this.accept(data.getActionFreePrefix(), afpState).nodeList();
+				afpSet = afpList.toArray(new OXPathContextNode[afpList.size()]);
+				this.afpMemo.put(newDocument, data.getActionFreePrefix(), node, afpSet);
+			}
+			if (position >= afpSet.length) return result;//we continue if there is no element after this AFP
+			//because we don't do the extraction markers, these won't come back correct if there are extraction markers in the AFP
+			newNode = new OXPathContextNode(afpSet[position].getNode(),c.getParent(),c.getLast());
+		}
+		PAATStateEvalSet actionState;
+		if (node.getAction().isAbsoluteAction()) actionState = new PAATState.Builder(data).setContextSet(new OXPathNodeList(newNode)).setDocumentProtect(false).setActionFreePrefix(node).setCurrentAction(newCurrentAction).buildSet();
+		else actionState = new PAATState.Builder(data).setContextSet(new OXPathNodeList(newNode)).setDocumentProtect(false).setCurrentAction(newCurrentAction).buildSet();
+		OXPathNodeList predResult;
+		final boolean evalAsKleene = node.isInsideKleeneStar() && (data.getNumKleeneStarIterations() > 0);
+		if (node.hasTail()) {
+			predResult = this.accept(node.jjtGetChild(0), actionState).nodeList();
+			if (!evalAsKleene) result.addAll(predResult);
+		}
+		else {
+			predResult = new OXPathNodeList(newNode);
+			if (!evalAsKleene) result.add(newNode);
+		} 
+		if (evalAsKleene && !predResult.isEmpty()) {
+			//we do the rest from the Kleene-star; this is another area where we break compositionality of the language; we additionally protect the page as it is part of the Kleene's recurring context
+			ASTOXPathKleeneStarPath containingKleene = (ASTOXPathKleeneStarPath)node.insideKleeneStar();
+			//we only do the following if we've done lower the specified number of times (since we already checked for the 0 unwinding in the Kleene node, we've done 1 unwinding at this recursion level
+			boolean doneLower = containingKleene.getLowerBound()-(containingKleene.getUpperBound()-data.getNumKleeneStarIterations())<=1;
+			if (containingKleene.hasFollowingPath()  && doneLower) {
+				result.addAll(this.accept(node.insideKleeneStar().jjtGetChild(1), new PAATState.Builder(actionState).setDocumentProtect(true).setContextSet(predResult).setNumKleeneStarIterations(0).setCurrentAction(newCurrentAction).buildSet()).nodeList());
+			}
+			else result.addAll(predResult);
+			int newNumKleeneStarIterations = data.getNumKleeneStarIterations()-1;
+			if (newNumKleeneStarIterations>0) this.accept(containingKleene.jjtGetChild(0), 
+					new PAATState.Builder(actionState).setDocumentProtect(false).setContextSet(predResult).setNumKleeneStarIterations(newNumKleeneStarIterations).setCurrentAction(newCurrentAction).buildSet());
+		}
+		if (this.openActions.contains(newCurrentAction)) this.freeMem(newNode,newCurrentAction);
+		return result;
+	}
+
+	/**
+	 * Evaluates the branches of an <tt>ASTOXPathActionPath</tt> (one per context node) on the browsers of the pool.  Each worker 
+	 * leases a browser, replays the trail of the context page on it and evaluates the branch with its own visitor, sharing this 
+	 * visitor's extractor; context nodes keep their extraction parent, so parent linkage is as in sequential evaluation.  The 
+	 * context page itself stays untouched in this visitor's browser and is freed by the enclosing action as usual.
+	 * @param node query node
+	 * @param data the PAAT-specific state information at {@code node}
+	 * @param contexts the context nodes, in context set order
+	 * @param references references to the context nodes, in context set order
+	 * @param trail the trail of the context page
+	 * @return the union of the results of the branches
+	 * @throws OXPathException in case of exception in any branch (the first one is rethrown once all workers have stopped)
+	 */
+	private OXPathNodeList evaluateBranchesInParallel(final ASTOXPathActionPath node, final PAATStateEvalSet data, final OXPathContextNode[] contexts, final ArrayList<NodeReference> references, final ActionTrail trail) throws OXPathException {
+		final OXPathNodeList[] results = new OXPathNodeList[references.size()];
+		final Throwable[] failure = new Throwable[1];
+		final AtomicInteger next = new AtomicInteger(0);
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = next.getAndIncrement(); i < results.length; i = next.getAndIncrement()) {
+						synchronized (failure) {
+							if (failure[0] != null) return;
+						}
+						if (PAATEvalVisitor.this.skips(contexts[i])) continue;
+						WebBrowser browser = PAATEvalVisitor.this.pool.acquire();
+						try {
+							PAATEvalVisitor branch = new PAATEvalVisitor(browser, PAATEvalVisitor.this);
+							DOMDocument page = trail.replay(browser, PAATEvalVisitor.this.settler);
+							//branch pages are discarded after the branch, so they are never protected
+							results[i] = branch.evaluateBranch(node, data, references.get(i).getRenderedNode(page), i, false);
+						}
+						finally {
+							PAATEvalVisitor.this.pool.release(browser);
 						}
-					} catch (NoSuchElementException e) {
-						continue;//we continue if there is no element after this AFP
 					}
-					//because we don't do the extraction markers, these won't come back correct if there are extraction markers in the AFP
-					newNode = new OXPathContextNode(afpNode.getNode(),c.getParent(),c.getLast());
-				}
-				PAATStateEvalSet actionState;
-				if (node.getAction().isAbsoluteAction()) actionState = new PAATState.Builder(data).setContextSet(new OXPathNodeList(newNode)).setDocumentProtect(false).setActionFreePrefix(node).setCurrentAction(newCurrentAction).buildSet();
-				else actionState = new PAATState.Builder(data).setContextSet(new OXPathNodeList(newNode)).setDocumentProtect(false).setCurrentAction(newCurrentAction).buildSet();
-				OXPathNodeList predResult;
-				final boolean evalAsKleene = node.isInsideKleeneStar() && (data.getNumKleeneStarIterations() > 0);
-				if (node.hasTail()) {
-					predResult = this.accept(node.jjtGetChild(0), actionState).nodeList();
-					if (!evalAsKleene) result.addAll(predResult);
-				}
-				else {
-					predResult = new OXPathNodeList(newNode);
-					if (!evalAsKleene) result.add(newNode);
-				} 
-				if (evalAsKleene && !predResult.isEmpty()) {
-					//we do the rest from the Kleene-star; this is another area where we break compositionality of the language; we additionally protect the page as it is part of the Kleene's recurring context
-					ASTOXPathKleeneStarPath containingKleene = (ASTOXPathKleeneStarPath)node.insideKleeneStar();
-					//we only do the following if we've done lower the specified number of times (since we already checked for the 0 unwinding in the Kleene node, we've done 1 unwinding at this recursion level
-					boolean doneLower = containingKleene.getLowerBound()-(containingKleene.getUpperBound()-data.getNumKleeneStarIterations())<=1;
-					if (containingKleene.hasFollowingPath()  && doneLower) {
-						result.addAll(this.accept(node.insideKleeneStar().jjtGetChild(1), new PAATState.Builder(actionState).setDocumentProtect(true).setContextSet(predResult).setNumKleeneStarIterations(0).setCurrentAction(newCurrentAction).buildSet()).nodeList());
+				} catch (Throwable t) {
+					synchronized (failure) {
+						if (failure[0] == null) failure[0] = t;
 					}
-					else result.addAll(predResult);
-					int newNumKleeneStarIterations = data.getNumKleeneStarIterations()-1;
-					if (newNumKleeneStarIterations>0) this.accept(containingKleene.jjtGetChild(0), 
-							new PAATState.Builder(actionState).setDocumentProtect(false).setContextSet(predResult).setNumKleeneStarIterations(newNumKleeneStarIterations).setCurrentAction(newCurrentAction).buildSet());
 				}
-				if (this.openActions.contains(newCurrentAction)) this.freeMem(newNode,newCurrentAction);
 			}
-			return new OXPathType(result);
+		};
+		int numWorkers = Math.min(this.pool.size(), results.length);
+		Thread[] workers = new Thread[numWorkers];
+		for (int i = 0; i < numWorkers; i++) {
+			workers[i] = new Thread(worker, "oxpath-branch-" + i);
+			workers[i].start();
+		}
+		try {
+			for (Thread w : workers) w.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OXPathException("Interrupted while waiting for parallel action branches");
+		}
+		if (failure[0] instanceof OXPathException) throw (OXPathException)failure[0];
+		if (failure[0] instanceof RuntimeException) throw (RuntimeException)failure[0];
+		if (failure[0] != null) throw new OXPathException("Error in parallel action branch: " + failure[0]);
+		OXPathNodeList result = new OXPathNodeList();
+		for (OXPathNodeList branchResult : results) {
+			if (branchResult != null) result.addAll(branchResult);
 		}
+		return result;
 	}
 
 	/**
@@ -360,6 +715,10 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		int positionCount = 1;
 		while (iteratorContext.hasNext()) {
 			OXPathContextNode c = iteratorContext.next();
+			if (this.skips(c)) {
+				positionCount++;
+				continue;
+			}
 			//position is i+1 because XPath counting begins at 1, not 0
 			PAATStateEvalSet predState = new PAATState.Builder(data).setPosition(positionCount).setLast(context.size()).setDocumentProtect((node.hasList()||iteratorContext.hasNext())?true:data.isDocumentProtected())
 			.setContextSet(new OXPathNodeList(new OXPathContextNode(c.getNode(),c.getLast(),c.getLast())))
@@ -376,12 +735,13 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		else if (!node.getSetBasedEval().equals(PositionFuncEnum.NEITHER)) return this.accept(node.jjtGetChild(1), new PAATState.Builder(data).setContextSet(result).buildSet());
 		else {
 			OXPathNodeList finalResult = new OXPathNodeList();
+			PAATStateFrame frame = new PAATStateFrame(data);
 			Iterator<OXPathContextNode> iteratorResult = result.iterator();
 			while (iteratorResult.hasNext()) {
 				OXPathContextNode r = iteratorResult.next();
 				//we need to account for the last in the set as this wasn't done in the step
-				PAATStateEvalIterative listState = new PAATState.Builder(data).setContextNode(r).setDocumentProtect((iteratorResult.hasNext())?true:data.isDocumentProtected()).buildNode();
-				finalResult.addAll(this.eval_visitor.eval_(r.getNode(), node.jjtGetChild(1), listState).nodeList());
+				boolean newProtect = (iteratorResult.hasNext())?true:data.isDocumentProtected();
+				finalResult.addAll(this.eval_visitor.eval_(r.getNode(), node.jjtGetChild(1), frame.set(r, newProtect)).nodeList());
 			}
 			return new OXPathType(finalResult);
 		}
@@ -407,6 +767,7 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		Iterator<OXPathContextNode> iteratorContext = contextSet.iterator();
 		while (iteratorContext.hasNext()) {
 			OXPathContextNode context = iteratorContext.next();
+			if (this.skips(context)) continue;
 			int numChild = 0;
 			int newLastSibling;
 			if (marker.isAttribute()) {
@@ -421,20 +782,26 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 			//new last has to be accounted for
 			newContext.add(new OXPathContextNode(context.getNode(),context.getParent(),newLastSibling));	
 		}
+		OXPathType result;
 		if (node.hasList()) {//if there are following simple parts of the expression
-			if (!node.getSetBasedEval().equals(PositionFuncEnum.NEITHER)) return this.accept(node.jjtGetChild((marker.isAttribute())?1:0), new PAATState.Builder(data).setContextSet(newContext).buildSet());
+			if (!node.getSetBasedEval().equals(PositionFuncEnum.NEITHER)) result = this.accept(node.jjtGetChild((marker.isAttribute())?1:0), new PAATState.Builder(data).setContextSet(newContext).buildSet());
 			else {//the positional predicate was in the attribute and we switch back to iterative evaluation
 				OXPathNodeList finalResult = new OXPathNodeList();
+				PAATStateFrame frame = new PAATStateFrame(data);
 				Iterator<OXPathContextNode> iteratorResult = newContext.iterator();
 				while (iteratorResult.hasNext()) {
 					OXPathContextNode newNode = iteratorResult.next();
-					PAATStateEvalIterative newState = new PAATState.Builder(data).setContextNode(newNode).setDocumentProtect((iteratorResult.hasNext())?true:data.isDocumentProtected()).buildNode();
-					finalResult.addAll(this.eval_visitor.eval_(newNode.getNode(), node.jjtGetChild((marker.isAttribute())?1:0), newState).nodeList());
+					boolean newProtect = (iteratorResult.hasNext())?true:data.isDocumentProtected();
+					finalResult.addAll(this.eval_visitor.eval_(newNode.getNode(), node.jjtGetChild((marker.isAttribute())?1:0), frame.set(newNode, newProtect)).nodeList());
+					this.closeRecord(node, newNode.getLast());
 				}
 				return new OXPathType(finalResult);
 			}
 		}
-		else return new OXPathType(newContext);
+		else result = new OXPathType(newContext);
+		//the rest of the path is evaluated on the whole set, so its nodes are complete together
+		for (OXPathContextNode newNode : newContext) this.closeRecord(node, newNode.getLast());
+		return result;
 	}
 
 	/**
@@ -519,12 +886,12 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		if (node.hasSimpleList()) {
 			simpleResult = new OXPathNodeList();
 			int astSimple = numChild++;
+			PAATStateFrame frame = new PAATStateFrame(data);
 			Iterator<OXPathContextNode> iterator = context.iterator();
 			while (iterator.hasNext()) {
 				OXPathContextNode c = iterator.next();
 				boolean newProtect = (iterator.hasNext())?true:data.isDocumentProtected();
-				PAATStateEvalIterative newState = new PAATState.Builder(data).setContextNode(c).setDocumentProtect(newProtect).buildNode();
-				simpleResult.addAll(this.eval_visitor.eval_(c.getNode(), node.jjtGetChild(astSimple), newState).nodeList());
+				simpleResult.addAll(this.eval_visitor.eval_(c.getNode(), node.jjtGetChild(astSimple), frame.set(c, newProtect)).nodeList());
 			}
 		}
 		else simpleResult = context;
@@ -538,10 +905,10 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 	}
 
 	/**
-	 * In order to trigger the proxy override via reflection (which doesn't happen with internal calls),
+	 * In order to apply memoization (which doesn't happen with internal calls),
 	 * this method is used whenever eval_ needs to be called (for either PAAT visitor).   
 	 * @param context the context node (this is redundant info - already encoded in state - but allows 
-	 * the proxy to cache the values in such a way that they can be cleared by page.
+	 * the memo store to cache the values in such a way that they can be cleared by page.
 	 * @param astNode the node in the AST where we are at for evaluation
 	 * @param state the EvalState at this point
 	 * @return the output of eval_ at this point
@@ -566,33 +933,19 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 			if (action.getActionType().equals(ActionType.URL)) {
 				this.webclient.navigate((String)action.getValue(),true);
 				DOMNode newRoot = this.webclient.getContentDOMWindow().getDocument().getDocumentElement();
+				if (this.pool != null) this.trails.put(newRoot.getOwnerDocument(), ActionTrail.start((String)action.getValue()));
 				return new OXPathContextNode(newRoot,contextNode.getParent(),contextNode.getLast());
 			}
 			DOMElement context = (DOMElement)contextNode.getNode();
 			int parentExtract = contextNode.getParent();
 			int lastExtract = contextNode.getLast();
 			DOMElement page = context.getOwnerDocument().getDocumentElement();
-			FieldTypes ft = ActionEngine.getFieldType(context);
-			DOMElement newPage;
-			switch (action.getActionType()) {
-			case POSITION :
-				newPage = ActionEngine.takeAction(context, ft, (Integer)action.getValue());
-				break;
-			case EXPLICIT :
-				newPage = ActionEngine.takeAction(context, ft, (String)action.getValue());
-				break;
-			case KEYWORD :
-				newPage = ActionEngine.takeAction(context, ft, (ActionKeywords)action.getValue());
-				break;
-			default://in case we have an ungrounded variable action
-				newPage = page;
-			}
+			ActionTrail trail = (this.pool == null)?null:this.trails.get(page.getOwnerDocument());
+			NodeReference reference = (trail == null)?null:this.domlookup.getNodeReferences(new OXPathNodeList(contextNode)).get(0);
+			DOMElement newPage = performAction(context, action, this.settler);
 			this.openActions.add(++this.currentAction);
-			if (action.hasWait()) {
-				long current = System.nanoTime();
-				while (System.nanoTime() - current < action.getWait()*1E9) {}//waits are in seconds
-			}
 			DOMDocument newDocument = newPage.getOwnerDocument();
+			if (trail != null) this.trails.put(newDocument, trail.append(reference, action));
 			DOMWindow newWindow = newDocument.getEnclosingWindow();
 			WebBrowser newBrowser = newWindow.getBrowser();
 			if (newWindow.isJustOpened()) {
@@ -617,6 +970,35 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		}
 	}
 
+	/**
+	 * Takes a (non-URL) action on the element and waits for the page to settle, for at most any wait specified with the action
+	 * @param context element to take the action on
+	 * @param action action to perform
+	 * @param settler how to wait for the page to settle
+	 * @return the document element of the page after the action
+	 * @throws IOException in case of browser error
+	 * @throws OXPathException in case the action can't be taken on the element
+	 */
+	static DOMElement performAction(DOMElement context, Action action, PageSettler settler) throws IOException, OXPathException {
+		FieldTypes ft = ActionEngine.getFieldType(context);
+		DOMElement newPage;
+		switch (action.getActionType()) {
+		case POSITION :
+			newPage = ActionEngine.takeAction(context, ft, (Integer)action.getValue());
+			break;
+		case EXPLICIT :
+			newPage = ActionEngine.takeAction(context, ft, (String)action.getValue());
+			break;
+		case KEYWORD :
+			newPage = ActionEngine.takeAction(context, ft, (ActionKeywords)action.getValue());
+			break;
+		default://in case we have an ungrounded variable action
+			newPage = context.getOwnerDocument().getDocumentElement();
+		}
+		settler.settle(newPage, (action.hasWait())?action.getWait():-1);//waits are in seconds
+		return newPage;
+	}
+
 	/**
 	 * Clears local object memory associated with the page
 	 * @param page the page to clear memory from local data structures
@@ -625,6 +1007,9 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 	private void clearObjectMem(DOMDocument page, int actionID) {
 		this.eval_visitor.clear(page);
 		this.extractor.clear(page);
+		OXPathDocumentOrder.clear(page);
+		OXPathExpressionCache.clear(page);
+		this.trails.remove(page);
 		this.openActions.remove(actionID);
 	}
 
@@ -645,7 +1030,10 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 			}
 			else {
 				this.backController.remove(currentBrowser);
-				page.getEnclosingWindow().close();
+				//prefix results survive walking back, as the page may be returned to unchanged, but not the page being closed
+				this.afpMemo.clear(page);
+				//the window of a leased browser goes back to the pool instead
+				if (!currentBrowser.equals(this.leased)) page.getEnclosingWindow().close();
 			}
 		} catch (NullPointerException e) {
 			logger.debug("Trying to close a window that was already closed!");
@@ -676,6 +1064,14 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 		this.extractor.endExtraction();
 	}
 
+	/**
+	 * Abandons the output of a failed evaluation, so an output writer running on a thread of its own stops and drops the output 
+	 * (in memory or spilled to disk) it still holds
+	 */
+	private void abortWalk() {
+		if (this.async != null) this.async.abort();
+	}
+
 	/**
 	 * {@code PAATEval_Visitor} for calls of eval_ as dictated by PAAT
 	 */
@@ -708,7 +1104,12 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 	/**
 	 * (Currently) global object facilitating DOM node refreshes (after back instantiations)
 	 */
-	private DOMLookup domlookup = new DOMLookupDocumentPosition();
+	private DOMLookup domlookup = new DOMLookupElementIndex();
+	
+	/**
+	 * Results of action-free prefixes per rendered page, for finding the context node again after relative actions
+	 */
+	private final ActionFreePrefixMemo afpMemo = new ActionFreePrefixMemo();
 	
 	/**
 	 * Holds currently "open" actions, so we know if the freeMem() call at the end of an action sequence is necessary
@@ -719,4 +1120,61 @@ public class PAATEvalVisitor extends OXPathVisitorGenericAdaptor<PAATStateEvalSe
 	 * Counter for actions (serves as a unique id for open actions in the {@code openActions} set
 	 */
 	private int currentAction = 0;
+
+	/**
+	 * browsers for evaluating action branches in parallel, or {@code null} if branches are evaluated sequentially
+	 */
+	private OXPathBrowserPool pool = null;
+
+	/**
+	 * Trails of the open pages, so a parallel branch can reproduce its context page (only recorded if {@code pool} is set)
+	 */
+	private Map<DOMDocument,ActionTrail> trails = new HashMap<DOMDocument,ActionTrail>();
+
+	/**
+	 * {@code true} if paths that distribute over their context set are evaluated in chunks
+	 */
+	private boolean streaming = false;
+
+	/**
+	 * {@code true} if complete extraction nodes are signalled during the evaluation
+	 */
+	private boolean recordClosing = false;
+
+	/**
+	 * Writes the output; wrapped by {@code async}, or else by {@code limiter}
+	 */
+	private final OXPathExtractor output;
+
+	/**
+	 * Writes the output on a thread of its own, wrapping {@code output} and wrapped by {@code limiter}; {@code null} if the output 
+	 * is written synchronously
+	 */
+	private final AsyncExtractor async;
+
+	/**
+	 * Enforces the record limit; wrapped by {@code extractor}
+	 */
+	private final RecordLimitExtractor limiter;
+
+	/**
+	 * Set by {@code stop()}; shared with the visitors of parallel branches
+	 */
+	private final AtomicBoolean stopSignal;
+
+	/**
+	 * Number of nodes passed on at once when streaming
+	 */
+	public static final int STREAMCHUNK = 16;
+
+	/**
+	 * browser leased from the pool by a parallel branch (never closed by this visitor), or {@code null} for the visitor of the
+	 * whole expression
+	 */
+	private final WebBrowser leased;
+
+	/**
+	 * how the visitor waits for pages to settle after actions
+	 */
+	private volatile PageSettler settler = PageSettler.DEFAULT;
 }
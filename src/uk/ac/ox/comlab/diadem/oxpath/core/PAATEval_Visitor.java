@@ -37,6 +37,7 @@ import uk.ac.ox.comlab.diadem.oxpath.core.extraction.Extractor;
 import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATState;
 import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATStateEvalIterative;
 import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATStateEvalSet;
+import uk.ac.ox.comlab.diadem.oxpath.core.state.PAATStateFrame;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathNodeList;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathType;
@@ -64,7 +65,7 @@ import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
 /**
  * 
  * Visitor encoding the eval_ function of the PAAT algorithm.  Called by the 
- * PAATEvalVisitor, but wrapped in a dynamic proxy of a {PAATEval_Wrapper} object.
+ * PAATEvalVisitor, but wrapped in a {@code MemoizedPAATEval_} object.
  * @author AndrewJSel
  *
  */
@@ -129,6 +130,9 @@ public class PAATEval_Visitor extends OXPathVisitorGenericAdaptor<PAATStateEvalI
 	@Override
 	public OXPathType visitNode(ASTSimpleOXPathStepPath node,
 			PAATStateEvalIterative data) throws OXPathException {
+		//collapse runs of plain XPath steps into a single browser call
+		FusedStepPath fused = FusedStepPath.forStepPath(node);
+		if (fused != null) return this.evaluateFused(fused, data);
 		//get the results by OXPath step first
 		OXPathType newContext = data.getContextNode().getByOXPath(node.getStep());
 		//immediately return if no results or no further path
@@ -136,14 +140,13 @@ public class PAATEval_Visitor extends OXPathVisitorGenericAdaptor<PAATStateEvalI
 		OXPathNodeList result = new OXPathNodeList();
 		//we apply PAAT eval_ as normal
 		if (node.getSetBasedEval().equals(PositionFuncEnum.NEITHER)) {
+			PAATStateFrame frame = new PAATStateFrame(data);
 			Iterator<OXPathContextNode> iterator = newContext.nodeList().iterator();
 			while (iterator.hasNext()) {
 				OXPathContextNode c = iterator.next();
 				boolean newProtect = (iterator.hasNext())?true:data.isDocumentProtected();
-				PAATStateEvalIterative newState = new PAATState.Builder(data).setContextNode(c)
-				.setDocumentProtect(newProtect).buildNode();
 				result.addAll(this.paatSet.eval_(c.getNode(), node.jjtGetChild(0), 
-						newState).nodeList());
+						frame.set(c, newProtect)).nodeList());
 			}
 		}
 		//otherwise, we take a set based approach
@@ -156,6 +159,28 @@ public class PAATEval_Visitor extends OXPathVisitorGenericAdaptor<PAATStateEvalI
 		return new OXPathType(result);
 	}
 
+	/**
+	 * Evaluates a fused run of steps (see {@code FusedStepPath}) with one browser call, then applies eval_ to the remaining steps
+	 * for each result node
+	 * @param fused the fused run of steps
+	 * @param data state information at the first step of the run
+	 * @return the result of evaluation of the whole step path
+	 * @throws OXPathException in case of OXPath processing error
+	 */
+	private OXPathType evaluateFused(FusedStepPath fused, PAATStateEvalIterative data) throws OXPathException {
+		OXPathType newContext = data.getContextNode().getByXPath(fused.getXPath(), fused.isForward(), true);
+		if (newContext.nodeList().isEmpty() || !fused.hasTail()) return newContext;
+		OXPathNodeList result = new OXPathNodeList();
+		PAATStateFrame frame = new PAATStateFrame(data);
+		Iterator<OXPathContextNode> iterator = newContext.nodeList().iterator();
+		while (iterator.hasNext()) {
+			OXPathContextNode c = iterator.next();
+			boolean newProtect = (iterator.hasNext())?true:data.isDocumentProtected();
+			result.addAll(this.paatSet.eval_(c.getNode(), fused.getTail(), frame.set(c, newProtect)).nodeList());
+		}
+		return new OXPathType(result);
+	}
+
 	/**
 	 * Computes the values for the AST at this given state as dictated by eval_ in PAAT
 	 * @param node the AST node upon which evaluation occurs
@@ -250,6 +275,7 @@ public class PAATEval_Visitor extends OXPathVisitorGenericAdaptor<PAATStateEvalI
 			if (node.hasList()) return this.paatSet.eval_(context.getNode(), node.jjtGetChild((marker.isAttribute())?1:0), data);
 			else return new OXPathType(context);
 		}
+		if (this.paatSet.skips(context)) return OXPathType.EMPTYRESULT;//the record limit was reached or the evaluation stopped
 		int numChild = 0;
 		int newLastSibling;
 		if (marker.isAttribute()) {
@@ -263,11 +289,14 @@ public class PAATEval_Visitor extends OXPathVisitorGenericAdaptor<PAATStateEvalI
 		}
 		//new last has to be accounted for
 		OXPathContextNode newContext = new OXPathContextNode(context.getNode(),context.getParent(),newLastSibling);
+		OXPathType result;
 		if (node.hasList()) {
 			PAATStateEvalIterative newState = new PAATState.Builder(data).setContextNode(newContext).buildNode();
-			return this.paatSet.eval_(newContext.getNode(), node.jjtGetChild(numChild++), newState);
+			result = this.paatSet.eval_(newContext.getNode(), node.jjtGetChild(numChild++), newState);
 		}
-		else return new OXPathType(newContext);
+		else result = new OXPathType(newContext);
+		this.paatSet.closeRecord(node, newLastSibling);
+		return result;
 	}
 
 	/**
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.util.ArrayList;
+
+import diadem.common.web.WebBrowser;
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNode;
+import uk.ac.ox.comlab.diadem.oxpath.core.domlookup.DOMLookup;
+import uk.ac.ox.comlab.diadem.oxpath.core.domlookup.NodeReference;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathNodeList;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+
+/**
+ * Snapshot of a protected page, taken before PAAT takes an action on each node of a context set, for getting the context nodes
+ * back once the browser has returned to the page.  The snapshot keeps the live document and its nodes, as well as a
+ * {@code NodeReference} to each node.  When the browser returns to the very document of the snapshot (as browsers keeping 
+ * recent pages in memory do on {@code back()}), the nodes are still valid and are restored as they are, so the page costs no
+ * lookup.  Only when the page was rendered anew are the nodes looked up through their references.
+ * @author AndrewJSel
+ *
+ */
+final class PageSnapshot {
+
+	/**
+	 * Takes the snapshot of the page of the context set
+	 * @param iContext the context set, all on the same page
+	 * @param domlookup the lookup creating the references to the nodes
+	 * @throws OXPathException in case of browser error
+	 */
+	PageSnapshot(OXPathNodeList iContext, DOMLookup domlookup) throws OXPathException {
+		this.nodes = iContext.toArray(new OXPathContextNode[iContext.size()]);
+		this.references = domlookup.getNodeReferences(iContext);
+		//the notional context (of URL actions) belongs to no page
+		DOMNode first = (this.nodes.length == 0 || this.nodes[0].equals(OXPathContextNode.getNotionalContext()))?null:this.nodes[0].getNode();
+		this.document = (first instanceof DOMDocument)?(DOMDocument) first:((first == null)?null:first.getOwnerDocument());
+	}
+
+	/**
+	 * Returns the context node at {@code position} on the page the browser currently shows
+	 * @param position the position of the node in the context set
+	 * @param browser the browser that returned to the page
+	 * @return the node, as it was if the document is the one of the snapshot, otherwise as rendered in the current document
+	 */
+	OXPathContextNode restore(int position, WebBrowser browser) {
+		DOMDocument current = browser.getContentDOMWindow().getDocument();
+		if (this.document != null && this.document.equals(current)) return this.nodes[position];
+		return this.references.get(position).getRenderedNode(current);
+	}
+
+	/**
+	 * Returns the references to the context nodes, for reproducing them in another browser
+	 * @return the references to the context nodes, in the order of the context set
+	 */
+	ArrayList<NodeReference> getReferences() {
+		return this.references;
+	}
+
+	/**
+	 * the document of the context set when the snapshot was taken
+	 */
+	private final DOMDocument document;
+	/**
+	 * the context nodes, in the order of the context set
+	 */
+	private final OXPathContextNode[] nodes;
+	/**
+	 * the references to the context nodes, in the order of the context set
+	 */
+	private final ArrayList<NodeReference> references;
+}
@@ -29,6 +29,10 @@
  */
 package uk.ac.ox.comlab.diadem.oxpath.core;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
 import uk.ac.ox.comlab.diadem.oxpath.model.language.functions.XPathFunctions;
 import uk.ac.ox.comlab.diadem.oxpath.parser.OXPathParser;
 import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTBinaryOpExpr;
@@ -104,6 +108,21 @@ import static uk.ac.ox.comlab.diadem.oxpath.core.PositionFuncEnum.NEITHER;
  */
 public class PrePAATVisitor extends OXPathVisitorGenericAdaptor<Node, PositionFuncEnum> {
 
+	/**
+	 * Decorates the AST rooted at {@code node}, unless it has already been decorated.  Decoration only depends on the AST, so 
+	 * repeated evaluations of the same tree (e.g. through {@code PreparedOXPath}) share the annotations made on the first call
+	 * and never write to the tree again; this makes a decorated tree safe to evaluate from multiple threads.
+	 * @param node root of the AST to decorate
+	 * @throws OXPathException in case of malformed AST
+	 */
+	public static void decorate(ASTExpression node) throws OXPathException {
+		synchronized (decorated) {
+			if (decorated.contains(node)) return;
+			new PrePAATVisitor().accept(node, null);
+			decorated.add(node);
+		}
+	}
+
 	/**
 	 * Applies PrePAAT to this node in the AST
 	 * @param node the node on which to apply PrePAAT
@@ -375,4 +394,9 @@ public class PrePAATVisitor extends OXPathVisitorGenericAdaptor<Node, PositionFu
 		if (node.hasComplexList()) this.accept(node.jjtGetChild(numChild++),data);	
 		return result;
 	}
+
+	/**
+	 * roots of the ASTs already decorated; weakly held, so trees that are no longer used can be collected 
+	 */
+	private static final Set<ASTExpression> decorated = Collections.newSetFromMap(new WeakHashMap<ASTExpression,Boolean>());
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.slf4j.Logger;
+import org.w3c.dom.DOMException;
+import org.xml.sax.SAXException;
+
+import diadem.common.web.WebBrowser;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathType;
+import uk.ac.ox.comlab.diadem.oxpath.parser.OXPathParser;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTExpression;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+
+/**
+ * A compiled OXPath expression: the expression is parsed and decorated by {@code PrePAATVisitor} once, on construction, and the
+ * resulting AST is never modified afterwards.  Instances are therefore immutable and may be evaluated any number of times, 
+ * concurrently from multiple threads (each evaluation uses its own {@code PAATEvalVisitor}, browser and output stream).
+ * <p>
+ * Use {@code compile(expression)} to obtain instances through the shared plan cache (see {@code OXPathPlanCache}), so wrappers 
+ * that are run repeatedly are only parsed once.
+ * @author AndrewJSel
+ *
+ */
+public final class PreparedOXPath {
+
+	/**
+	 * Returns the compiled form of the expression, reusing a cached plan for the same expression text if available
+	 * @param expression OXPath expression as a <tt>String</tt> object
+	 * @return the compiled expression
+	 * @throws OXPathException in case of parser exception or malformed AST
+	 */
+	public static PreparedOXPath compile(String expression) throws OXPathException {
+		return OXPathPlanCache.getInstance().get(expression);
+	}
+
+	/**
+	 * Compiles the expression without consulting the plan cache
+	 * @param expression OXPath expression as a <tt>String</tt> object
+	 * @return the compiled expression
+	 * @throws OXPathException in case of parser exception or malformed AST
+	 */
+	public static PreparedOXPath prepare(String expression) throws OXPathException {
+		return new PreparedOXPath(expression, OXPathParser.getJJTreeFromString(expression));
+	}
+
+	/**
+	 * Constructor for the compiled expression; the parsed tree is decorated here so the tree is complete before the object is published
+	 * @param iExpression text of the expression
+	 * @param iRoot root of the AST parsed from {@code iExpression}
+	 * @throws OXPathException in case of malformed AST
+	 */
+	private PreparedOXPath(String iExpression, Node iRoot) throws OXPathException {
+		if (!(iRoot instanceof ASTExpression)) throw new OXPathException("Parser returned unexpected root " + iRoot.getClass() + " for expression " + iExpression);
+		PrePAATVisitor.decorate((ASTExpression) iRoot);
+		this.expression = iExpression;
+		this.root = (ASTExpression) iRoot;
+	}
+
+	/**
+	 * Evaluates the compiled expression.  Equivalent to {@code OXPathNavigator.evaluateOXPathQuery} without reparsing.
+	 * @param browser web browsing engine for expression evaluation
+	 * @param logger the logger object for the process
+	 * @param os output stream to send the extraction nodes
+	 * @return the result of the expression
+	 * @throws ParserConfigurationException in case parser configuration error
+	 * @throws DOMException in case of XML Document exception 
+	 * @throws OXPathException in case of AST structure exception
+	 * @throws IOException in case of malformed xml
+	 * @throws SAXException in case of malformed xml
+	 */
+	public OXPathType evaluate(WebBrowser browser, Logger logger, ObjectOutputStream os) throws ParserConfigurationException, DOMException, OXPathException, SAXException, IOException {
+		return OXPathNavigator.evaluateOXPathQuery(this.root, browser, logger, os);
+	}
+
+	/**
+	 * Evaluates the compiled expression on a browser leased from {@code pool} for the evaluation
+	 * @param pool the warm browsers to lease from
+	 * @param logger the logger object for the process
+	 * @param os output stream to send the extraction nodes
+	 * @return the result of the expression
+	 * @throws ParserConfigurationException in case parser configuration error
+	 * @throws DOMException in case of XML Document exception 
+	 * @throws OXPathException in case of AST structure exception, or if interrupted while waiting for a browser
+	 * @throws IOException in case of malformed xml
+	 * @throws SAXException in case of malformed xml
+	 */
+	public OXPathType evaluate(OXPathBrowserPool pool, Logger logger, ObjectOutputStream os) throws ParserConfigurationException, DOMException, OXPathException, SAXException, IOException {
+		return OXPathNavigator.evaluateOXPathQuery(this.root, pool, logger, os);
+	}
+
+	/**
+	 * Evaluates the compiled expression, evaluating the branches of actions in parallel on the browsers of {@code pool}
+	 * @param browser web browsing engine for expression evaluation
+	 * @param pool the browsers for evaluating action branches
+	 * @param logger the logger object for the process
+	 * @param os output stream to send the extraction nodes
+	 * @return the result of the expression
+	 * @throws OXPathException in case of AST structure exception
+	 */
+	public OXPathType evaluate(WebBrowser browser, OXPathBrowserPool pool, Logger logger, ObjectOutputStream os) throws OXPathException {
+		return OXPathNavigator.evaluateOXPathQuery(this.root, browser, pool, logger, os);
+	}
+
+	/**
+	 * Returns the text of the expression
+	 * @return the text of the expression
+	 */
+	public String getExpression() {
+		return this.expression;
+	}
+
+	@Override
+	public String toString() {
+		return (this.getClass() + "[" + this.expression + "]");
+	}
+
+	/**
+	 * text of the expression
+	 */
+	private final String expression;
+	/**
+	 * root of the decorated AST; read-only after construction
+	 */
+	private final ASTExpression root;
+}
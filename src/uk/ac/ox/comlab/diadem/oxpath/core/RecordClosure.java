@@ -0,0 +1,131 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathExtractionMarker;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathKleeneStarPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathFunctionCall;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathPredicate;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
+
+/**
+ * Decides whether the extraction nodes of a marker are complete once PAAT has evaluated the marker, so PAAT can signal them as
+ * closed (see {@code PAATEvalVisitor.setRecordClosing}).  An extraction node gains children only through context nodes carrying
+ * its identifier, and those are created by the marker and passed on to the rest of the path.  The marker's own continuation is
+ * evaluated within the marker, but the context nodes it returns may still reach further markers: later parts of an enclosing
+ * path, the following path or the next iteration of an enclosing Kleene star.  They can't once they are turned into a value, by
+ * an enclosing predicate, function call or marker value.
+ * <p>
+ * So walking up from the marker, the marker closes its nodes if a value is reached before any ancestor that evaluates a
+ * marker after the branch holding the marker, or the root is reached.  Kleene stars evaluate their path again on its results,
+ * so a marker inside the path of a Kleene star doesn't close.  Results are cached per AST node, as the AST is immutable once
+ * decorated.
+ * @author AndrewJSel
+ *
+ */
+public class RecordClosure {
+
+	/**
+	 * Not instantiated
+	 */
+	private RecordClosure() {}
+
+	/**
+	 * Returns {@code true} if the extraction nodes of the marker are complete once PAAT has evaluated the marker on them
+	 * @param marker the marker
+	 * @return {@code true} if the extraction nodes of the marker are complete once PAAT has evaluated the marker on them,
+	 * {@code false} otherwise
+	 */
+	public static boolean closesAtMarker(ASTOXPathExtractionMarker marker) {
+		synchronized (closes) {
+			Boolean result = closes.get(marker);
+			if (result == null) {
+				result = decide(marker);
+				closes.put(marker, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Decides the marker, walking up the AST
+	 * @param marker the marker
+	 * @return {@code true} if the extraction nodes of the marker are complete once PAAT has evaluated the marker on them
+	 */
+	private static boolean decide(ASTOXPathExtractionMarker marker) {
+		Node branch = marker;
+		for (Node ancestor = marker.jjtGetParent(); ancestor != null; ancestor = ancestor.jjtGetParent()) {
+			int index = indexOf(ancestor, branch);
+			if (ancestor instanceof ASTXPathPredicate && index == 0) return true;
+			if (ancestor instanceof ASTXPathFunctionCall) return true;
+			if (ancestor instanceof ASTOXPathExtractionMarker && index == 0 && ((ASTOXPathExtractionMarker) ancestor).getExtractionMarker().isAttribute()) return true;
+			if (ancestor instanceof ASTOXPathKleeneStarPath && index == 0) return false;
+			for (int i = index + 1; i < ancestor.jjtGetNumChildren(); i++) {
+				if (hasMarker(ancestor.jjtGetChild(i))) return false;
+			}
+			branch = ancestor;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the position of the child among the children of the parent
+	 * @param parent the parent
+	 * @param child the child
+	 * @return the position of the child among the children of the parent, or -1 if it isn't a child
+	 */
+	private static int indexOf(Node parent, Node child) {
+		for (int i = 0; i < parent.jjtGetNumChildren(); i++) {
+			if (parent.jjtGetChild(i) == child) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns {@code true} if the subtree contains an extraction marker
+	 * @param node root of the subtree
+	 * @return {@code true} if the subtree contains an extraction marker, {@code false} otherwise
+	 */
+	private static boolean hasMarker(Node node) {
+		if (node instanceof ASTOXPathExtractionMarker) return true;
+		for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+			if (hasMarker(node.jjtGetChild(i))) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * decisions of the markers seen so far
+	 */
+	private static final Map<Node,Boolean> closes = new WeakHashMap<Node,Boolean>();
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import uk.ac.ox.comlab.diadem.oxpath.parser.OXPathParser;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTBinaryOpExpr;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTExpression;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathActionPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathExtractionMarker;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathKleeneStarPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathNodeTestOp;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTRelativeOXPathLocationPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTSimpleOXPathStepPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathFunctionCall;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathLiteral;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathNumber;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathPathExpr;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathPredicate;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathPrimaryExpr;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathUnaryExpr;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.SimpleNode;
+import uk.ac.ox.comlab.diadem.oxpath.parser.visitor.OXPathVisitorGenericAdaptor;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+
+/**
+ * Visitor deciding whether a path evaluated by the set-based PAAT visitor distributes over its context set, i.e., whether 
+ * evaluating it on a set gives the union of evaluating it on parts of the set.  PAAT streams such paths: rather than building
+ * the whole intermediate set before continuing, it passes the set on in small chunks as they are produced (see 
+ * {@code PAATEvalVisitor.setStreaming}).
+ * <p>
+ * A path doesn't distribute if it needs the whole set: predicates PrePAAT marked as needing <tt>position()</tt> or 
+ * <tt>last()</tt>, node test operators, absolute paths (which take the document of the first node), actions that find their 
+ * node again through the action free prefix (by its position in the set), and Kleene stars over actions.  Anything not 
+ * recognized as distributive is treated as not distributive.  Results are cached per AST node, as the AST is immutable once 
+ * decorated.
+ * @author AndrewJSel
+ *
+ */
+public class StreamabilityVisitor extends OXPathVisitorGenericAdaptor<Object, Boolean> {
+
+	/**
+	 * Returns {@code true} if the path rooted at {@code node} distributes over its context set
+	 * @param node root of the path, as passed to the set-based PAAT visitor
+	 * @return {@code true} if the path distributes over its context set, {@code false} otherwise
+	 * @throws OXPathException in case of malformed AST
+	 */
+	public static boolean isStreamable(Node node) throws OXPathException {
+		synchronized (streamable) {
+			Boolean result = streamable.get(node);
+			if (result == null) {
+				result = new StreamabilityVisitor().accept(node, null);
+				streamable.put(node, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Not expected in the AST
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(SimpleNode node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * Decides the path rooted at {@code node}
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code true} if the path distributes over its context set
+	 */
+	@Override
+	public Boolean visitNode(ASTExpression node, Object data) throws OXPathException {
+		return this.accept(node.jjtGetChild(0), null);
+	}
+
+	/**
+	 * Decides the path rooted at {@code node}; the simple part is evaluated node by node, so only the complex part matters
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code true} if the path distributes over its context set
+	 */
+	@Override
+	public Boolean visitNode(ASTRelativeOXPathLocationPath node, Object data) throws OXPathException {
+		if (node.isAbsolutePath()) return false;
+		if (!node.hasComplexPath()) return true;
+		return this.accept(node.jjtGetChild((node.hasSimplePath())?1:0), null);
+	}
+
+	/**
+	 * Decides the path rooted at {@code node}; simple step paths are evaluated node by node
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code true}
+	 */
+	@Override
+	public Boolean visitNode(ASTSimpleOXPathStepPath node, Object data) throws OXPathException {
+		return true;
+	}
+
+	/**
+	 * Decides the path rooted at {@code node}; Kleene stars over action-free paths distribute if their paths do
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code true} if the path distributes over its context set
+	 */
+	@Override
+	public Boolean visitNode(ASTOXPathKleeneStarPath node, Object data) throws OXPathException {
+		if (OXPathParser.hasActionOnMainPath(node.jjtGetChild(0))) return false;
+		if (!this.accept(node.jjtGetChild(0), null)) return false;
+		return (!node.hasFollowingPath() || this.accept(node.jjtGetChild(1), null));
+	}
+
+	/**
+	 * Decides the path rooted at {@code node}; only absolute actions outside Kleene stars distribute
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code true} if the path distributes over its context set
+	 */
+	@Override
+	public Boolean visitNode(ASTOXPathActionPath node, Object data) throws OXPathException {
+		if (!node.getAction().isAbsoluteAction() || node.isInsideKleeneStar()) return false;
+		return (!node.hasTail() || this.accept(node.jjtGetChild(0), null));
+	}
+
+	/**
+	 * Node test operators select over the whole set
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(ASTOXPathNodeTestOp node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * Not a path
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(ASTXPathLiteral node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * Set-based predicates depend on the position of each node in the set
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(ASTXPathPredicate node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * Decides the path rooted at {@code node}; markers extract node by node, so only a set-based continuation matters
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code true} if the path distributes over its context set
+	 */
+	@Override
+	public Boolean visitNode(ASTOXPathExtractionMarker node, Object data) throws OXPathException {
+		if (!node.hasList() || node.getSetBasedEval().equals(PositionFuncEnum.NEITHER)) return true;
+		return this.accept(node.jjtGetChild((node.getExtractionMarker().isAttribute())?1:0), null);
+	}
+
+	/**
+	 * Not a path
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(ASTBinaryOpExpr node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * Not a path
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(ASTXPathUnaryExpr node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * Not a path
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(ASTXPathPrimaryExpr node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * Not a path
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(ASTXPathNumber node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * Not a path
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(ASTXPathFunctionCall node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * Filter expressions are left to set-based evaluation
+	 * @param node root of the path
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean visitNode(ASTXPathPathExpr node, Object data) throws OXPathException {
+		return false;
+	}
+
+	/**
+	 * decisions of the paths seen so far
+	 */
+	private static final Map<Node,Boolean> streamable = new WeakHashMap<Node,Boolean>();
+}
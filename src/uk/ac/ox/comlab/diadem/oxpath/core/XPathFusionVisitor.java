@@ -0,0 +1,349 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core;
+
+import java.math.BigDecimal;
+import java.util.EnumSet;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.language.AxisType;
+import uk.ac.ox.comlab.diadem.oxpath.model.language.NodeTestType;
+import uk.ac.ox.comlab.diadem.oxpath.model.language.Step;
+import uk.ac.ox.comlab.diadem.oxpath.model.language.functions.XPathFunctions;
+import uk.ac.ox.comlab.diadem.oxpath.model.language.operators.EqualityExprOp;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTBinaryOpExpr;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTExpression;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathActionPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathExtractionMarker;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathKleeneStarPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTOXPathNodeTestOp;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTRelativeOXPathLocationPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTSimpleOXPathStepPath;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathFunctionCall;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathLiteral;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathNumber;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathPathExpr;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathPredicate;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathPrimaryExpr;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.ASTXPathUnaryExpr;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.Node;
+import uk.ac.ox.comlab.diadem.oxpath.parser.ast.SimpleNode;
+import uk.ac.ox.comlab.diadem.oxpath.parser.visitor.OXPathVisitorGenericAdaptor;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+import uk.ac.ox.comlab.diadem.oxpath.utils.PrintVisitor;
+
+/**
+ * Visitor that renders plain XPath subtrees of the AST as XPath 1.0 expressions the browser can evaluate directly.  Each visit 
+ * returns the rendered expression, or {@code null} if the subtree (or any of its descendants) uses OXPath-only features: actions,
+ * Kleene stars, extraction markers, node test operators, optional predicates, OXPath axes and node tests, and the OXPath 
+ * equality operators.  Absolute paths, filter expressions and the functions OXPath rejects or implements differently from XPath 
+ * ({@code UNFUSED}) are also left to PAAT, as OXPath resolves them differently from the browser.
+ * <p>
+ * Used by {@code FusedStepPath} to collapse chains of action-free steps into a single browser call.
+ * @author AndrewJSel
+ *
+ */
+public class XPathFusionVisitor extends OXPathVisitorGenericAdaptor<Object, String> {
+
+	/**
+	 * Renders the step as an XPath step, without predicates
+	 * @param step the step to render
+	 * @return the step as an XPath step, or {@code null} if the step uses an OXPath axis or node test
+	 */
+	public static String renderStep(Step step) {
+		if (step.getAxis().getType().equals(AxisType.OXPATH)) return null;
+		NodeTestType nodetest = step.getNodeTest().getType();
+		if (nodetest.equals(NodeTestType.OXPATH) || nodetest.equals(NodeTestType.PARAMETERIZEDPROCESSINGINSTUCTION)) return null;
+		return step.getAxis().getValue() + step.getNodeTest().getValue();
+	}
+
+	/**
+	 * Renders a string as an XPath literal
+	 * @param value value of the literal
+	 * @return the quoted literal, or {@code null} if the value contains both kinds of quotes (XPath 1.0 has no escapes)
+	 */
+	public static String renderLiteral(String value) {
+		if (value.indexOf('\'') < 0) return "'" + value + "'";
+		else if (value.indexOf('"') < 0) return "\"" + value + "\"";
+		else return null;
+	}
+
+	/**
+	 * Renders a number as an XPath number
+	 * @param value the number to render
+	 * @return the number in XPath syntax (which doesn't allow exponents), or {@code null} if not finite
+	 */
+	public static String renderNumber(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) return null;
+		if (value == Math.rint(value) && Math.abs(value) < MAXEXACTLONG) return Long.toString((long) value);
+		return BigDecimal.valueOf(value).toPlainString();
+	}
+
+	/**
+	 * Not expected in the AST
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code null}
+	 */
+	@Override
+	public String visitNode(SimpleNode node, Object data) throws OXPathException {
+		return null;
+	}
+
+	/**
+	 * Renders the subtree rooted at {@code node}
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath
+	 */
+	@Override
+	public String visitNode(ASTExpression node, Object data) throws OXPathException {
+		return this.accept(node.jjtGetChild(0), null);
+	}
+
+	/**
+	 * Renders the subtree rooted at {@code node}
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath
+	 */
+	@Override
+	public String visitNode(ASTRelativeOXPathLocationPath node, Object data) throws OXPathException {
+		if (node.isAbsolutePath() || node.hasComplexPath()) return null;
+		return this.accept(node.jjtGetChild(0), null);
+	}
+
+	/**
+	 * Renders the subtree rooted at {@code node}
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath
+	 */
+	@Override
+	public String visitNode(ASTSimpleOXPathStepPath node, Object data) throws OXPathException {
+		String step = renderStep(node.getStep());
+		if (step == null || !node.hasList()) return step;
+		return this.renderTail(step, node.jjtGetChild(0));
+	}
+
+	/**
+	 * Kleene stars are OXPath-only
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code null}
+	 */
+	@Override
+	public String visitNode(ASTOXPathKleeneStarPath node, Object data) throws OXPathException {
+		return null;
+	}
+
+	/**
+	 * Actions are OXPath-only
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code null}
+	 */
+	@Override
+	public String visitNode(ASTOXPathActionPath node, Object data) throws OXPathException {
+		return null;
+	}
+
+	/**
+	 * Node test operators are OXPath-only
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code null}
+	 */
+	@Override
+	public String visitNode(ASTOXPathNodeTestOp node, Object data) throws OXPathException {
+		return null;
+	}
+
+	/**
+	 * Renders the subtree rooted at {@code node}
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath
+	 */
+	@Override
+	public String visitNode(ASTXPathLiteral node, Object data) throws OXPathException {
+		return renderLiteral(node.getValue());
+	}
+
+	/**
+	 * Renders the predicate (and anything following it in the step list)
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath
+	 */
+	@Override
+	public String visitNode(ASTXPathPredicate node, Object data) throws OXPathException {
+		String predicate = this.renderPredicate(node);
+		if (predicate == null || !node.hasList()) return predicate;
+		return this.renderTail(predicate, node.jjtGetChild(1));
+	}
+
+	/**
+	 * Extraction markers are OXPath-only
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code null}
+	 */
+	@Override
+	public String visitNode(ASTOXPathExtractionMarker node, Object data) throws OXPathException {
+		return null;
+	}
+
+	/**
+	 * Renders the subtree rooted at {@code node}
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath
+	 */
+	@Override
+	public String visitNode(ASTBinaryOpExpr node, Object data) throws OXPathException {
+		if (node.getBinaryOperator().equals(EqualityExprOp.WORDTEST) || node.getBinaryOperator().equals(EqualityExprOp.CONTAINS)) return null;
+		String lhs = this.accept(node.jjtGetChild(0), null);
+		if (lhs == null) return null;
+		String rhs = this.accept(node.jjtGetChild(1), null);
+		if (rhs == null) return null;
+		return lhs + " " + node.getBinaryOperator().getOperator().trim() + " " + rhs;
+	}
+
+	/**
+	 * Renders the subtree rooted at {@code node}
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath
+	 */
+	@Override
+	public String visitNode(ASTXPathUnaryExpr node, Object data) throws OXPathException {
+		String operand = this.accept(node.jjtGetChild(0), null);
+		if (operand == null) return null;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < node.getNumberOperators(); i++) {
+			sb.append(node.getUnaryOperator().getOperator());
+			sb.append(" ");
+		}
+		sb.append(operand);
+		return sb.toString();
+	}
+
+	/**
+	 * Renders the subtree rooted at {@code node}
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath
+	 */
+	@Override
+	public String visitNode(ASTXPathPrimaryExpr node, Object data) throws OXPathException {
+		String result = this.accept(node.jjtGetChild(0), null);
+		return (result == null)?null:"(" + result + ")";
+	}
+
+	/**
+	 * Renders the subtree rooted at {@code node}
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath
+	 */
+	@Override
+	public String visitNode(ASTXPathNumber node, Object data) throws OXPathException {
+		return renderNumber(node.getValue());
+	}
+
+	/**
+	 * Renders the subtree rooted at {@code node}
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return the subtree as an XPath expression, or {@code null} if not expressible in XPath or if OXPath evaluates the function
+	 * itself ({@code UNFUSED})
+	 */
+	@Override
+	public String visitNode(ASTXPathFunctionCall node, Object data) throws OXPathException {
+		if (!(node.getFunction() instanceof XPathFunctions) || UNFUSED.contains(node.getFunction())) return null;
+		StringBuilder sb = new StringBuilder();
+		sb.append(node.getFunction().getName().toLowerCase());//XPath function names are lower case ("Boolean" in OXPath)
+		sb.append("(");
+		for (int i = 0; i < node.getNumParameters(); i++) {
+			String parameter = this.accept(node.jjtGetChild(i), null);
+			if (parameter == null) return null;
+			if (i > 0) sb.append(",");
+			sb.append(parameter);
+		}
+		sb.append(")");
+		return sb.toString();
+	}
+
+	/**
+	 * Filter expressions are left to PAAT
+	 * @param node the subtree root the visitor renders
+	 * @param data <i>not used in this visitor</i>
+	 * @return {@code null}
+	 */
+	@Override
+	public String visitNode(ASTXPathPathExpr node, Object data) throws OXPathException {
+		return null;
+	}
+
+	/**
+	 * Renders the predicate on its own, without anything following it in the step list
+	 * @param node the predicate to render
+	 * @return the predicate in XPath syntax, or {@code null} if not expressible in XPath
+	 * @throws OXPathException in case of malformed AST
+	 */
+	public String renderPredicate(ASTXPathPredicate node) throws OXPathException {
+		if (node.isOptional()) return null;
+		String expr = this.accept(node.jjtGetChild(0), null);
+		return (expr == null)?null:"[" + expr + "]";
+	}
+
+	/**
+	 * Appends the rendering of the step list {@code tail} to {@code head}
+	 * @param head rendering of the step or predicate the list belongs to
+	 * @param tail the step list
+	 * @return the concatenation, or {@code null} if {@code tail} is not expressible in XPath
+	 * @throws OXPathException in case of malformed AST
+	 */
+	private String renderTail(String head, Node tail) throws OXPathException {
+		String rest = this.accept(tail, null);
+		if (rest == null) return null;
+		return (tail instanceof ASTSimpleOXPathStepPath)?head + PrintVisitor.SLASH + rest:head + rest;
+	}
+
+	/**
+	 * Bound below which every integer valued {@code double} converts exactly to {@code long}
+	 */
+	private static final double MAXEXACTLONG = 1e15;
+	/**
+	 * Functions left to PAAT: <tt>id</tt>, which OXPath rejects (in favour of the <tt>#</tt> selector), and <tt>normalize-space</tt>
+	 * and <tt>translate</tt>, whose OXPath implementations differ from XPath's (trimming only, and replacing substrings)
+	 */
+	private static final EnumSet<XPathFunctions> UNFUSED = EnumSet.of(XPathFunctions.ID, XPathFunctions.NORMALIZESPACE, XPathFunctions.TRANSLATE);
+}
@@ -36,6 +36,7 @@ import java.util.ArrayList;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathNodeList;
 import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathExpressionCache;
 import diadem.common.web.dom.DOMDocument;
 import diadem.common.web.dom.DOMNode;
 import diadem.common.web.dom.xpath.DOMXPathEvaluator;
@@ -89,8 +90,7 @@ public class DOMLookupDocumentPosition implements DOMLookup {
 			}
 			else {
 				DOMNode domnode = node.getNode();
-				DOMXPathEvaluator xpathnode = domnode.getXPathEvaluator();
-				DOMXPathResult resultvalue = xpathnode.evaluate(STALEQUERY, domnode, xpathnode.createNSResolver(domnode.getOwnerDocument()), DOMXPathResult.ANY_TYPE, null);
+				DOMXPathResult resultvalue = OXPathExpressionCache.evaluate(STALEQUERY, domnode, DOMXPathResult.ANY_TYPE);
 				this.order = resultvalue.getNumberValue();
 				this.parent = node.getParent();
 				this.last = node.getLast();
@@ -104,6 +104,7 @@ public class DOMLookupDocumentPosition implements DOMLookup {
 		 */
 		public OXPathContextNode getRenderedNode(DOMDocument document) {
 			if (this.order==NOTIONALCONTEXTORDER) return OXPathContextNode.getNotionalContext();
+			//not cached, as each reference has its own query
 			DOMXPathEvaluator xpathFresh = document.getXPathEvaluator();
 			DOMXPathResult resultFresh = xpathFresh.evaluate(getFreshQuery(order), document, xpathFresh.createNSResolver(document), DOMXPathResult.ANY_TYPE, null);
 			DOMNode fresh = resultFresh.iterateNext();
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package supporting core OXPath functionality.  Contains the interface and implementation for 
+ * retrieving current DOM references from references on old DOMs (obtained when the DOM was 
+ * previously rendered before a {@code browser.back()} call.  
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core.domlookup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathNodeList;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathExpressionCache;
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMElement;
+import diadem.common.web.dom.DOMNode;
+import diadem.common.web.dom.xpath.DOMXPathResult;
+
+/**
+ * An implementation of the DOM lookup based on the document order of elements, as {@code DOMLookupDocumentPosition}, but 
+ * computed for a whole document at once.  The elements of a document are indexed with a single document-ordered snapshot, 
+ * giving each its ordinal (the same as {@code DOMLookupDocumentPosition.STALEQUERY}); references to a set of n nodes thus cost 
+ * one traversal of the document rather than n, and a fresh node is found by its ordinal in the index of the fresh document.
+ * <p>
+ * Each reference also keeps a structural fingerprint of its node: the path of tag names from the root and the values of the 
+ * key attributes (see {@code KEYATTRIBUTES}).  If the element at the ordinal of a reference doesn't match the fingerprint (the 
+ * rendered DOM has shifted, e.g. by content inserted on the fly), the document is indexed again, and if it still doesn't match, 
+ * the element with the same fingerprint closest to the ordinal is taken instead.  Without such an element the element at the 
+ * ordinal is returned, as by {@code DOMLookupDocumentPosition}.
+ * <p>
+ * Indexes of the {@code MAXINDEXES} documents used last are kept.  Nodes that aren't elements aren't indexed and are referenced
+ * by the query of {@code DOMLookupDocumentPosition}.
+ * @author AndrewJSel
+ *
+ */
+public class DOMLookupElementIndex implements DOMLookup {
+
+	/**
+	 * empty constructor
+	 */
+	public DOMLookupElementIndex() {
+
+	}
+
+	/**
+	 * Creates a list of references to nodes so that they can be found in a new document; the document of the nodes is indexed
+	 * anew, as it may have changed since it was last indexed
+	 * @param nodes the list of OXPathNodes
+	 * @return references to these nodes retrievable in a new document
+	 * @throws OXPathException in case of browser error (will carry the throwable cause)
+	 */
+	public ArrayList<NodeReference> getNodeReferences(OXPathNodeList nodes) throws OXPathException {
+		ArrayList<NodeReference> result = new ArrayList<NodeReference>(nodes.size());
+		Map<DOMDocument,ElementIndex> fresh = new HashMap<DOMDocument,ElementIndex>();
+		for (OXPathContextNode node : nodes) {
+			if (node.equals(OXPathContextNode.getNotionalContext())) {
+				result.add(new NodeReferenceElementIndex(node, NOTIONALCONTEXTORDER, null));
+				continue;
+			}
+			DOMNode domnode = node.getNode();
+			DOMDocument document = domnode.getOwnerDocument();
+			ElementIndex index = fresh.get(document);
+			if (index == null && document != null) {
+				index = new ElementIndex(document);
+				fresh.put(document, index);
+				this.putIndex(document, index);
+			}
+			Integer ordinal = (index == null)?null:index.ordinalOf(domnode);
+			if (ordinal == null) {
+				DOMXPathResult resultvalue = OXPathExpressionCache.evaluate(DOMLookupDocumentPosition.STALEQUERY, domnode, DOMXPathResult.ANY_TYPE);
+				result.add(new NodeReferenceElementIndex(node, (int) resultvalue.getNumberValue(), null));
+			}
+			else result.add(new NodeReferenceElementIndex(node, ordinal, fingerprint(domnode)));
+		}
+		return result;
+	}
+
+	/**
+	 * This DOMLookup versions of references
+	 * @author AndrewJSel
+	 *
+	 */
+	private class NodeReferenceElementIndex implements NodeReference {
+
+		/**
+		 * Creates a node reference
+		 * @param node node to reference
+		 * @param iOrder ordinal of the node among the elements of its document
+		 * @param iFingerprint fingerprint of the node, or {@code null} if the node isn't an indexed element
+		 */
+		public NodeReferenceElementIndex(OXPathContextNode node, int iOrder, String iFingerprint) {
+			this.order = iOrder;
+			this.fingerprint = iFingerprint;
+			this.parent = node.getParent();
+			this.last = node.getLast();
+		}
+
+		/**
+		 * Returns the rendered node from the current document based on the reference
+		 * @param document the document to find the fresh node
+		 * @return the rendered node from the current document based on the reference
+		 */
+		public OXPathContextNode getRenderedNode(DOMDocument document) {
+			if (this.order==NOTIONALCONTEXTORDER) return OXPathContextNode.getNotionalContext();
+			ElementIndex index = DOMLookupElementIndex.this.getIndex(document);
+			DOMNode fresh = index.elementAt(this.order);
+			if (this.fingerprint != null && (fresh == null || !this.fingerprint.equals(fingerprint(fresh)))) {
+				index = DOMLookupElementIndex.this.reindex(document, index);
+				fresh = index.elementAt(this.order);
+				if (fresh == null || !this.fingerprint.equals(fingerprint(fresh))) {
+					DOMNode matching = index.closestMatch(this.fingerprint, this.order);
+					if (matching != null) fresh = matching;
+				}
+			}
+			return new OXPathContextNode(fresh,this.parent,this.last);
+		}
+
+		/**
+		 * ordinal of node among the elements of its document
+		 */
+		private final int order;
+		/**
+		 * fingerprint of node, or {@code null} if it isn't an indexed element
+		 */
+		private final String fingerprint;
+		/**
+		 * parent of node
+		 */
+		private final int parent;
+		/**
+		 * last sibling of node
+		 */
+		private final int last;
+
+	}
+
+	/**
+	 * Ordinals of the elements of a document at the time it was indexed
+	 */
+	private static final class ElementIndex {
+
+		/**
+		 * Indexes the document
+		 * @param document the document to index
+		 */
+		ElementIndex(DOMDocument document) {
+			DOMXPathResult snapshot = OXPathExpressionCache.evaluate(ELEMENTQUERY, document, DOMXPathResult.ORDERED_NODE_SNAPSHOT_TYPE);
+			int length = (int) snapshot.getSnapshotLength();
+			this.elements = new DOMNode[length];
+			this.ordinals = new HashMap<DOMNode,Integer>(length * 4 / 3 + 1);
+			for (int i = 0; i < length; i++) {
+				this.elements[i] = snapshot.snapshotItem(i);
+				this.ordinals.put(this.elements[i], i);
+			}
+		}
+
+		/**
+		 * Returns the ordinal of the node
+		 * @param node the node
+		 * @return the ordinal of the node, or {@code null} if it isn't an indexed element
+		 */
+		Integer ordinalOf(DOMNode node) {
+			return this.ordinals.get(node);
+		}
+
+		/**
+		 * Returns the element at the ordinal
+		 * @param ordinal the ordinal
+		 * @return the element, or {@code null} if the document has fewer elements
+		 */
+		DOMNode elementAt(int ordinal) {
+			return (ordinal >= 0 && ordinal < this.elements.length)?this.elements[ordinal]:null;
+		}
+
+		/**
+		 * Returns the element with the fingerprint whose ordinal is closest to {@code ordinal}; the fingerprints of the document 
+		 * are computed on the first call
+		 * @param fingerprint the fingerprint
+		 * @param ordinal the ordinal the element is expected at
+		 * @return the matching element, or {@code null} if no element has the fingerprint
+		 */
+		synchronized DOMNode closestMatch(String fingerprint, int ordinal) {
+			if (this.byFingerprint == null) {
+				this.byFingerprint = new HashMap<String,List<Integer>>();
+				for (int i = 0; i < this.elements.length; i++) {
+					String key = fingerprint(this.elements[i]);
+					List<Integer> ordinalsOfKey = this.byFingerprint.get(key);
+					if (ordinalsOfKey == null) {
+						ordinalsOfKey = new ArrayList<Integer>(1);
+						this.byFingerprint.put(key, ordinalsOfKey);
+					}
+					ordinalsOfKey.add(i);
+				}
+			}
+			List<Integer> candidates = this.byFingerprint.get(fingerprint);
+			if (candidates == null) return null;
+			int best = candidates.get(0);
+			for (int candidate : candidates) {
+				if (Math.abs(candidate - ordinal) < Math.abs(best - ordinal)) best = candidate;
+			}
+			return this.elements[best];
+		}
+
+		/**
+		 * the elements, in document order
+		 */
+		private final DOMNode[] elements;
+		/**
+		 * the ordinals of the elements
+		 */
+		private final Map<DOMNode,Integer> ordinals;
+		/**
+		 * the ordinals of the elements by fingerprint, computed on demand
+		 */
+		private Map<String,List<Integer>> byFingerprint = null;
+		/**
+		 * {@code true} if the index was rebuilt after a fingerprint mismatch
+		 */
+		boolean rebuilt = false;
+	}
+
+	/**
+	 * Returns the index of the document, indexing it if necessary
+	 * @param document the document
+	 * @return the index of the document
+	 */
+	private synchronized ElementIndex getIndex(DOMDocument document) {
+		ElementIndex index = this.indexes.get(document);
+		if (index == null) {
+			index = new ElementIndex(document);
+			this.indexes.put(document, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Replaces the index of the document after a fingerprint mismatch, once per index; a rebuilt index is kept, so a DOM that 
+	 * has shifted costs one more traversal rather than one per node
+	 * @param document the document
+	 * @param stale the index that didn't match
+	 * @return the index to use
+	 */
+	private synchronized ElementIndex reindex(DOMDocument document, ElementIndex stale) {
+		ElementIndex current = this.indexes.get(document);
+		if (current != null && current != stale) return current;
+		if (stale.rebuilt) return stale;
+		ElementIndex index = new ElementIndex(document);
+		index.rebuilt = true;
+		this.indexes.put(document, index);
+		return index;
+	}
+
+	/**
+	 * Records the index of the document
+	 * @param document the document
+	 * @param index the index
+	 */
+	private synchronized void putIndex(DOMDocument document, ElementIndex index) {
+		this.indexes.put(document, index);
+	}
+
+	/**
+	 * Returns the structural fingerprint of an element: the tag names on its path from the root and its key attributes
+	 * @param node the element
+	 * @return the fingerprint of the element
+	 */
+	static String fingerprint(DOMNode node) {
+		StringBuilder path = new StringBuilder();
+		for (DOMNode step = node; step != null && !(step instanceof DOMDocument); step = step.getParentNode()) {
+			path.insert(0, step.getNodeName().toLowerCase()).insert(0, '/');
+		}
+		if (node instanceof DOMElement) {
+			DOMElement element = (DOMElement) node;
+			for (String attribute : KEYATTRIBUTES) {
+				String value = element.getAttribute(attribute);
+				if (value != null && value.length() > 0) path.append('[').append(attribute).append('=').append(value).append(']');
+			}
+		}
+		return path.toString();
+	}
+
+	/**
+	 * indexes of the documents used last, least recently used first
+	 */
+	private final Map<DOMDocument,ElementIndex> indexes = new LinkedHashMap<DOMDocument,ElementIndex>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<DOMDocument,ElementIndex> eldest) {
+			return (this.size() > MAXINDEXES);
+		}
+	};
+
+	/**
+	 * The notional context reference for this class
+	 */
+	private static final int NOTIONALCONTEXTORDER = -1;
+
+	/**
+	 * Maximum number of document indexes kept
+	 */
+	public static final int MAXINDEXES = 8;
+	/**
+	 * Query returning the elements of the document in document order
+	 */
+	public static final String ELEMENTQUERY = "descendant::*";
+	/**
+	 * Attributes of an element that are part of its fingerprint
+	 */
+	private static final String[] KEYATTRIBUTES = {"id", "name", "class", "type", "href"};
+
+}
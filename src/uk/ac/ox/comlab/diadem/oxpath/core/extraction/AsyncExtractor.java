@@ -0,0 +1,679 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core functionality for the extraction features of the OXPath engine
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core.extraction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNode;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathDocumentOrder;
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+
+/**
+ * Extractor decorator handing extractions and close signals to the wrapped extractor on a thread of its own, so a slow output
+ * sink doesn't stall the evaluation mid-page.  Identifiers are still assigned on the calling thread, in call order, so they can
+ * be used as parents straight away; the writer thread maps them to the identifiers returned by the wrapped extractor.  The
+ * context node isn't passed on (the wrapped extractor receives {@code null}), as DOM nodes may only be touched on the thread
+ * evaluating the page; if the wrapped extractor is an {@code OXPathExtractor} recording document order keys, the key of the
+ * context node is computed on the calling thread and handed over instead.
+ * <p>
+ * Events wait in a queue of bounded capacity.  Once it is full, the {@code OverflowPolicy} decides: the evaluation blocks until
+ * the writer catches up, the events are spilled to a temporary file (and replayed in order), or the extraction fails.
+ * {@code endExtraction()} waits for all events to be handed over; {@code abort()} abandons them after a failed evaluation.  Counters are available through {@code getStatistics()}.
+ * <p>
+ * Wrap the extractor writing the output, beneath the {@code RecordLimitExtractor}: the record limit must be decided when the
+ * record is extracted.
+ * @author AndrewJSel
+ *
+ */
+public class AsyncExtractor implements Extractor {
+
+	/**
+	 * What happens to an event arriving while the queue is full
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * the evaluation waits until the queue has room
+		 */
+		BLOCK,
+		/**
+		 * the event is written to a temporary file, and so are all following events until the writer has caught up
+		 */
+		SPILL,
+		/**
+		 * the extraction fails with an {@code OXPathException}
+		 */
+		FAIL
+	}
+
+	/**
+	 * Wraps the extractor, spilling (under {@code OverflowPolicy.SPILL}) to the default temporary directory
+	 * @param iExtractor the extractor writing the output
+	 * @param iCapacity the number of events held in memory
+	 * @param iPolicy what happens to an event arriving while the queue is full
+	 * @throws IllegalArgumentException if {@code iCapacity} isn't positive
+	 */
+	public AsyncExtractor(Extractor iExtractor, int iCapacity, OverflowPolicy iPolicy) {
+		this(iExtractor, iCapacity, iPolicy, null);
+	}
+
+	/**
+	 * Wraps the extractor
+	 * @param iExtractor the extractor writing the output
+	 * @param iCapacity the number of events held in memory
+	 * @param iPolicy what happens to an event arriving while the queue is full
+	 * @param iSpillDirectory the directory of the spill files, or {@code null} for the default temporary directory
+	 * @throws IllegalArgumentException if {@code iCapacity} isn't positive
+	 */
+	public AsyncExtractor(Extractor iExtractor, int iCapacity, OverflowPolicy iPolicy, File iSpillDirectory) {
+		if (iCapacity <= 0) throw new IllegalArgumentException("queue capacity must be positive: " + iCapacity);
+		this.extractor = iExtractor;
+		this.keyed = (iExtractor instanceof OXPathExtractor)?(OXPathExtractor) iExtractor:null;
+		this.capacity = iCapacity;
+		this.policy = iPolicy;
+		this.spillDirectory = iSpillDirectory;
+		this.queue = new ArrayDeque<Event>(Math.min(iCapacity, 1024));
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				AsyncExtractor.this.write();
+			}
+		}, "oxpath-async-extractor");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Queues the extraction of the node
+	 * @param context the context node in this label (not passed on)
+	 * @param label the label of this node in the extraction marker
+	 * @param parent the parent of the extraction node specified by <tt>(context,label)</tt>
+	 * @return a unique identifier for this extraction
+	 * @throws OXPathException in case the queue is full under {@code OverflowPolicy.FAIL}, or the writer failed
+	 */
+	@Override
+	public Integer extractNode(DOMNode context, String label, Integer parent) throws OXPathException {
+		return this.enqueue(new Event(EXTRACT, parent.intValue(), label, null, this.orderKey(context)));
+	}
+
+	/**
+	 * Queues the extraction of the node with its value
+	 * @param context the context node in this label (not passed on)
+	 * @param label the label of this node in the extraction marker
+	 * @param parent the parent of the extraction node specified by <tt>(context,label)</tt>
+	 * @param value the value associated with this extraction node
+	 * @return a unique identifier for this extraction
+	 * @throws OXPathException in case the queue is full under {@code OverflowPolicy.FAIL}, or the writer failed
+	 */
+	@Override
+	public Integer extractNode(DOMNode context, String label, Integer parent, String value) throws OXPathException {
+		return this.enqueue(new Event(EXTRACTVALUE, parent.intValue(), label, value, this.orderKey(context)));
+	}
+
+	/**
+	 * Queues the signal of the complete extraction node
+	 * @param id identifier of the complete extraction node
+	 * @throws OXPathException in case the queue is full under {@code OverflowPolicy.FAIL}, or the writer failed
+	 */
+	@Override
+	public void closeNode(Integer id) throws OXPathException {
+		Event event = new Event(CLOSE, 0, null, null, OXPathExtractionNode.UNORDERED);
+		event.id = id.intValue();
+		this.enqueue(event);
+	}
+
+	/**
+	 * Returns the document order key of the context node, if the wrapped extractor records them
+	 * @param context the context node
+	 * @return the document order key of the context node, or {@code OXPathExtractionNode.UNORDERED}
+	 */
+	private long orderKey(DOMNode context) {
+		return (this.keyed != null && this.keyed.isOrdering() && context != null)?OXPathDocumentOrder.getOrderKey(context):OXPathExtractionNode.UNORDERED;
+	}
+
+	/**
+	 * Waits until all queued events are handed over, then signals end of extraction to the wrapped extractor
+	 * @throws OXPathException in case the writer failed, or the wait is interrupted
+	 */
+	@Override
+	public void endExtraction() throws OXPathException {
+		synchronized (this.lock) {
+			this.ended = true;
+			this.lock.notifyAll();
+		}
+		try {
+			this.writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OXPathException("Interrupted while waiting for the output to be written", e);
+		}
+		synchronized (this.lock) {
+			this.checkFailure();
+		}
+		this.extractor.endExtraction();
+	}
+
+	/**
+	 * Abandons the extraction (e.g. after the evaluation failed): drops the queued events, closes and deletes the spill file and 
+	 * stops the writer, interrupting it in case it is blocked on the output, without waiting for it.  The wrapped extractor isn't 
+	 * ended.
+	 */
+	public void abort() {
+		synchronized (this.lock) {
+			this.ended = true;
+			this.aborted = true;
+			this.queue.clear();
+			this.dropSpillFile();
+			this.lock.notifyAll();
+		}
+		this.writer.interrupt();
+	}
+
+	/**
+	 * Nothing is memoized here
+	 * @param page the page being closed
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean clear(DOMDocument page) {
+		return false;
+	}
+
+	/**
+	 * Returns a snapshot of the counters
+	 * @return a snapshot of the counters
+	 */
+	public AsyncExtractorStatistics getStatistics() {
+		synchronized (this.lock) {
+			return new AsyncExtractorStatistics(this.enqueued, this.written, this.spilled, this.rejected, this.enqueued - this.written,
+					this.maxDepth, this.blockedNanos, this.totalLatencyNanos, this.maxLatencyNanos);
+		}
+	}
+
+	/**
+	 * Queues the event, assigning the identifier of an extraction, and applies the overflow policy if the queue is full
+	 * @param event the event
+	 * @return the identifier of the extraction, or {@code null} for a close signal
+	 * @throws OXPathException in case the queue is full under {@code OverflowPolicy.FAIL}, the writer failed, the event couldn't be
+	 * spilled, or the wait is interrupted
+	 */
+	private Integer enqueue(Event event) throws OXPathException {
+		synchronized (this.lock) {
+			this.checkFailure();
+			if (this.ended) throw new OXPathException("Extraction already ended");
+			boolean hasRoom = !this.spilling && this.queue.size() < this.capacity;
+			if (!hasRoom && this.policy == OverflowPolicy.FAIL) {
+				this.rejected++;
+				throw new OXPathException("Output queue full (" + this.capacity + " events); the output isn't written fast enough");
+			}
+			if (!hasRoom && this.policy == OverflowPolicy.BLOCK) {
+				long start = System.nanoTime();
+				try {
+					while (this.queue.size() >= this.capacity && this.failure == null) this.lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OXPathException("Interrupted while waiting for room in the output queue", e);
+				} finally {
+					this.blockedNanos += System.nanoTime() - start;
+				}
+				this.checkFailure();
+				hasRoom = true;
+			}
+			if (event.type != CLOSE) event.id = ++this.lastId;
+			event.enqueued = System.nanoTime();
+			if (hasRoom) this.queue.add(event);
+			else this.spill(event);
+			this.enqueued++;
+			this.maxDepth = Math.max(this.maxDepth, this.enqueued - this.written);
+			this.lock.notifyAll();
+			return (event.type == CLOSE)?null:Integer.valueOf(event.id);
+		}
+	}
+
+	/**
+	 * Appends the event to the spill file, opening one if the events aren't being spilled yet
+	 * @param event the event
+	 * @throws OXPathException in case the spill file can't be written
+	 */
+	private void spill(Event event) throws OXPathException {
+		try {
+			if (!this.spilling) {
+				this.spillFile = File.createTempFile("oxpath-spill", ".tmp", this.spillDirectory);
+				this.spillFile.deleteOnExit();
+				this.spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.spillFile)));
+				this.spillCount = 0;
+				this.spilling = true;
+			}
+			event.writeTo(this.spillOut);
+			this.spillCount++;
+			this.spilled++;
+		} catch (IOException e) {
+			throw new OXPathException("Problem spilling the output queue to disk", e);
+		}
+	}
+
+	/**
+	 * Body of the writer thread: hands queued events to the wrapped extractor in batches, and replays spill files once the queue
+	 * before them is empty, until the extraction is ended and all events are handed over
+	 */
+	private void write() {
+		try {
+			while (true) {
+				List<Event> batch = null;
+				File segment = null;
+				int segmentCount = 0;
+				synchronized (this.lock) {
+					while (this.queue.isEmpty() && !this.spilling && !this.ended) this.lock.wait();
+					if (!this.queue.isEmpty()) {
+						batch = new ArrayList<Event>(this.queue);
+						this.queue.clear();
+						this.lock.notifyAll();
+					}
+					else if (this.spilling) {
+						//events queued from now on are younger than the spilled ones, which are replayed first
+						this.spillOut.close();
+						this.spillOut = null;
+						segment = this.spillFile;
+						segmentCount = this.spillCount;
+						this.spilling = false;
+					}
+					else return;
+				}
+				if (batch != null) this.handOver(batch);
+				else this.replay(segment, segmentCount);
+			}
+		} catch (OXPathException e) {
+			this.fail(e);
+		} catch (IOException e) {
+			this.fail(new OXPathException("Problem replaying the output queue spilled to disk", e));
+		} catch (InterruptedException e) {
+			this.fail(new OXPathException("Output writer interrupted", e));
+		} catch (RuntimeException e) {
+			this.fail(new OXPathException("Output writer failed", e));
+		}
+	}
+
+	/**
+	 * Replays the events of the spill file, in batches of at most {@code capacity} events, and deletes it
+	 * @param segment the spill file
+	 * @param count the number of events in the file
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 * @throws IOException in case the file can't be read
+	 */
+	private void replay(File segment, int count) throws OXPathException, IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)));
+		try {
+			List<Event> batch = new ArrayList<Event>();
+			for (int i = 0; i < count; i++) {
+				synchronized (this.lock) {
+					if (this.aborted) return;
+				}
+				batch.add(Event.readFrom(in));
+				if (batch.size() == this.capacity || i == count - 1) {
+					this.handOver(batch);
+					batch.clear();
+				}
+			}
+		} finally {
+			in.close();
+			segment.delete();
+		}
+	}
+
+	/**
+	 * Hands the events to the wrapped extractor, in order, and updates the counters
+	 * @param batch the events
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 */
+	private void handOver(List<Event> batch) throws OXPathException {
+		long totalLatency = 0;
+		long maxLatency = 0;
+		for (Event event : batch) {
+			switch (event.type) {
+			case EXTRACT:
+				this.map(event.id, (this.keyed != null)?this.keyed.extractKeyed(event.orderKey, event.label, this.mapped(event.parent), ""):
+					this.extractor.extractNode(null, event.label, this.mapped(event.parent)));
+				break;
+			case EXTRACTVALUE:
+				this.map(event.id, (this.keyed != null)?this.keyed.extractKeyed(event.orderKey, event.label, this.mapped(event.parent), event.value):
+					this.extractor.extractNode(null, event.label, this.mapped(event.parent), event.value));
+				break;
+			default:
+				this.extractor.closeNode(this.mapped(event.id));
+			}
+			long latency = System.nanoTime() - event.enqueued;
+			totalLatency += latency;
+			maxLatency = Math.max(maxLatency, latency);
+		}
+		synchronized (this.lock) {
+			this.written += batch.size();
+			this.totalLatencyNanos += totalLatency;
+			this.maxLatencyNanos = Math.max(this.maxLatencyNanos, maxLatency);
+		}
+	}
+
+	/**
+	 * Records the identifier the wrapped extractor gave to an extraction (only called on the writer thread)
+	 * @param id the identifier assigned here
+	 * @param wrappedId the identifier assigned by the wrapped extractor
+	 */
+	private void map(int id, Integer wrappedId) {
+		if (id >= this.wrappedIds.length) this.wrappedIds = Arrays.copyOf(this.wrappedIds, Math.max(id + 1, 2 * this.wrappedIds.length));
+		this.wrappedIds[id] = wrappedId.intValue();
+	}
+
+	/**
+	 * Returns the identifier the wrapped extractor gave to an extraction (only called on the writer thread)
+	 * @param id the identifier assigned here
+	 * @return the identifier assigned by the wrapped extractor
+	 */
+	private Integer mapped(int id) {
+		return Integer.valueOf((id <= RESULTS)?id:this.wrappedIds[id]);
+	}
+
+	/**
+	 * Records the failure of the writer, wakes up the evaluation and drops the queued events
+	 * @param e the failure
+	 */
+	private void fail(OXPathException e) {
+		synchronized (this.lock) {
+			this.failure = e;
+			this.queue.clear();
+			this.dropSpillFile();
+			this.lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Closes and deletes the spill file events are being appended to, if any; call holding {@code lock}
+	 */
+	private void dropSpillFile() {
+		if (this.spillOut != null) {
+			try {
+				this.spillOut.close();
+			} catch (IOException ignored) {}
+			this.spillFile.delete();
+			this.spillOut = null;
+		}
+		this.spilling = false;
+	}
+
+	/**
+	 * Throws if the writer failed; call holding {@code lock}
+	 * @throws OXPathException if the writer failed
+	 */
+	private void checkFailure() throws OXPathException {
+		if (this.failure != null) throw new OXPathException("Output writer failed: " + this.failure.getMessage(), this.failure);
+	}
+
+	/**
+	 * An extraction or close signal waiting to be handed over
+	 */
+	private static final class Event {
+
+		/**
+		 * Creates the event; the identifier is assigned when it is queued
+		 * @param iType {@code EXTRACT}, {@code EXTRACTVALUE} or {@code CLOSE}
+		 * @param iParent identifier of the parent of an extraction
+		 * @param iLabel label of an extraction
+		 * @param iValue value of an extraction
+		 * @param iOrderKey document order key of the context node of an extraction
+		 */
+		Event(byte iType, int iParent, String iLabel, String iValue, long iOrderKey) {
+			this.type = iType;
+			this.parent = iParent;
+			this.label = iLabel;
+			this.value = iValue;
+			this.orderKey = iOrderKey;
+		}
+
+		/**
+		 * Writes the event to a spill file
+		 * @param out the spill file
+		 * @throws IOException in case the file can't be written
+		 */
+		void writeTo(DataOutputStream out) throws IOException {
+			out.writeByte(this.type);
+			out.writeInt(this.id);
+			out.writeLong(this.enqueued);
+			if (this.type == CLOSE) return;
+			out.writeInt(this.parent);
+			out.writeLong(this.orderKey);
+			writeString(out, this.label);
+			if (this.type == EXTRACTVALUE) writeString(out, this.value);
+		}
+
+		/**
+		 * Reads an event from a spill file
+		 * @param in the spill file
+		 * @return the event
+		 * @throws IOException in case the file can't be read
+		 */
+		static Event readFrom(DataInputStream in) throws IOException {
+			byte type = in.readByte();
+			int id = in.readInt();
+			long enqueued = in.readLong();
+			Event event;
+			if (type == CLOSE) event = new Event(type, 0, null, null, OXPathExtractionNode.UNORDERED);
+			else {
+				int parent = in.readInt();
+				long orderKey = in.readLong();
+				event = new Event(type, parent, readString(in), null, orderKey);
+			}
+			if (type == EXTRACTVALUE) event.value = readString(in);
+			event.id = id;
+			event.enqueued = enqueued;
+			return event;
+		}
+
+		/**
+		 * Writes the string as its length followed by its UTF-8 bytes (unlike {@code writeUTF}, values may exceed 64K)
+		 * @param out the spill file
+		 * @param s the string
+		 * @throws IOException in case the file can't be written
+		 */
+		private static void writeString(DataOutputStream out, String s) throws IOException {
+			byte[] bytes = s.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		/**
+		 * Reads a string written by {@code writeString}
+		 * @param in the spill file
+		 * @return the string
+		 * @throws IOException in case the file can't be read
+		 */
+		private static String readString(DataInputStream in) throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+
+		/**
+		 * {@code EXTRACT}, {@code EXTRACTVALUE} or {@code CLOSE}
+		 */
+		final byte type;
+		/**
+		 * identifier of the extraction, or of the node closed
+		 */
+		int id;
+		/**
+		 * identifier of the parent of an extraction
+		 */
+		final int parent;
+		/**
+		 * label of an extraction
+		 */
+		final String label;
+		/**
+		 * value of an extraction, or {@code null}
+		 */
+		String value;
+		/**
+		 * document order key of the context node of an extraction
+		 */
+		final long orderKey;
+		/**
+		 * time the event was queued, by {@code System.nanoTime()}
+		 */
+		long enqueued;
+	}
+
+	/**
+	 * Event extracting a node without value
+	 */
+	private static final byte EXTRACT = 1;
+	/**
+	 * Event extracting a node with value
+	 */
+	private static final byte EXTRACTVALUE = 2;
+	/**
+	 * Event signalling a complete node
+	 */
+	private static final byte CLOSE = 3;
+	/**
+	 * Identifier of the results node, the parent of all records
+	 */
+	private static final int RESULTS = 0;
+
+	/**
+	 * the extractor writing the output
+	 */
+	private final Extractor extractor;
+	/**
+	 * the wrapped extractor, if it is an {@code OXPathExtractor} (which may record document order keys), or {@code null}
+	 */
+	private final OXPathExtractor keyed;
+	/**
+	 * number of events held in memory
+	 */
+	private final int capacity;
+	/**
+	 * what happens to an event arriving while the queue is full
+	 */
+	private final OverflowPolicy policy;
+	/**
+	 * directory of the spill files, or {@code null} for the default temporary directory
+	 */
+	private final File spillDirectory;
+	/**
+	 * guards the queue, the spill file and the counters
+	 */
+	private final Object lock = new Object();
+	/**
+	 * events held in memory, oldest first
+	 */
+	private final ArrayDeque<Event> queue;
+	/**
+	 * the thread handing events to the wrapped extractor
+	 */
+	private final Thread writer;
+	/**
+	 * last identifier assigned
+	 */
+	private int lastId = RESULTS;
+	/**
+	 * identifiers assigned by the wrapped extractor, indexed by the identifiers assigned here (only used by the writer thread)
+	 */
+	private int[] wrappedIds = new int[1024];
+	/**
+	 * {@code true} while events are appended to {@code spillFile}, which holds events younger than the queued ones
+	 */
+	private boolean spilling = false;
+	/**
+	 * the spill file events are appended to
+	 */
+	private File spillFile;
+	/**
+	 * stream appending to {@code spillFile}
+	 */
+	private DataOutputStream spillOut;
+	/**
+	 * number of events in {@code spillFile}
+	 */
+	private int spillCount;
+	/**
+	 * {@code true} once {@code endExtraction()} is called
+	 */
+	private boolean ended = false;
+	/**
+	 * {@code true} once {@code abort()} is called
+	 */
+	private boolean aborted = false;
+	/**
+	 * failure of the writer thread, or {@code null}
+	 */
+	private OXPathException failure = null;
+	/**
+	 * number of events accepted
+	 */
+	private long enqueued = 0;
+	/**
+	 * number of events handed to the wrapped extractor
+	 */
+	private long written = 0;
+	/**
+	 * number of events spilled to disk
+	 */
+	private long spilled = 0;
+	/**
+	 * number of events rejected as the queue was full
+	 */
+	private long rejected = 0;
+	/**
+	 * largest number of events accepted but not handed over at once
+	 */
+	private long maxDepth = 0;
+	/**
+	 * time the evaluation spent blocked on a full queue, in nanoseconds
+	 */
+	private long blockedNanos = 0;
+	/**
+	 * sum of the latencies of the events handed over, in nanoseconds
+	 */
+	private long totalLatencyNanos = 0;
+	/**
+	 * largest latency of an event handed over, in nanoseconds
+	 */
+	private long maxLatencyNanos = 0;
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core functionality for the extraction features of the OXPath engine
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core.extraction;
+
+/**
+ * Immutable snapshot of the counters of an {@code AsyncExtractor}.  Events are extractions and close signals; latencies run
+ * from the call of the evaluation to the hand-over of the event to the wrapped extractor.
+ * @author AndrewJSel
+ *
+ */
+public final class AsyncExtractorStatistics {
+
+	/**
+	 * Creates a snapshot
+	 * @param iEnqueued number of events accepted
+	 * @param iWritten number of events handed to the wrapped extractor
+	 * @param iSpilled number of events spilled to disk
+	 * @param iRejected number of events rejected as the queue was full
+	 * @param iDepth number of events accepted but not handed over yet
+	 * @param iMaxDepth largest number of events accepted but not handed over at once
+	 * @param iBlockedNanos time the evaluation spent blocked on a full queue, in nanoseconds
+	 * @param iTotalLatencyNanos sum of the latencies of the events handed over, in nanoseconds
+	 * @param iMaxLatencyNanos largest latency of an event handed over, in nanoseconds
+	 */
+	public AsyncExtractorStatistics(long iEnqueued, long iWritten, long iSpilled, long iRejected, long iDepth, long iMaxDepth,
+			long iBlockedNanos, long iTotalLatencyNanos, long iMaxLatencyNanos) {
+		this.enqueued = iEnqueued;
+		this.written = iWritten;
+		this.spilled = iSpilled;
+		this.rejected = iRejected;
+		this.depth = iDepth;
+		this.maxDepth = iMaxDepth;
+		this.blockedNanos = iBlockedNanos;
+		this.totalLatencyNanos = iTotalLatencyNanos;
+		this.maxLatencyNanos = iMaxLatencyNanos;
+	}
+
+	/**
+	 * Returns the number of events accepted
+	 * @return the number of events accepted
+	 */
+	public long getEnqueued() {
+		return this.enqueued;
+	}
+
+	/**
+	 * Returns the number of events handed to the wrapped extractor
+	 * @return the number of events handed to the wrapped extractor
+	 */
+	public long getWritten() {
+		return this.written;
+	}
+
+	/**
+	 * Returns the number of events spilled to disk (under {@code OverflowPolicy.SPILL})
+	 * @return the number of events spilled to disk
+	 */
+	public long getSpilled() {
+		return this.spilled;
+	}
+
+	/**
+	 * Returns the number of events rejected as the queue was full (under {@code OverflowPolicy.FAIL})
+	 * @return the number of events rejected
+	 */
+	public long getRejected() {
+		return this.rejected;
+	}
+
+	/**
+	 * Returns the number of events accepted but not handed over yet, in memory or on disk
+	 * @return the number of events waiting
+	 */
+	public long getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * Returns the largest number of events accepted but not handed over at once
+	 * @return the largest number of events waiting at once
+	 */
+	public long getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	/**
+	 * Returns the time the evaluation spent blocked on a full queue (under {@code OverflowPolicy.BLOCK}), in nanoseconds
+	 * @return the time spent blocked, in nanoseconds
+	 */
+	public long getBlockedNanos() {
+		return this.blockedNanos;
+	}
+
+	/**
+	 * Returns the mean latency of the events handed over, in nanoseconds, or 0 if there were none
+	 * @return the mean latency, in nanoseconds
+	 */
+	public double getMeanLatencyNanos() {
+		return (this.written == 0)?0:((double)this.totalLatencyNanos / this.written);
+	}
+
+	/**
+	 * Returns the largest latency of an event handed over, in nanoseconds
+	 * @return the largest latency, in nanoseconds
+	 */
+	public long getMaxLatencyNanos() {
+		return this.maxLatencyNanos;
+	}
+
+	/**
+	 * Returns a readable rendering of the counters
+	 * @return a readable rendering of the counters
+	 */
+	@Override
+	public String toString() {
+		return ("enqueued=" + this.enqueued + ", written=" + this.written + ", spilled=" + this.spilled + ", rejected=" + this.rejected
+				+ ", depth=" + this.depth + ", maxDepth=" + this.maxDepth + ", blockedMs=" + (this.blockedNanos / 1000000)
+				+ ", meanLatencyUs=" + (long)(this.getMeanLatencyNanos() / 1000) + ", maxLatencyUs=" + (this.maxLatencyNanos / 1000));
+	}
+
+	/**
+	 * number of events accepted
+	 */
+	private final long enqueued;
+	/**
+	 * number of events handed to the wrapped extractor
+	 */
+	private final long written;
+	/**
+	 * number of events spilled to disk
+	 */
+	private final long spilled;
+	/**
+	 * number of events rejected as the queue was full
+	 */
+	private final long rejected;
+	/**
+	 * number of events accepted but not handed over yet
+	 */
+	private final long depth;
+	/**
+	 * largest number of events accepted but not handed over at once
+	 */
+	private final long maxDepth;
+	/**
+	 * time the evaluation spent blocked on a full queue, in nanoseconds
+	 */
+	private final long blockedNanos;
+	/**
+	 * sum of the latencies of the events handed over, in nanoseconds
+	 */
+	private final long totalLatencyNanos;
+	/**
+	 * largest latency of an event handed over, in nanoseconds
+	 */
+	private final long maxLatencyNanos;
+}
@@ -66,6 +66,15 @@ public interface Extractor extends OXPathCache {
 	 */
 	public Integer extractNode(DOMNode context, String label, Integer parent, String value) throws OXPathException;
 	
+	/**
+	 * Signals that the extraction node with identifier {@code id} can gain no further children, so consumers may emit and free its 
+	 * subtree.  Called at most once per extraction, after those of its descendants; a node merged with an earlier extraction may be 
+	 * signalled again.  Nodes never signalled are complete at the end of extraction.
+	 * @param id identifier of the complete extraction node, as returned by {@code extractNode}
+	 * @throws OXPathException in case the signal can't be passed on
+	 */
+	public void closeNode(Integer id) throws OXPathException;
+	
 	/**
 	 * Signals end of extraction
 	 */
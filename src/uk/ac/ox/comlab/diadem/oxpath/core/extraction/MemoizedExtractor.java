@@ -0,0 +1,163 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core functionality for the extraction features of the OXPath engine
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core.extraction;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNode;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathMemoStatistics;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathMemoStore;
+
+/**
+ * Memoizing wrapper of an {@code Extractor}, implementing OXPath's merge semantics: extracting the same <tt>(context,label)</tt> 
+ * with the same parent (and value) again returns the identifier of the first extraction instead of creating a new node.  
+ * Identifiers are stored per page in an {@code OXPathMemoStore}, keyed by label, context node, value and parent.  Replaces the 
+ * reflective {@code OXPathMemoizer} proxy with the same semantics, including {@code clear(page)}.
+ * @author AndrewJSel
+ *
+ */
+public class MemoizedExtractor implements Extractor {
+
+	/**
+	 * Wraps the extractor with a store that never evicts, so the merge semantics hold on every page until PAAT clears it
+	 * @param iExtractor the extractor to memoize
+	 */
+	public MemoizedExtractor(Extractor iExtractor) {
+		this(iExtractor, new OXPathMemoStore(OXPathMemoStore.getDefaultMaxEntries(), false));
+	}
+
+	/**
+	 * Wraps the extractor
+	 * @param iExtractor the extractor to memoize
+	 * @param iMemo the store holding the memoized results
+	 */
+	public MemoizedExtractor(Extractor iExtractor, OXPathMemoStore iMemo) {
+		this.extractor = iExtractor;
+		this.memo = iMemo;
+	}
+
+	/**
+	 * Extracts the node, unless the same <tt>(context,label)</tt> was already extracted under the same parent
+	 * @param context the context node in this label
+	 * @param label the label of this node in the extraction marker
+	 * @param parent the parent of the extraction node specified by <tt>(context,label)</tt>
+	 * @return a unique identifier for this extraction (or the identifier of the previous extraction of this node)
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 */
+	@Override
+	public Integer extractNode(DOMNode context, String label, Integer parent) throws OXPathException {
+		DOMDocument page = OXPathMemoStore.pageOf(context);
+		Object memo = this.memo.get(page, label, context, NOVALUE, parent);
+		if (memo != OXPathMemoStore.MISS) return (Integer) memo;
+		Integer id = this.extractor.extractNode(context, label, parent);
+		this.memo.put(page, label, context, NOVALUE, parent, id);
+		return id;
+	}
+
+	/**
+	 * Extracts the node with its value, unless the same <tt>(context,label)</tt> was already extracted under the same parent with
+	 * the same value
+	 * @param context the context node in this label
+	 * @param label the label of this node in the extraction marker
+	 * @param parent the parent of the extraction node specified by <tt>(context,label)</tt>
+	 * @param value the value associated with this extraction node
+	 * @return a unique identifier for this extraction (or the identifier of the previous extraction of this node)
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 */
+	@Override
+	public Integer extractNode(DOMNode context, String label, Integer parent, String value) throws OXPathException {
+		DOMDocument page = OXPathMemoStore.pageOf(context);
+		Object memo = this.memo.get(page, label, context, value, parent);
+		if (memo != OXPathMemoStore.MISS) return (Integer) memo;
+		Integer id = this.extractor.extractNode(context, label, parent, value);
+		this.memo.put(page, label, context, value, parent, id);
+		return id;
+	}
+
+	/**
+	 * Signals the complete extraction node to the wrapped extractor
+	 * @param id identifier of the complete extraction node
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 */
+	@Override
+	public void closeNode(Integer id) throws OXPathException {
+		this.extractor.closeNode(id);
+	}
+
+	/**
+	 * Signals end of extraction to the wrapped extractor
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 */
+	@Override
+	public void endExtraction() throws OXPathException {
+		this.extractor.endExtraction();
+	}
+
+	/**
+	 * Clears all memoized identifiers for the input {@code DOMDocument}
+	 * @param page {@code DOMDocument} we are removing all memoized identifiers for, presumably because the page is being closed in PAAT
+	 * @return {@code true} if any identifiers were memoized for the page, {@code false} otherwise
+	 */
+	@Override
+	public Boolean clear(DOMDocument page) {
+		return this.memo.clear(page);
+	}
+
+	/**
+	 * Returns the counters of the memoized results of the page
+	 * @param page the page
+	 * @return the counters of the memoized results of the page
+	 */
+	public OXPathMemoStatistics getStatistics(DOMDocument page) {
+		return this.memo.getStatistics(page);
+	}
+
+	/**
+	 * Returns the counters of all memoized results, including those of cleared and evicted pages
+	 * @return the counters of all memoized results
+	 */
+	public OXPathMemoStatistics getStatistics() {
+		return this.memo.getStatistics();
+	}
+
+	/**
+	 * the wrapped extractor
+	 */
+	private final Extractor extractor;
+	/**
+	 * memoized identifiers
+	 */
+	private final OXPathMemoStore memo;
+
+	/**
+	 * Stands in for the value of extractions without one, so they never match an extraction with a value
+	 */
+	private static final Object NOVALUE = new Object();
+}
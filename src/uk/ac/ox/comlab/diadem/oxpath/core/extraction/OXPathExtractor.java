@@ -6,6 +6,7 @@ package uk.ac.ox.comlab.diadem.oxpath.core.extraction;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathDocumentOrder;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
 import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
 import diadem.common.web.dom.DOMDocument;
@@ -13,8 +14,9 @@ import diadem.common.web.dom.DOMNode;
 
 /**
  * Extractor implementation.  We assume all method calls(except the constructor) are called by a 
- * proxy object generated by {@code OXPathExtractor}.  Therefore, we don't check if the same node
- * has already been extracted (the memoizer does this for us).
+ * {@code MemoizedExtractor} wrapping this object.  Therefore, we don't check if the same node
+ * has already been extracted (the memoizer does this for us).  Methods are synchronized, as the 
+ * branches of a parallel action (see {@code OXPathBrowserPool}) share one extractor.
  * @author AndrewJSel
  *
  */
@@ -43,14 +45,9 @@ public class OXPathExtractor implements Extractor {
 	 * @throws OXPathException in case the parent of this node is inconsistent with a recurring node (one already created with a previous call to this method)
 	 */
 	@Override
-	public Integer extractNode(DOMNode context, String label, Integer parent)
+	public synchronized Integer extractNode(DOMNode context, String label, Integer parent)
 			throws OXPathException {
-		try {
-			this.os.writeObject(new OXPathExtractionNode(++this.lastNode,parent,label));
-			return lastNode;
-		} catch (IOException e) {
-			throw new OXPathException("IOException when trying to write extraction nodes to output stream");
-		}
+		return this.extractKeyed(this.orderKey(context),label,parent,"");
 	}
 
 	/* (non-Javadoc)
@@ -69,20 +66,84 @@ public class OXPathExtractor implements Extractor {
 	 * @throws OXPathException in case the parent of this node is inconsistent with a recurring node (one already created with a previous call to this method)
 	 */
 	@Override
-	public Integer extractNode(DOMNode context, String label, Integer parent,
+	public synchronized Integer extractNode(DOMNode context, String label, Integer parent,
 			String value) throws OXPathException {
+		return this.extractKeyed(this.orderKey(context),label,parent,value);
+	}
+	
+	/**
+	 * Writes the extraction node with the document order key already computed, as {@code AsyncExtractor} does on its writer thread
+	 * @param orderKey the document order key of the context node, or {@code OXPathExtractionNode.UNORDERED}
+	 * @param label the label of this node in the extraction marker
+	 * @param parent the parent of this node
+	 * @param value the value associated with this extraction node ({@code ""} for none)
+	 * @return the identifier of the new extraction node
+	 * @throws OXPathException in case the node can't be written
+	 */
+	synchronized Integer extractKeyed(long orderKey, String label, Integer parent, String value) throws OXPathException {
 		try {
-			os.writeObject(new OXPathExtractionNode(++this.lastNode,parent,label,value));
+			this.os.writeObject(new OXPathExtractionNode(++this.lastNode,parent,label,value,orderKey));
 			return lastNode;
 		} catch (IOException e) {
 			throw new OXPathException("IOException when trying to write extraction nodes to output stream");
 		}
 	}
 	
+	/**
+	 * Returns the document order key of the context node if ordering is switched on (see {@code setOrdering})
+	 * @param context the context node, or {@code null}
+	 * @return the document order key of the context node, or {@code OXPathExtractionNode.UNORDERED}
+	 */
+	private long orderKey(DOMNode context) {
+		return (this.ordering && context != null)?OXPathDocumentOrder.getOrderKey(context):OXPathExtractionNode.UNORDERED;
+	}
+	
+	/**
+	 * Switches the recording of document order keys on or off (it is off by default).  When on, each extraction node carries the 
+	 * key of its context node (see {@code OXPathExtractionNode.getOrderKey()}), so consumers can put siblings in document order
+	 * whatever order PAAT extracted them in.  Keying the first node of a page indexes the page (see {@code OXPathDocumentOrder}).
+	 * @param iOrdering {@code true} to record document order keys, {@code false} otherwise
+	 */
+	public void setOrdering(boolean iOrdering) {
+		this.ordering = iOrdering;
+	}
+	
+	/**
+	 * Returns {@code true} if document order keys are recorded
+	 * @return {@code true} if document order keys are recorded, {@code false} otherwise
+	 */
+	public boolean isOrdering() {
+		return this.ordering;
+	}
+	
+	/**
+	 * Writes a close node for the complete extraction node, if close nodes are switched on (see {@code setClosing})
+	 * @param id identifier of the complete extraction node
+	 * @throws OXPathException in case the close node can't be written
+	 */
+	@Override
+	public synchronized void closeNode(Integer id) throws OXPathException {
+		if (!this.closing) return;
+		try {
+			this.os.writeObject(OXPathExtractionNode.returnCloseNode(id));
+		} catch (IOException e) {
+			throw new OXPathException("IOException when trying to write close nodes to output stream");
+		}
+	}
+	
+	/**
+	 * Switches the writing of close nodes on or off (it is off by default, as consumers unaware of close nodes would take them 
+	 * for extraction nodes)
+	 * @param iClosing {@code true} to write close nodes, {@code false} otherwise
+	 */
+	public synchronized void setClosing(boolean iClosing) {
+		this.closing = iClosing;
+	}
+	
 	/**
 	 * Signals end of extraction
 	 */
-	public void endExtraction() throws OXPathException {
+	public synchronized void endExtraction() throws OXPathException {
 		try {
 			this.os.writeObject(OXPathExtractionNode.returnEndNode());
 		}
@@ -107,5 +168,13 @@ public class OXPathExtractor implements Extractor {
 	
 	private final ObjectOutputStream os;
 	private int lastNode = 0;//this is the results node, so we increment before giving the number to a new node
+	/**
+	 * {@code true} if close nodes are written
+	 */
+	private boolean closing = false;
+	/**
+	 * {@code true} if document order keys are recorded; read on the evaluating thread by {@code AsyncExtractor}
+	 */
+	private volatile boolean ordering = false;
 
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core functionality for the extraction features of the OXPath engine
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core.extraction;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNode;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+
+/**
+ * Extractor decorator that lets through at most a given number of records, i.e., extraction nodes directly below the results 
+ * node.  Once the limit is reached, further records (and everything extracted below them) are suppressed: they receive the 
+ * identifier {@code SUPPRESSED} and aren't passed on, so the output holds exactly the first records.  PAAT checks 
+ * {@code isLimitReached()} to stop looking for new records (see {@code PAATEvalVisitor.setRecordLimit}).
+ * <p>
+ * Wrap the extractor writing the output, beneath the {@code MemoizedExtractor}, so that merged extractions aren't counted twice.
+ * @author AndrewJSel
+ *
+ */
+public class RecordLimitExtractor implements Extractor {
+
+	/**
+	 * Wraps the extractor, initially without a limit
+	 * @param iExtractor the extractor writing the output
+	 */
+	public RecordLimitExtractor(Extractor iExtractor) {
+		this.extractor = iExtractor;
+	}
+
+	/**
+	 * Sets the maximum number of records let through (records already extracted count toward the limit)
+	 * @param iLimit the maximum number of records, or {@code NOLIMIT}
+	 * @throws IllegalArgumentException if {@code iLimit} is negative
+	 */
+	public synchronized void setLimit(int iLimit) {
+		if (iLimit < 0) throw new IllegalArgumentException("record limit must not be negative: " + iLimit);
+		this.limit = iLimit;
+	}
+
+	/**
+	 * Returns {@code true} if no further records will be let through
+	 * @return {@code true} if no further records will be let through, {@code false} otherwise
+	 */
+	public synchronized boolean isLimitReached() {
+		return (this.records >= this.limit);
+	}
+
+	/**
+	 * Extracts the node, unless it is a record beyond the limit or is below a suppressed record
+	 * @param context the context node in this label
+	 * @param label the label of this node in the extraction marker
+	 * @param parent the parent of the extraction node specified by <tt>(context,label)</tt>
+	 * @return the identifier of the extraction, or {@code SUPPRESSED}
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 */
+	@Override
+	public synchronized Integer extractNode(DOMNode context, String label, Integer parent) throws OXPathException {
+		if (this.suppresses(parent)) return SUPPRESSED;
+		return this.extractor.extractNode(context, label, parent);
+	}
+
+	/**
+	 * Extracts the node with its value, unless it is a record beyond the limit or is below a suppressed record
+	 * @param context the context node in this label
+	 * @param label the label of this node in the extraction marker
+	 * @param parent the parent of the extraction node specified by <tt>(context,label)</tt>
+	 * @param value the value associated with this extraction node
+	 * @return the identifier of the extraction, or {@code SUPPRESSED}
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 */
+	@Override
+	public synchronized Integer extractNode(DOMNode context, String label, Integer parent, String value) throws OXPathException {
+		if (this.suppresses(parent)) return SUPPRESSED;
+		return this.extractor.extractNode(context, label, parent, value);
+	}
+
+	/**
+	 * Signals the complete extraction node, unless it was suppressed
+	 * @param id identifier of the complete extraction node
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 */
+	@Override
+	public void closeNode(Integer id) throws OXPathException {
+		if (id.intValue() != SUPPRESSED) this.extractor.closeNode(id);
+	}
+
+	/**
+	 * Signals end of extraction
+	 * @throws OXPathException in case of exception in the wrapped extractor
+	 */
+	@Override
+	public void endExtraction() throws OXPathException {
+		this.extractor.endExtraction();
+	}
+
+	/**
+	 * Nothing is memoized here
+	 * @param page the page being closed
+	 * @return {@code false}
+	 */
+	@Override
+	public Boolean clear(DOMDocument page) {
+		return false;
+	}
+
+	/**
+	 * Decides whether an extraction below {@code parent} is suppressed, counting it if it is a record let through
+	 * @param parent the parent of the extraction
+	 * @return {@code true} if the extraction is suppressed, {@code false} otherwise
+	 */
+	private boolean suppresses(Integer parent) {
+		if (parent.intValue() == SUPPRESSED) return true;
+		if (parent.intValue() != RESULTS) return false;
+		if (this.records >= this.limit) return true;
+		this.records++;
+		return false;
+	}
+
+	/**
+	 * Identifier given to suppressed extractions
+	 */
+	public static final int SUPPRESSED = -1;
+	/**
+	 * Identifier of the results node, the parent of all records
+	 */
+	public static final int RESULTS = 0;
+	/**
+	 * Limit meaning all records are let through
+	 */
+	public static final int NOLIMIT = Integer.MAX_VALUE;
+
+	/**
+	 * the extractor writing the output
+	 */
+	private final Extractor extractor;
+	/**
+	 * maximum number of records let through
+	 */
+	private int limit = NOLIMIT;
+	/**
+	 * number of records let through so far
+	 */
+	private int records = 0;
+}
@@ -66,13 +66,28 @@ public class PAATStateEvalIterative extends PAATState{
 	 * context at current "step" in query
 	 */
 	private final OXPathContextNode context;
+	/**
+	 * cached hash of the state
+	 */
+	private int hash;
+	/**
+	 * {@code true} once {@code hash} has been computed
+	 */
+	private boolean hashed = false;
 
+	/**
+	 * Hash of the state; computed once, as states are immutable and used as memo keys on every eval_ call
+	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = super.hashCode();
-		result = prime * result + ((context == null) ? 0 : context.hashCode());
-		return result;
+		if (!this.hashed) {
+			final int prime = 31;
+			int result = super.hashCode();
+			result = prime * result + ((context == null) ? 0 : context.hashCode());
+			this.hash = result;
+			this.hashed = true;
+		}
+		return this.hash;
 	}
 
 	@Override
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing core OXPath functionality
+ */
+package uk.ac.ox.comlab.diadem.oxpath.core.state;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathContextNode;
+
+/**
+ * Reusable iterative state for the loops that call eval_ once per node of a context set.  A frame copies the state of its 
+ * template once; only the context node and the page protection change from one node to the next, so the loop builds no 
+ * state per node.  A frame belongs to the loop that created it and is only valid for the duration of the eval_ call it is 
+ * passed to; callees that keep state beyond that call copy it with a {@code Builder}.  Frames are never used as memo keys (the 
+ * memo keys on the context node, position and last instead), so they compare by identity.
+ * @author AndrewJSel
+ *
+ */
+public class PAATStateFrame extends PAATStateEvalIterative {
+
+	/**
+	 * Creates a frame with the state of {@code template}; the context node is set by {@code set}
+	 * @param template state copied into the frame
+	 */
+	public PAATStateFrame(PAATState template) {
+		super(new PAATState.Builder(template).setContextNode(null), null);
+		this.protect = template.isDocumentProtected();
+	}
+
+	/**
+	 * Moves the frame to the next context node
+	 * @param c the context node
+	 * @param iProtect {@code true} if the page is protected, {@code false} otherwise
+	 * @return the frame
+	 */
+	public PAATStateFrame set(OXPathContextNode c, boolean iProtect) {
+		this.contextNode = c;
+		this.protect = iProtect;
+		return this;
+	}
+
+	/**
+	 * Returns the current context node of the frame
+	 * @return the current context node of the frame
+	 */
+	@Override
+	public OXPathContextNode getContextNode() {
+		return this.contextNode;
+	}
+
+	/**
+	 * Returns if the page of the current context node is protected
+	 * @return if the page of the current context node is protected
+	 */
+	@Override
+	public boolean isDocumentProtected() {
+		return this.protect;
+	}
+
+	/**
+	 * Identity hash, as the content of a frame changes
+	 */
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	/**
+	 * Identity equality, as the content of a frame changes
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return this == obj;
+	}
+
+	/**
+	 * current context node
+	 */
+	private OXPathContextNode contextNode;
+	/**
+	 * {@code true} if the page of the current context node is protected
+	 */
+	private boolean protect;
+}
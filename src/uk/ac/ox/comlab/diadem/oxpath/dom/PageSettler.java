@@ -0,0 +1,169 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * 
+ */
+package uk.ac.ox.comlab.diadem.oxpath.dom;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMElement;
+import diadem.common.web.dom.DOMWindow;
+import diadem.common.web.dom.event.DOMEvent;
+import diadem.common.web.dom.event.DOMEventListener;
+
+/**
+ * 
+ * Class for waiting until a page has settled after an action.  Rather than waiting out a fixed time, the thread sleeps while
+ * listening to the mutation events of the page ({@code DOMSubtreeModified}, {@code DOMNodeInserted}, {@code DOMNodeRemoved},
+ * {@code DOMAttrModified}, {@code DOMCharacterDataModified}) and the {@code load} events of its window, and returns once none
+ * has been seen for the quiet period.  The wait never exceeds its bound: the <tt>wait=</tt> of the action, if given, or the
+ * default bound of the settler otherwise.  A page that doesn't change after the action costs just the quiet period.
+ * <p>
+ * Events are expected to be delivered by the browser while the evaluating thread sleeps; a browser that doesn't deliver them
+ * settles after the quiet period, whatever the page does.  Instances are immutable, so can be shared between threads.
+ * @author AndrewJSel
+ *
+ */
+public class PageSettler {
+
+	/**
+	 * Creates a settler
+	 * @param quietMillis time without events after which the page is settled, in milliseconds
+	 * @param boundMillis longest wait for actions without <tt>wait=</tt>, in milliseconds; 0 to not wait for them at all
+	 */
+	public PageSettler(long quietMillis, long boundMillis) {
+		if (quietMillis < 0 || boundMillis < 0) throw new IllegalArgumentException("Settle times can't be negative");
+		this.quietNanos = quietMillis * 1000000L;
+		this.boundNanos = boundMillis * 1000000L;
+	}
+
+	/**
+	 * Waits for the page to settle after an action
+	 * @param page the document element of the page after the action
+	 * @param waitSeconds the <tt>wait=</tt> of the action, in seconds, or a negative number if the action has none
+	 * @return {@code true} if the page settled, {@code false} if the bound was reached first (or the thread was interrupted)
+	 */
+	public boolean settle(DOMElement page, long waitSeconds) {
+		long bound = (waitSeconds < 0)?this.boundNanos:waitSeconds * 1000000000L;
+		if (bound == 0) return true;
+		DOMDocument document = page.getOwnerDocument();
+		DOMWindow window = document.getEnclosingWindow();
+		Activity activity = new Activity();
+		for (String type : MUTATIONS) document.addEventListener(type, activity, true);
+		if (window != null) window.addEventListener(LOAD, activity, false);
+		try {
+			long deadline = activity.last + bound;
+			while (true) {
+				long now = System.nanoTime();
+				long quietEnd = activity.last + this.quietNanos;
+				if (now - quietEnd >= 0) return true;
+				if (now - deadline >= 0) return false;
+				long sleep = Math.min(quietEnd, deadline) - now;
+				try {
+					Thread.sleep(sleep / 1000000L, (int) (sleep % 1000000L));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		finally {
+			for (String type : MUTATIONS) document.removeEventListener(type, activity, true);
+			if (window != null) window.removeEventListener(LOAD, activity, false);
+		}
+	}
+
+	/**
+	 * Returns the time without events after which a page is settled
+	 * @return the quiet period, in milliseconds
+	 */
+	public long getQuietMillis() {
+		return this.quietNanos / 1000000L;
+	}
+
+	/**
+	 * Returns the longest wait for actions without <tt>wait=</tt>
+	 * @return the default bound, in milliseconds
+	 */
+	public long getBoundMillis() {
+		return this.boundNanos / 1000000L;
+	}
+
+	/**
+	 * Listener recording the time of the latest event; the action itself counts as activity
+	 */
+	private static final class Activity implements DOMEventListener {
+
+		/**
+		 * Records the event
+		 * @param event the event
+		 */
+		@Override
+		public void handleEvent(DOMEvent event) {
+			this.last = System.nanoTime();
+		}
+
+		/**
+		 * time of the latest event, by {@code System.nanoTime()}
+		 */
+		volatile long last = System.nanoTime();
+	}
+
+	/**
+	 * Default quiet period, in milliseconds
+	 */
+	public static final long DEFAULTQUIETMILLIS = 150;
+
+	/**
+	 * Default longest wait for actions without <tt>wait=</tt>, in milliseconds
+	 */
+	public static final long DEFAULTBOUNDMILLIS = 3000;
+
+	/**
+	 * Settler with the default quiet period and bound
+	 */
+	public static final PageSettler DEFAULT = new PageSettler(DEFAULTQUIETMILLIS, DEFAULTBOUNDMILLIS);
+
+	/**
+	 * the events signalling a change to the page
+	 */
+	private static final String[] MUTATIONS = uk.ac.ox.comlab.diadem.oxpath.utils.DOMEvent.getMutationEventNames();
+
+	/**
+	 * the event signalling a (re)load of the window
+	 */
+	private static final String LOAD = uk.ac.ox.comlab.diadem.oxpath.utils.DOMEvent.LOAD.toString();
+
+	/**
+	 * time without events after which a page is settled, in nanoseconds
+	 */
+	private final long quietNanos;
+	/**
+	 * longest wait for actions without <tt>wait=</tt>, in nanoseconds
+	 */
+	private final long boundNanos;
+}
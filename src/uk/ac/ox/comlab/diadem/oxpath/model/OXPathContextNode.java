@@ -29,10 +29,8 @@
  */
 package uk.ac.ox.comlab.diadem.oxpath.model;
 
-import java.util.Collections;
 
 import diadem.common.web.dom.DOMNode;
-import diadem.common.web.dom.xpath.DOMXPathEvaluator;
 import diadem.common.web.dom.xpath.DOMXPathException;
 import diadem.common.web.dom.xpath.DOMXPathResult;
 import uk.ac.ox.comlab.diadem.oxpath.model.language.Axis;
@@ -43,6 +41,7 @@ import uk.ac.ox.comlab.diadem.oxpath.model.language.OXPathAxis;
 import uk.ac.ox.comlab.diadem.oxpath.model.language.OXPathNodeTest;
 import uk.ac.ox.comlab.diadem.oxpath.model.language.Step;
 import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathException;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathExpressionCache;
 
 /**
  * Class for representing OXPathContextNode.  Acts as a wrapper for DOM nodes, decorated with parent marker and current marker references.
@@ -115,11 +114,10 @@ public class OXPathContextNode implements Comparable<OXPathContextNode>{
 	public OXPathType getByXPath(String stepString, boolean forward, boolean returnsNodes) throws OXPathException {
 
 		DOMNode context = this.getNode();
-		DOMXPathEvaluator xpathEvaluator = context.getXPathEvaluator();
 		short resultType = (returnsNodes)?DOMXPathResult.UNORDERED_NODE_SNAPSHOT_TYPE:DOMXPathResult.ANY_TYPE;
 		
 		//since we are passing in XPath, no extraction is encountered, so parent and current are the same
-		DOMXPathResult iResult = xpathEvaluator.evaluate(stepString, context, xpathEvaluator.createNSResolver(context), resultType, null);
+		DOMXPathResult iResult = OXPathExpressionCache.evaluate(stepString, context, resultType);
 
 		//build the correct OXPathType from our result
 		OXPathNodeList nodes;
@@ -131,20 +129,20 @@ public class OXPathContextNode implements Comparable<OXPathContextNode>{
 		case DOMXPathResult.BOOLEAN_TYPE :
 			return new OXPathType(iResult.getBooleanValue());
 		case DOMXPathResult.UNORDERED_NODE_SNAPSHOT_TYPE :
-			nodes = (forward)?new OXPathNodeList():new OXPathNodeList(Collections.reverseOrder());
+			nodes = (forward)?new OXPathNodeList():new OXPathNodeList(false);
 			for (long i=0; i<iResult.getSnapshotLength(); i++) {
 				nodes.add(new OXPathContextNode(iResult.snapshotItem((int) i),this.getParent(),this.getLast()));
 			}
 			if (nodes.isEmpty()) return OXPathType.EMPTYRESULT;
 			return new OXPathType(nodes);
 		case DOMXPathResult.UNORDERED_NODE_ITERATOR_TYPE : //based on our evaluate method above, this should be the only kind of nodeset we see
-			nodes = (forward)?new OXPathNodeList():new OXPathNodeList(Collections.reverseOrder());
+			nodes = (forward)?new OXPathNodeList():new OXPathNodeList(false);
 			boolean done = false;
 			boolean rerun = false;
 			while (!done) {
 				try {
 					if (iResult.getInvalidIteratorState()) {
-						iResult = xpathEvaluator.evaluate(stepString, context, xpathEvaluator.createNSResolver(context), DOMXPathResult.ANY_TYPE, null);
+						iResult = OXPathExpressionCache.evaluate(stepString, context, DOMXPathResult.ANY_TYPE);
 						rerun=true;
 						done=true;	
 					}
@@ -160,7 +158,7 @@ public class OXPathContextNode implements Comparable<OXPathContextNode>{
 				}
 			}
 			if (rerun) {
-				iResult = xpathEvaluator.evaluate(stepString, context, xpathEvaluator.createNSResolver(context), DOMXPathResult.UNORDERED_NODE_SNAPSHOT_TYPE, null);
+				iResult = OXPathExpressionCache.evaluate(stepString, context, DOMXPathResult.UNORDERED_NODE_SNAPSHOT_TYPE);
 				nodes = new OXPathNodeList();
 				for (long i=0; i<iResult.getSnapshotLength(); i++) {
 					nodes.add(new OXPathContextNode(iResult.snapshotItem((int) i),this.getParent(),this.getLast()));
@@ -222,40 +220,34 @@ public class OXPathContextNode implements Comparable<OXPathContextNode>{
 	}
 	
 	/**
-	 * Standard comparator for nodes.  Unfortunately, the interface does not allow an exception to be raised if the nodes are not comparable, so care should be taken before sorting 
-	 * (perhaps by checking all nodes are in the same document).  Currently returns {@code Integer.MAX_VALUE} if not a number
+	 * Returns the document order key of the wrapped node (see {@code OXPathDocumentOrder}).  The key is computed on first use and 
+	 * cached, so node sets can be sorted without further browser calls.
+	 * @return the document order key of the wrapped node
+	 */
+	public long getDocumentOrderKey() {
+		if (!this.hasOrderKey) {
+			this.orderKey = (this.node==null)?OXPathDocumentOrder.CONSTRUCTEDKEY:OXPathDocumentOrder.getOrderKey(this.node);
+			this.hasOrderKey = true;
+		}
+		return this.orderKey;
+	}
+	
+	/**
+	 * Standard comparator for nodes, based on document order keys (see {@code OXPathDocumentOrder}).  Nodes in different documents 
+	 * are ordered by the order in which their documents were first indexed, so the ordering is total.
 	 * @param other first OXPathContextNode to compare
 	 * @return standard Java Comparator convention
 	 */
 	@Override
 	public int compareTo(OXPathContextNode other) {
-		//compare position of DOMNodes
 		//for this op to be consistent with equals, two OXPath nodes with different parent extraction markers but same DOMNode
 		//aren't allowed; this won't occur if using regular OXPath
-		DOMNode n1 = this.getNode();
-		DOMNode n2 = other.getNode();
-		
-		short position;
-		try {
-			position = n1.compareDocumentPosition(n2);
-		} catch (NullPointerException e) {//in case the notional context is being compared to something
-			position=DOCUMENT_POSITION_DISCONNECTED;//not if both null, so as to be consistent with equals
-		}
-			
-		//This seems counterintuitive, but this is what we want based on Java's definition of "natural ordering" - for us, we assume document order to be the natural ordering, so preceding nodes have higher ordering values
-		if (position==0) {
-			return other.getParent()-this.getParent();
-		}
-		else if ((position & DOCUMENT_POSITION_PRECEDING)== DOCUMENT_POSITION_PRECEDING) return 1;
-		else if ((position & DOCUMENT_POSITION_FOLLOWING)== DOCUMENT_POSITION_FOLLOWING) return -1;
-//		else return Integer.MAX_VALUE;
-		else if ((position &  DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC) == DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC) {
-			//in order to establish a consistent total ordering (albeit an arbitrary one), we use the hash values of the containing documents
-			int diff = n1.getOwnerDocument().hashCode()-n2.getOwnerDocument().hashCode();
-			if (diff!=0) return diff;
-			else throw new RuntimeException("Browser returned the same Document hashcode for disconnected nodes.");
-		}
-		else throw new RuntimeException("Browser broke compareDocumentPosition contract with return value");
+		long k1 = this.getDocumentOrderKey();
+		long k2 = other.getDocumentOrderKey();
+		//for us, we assume document order to be the natural ordering, so preceding nodes have lower ordering values
+		if (k1 < k2) return -1;
+		else if (k1 > k2) return 1;
+		else return other.getParent()-this.getParent();
 	}
 	
 	public int compareTo(OXPathContextNodeConstructed other) {
@@ -307,6 +299,14 @@ public class OXPathContextNode implements Comparable<OXPathContextNode>{
 	 * instance field storing the reference to the current marker
 	 */
 	private int last;
+	/**
+	 * instance field caching the document order key of the node
+	 */
+	private long orderKey;
+	/**
+	 * instance field recording whether {@code orderKey} has been computed
+	 */
+	private boolean hasOrderKey = false;
 	/**
 	 * encodes the notional context node for beginning navigation; the parent and last are both 0, the id for the "results" root in the 
 	 * output
@@ -43,6 +43,15 @@ public class OXPathContextNodeConstructed extends OXPathContextNode {
 		return new OXPathType(this.value);
 	}
 	
+	/**
+	 * Constructed nodes have no position in a browser document, so they share a key that sorts before all browser nodes
+	 * @return {@code OXPathDocumentOrder.CONSTRUCTEDKEY}
+	 */
+	@Override
+	public long getDocumentOrderKey() {
+		return OXPathDocumentOrder.CONSTRUCTEDKEY;
+	}
+	
 	/**
 	 * {@code compareTo} is implemented so as to establish natural ordering compatible with equals.
 	 * @param other the other node to compare
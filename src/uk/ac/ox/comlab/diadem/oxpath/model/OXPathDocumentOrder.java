@@ -0,0 +1,283 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing supporting classes, derived from the OXPath model (which itself extends the XPath model).
+ */
+package uk.ac.ox.comlab.diadem.oxpath.model;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNode;
+import diadem.common.web.dom.xpath.DOMXPathResult;
+
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathExpressionCache;
+
+/**
+ * Assigns each DOM node an integer pre-order ordinal, computed once per {@code DOMDocument} with a single document-ordered
+ * XPath snapshot.  {@code OXPathNodeList} sorts, merges and deduplicates on the resulting keys rather than calling 
+ * {@code compareDocumentPosition} in the browser for every comparison.
+ * <p>
+ * Keys are {@code long} values; the upper 32 bits encode the sequence number of the document (in the order the documents were
+ * first indexed) and the lower 32 bits encode the ordinal of the node within its document.  Nodes that are not found in the 
+ * document snapshot (even after the document is re-indexed) are considered disconnected and receive ordinals after all attached 
+ * nodes in the order they are first seen, so the order remains total and consistent.
+ * <p>
+ * An ordinal, once given to a node, is never changed or given to another node, as context nodes cache their keys: a page changed 
+ * in place (e.g. content loaded on the fly) is re-indexed on the first node missing from the index, and only the nodes new to the 
+ * index are numbered.  The first snapshot spaces the ordinals {@code GAP} apart, so new nodes are numbered between the known 
+ * nodes around them while there is room, and after all known nodes otherwise.  Keys thus stay unique, and in document order 
+ * except for nodes moved, or inserted where no room was left, since the first snapshot.
+ * <p>
+ * Indexes are held until the document is cleared with {@code clear(page)}, which PAAT calls whenever it frees a page.  Indexes of
+ * documents that are never cleared (e.g. because their window was already gone) are dropped once more than {@code MAXINDEXES} 
+ * more recently used documents are indexed; a dropped document that is used again is re-indexed under a new sequence number.
+ * @author AndrewJSel
+ *
+ */
+public final class OXPathDocumentOrder {
+
+	/**
+	 * Returns the document order key of the input node
+	 * @param node the node to key
+	 * @return the document order key of the input node
+	 */
+	public static long getOrderKey(DOMNode node) {
+		DOMDocument document = (node instanceof DOMDocument)?(DOMDocument)node:node.getOwnerDocument();
+		return getIndex(document).orderKey(node);
+	}
+	
+	/**
+	 * Returns the sequence number of the document (the upper bits of any key of a node in the document)
+	 * @param key a key returned by {@code getOrderKey(node)}
+	 * @return the sequence number of the document containing the keyed node
+	 */
+	public static int getDocumentSequence(long key) {
+		return (int) (key >>> ORDINALBITS);
+	}
+	
+	/**
+	 * Returns the ordinal of the node within its document 
+	 * @param key a key returned by {@code getOrderKey(node)}
+	 * @return the ordinal of the keyed node within its document
+	 */
+	public static int getOrdinal(long key) {
+		return (int) (key & ORDINALMASK);
+	}
+
+	/**
+	 * Removes the ordinal index of the input document
+	 * @param page the page whose index is removed
+	 * @return {@code true} if an index existed for the page, {@code false} otherwise
+	 */
+	public static Boolean clear(DOMDocument page) {
+		synchronized (indexes) {
+			return (indexes.remove(page)!=null);
+		}
+	}
+
+	/**
+	 * Returns the index for the document, creating an (empty) one if necessary
+	 * @param document the document to index
+	 * @return the index for the document
+	 */
+	private static OXPathDocumentOrder getIndex(DOMDocument document) {
+		synchronized (indexes) {
+			OXPathDocumentOrder index = indexes.get(document);
+			if (index == null) {
+				index = new OXPathDocumentOrder(document, ++lastSequence);
+				indexes.put(document, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Constructs an index for the document; the snapshot is taken lazily on the first lookup
+	 * @param iDocument the document to index ({@code null} for nodes without an owner document)
+	 * @param iSequence the sequence number of the document
+	 */
+	private OXPathDocumentOrder(DOMDocument iDocument, int iSequence) {
+		this.document = iDocument;
+		this.sequence = iSequence;
+	}
+
+	/**
+	 * Returns the order key of a node in this document.  A miss causes the document to be indexed again (the DOM may have been 
+	 * modified since the last snapshot); nodes still missing afterwards are treated as disconnected.
+	 * @param node the node in this document
+	 * @return the order key of the node
+	 */
+	private synchronized long orderKey(DOMNode node) {
+		Integer ordinal = this.lookup(node);
+		if (ordinal == null) {
+			this.index();
+			ordinal = this.lookup(node);
+			if (ordinal == null) {
+				ordinal = DETACHEDBASE + this.detached.size();
+				this.detached.put(node, ordinal);
+			}
+		}
+		return (((long)this.sequence) << ORDINALBITS) | ordinal;
+	}
+
+	/**
+	 * Looks up the node in the index, without re-indexing
+	 * @param node the node to find
+	 * @return the ordinal of the node, or {@code null} if the node is not indexed
+	 */
+	private Integer lookup(DOMNode node) {
+		Integer ordinal = this.ordinals.get(node);
+		return (ordinal!=null)?ordinal:this.detached.get(node);
+	}
+
+	/**
+	 * Takes a document-ordered snapshot of all nodes (including attributes) of the document and numbers the nodes not numbered 
+	 * before: each run of new nodes is spread between the ordinals of the known nodes around it if they leave room (and the 
+	 * ordinals are free), and numbered after all known nodes otherwise
+	 */
+	private void index() {
+		if (this.document == null) return;
+		DOMXPathResult snapshot = OXPathExpressionCache.evaluate(INDEXQUERY, this.document, DOMXPathResult.ORDERED_NODE_SNAPSHOT_TYPE);
+		int length = (int) snapshot.getSnapshotLength();
+		DOMNode[] nodes = new DOMNode[length];
+		for (int i = 0; i < length; i++) nodes[i] = snapshot.snapshotItem(i);
+		int lower = 0;
+		int i = 0;
+		while (i < length) {
+			Integer known = this.ordinals.get(nodes[i]);
+			if (known != null) {
+				lower = known;
+				i++;
+				continue;
+			}
+			int end = i;
+			while (end < length && !this.ordinals.containsKey(nodes[end])) end++;
+			Integer upper = (end < length)?this.ordinals.get(nodes[end]):null;
+			int run = end - i;
+			boolean spread = (upper != null) && ((long) upper - lower > run);
+			for (int j = 0; spread && j < run; j++) {
+				spread = !this.used.contains(spreadOrdinal(lower, upper, j, run));
+			}
+			for (int j = 0; j < run; j++) {
+				int ordinal = (spread)?spreadOrdinal(lower, upper, j, run):this.next;
+				if (!spread) this.next += GAP;
+				this.ordinals.put(nodes[i + j], ordinal);
+				this.used.add(ordinal);
+			}
+			i = end;
+		}
+	}
+
+	/**
+	 * Returns the ordinal of the j-th of {@code run} new nodes spread evenly between two known ordinals
+	 * @param lower the ordinal of the known node before the run
+	 * @param upper the ordinal of the known node after the run
+	 * @param j the position of the new node in the run
+	 * @param run the number of new nodes in the run
+	 * @return the ordinal of the new node
+	 */
+	private static int spreadOrdinal(int lower, int upper, int j, int run) {
+		return (int) (lower + ((long) upper - lower) * (j + 1) / (run + 1));
+	}
+
+	/**
+	 * the indexed document
+	 */
+	private final DOMDocument document;
+	/**
+	 * sequence number of the indexed document
+	 */
+	private final int sequence;
+	/**
+	 * ordinals of the nodes found in a snapshot of the document, including nodes since removed, as their keys may still be held
+	 */
+	private final Map<DOMNode,Integer> ordinals = new HashMap<DOMNode,Integer>();
+	/**
+	 * the ordinals given out in {@code ordinals}
+	 */
+	private final Set<Integer> used = new HashSet<Integer>();
+	/**
+	 * ordinal of the next node numbered after all known nodes
+	 */
+	private int next = GAP;
+	/**
+	 * ordinals of the nodes not found in the document; kept across snapshots so these keys remain stable
+	 */
+	private final Map<DOMNode,Integer> detached = new HashMap<DOMNode,Integer>();
+
+	/**
+	 * indexes of the open documents
+	 */
+	private static final Map<DOMDocument,OXPathDocumentOrder> indexes = new LinkedHashMap<DOMDocument,OXPathDocumentOrder>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<DOMDocument,OXPathDocumentOrder> eldest) {
+			return (this.size() > MAXINDEXES);
+		}
+	};
+	/**
+	 * sequence number of the last indexed document
+	 */
+	private static int lastSequence = 0;
+
+	/**
+	 * Maximum number of documents indexed at once, in least recently used order
+	 */
+	public static final int MAXINDEXES = 256;
+	/**
+	 * Key shared by all nodes constructed by OXPath (e.g. the notional context); sorts before every browser node
+	 */
+	public static final long CONSTRUCTEDKEY = Long.MIN_VALUE;
+	/**
+	 * Query returning every node of the document in document order
+	 */
+	public static final String INDEXQUERY = "descendant-or-self::node() | descendant::*/@*";
+	/**
+	 * Number of bits of the key holding the ordinal
+	 */
+	private static final int ORDINALBITS = 32;
+	/**
+	 * Mask for the ordinal bits of the key
+	 */
+	private static final long ORDINALMASK = 0xFFFFFFFFL;
+	/**
+	 * Distance between the ordinals of nodes numbered after all known nodes (in particular, consecutive nodes of the first 
+	 * snapshot); at most {@code DETACHEDBASE / GAP} such nodes are numbered in a document before their ordinals run into those of
+	 * disconnected nodes
+	 */
+	private static final int GAP = 16;
+	/**
+	 * First ordinal assigned to disconnected nodes
+	 */
+	private static final int DETACHEDBASE = 1 << 30;
+}
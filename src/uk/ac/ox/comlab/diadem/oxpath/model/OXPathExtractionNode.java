@@ -69,6 +69,20 @@ public class OXPathExtractionNode implements Serializable{
 		value = iValue;
 	}
 	
+	/**
+	 * Constructor for nodes carrying a document order key
+	 * @param iId id of node
+	 * @param iParent parent of node
+	 * @param iLabel label of node
+	 * @param iValue value of node
+	 * @param iOrderKey document order key of the context node the node is extracted from (see {@code OXPathDocumentOrder}), or 
+	 * {@code UNORDERED}
+	 */
+	public OXPathExtractionNode(int iId, int iParent, String iLabel, String iValue, long iOrderKey) {
+		this(iId,iParent,iLabel,iValue);
+		orderKey = iOrderKey;
+	}
+	
 	/**
 	 * Returns the end node object, signaling to the {@code OXPathOutputHandler} that all output has been sent and the communications channel can be closed
 	 * @return the end node object, signaling to the {@code OXPathOutputHandler} that all output has been sent and the communications channel can be closed
@@ -85,6 +99,34 @@ public class OXPathExtractionNode implements Serializable{
 		return this.equals(OXPathExtractionNode.endNode);
 	}
 	
+	/**
+	 * Returns a close node, signaling to the {@code OXPathOutputHandler} that the extraction node with id {@code closed} can gain no
+	 * further children, so its subtree is complete and may be emitted and freed
+	 * @param closed id of the extraction node that is complete
+	 * @return a close node for the extraction node with id {@code closed}
+	 */
+	public static OXPathExtractionNode returnCloseNode(int closed) {
+		return new OXPathExtractionNode(closeNodeID,closed,closeNodeLabel);
+	}
+	
+	/**
+	 * Determines if the implicit parameter is a close node
+	 * @return {@code true} if the implicit parameter is a close node; {@code false} otherwise
+	 */
+	public boolean isCloseNode() {
+		return this.id == closeNodeID && closeNodeLabel.equals(this.label);
+	}
+	
+	/**
+	 * Returns the id of the extraction node a close node signals to be complete
+	 * @return the id of the extraction node a close node signals to be complete
+	 * @throws IllegalStateException if the implicit parameter isn't a close node
+	 */
+	public int getClosedId() {
+		if (!this.isCloseNode()) throw new IllegalStateException("Not a close node: " + this);
+		return this.parent;
+	}
+	
 	/**
 	 * Returns id
 	 * @return id
@@ -117,6 +159,15 @@ public class OXPathExtractionNode implements Serializable{
 		return this.value;
 	}
 	
+	/**
+	 * Returns the document order key of the context node the node is extracted from: the sequence number of its page and the 
+	 * ordinal of the context node within the page (see {@code OXPathDocumentOrder}); {@code UNORDERED} if no key was recorded
+	 * @return the document order key
+	 */
+	public long getOrderKey() {
+		return this.orderKey;
+	}
+	
 	/**
 	 * returns <tt>String</tt> representation of object
 	 * @return <tt>String</tt> representation of object
@@ -155,6 +206,15 @@ public class OXPathExtractionNode implements Serializable{
 	 * instance field for storing value
 	 */
 	private String value;
+	/**
+	 * instance field for storing the document order key; not part of equality, as it only positions the node among its siblings
+	 */
+	private long orderKey = UNORDERED;
+	
+	/**
+	 * document order key of nodes extracted without one; sorts before any key of a DOM node
+	 */
+	public static final long UNORDERED = 0L;
 	
 	/**
 	 * static field encoding state information for end node, the node that lets the consumer process know that all input is received and the connection can be closed
@@ -179,6 +239,16 @@ public class OXPathExtractionNode implements Serializable{
 	 * storage for the end node, signaling to the consumer that all input has been received
 	 */
 	private static final OXPathExtractionNode endNode = new OXPathExtractionNode(endNodeID,endNodeParent, endNodeLabel,endNodeValue);
+	
+	/**
+	 * static field encoding state information for close nodes, the nodes that let the consumer process know that an extraction node is complete
+	 */
+	private static final int closeNodeID = -3;
+	
+	/**
+	 * static field encoding state information for close nodes, the nodes that let the consumer process know that an extraction node is complete
+	 */
+	private static final String closeNodeLabel = "closeNodeLabel13579";
 
 
 	/**
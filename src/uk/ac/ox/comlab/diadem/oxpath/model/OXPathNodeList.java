@@ -1,65 +1,605 @@
-/*
- * Copyright (c)2011, DIADEM Team
- * All rights reserved.
- * 
- * Redistribution and use in source and binary forms, with or without
- * modification, are permitted provided that the following conditions are met:
- *     * Redistributions of source code must retain the above copyright
- *       notice, this list of conditions and the following disclaimer.
- *     * Redistributions in binary form must reproduce the above copyright
- *       notice, this list of conditions and the following disclaimer in the
- *       documentation and/or other materials provided with the distribution.
- *     * Neither the name of the DIADEM team nor the
- *       names of its contributors may be used to endorse or promote products
- *       derived from this software without specific prior written permission.
- * 
- * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
- * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
- * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
- * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
- * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
- * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
- * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
- * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
- * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
- * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
- */
-/**
- * Package containing supporting classes, derived from the OXPath model (which itself extends the XPath model).
- */
-package uk.ac.ox.comlab.diadem.oxpath.model;
-
-import java.util.Comparator;
-import java.util.TreeSet;
-
-
-/**
- * 
- * Object for holding a set of OXPath context nodes.  We use inheritance instead of composition as we don't make any internal dependendency on the class implementation.
- * @author AndrewJSel
- *
- */
-public class OXPathNodeList extends TreeSet<OXPathContextNode> {
-
-	public OXPathNodeList() {
-		super();
-	}
-	
-	public OXPathNodeList(OXPathContextNode node) {
-		super();
-		this.add(node);
-	}
-	
-	public OXPathNodeList(Comparator<Object> comparator) {
-		super(comparator);
-	}
-	
-	/**
-	 * Default id to get rid of compiler warning.  Recommend not serializing - not tested!
-	 */
-	private static final long serialVersionUID = 1L;
-	
-	
-
-	
-}
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing supporting classes, derived from the OXPath model (which itself extends the XPath model).
+ */
+package uk.ac.ox.comlab.diadem.oxpath.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * 
+ * Object for holding a set of OXPath context nodes, in document order (or reverse document order for reverse axes).  Each node is
+ * keyed once by its document ordinal (see {@code OXPathDocumentOrder}) and the set sorts, merges and deduplicates on these 
+ * primitive keys, so no browser call is made when nodes are compared.  Nodes are appended to the backing arrays and the set is only 
+ * sorted when it is read, so building a set from many {@code add} and {@code addAll} calls costs a single sort.
+ * <p>
+ * Keying a node indexes its whole document on first use, which doesn't pay off for the many sets that hold a handful of nodes 
+ * (a single context node, a predicate or a small step result).  Sets of at most {@code SMALLSET} nodes are therefore kept 
+ * unkeyed and sorted with {@code compareDocumentPosition}; a set is keyed once it grows larger or is merged with a keyed set.
+ * <p>
+ * Two nodes are the same member of the set if they wrap the same DOM node and have the same parent marker (as in the natural 
+ * ordering of {@code OXPathContextNode}).  {@code OXPathContextNodeConstructed} nodes sort before all browser nodes in insertion 
+ * order and are only merged with adjacent equal nodes.  As duplicates are removed lazily, {@code add} may return {@code true} for
+ * a node that is already in the set.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathNodeList extends AbstractSet<OXPathContextNode> {
+
+	/**
+	 * Creates an empty set in document order
+	 */
+	public OXPathNodeList() {
+		this(true);
+	}
+	
+	/**
+	 * Creates a set in document order containing the input node
+	 * @param node the only node of the set
+	 */
+	public OXPathNodeList(OXPathContextNode node) {
+		this.forward = true;
+		this.nodes = new OXPathContextNode[] {node};
+		this.keys = new long[1];
+		this.parents = new int[] {node.getParent()};
+		this.size = 1;
+	}
+	
+	/**
+	 * Creates an empty set; the backing arrays are allocated on the first addition, as many sets stay empty
+	 * @param isForward {@code true} for document order, {@code false} for reverse document order
+	 */
+	public OXPathNodeList(boolean isForward) {
+		this.forward = isForward;
+		this.nodes = EMPTYNODES;
+		this.keys = EMPTYKEYS;
+		this.parents = EMPTYPARENTS;
+	}
+	
+	/**
+	 * Returns {@code true} if the set iterates in document order, {@code false} if in reverse document order
+	 * @return {@code true} if the set iterates in document order, {@code false} if in reverse document order
+	 */
+	public boolean isForward() {
+		return this.forward;
+	}
+
+	/**
+	 * Adds the node to the set
+	 * @param node the node to add
+	 * @return {@code false} if the node is known to be in the set already, {@code true} otherwise
+	 */
+	@Override
+	public boolean add(OXPathContextNode node) {
+		if (!this.keyed && this.size >= SMALLSET) this.key();
+		if (!this.keyed) {
+			this.ensureCapacity(this.size + 1);
+			this.nodes[this.size] = node;
+			this.parents[this.size] = node.getParent();
+			if (this.size > 0) this.sorted = false;
+			this.size++;
+			return true;
+		}
+		long key = node.getDocumentOrderKey();
+		int parent = node.getParent();
+		if (this.sorted && this.size > 0) {
+			int last = this.size - 1;
+			int c = this.compare(this.keys[last], this.parents[last], key, parent);
+			if (c > 0) this.sorted = false;
+			else if (c == 0 && this.isDuplicate(last, key, node)) return false;
+		}
+		this.ensureCapacity(this.size + 1);
+		this.nodes[this.size] = node;
+		this.keys[this.size] = key;
+		this.parents[this.size] = parent;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Adds all nodes to the set; when {@code c} is an {@code OXPathNodeList}, its keys are reused
+	 * @param c the nodes to add
+	 * @return {@code true} if any node was added
+	 */
+	@Override
+	public boolean addAll(Collection<? extends OXPathContextNode> c) {
+		if (!(c instanceof OXPathNodeList)) return super.addAll(c);
+		OXPathNodeList other = (OXPathNodeList) c;
+		if (other == this || other.isEmpty()) return false;
+		if (!this.keyed && !other.keyed && this.size + other.size <= SMALLSET) {
+			other.normalize();
+			this.ensureCapacity(this.size + other.size);
+			System.arraycopy(other.nodes, 0, this.nodes, this.size, other.size);
+			System.arraycopy(other.parents, 0, this.parents, this.size, other.size);
+			if (this.size > 0) this.sorted = false;
+			this.size += other.size;
+			return true;
+		}
+		this.key();
+		other.key();
+		other.normalize();
+		this.ensureCapacity(this.size + other.size);
+		boolean changed = false;
+		for (int i = 0; i < other.size; i++) {
+			if (this.sorted && this.size > 0) {
+				int last = this.size - 1;
+				int cmp = this.compare(this.keys[last], this.parents[last], other.keys[i], other.parents[i]);
+				if (cmp > 0) this.sorted = false;
+				else if (cmp == 0 && this.isDuplicate(last, other.keys[i], other.nodes[i])) continue;
+			}
+			this.nodes[this.size] = other.nodes[i];
+			this.keys[this.size] = other.keys[i];
+			this.parents[this.size] = other.parents[i];
+			this.size++;
+			changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * Removes all nodes contained in {@code c}; when {@code c} is a keyed {@code OXPathNodeList} with the same ordering (and this
+	 * set is keyed), both sets are merged in a single pass over the keys
+	 * @param c the nodes to remove
+	 * @return {@code true} if any node was removed
+	 */
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		this.normalize();
+		if (!(c instanceof OXPathNodeList) || ((OXPathNodeList)c).forward != this.forward) return super.removeAll(c);
+		OXPathNodeList other = (OXPathNodeList) c;
+		if (!this.keyed || !other.keyed) return super.removeAll(c);
+		if (other == this) {
+			boolean changed = !this.isEmpty();
+			this.clear();
+			return changed;
+		}
+		other.normalize();
+		int kept = 0;
+		int j = 0;
+		for (int i = 0; i < this.size; i++) {
+			while (j < other.size && this.compare(other.keys[j], other.parents[j], this.keys[i], this.parents[i]) < 0) j++;
+			boolean remove = false;
+			for (int k = j; k < other.size && this.compare(other.keys[k], other.parents[k], this.keys[i], this.parents[i]) == 0; k++) {
+				if (other.isDuplicate(k, this.keys[i], this.nodes[i])) {
+					remove = true;
+					break;
+				}
+			}
+			if (!remove) this.move(i, kept++);
+		}
+		return this.truncate(kept);
+	}
+
+	/**
+	 * Returns {@code true} if the set contains the input node
+	 * @param o the node to look for
+	 * @return {@code true} if the set contains the input node
+	 */
+	@Override
+	public boolean contains(Object o) {
+		return this.indexOf(o) >= 0;
+	}
+
+	/**
+	 * Removes the input node from the set
+	 * @param o the node to remove
+	 * @return {@code true} if the node was in the set
+	 */
+	@Override
+	public boolean remove(Object o) {
+		int index = this.indexOf(o);
+		if (index < 0) return false;
+		this.removeAt(index);
+		return true;
+	}
+
+	/**
+	 * Returns an iterator over the set in the order of the set
+	 * @return an iterator over the set in the order of the set
+	 */
+	@Override
+	public Iterator<OXPathContextNode> iterator() {
+		this.normalize();
+		return new Iterator<OXPathContextNode>() {
+
+			@Override
+			public boolean hasNext() {
+				return this.next < OXPathNodeList.this.size;
+			}
+
+			@Override
+			public OXPathContextNode next() {
+				if (!this.hasNext()) throw new NoSuchElementException();
+				this.current = this.next++;
+				return OXPathNodeList.this.nodes[this.current];
+			}
+
+			@Override
+			public void remove() {
+				if (this.current < 0) throw new IllegalStateException();
+				OXPathNodeList.this.removeAt(this.current);
+				this.next = this.current;
+				this.current = -1;
+			}
+
+			private int next = 0;
+			private int current = -1;
+		};
+	}
+
+	/**
+	 * Returns the number of nodes in the set
+	 * @return the number of nodes in the set
+	 */
+	@Override
+	public int size() {
+		this.normalize();
+		return this.size;
+	}
+
+	/**
+	 * Returns {@code true} if the set is empty (removing duplicates never empties a set, so this doesn't require sorting)
+	 * @return {@code true} if the set is empty
+	 */
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all nodes from the set
+	 */
+	@Override
+	public void clear() {
+		Arrays.fill(this.nodes, 0, this.size, null);
+		this.size = 0;
+		this.sorted = true;
+		this.keyed = false;
+	}
+
+	/**
+	 * Returns the first node in the order of the set
+	 * @return the first node in the order of the set
+	 * @throws NoSuchElementException if the set is empty
+	 */
+	public OXPathContextNode first() {
+		this.normalize();
+		if (this.size == 0) throw new NoSuchElementException();
+		return this.nodes[0];
+	}
+
+	/**
+	 * Returns the last node in the order of the set
+	 * @return the last node in the order of the set
+	 * @throws NoSuchElementException if the set is empty
+	 */
+	public OXPathContextNode last() {
+		this.normalize();
+		if (this.size == 0) throw new NoSuchElementException();
+		return this.nodes[this.size - 1];
+	}
+
+	/**
+	 * Compares two members of the set by key and then by parent marker (higher parents first, as in the natural ordering of
+	 * {@code OXPathContextNode}), accounting for the order of the set
+	 * @param k1 key of the first node
+	 * @param p1 parent of the first node
+	 * @param k2 key of the second node
+	 * @param p2 parent of the second node
+	 * @return standard {@code Comparator} convention in the order of the set
+	 */
+	private int compare(long k1, int p1, long k2, int p2) {
+		int c;
+		if (k1 < k2) c = -1;
+		else if (k1 > k2) c = 1;
+		else if (p1 > p2) c = -1;
+		else if (p1 < p2) c = 1;
+		else c = 0;
+		return (this.forward)?c:-c;
+	}
+
+	/**
+	 * Compares two nodes of an unkeyed set in the browser, with the same conventions as {@code compare(k1, p1, k2, p2)}; nodes 
+	 * disconnected from each other fall back to their keys
+	 * @param n1 the first node
+	 * @param n2 the second node
+	 * @return standard {@code Comparator} convention in the order of the set
+	 */
+	private int compare(OXPathContextNode n1, OXPathContextNode n2) {
+		boolean constructed1 = n1 instanceof OXPathContextNodeConstructed;
+		boolean constructed2 = n2 instanceof OXPathContextNodeConstructed;
+		long k1 = 0;
+		long k2 = 0;
+		if (constructed1 || constructed2) {
+			k1 = (constructed1)?0:1;
+			k2 = (constructed2)?0:1;
+		}
+		else {
+			short position = n1.getNode().compareDocumentPosition(n2.getNode());
+			if ((position & OXPathContextNode.DOCUMENT_POSITION_DISCONNECTED) != 0) {
+				k1 = n1.getDocumentOrderKey();
+				k2 = n2.getDocumentOrderKey();
+			}
+			else if ((position & OXPathContextNode.DOCUMENT_POSITION_FOLLOWING) != 0) k2 = 1;
+			else if ((position & OXPathContextNode.DOCUMENT_POSITION_PRECEDING) != 0) k1 = 1;
+		}
+		return this.compare(k1, n1.getParent(), k2, n2.getParent());
+	}
+
+	/**
+	 * Determines if the node at {@code index} and the input node wrap the same DOM node (or are equal constructed nodes) and have
+	 * the same parent marker, without calling the browser; used by unkeyed sets
+	 * @param index index of the node in the set
+	 * @param node the other node
+	 * @return {@code true} if both are the same member of the set
+	 */
+	private boolean isSameMember(int index, OXPathContextNode node) {
+		OXPathContextNode member = this.nodes[index];
+		if (member.getParent() != node.getParent()) return false;
+		boolean constructed = member instanceof OXPathContextNodeConstructed;
+		if (constructed != (node instanceof OXPathContextNodeConstructed)) return false;
+		return (constructed)?member.equals(node):member.getNode().equals(node.getNode());
+	}
+
+	/**
+	 * Keys all nodes of the set (which may then need sorting again, as keys of moved nodes may disagree with the live document)
+	 */
+	private void key() {
+		if (this.keyed) return;
+		for (int i = 0; i < this.size; i++) this.keys[i] = this.nodes[i].getDocumentOrderKey();
+		this.keyed = true;
+		if (this.size > 1) this.sorted = false;
+	}
+
+	/**
+	 * Determines if the node at {@code index} and the input node (which compare as equal) are the same member of the set
+	 * @param index index of the node in the set
+	 * @param key key of the other node
+	 * @param node the other node
+	 * @return {@code true} if both are the same member of the set
+	 */
+	private boolean isDuplicate(int index, long key, OXPathContextNode node) {
+		return (key != OXPathDocumentOrder.CONSTRUCTEDKEY) || this.nodes[index].equals(node);
+	}
+
+	/**
+	 * Returns the index of the node in the (sorted) set, or -1 if the node is not a member
+	 * @param o the node to find
+	 * @return the index of the node, or -1 if the node is not a member
+	 */
+	private int indexOf(Object o) {
+		if (!(o instanceof OXPathContextNode)) return -1;
+		this.normalize();
+		OXPathContextNode node = (OXPathContextNode) o;
+		if (!this.keyed) {
+			for (int i = 0; i < this.size; i++) {
+				if (this.isSameMember(i, node)) return i;
+			}
+			return -1;
+		}
+		long key = node.getDocumentOrderKey();
+		int parent = node.getParent();
+		int low = 0;
+		int high = this.size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.compare(this.keys[mid], this.parents[mid], key, parent) < 0) low = mid + 1;
+			else high = mid;
+		}
+		for (int i = low; i < this.size && this.compare(this.keys[i], this.parents[i], key, parent) == 0; i++) {
+			if (this.isDuplicate(i, key, node)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Sorts the backing arrays (stably, so constructed nodes keep their insertion order) and removes duplicates
+	 */
+	private void normalize() {
+		if (this.sorted) return;
+		if (!this.keyed) {
+			this.insertionSort();
+			return;
+		}
+		int[] order = new int[this.size];
+		for (int i = 0; i < this.size; i++) order[i] = i;
+		this.mergeSort(order, new int[this.size], 0, this.size);
+		OXPathContextNode[] sortedNodes = new OXPathContextNode[this.nodes.length];
+		long[] sortedKeys = new long[this.keys.length];
+		int[] sortedParents = new int[this.parents.length];
+		int kept = 0;
+		for (int i = 0; i < this.size; i++) {
+			int from = order[i];
+			if (kept > 0 && this.compare(sortedKeys[kept-1], sortedParents[kept-1], this.keys[from], this.parents[from]) == 0
+					&& ((this.keys[from] != OXPathDocumentOrder.CONSTRUCTEDKEY) || sortedNodes[kept-1].equals(this.nodes[from]))) continue;
+			sortedNodes[kept] = this.nodes[from];
+			sortedKeys[kept] = this.keys[from];
+			sortedParents[kept] = this.parents[from];
+			kept++;
+		}
+		this.nodes = sortedNodes;
+		this.keys = sortedKeys;
+		this.parents = sortedParents;
+		this.size = kept;
+		this.sorted = true;
+	}
+
+	/**
+	 * Sorts an unkeyed set in place by comparing its nodes in the browser (stable, and close to linear for nearly sorted sets) and 
+	 * removes duplicates
+	 */
+	private void insertionSort() {
+		for (int i = 1; i < this.size; i++) {
+			OXPathContextNode node = this.nodes[i];
+			int parent = this.parents[i];
+			int j = i;
+			while (j > 0 && this.compare(this.nodes[j-1], node) > 0) {
+				this.nodes[j] = this.nodes[j-1];
+				this.parents[j] = this.parents[j-1];
+				j--;
+			}
+			this.nodes[j] = node;
+			this.parents[j] = parent;
+		}
+		int kept = 0;
+		for (int i = 0; i < this.size; i++) {
+			if (kept > 0 && this.isSameMember(kept - 1, this.nodes[i])) continue;
+			this.nodes[kept] = this.nodes[i];
+			this.parents[kept] = this.parents[i];
+			kept++;
+		}
+		this.truncate(kept);
+		this.sorted = true;
+	}
+
+	/**
+	 * Stable merge sort of the index permutation {@code order[from..to)} by key and parent
+	 * @param order permutation being sorted
+	 * @param buffer scratch space of the same length as {@code order}
+	 * @param from first index (inclusive)
+	 * @param to last index (exclusive)
+	 */
+	private void mergeSort(int[] order, int[] buffer, int from, int to) {
+		if (to - from < 2) return;
+		int mid = (from + to) >>> 1;
+		this.mergeSort(order, buffer, from, mid);
+		this.mergeSort(order, buffer, mid, to);
+		if (this.compare(this.keys[order[mid-1]], this.parents[order[mid-1]], this.keys[order[mid]], this.parents[order[mid]]) <= 0) return;
+		System.arraycopy(order, from, buffer, from, to - from);
+		int i = from, j = mid, k = from;
+		while (i < mid && j < to) {
+			if (this.compare(this.keys[buffer[j]], this.parents[buffer[j]], this.keys[buffer[i]], this.parents[buffer[i]]) < 0) order[k++] = buffer[j++];
+			else order[k++] = buffer[i++];
+		}
+		while (i < mid) order[k++] = buffer[i++];
+		while (j < to) order[k++] = buffer[j++];
+	}
+
+	/**
+	 * Grows the backing arrays to hold at least {@code capacity} nodes
+	 * @param capacity the required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= this.nodes.length) return;
+		int newCapacity = Math.max(Math.max(capacity, this.nodes.length * 2), DEFAULTCAPACITY);
+		this.nodes = Arrays.copyOf(this.nodes, newCapacity);
+		this.keys = Arrays.copyOf(this.keys, newCapacity);
+		this.parents = Arrays.copyOf(this.parents, newCapacity);
+	}
+
+	/**
+	 * Moves the node at index {@code from} to index {@code to} (where {@code to <= from})
+	 * @param from source index
+	 * @param to target index
+	 */
+	private void move(int from, int to) {
+		if (from == to) return;
+		this.nodes[to] = this.nodes[from];
+		this.keys[to] = this.keys[from];
+		this.parents[to] = this.parents[from];
+	}
+
+	/**
+	 * Drops every node from index {@code newSize} onwards
+	 * @param newSize the new size of the set
+	 * @return {@code true} if any node was dropped
+	 */
+	private boolean truncate(int newSize) {
+		if (newSize == this.size) return false;
+		Arrays.fill(this.nodes, newSize, this.size, null);
+		this.size = newSize;
+		return true;
+	}
+
+	/**
+	 * Removes the node at index {@code index}, keeping the order of the remaining nodes
+	 * @param index the index of the node to remove
+	 */
+	private void removeAt(int index) {
+		int moved = this.size - index - 1;
+		System.arraycopy(this.nodes, index + 1, this.nodes, index, moved);
+		System.arraycopy(this.keys, index + 1, this.keys, index, moved);
+		System.arraycopy(this.parents, index + 1, this.parents, index, moved);
+		this.nodes[--this.size] = null;
+	}
+
+	/**
+	 * {@code true} for document order, {@code false} for reverse document order
+	 */
+	private final boolean forward;
+	/**
+	 * the nodes of the set
+	 */
+	private OXPathContextNode[] nodes;
+	/**
+	 * document order keys of the nodes, see {@code OXPathDocumentOrder}
+	 */
+	private long[] keys;
+	/**
+	 * {@code true} if {@code keys} holds the keys of the nodes; unkeyed sets hold at most {@code SMALLSET} nodes
+	 */
+	private boolean keyed = false;
+	/**
+	 * parent markers of the nodes
+	 */
+	private int[] parents;
+	/**
+	 * number of nodes in the backing arrays (which may include duplicates if the set isn't sorted)
+	 */
+	private int size = 0;
+	/**
+	 * {@code true} if the backing arrays are sorted and free of duplicates
+	 */
+	private boolean sorted = true;
+
+	/**
+	 * Initial capacity of the backing arrays
+	 */
+	private static final int DEFAULTCAPACITY = 4;
+	/**
+	 * Largest set ordered with {@code compareDocumentPosition} rather than document order keys
+	 */
+	private static final int SMALLSET = 8;
+	/**
+	 * backing array shared by empty sets (never written to, as sets grow before adding)
+	 */
+	private static final OXPathContextNode[] EMPTYNODES = new OXPathContextNode[0];
+	/**
+	 * backing array shared by empty sets
+	 */
+	private static final long[] EMPTYKEYS = new long[0];
+	/**
+	 * backing array shared by empty sets
+	 */
+	private static final int[] EMPTYPARENTS = new int[0];
+}
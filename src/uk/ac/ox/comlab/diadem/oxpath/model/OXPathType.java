@@ -162,7 +162,7 @@ public class OXPathType {
 	 * @param in input NodeList
 	 */
 	public void set(OXPathNodeList in) {
-		if (this.nodes==null) this.nodes = new OXPathNodeList();
+		if (this.nodes==null) this.nodes = new OXPathNodeList(in.isForward());
 		this.nodes.addAll(in);
 		this.type = NODESET;
 	}
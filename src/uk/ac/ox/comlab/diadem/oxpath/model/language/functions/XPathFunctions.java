@@ -251,7 +251,7 @@ public enum XPathFunctions implements XPathFunction {
 		 * @throws OXPathException in case of function error
 		 */
 		public OXPathType evaluate(ArrayList<OXPathType> args, PAATStateEvalSet state) throws OXPathException {
-			if (!(args.get(0).string().contains(args.get(1).string()))) return new OXPathType(false);
+			if (!(args.get(0).string().contains(args.get(1).string()))) return new OXPathType("");
 			return new OXPathType(args.get(0).string().substring(0, args.get(0).string().indexOf(args.get(1).string())));
 		}
 	},
@@ -269,7 +269,7 @@ public enum XPathFunctions implements XPathFunction {
 		 * @throws OXPathException in case of function error
 		 */
 		public OXPathType evaluate(ArrayList<OXPathType> args, PAATStateEvalSet state) throws OXPathException {
-			if (!(args.get(0).string().contains(args.get(1).string()))) return new OXPathType(false);
+			if (!(args.get(0).string().contains(args.get(1).string()))) return new OXPathType("");
 			//have to adjust for the length of the second argument for substring after
 			return new OXPathType(args.get(0).string().substring(args.get(0).string().indexOf(args.get(1).string())+args.get(1).string().length()));
 		}		
@@ -288,10 +288,15 @@ public enum XPathFunctions implements XPathFunction {
 		 * @throws OXPathException in case of function error
 		 */
 		public OXPathType evaluate(ArrayList<OXPathType> args, PAATStateEvalSet state) throws OXPathException {
-			//-1 because XPath begins string index at 1, java at 0
-			if (args.size()==2) return new OXPathType(args.get(0).string().substring(args.get(1).number().intValue()+1));
-			else return new OXPathType(args.get(0).string().substring(args.get(1).number().intValue()-1,
-					                                                  args.get(1).number().intValue()-1+args.get(2).number().intValue()));
+			//XPath keeps the characters at positions p (from 1) with round(start) <= p < round(start) + round(length), so NaN 
+			//arguments select nothing and positions outside the string are clamped
+			String s = args.get(0).string();
+			double start = roundHalfUp(args.get(1).number());
+			double end = (args.size()==2)?Double.POSITIVE_INFINITY:start + roundHalfUp(args.get(2).number());
+			double first = Math.max(start, 1);
+			double last = Math.min(end, s.length() + 1);
+			if (!(first < last)) return new OXPathType("");
+			return new OXPathType(s.substring((int) first - 1, (int) last - 1));
 		}		
 	},
 	
@@ -523,7 +528,7 @@ public enum XPathFunctions implements XPathFunction {
 		 * @throws OXPathException in case of function error
 		 */
 		public OXPathType evaluate(ArrayList<OXPathType> args, PAATStateEvalSet state) throws OXPathException {
-			return new OXPathType(Math.round(args.get(0).number()));
+			return new OXPathType(roundHalfUp(args.get(0).number()));
 		}
 	};	
 	
@@ -539,6 +544,17 @@ public enum XPathFunctions implements XPathFunction {
 		this.maxParam = maxP;
 	}
 	
+	/**
+	 * Rounds as the XPath <tt>round</tt> function does: to the closest integer, halves towards positive infinity, keeping NaN and 
+	 * the infinities (unlike {@code Math.round})
+	 * @param x the number to round
+	 * @return the closest integer to {@code x}, as a {@code double}
+	 */
+	private static double roundHalfUp(double x) {
+		double floor = Math.floor(x);
+		return (x - floor >= 0.5)?floor + 1:floor;
+	}
+
 	/**
 	 * Returns the function name (no parentheses)
 	 * @return the function name (no parentheses)
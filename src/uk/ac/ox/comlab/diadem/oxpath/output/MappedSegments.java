@@ -0,0 +1,190 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte space addressed by {@code long} positions, backed by segment files of equal, power-of-two size, each mapped into memory
+ * once it is first needed.  The contents live in the page cache rather than on the Java heap, and are written back to the files
+ * by the operating system.  An {@code int} at a multiple of 4, or a {@code long} at a multiple of 8, never straddles two
+ * segments; byte arrays may.  Absolute reads don't move any shared position, so several threads may read at once, as long as
+ * they don't race with a write.
+ * @author AndrewJSel
+ *
+ */
+class MappedSegments {
+
+	/**
+	 * Creates the space; no file is created before a position is ensured
+	 * @param iDirectory the directory of the segment files
+	 * @param iPrefix name prefix of the segment files
+	 * @param iSegmentBytes size of a segment file, a power of two of at least 8
+	 */
+	MappedSegments(File iDirectory, String iPrefix, int iSegmentBytes) {
+		this.directory = iDirectory;
+		this.prefix = iPrefix;
+		this.shift = Integer.numberOfTrailingZeros(iSegmentBytes);
+		this.mask = iSegmentBytes - 1;
+	}
+
+	/**
+	 * Maps segments until positions below {@code end} are available
+	 * @param end the first position that needn't be available
+	 * @throws IOException in case a segment file can't be created or mapped
+	 */
+	void ensure(long end) throws IOException {
+		while (((long) this.segments.size() << this.shift) < end) {
+			File file = new File(this.directory, String.format("%s-%05d.seg", this.prefix, this.segments.size()));
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(this.mask + 1L);
+				this.segments.add(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.mask + 1L));
+			} finally {
+				//the mapping stays valid once the file is closed
+				raf.close();
+			}
+			this.files.add(file);
+		}
+	}
+
+	/**
+	 * Reads the {@code int} at the position
+	 * @param pos the position, a multiple of 4
+	 * @return the {@code int} at the position
+	 */
+	int getInt(long pos) {
+		return this.segments.get((int) (pos >>> this.shift)).getInt((int) (pos & this.mask));
+	}
+
+	/**
+	 * Writes the {@code int} at the position, which must be available
+	 * @param pos the position, a multiple of 4
+	 * @param value the {@code int}
+	 */
+	void putInt(long pos, int value) {
+		this.segments.get((int) (pos >>> this.shift)).putInt((int) (pos & this.mask), value);
+	}
+
+	/**
+	 * Reads the {@code long} at the position
+	 * @param pos the position, a multiple of 8
+	 * @return the {@code long} at the position
+	 */
+	long getLong(long pos) {
+		return this.segments.get((int) (pos >>> this.shift)).getLong((int) (pos & this.mask));
+	}
+
+	/**
+	 * Writes the {@code long} at the position, which must be available
+	 * @param pos the position, a multiple of 8
+	 * @param value the {@code long}
+	 */
+	void putLong(long pos, long value) {
+		this.segments.get((int) (pos >>> this.shift)).putLong((int) (pos & this.mask), value);
+	}
+
+	/**
+	 * Reads bytes starting at the position
+	 * @param pos the position
+	 * @param dst the array filled with the bytes
+	 */
+	void get(long pos, byte[] dst) {
+		int done = 0;
+		while (done < dst.length) {
+			ByteBuffer segment = this.segments.get((int) (pos >>> this.shift)).duplicate();
+			segment.position((int) (pos & this.mask));
+			int n = Math.min(dst.length - done, segment.remaining());
+			segment.get(dst, done, n);
+			done += n;
+			pos += n;
+		}
+	}
+
+	/**
+	 * Writes bytes starting at the position; the positions written must be available
+	 * @param pos the position
+	 * @param src the bytes
+	 */
+	void put(long pos, byte[] src) {
+		int done = 0;
+		while (done < src.length) {
+			ByteBuffer segment = this.segments.get((int) (pos >>> this.shift)).duplicate();
+			segment.position((int) (pos & this.mask));
+			int n = Math.min(src.length - done, segment.remaining());
+			segment.put(src, done, n);
+			done += n;
+			pos += n;
+		}
+	}
+
+	/**
+	 * Forgets the mappings and deletes the segment files; the space can't be used afterwards.  The mapped memory is released once
+	 * the buffers are collected.
+	 */
+	void delete() {
+		this.segments.clear();
+		for (File file : this.files) file.delete();
+		this.files.clear();
+	}
+
+	/**
+	 * the directory of the segment files
+	 */
+	private final File directory;
+	/**
+	 * name prefix of the segment files
+	 */
+	private final String prefix;
+	/**
+	 * binary logarithm of the segment size
+	 */
+	private final int shift;
+	/**
+	 * segment size minus one, masking the offset of a position within its segment
+	 */
+	private final int mask;
+	/**
+	 * the mapped segments, in order
+	 */
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	/**
+	 * the segment files, in order
+	 */
+	private final List<File> files = new ArrayList<File>();
+}
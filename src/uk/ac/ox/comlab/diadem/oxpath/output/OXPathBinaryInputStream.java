@@ -0,0 +1,273 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.PushbackInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
+
+/**
+ * Reads the {@code OXPathExtractionNode} objects written by an {@code OXPathBinaryOutputStream} (see there for the format).
+ * {@code readObject} returns the nodes in order, the end node as {@code OXPathExtractionNode.returnEndNode()}, close nodes as
+ * {@code OXPathExtractionNode.returnCloseNode(int)}, and throws {@code EOFException} at the end of the stream, so
+ * {@code OXPathOutputHandler} subclasses read it as they would a Java serialization stream.  Only {@code readObject},
+ * {@code available} and {@code close} are supported.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathBinaryInputStream extends ObjectInputStream {
+
+	/**
+	 * Creates a reader, reading the header of the stream
+	 * @param iIn the underlying stream
+	 * @throws IOException in case the header can't be read
+	 * @throws StreamCorruptedException if the stream isn't in the binary format or has an unsupported version
+	 */
+	public OXPathBinaryInputStream(InputStream iIn) throws IOException {
+		super();
+		this.in = iIn;
+		for (byte b : OXPathBinaryOutputStream.MAGIC) {
+			if (this.get() != b) throw new StreamCorruptedException("Not a binary OXPath extraction stream");
+		}
+		byte version = this.get();
+		if (version != OXPathBinaryOutputStream.VERSION) throw new StreamCorruptedException("Unsupported binary OXPath extraction stream version " + version);
+	}
+
+	/**
+	 * Opens a reader for the stream, which may be in the binary format or a Java serialization stream, telling them apart by
+	 * the first byte
+	 * @param in the underlying stream
+	 * @return an {@code OXPathBinaryInputStream} or an {@code ObjectInputStream} reading {@code in}
+	 * @throws IOException in case the header can't be read
+	 */
+	public static ObjectInputStream open(InputStream in) throws IOException {
+		PushbackInputStream peek = new PushbackInputStream(in, 1);
+		int first = peek.read();
+		if (first < 0) throw new EOFException("Extraction stream is empty");
+		peek.unread(first);
+		return ((byte) first == OXPathBinaryOutputStream.MAGIC[0])?new OXPathBinaryInputStream(peek):new ObjectInputStream(peek);
+	}
+
+	/**
+	 * Reads the next node
+	 * @return the next node
+	 * @throws IOException in case the stream can't be read, ends ({@code EOFException}) or is corrupt
+	 * ({@code StreamCorruptedException})
+	 */
+	@Override
+	protected Object readObjectOverride() throws IOException {
+		byte tag = this.get();
+		switch (tag) {
+		case OXPathBinaryOutputStream.END:
+			return OXPathExtractionNode.returnEndNode();
+		case OXPathBinaryOutputStream.CLOSE:
+			return OXPathExtractionNode.returnCloseNode((int) (this.lastId - unzigzag(this.getVarLong())));
+		case OXPathBinaryOutputStream.ORDER:
+			this.lastOrderKey += unzigzag(this.getVarLong());
+			this.orderKey = this.lastOrderKey;
+			return this.readObjectOverride();
+		case OXPathBinaryOutputStream.NODE:
+		case OXPathBinaryOutputStream.VALUENODE:
+			long id = this.lastId + unzigzag(this.getVarLong());
+			long parent = id - unzigzag(this.getVarLong());
+			this.lastId = id;
+			String label = this.getLabel();
+			long key = this.orderKey;
+			this.orderKey = OXPathExtractionNode.UNORDERED;
+			return new OXPathExtractionNode((int) id, (int) parent, label, (tag == OXPathBinaryOutputStream.VALUENODE)?this.getString():"", key);
+		default:
+			throw new StreamCorruptedException("Unknown frame tag " + tag + " in binary OXPath extraction stream");
+		}
+	}
+
+	/**
+	 * Returns the number of bytes that can be read without blocking
+	 * @return the number of bytes that can be read without blocking
+	 * @throws IOException in case the underlying stream can't be queried
+	 */
+	@Override
+	public int available() throws IOException {
+		return (this.limit - this.position) + this.in.available();
+	}
+
+	/**
+	 * Closes the underlying stream
+	 * @throws IOException in case the underlying stream can't be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	/**
+	 * Reads a label: a dictionary index, or 0 and a new label
+	 * @return the label
+	 * @throws IOException in case the stream can't be read, ends or is corrupt
+	 */
+	private String getLabel() throws IOException {
+		long index = this.getVarLong();
+		if (index == 0) {
+			String label = this.getString();
+			if (this.labels.size() < OXPathBinaryOutputStream.MAXLABELS) this.labels.add(label);
+			return label;
+		}
+		if (index > this.labels.size()) throw new StreamCorruptedException("Undefined label " + index + " in binary OXPath extraction stream");
+		return this.labels.get((int) index - 1);
+	}
+
+	/**
+	 * Reads a string: its UTF-8 length and bytes
+	 * @return the string
+	 * @throws IOException in case the stream can't be read, ends or is corrupt
+	 */
+	private String getString() throws IOException {
+		long length = this.getVarLong();
+		if (length > Integer.MAX_VALUE) throw new StreamCorruptedException("String of " + length + " bytes in binary OXPath extraction stream");
+		int n = (int) length;
+		if (n <= this.buffer.length) {
+			if (this.limit - this.position < n) this.fill(n);
+			String s = new String(this.buffer, this.position, n, UTF8);
+			this.position += n;
+			return s;
+		}
+		byte[] bytes = new byte[n];
+		int have = this.limit - this.position;
+		System.arraycopy(this.buffer, this.position, bytes, 0, have);
+		this.position = this.limit;
+		while (have < n) {
+			int read = this.in.read(bytes, have, n - have);
+			if (read < 0) throw new EOFException("Binary OXPath extraction stream ends within a string");
+			have += read;
+		}
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Reads an unsigned varint
+	 * @return the value
+	 * @throws IOException in case the stream can't be read, ends or is corrupt
+	 */
+	private long getVarLong() throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = this.get();
+			v |= (long) (b & 0x7f) << shift;
+			if (b >= 0) return v;
+		}
+		throw new StreamCorruptedException("Malformed varint in binary OXPath extraction stream");
+	}
+
+	/**
+	 * Reads a byte
+	 * @return the byte
+	 * @throws IOException in case the stream can't be read or ends
+	 */
+	private byte get() throws IOException {
+		if (this.position == this.limit) this.fill(1);
+		return this.buffer[this.position++];
+	}
+
+	/**
+	 * Reads from the underlying stream until at least {@code n} bytes are buffered, moving the unread bytes to the start of the
+	 * buffer
+	 * @param n the number of bytes needed, at most the size of the buffer
+	 * @throws IOException in case the stream can't be read or ends
+	 */
+	private void fill(int n) throws IOException {
+		int have = this.limit - this.position;
+		System.arraycopy(this.buffer, this.position, this.buffer, 0, have);
+		this.position = 0;
+		this.limit = have;
+		while (this.limit < n) {
+			int read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+			if (read < 0) throw new EOFException("Binary OXPath extraction stream ended");
+			this.limit += read;
+		}
+	}
+
+	/**
+	 * Maps an unsigned value back to the signed one
+	 * @param v the unsigned value
+	 * @return the signed value
+	 */
+	private static long unzigzag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * encoding of the strings of the stream
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/**
+	 * size of the read buffer
+	 */
+	private static final int BUFFERSIZE = 8192;
+	/**
+	 * the underlying stream
+	 */
+	private final InputStream in;
+	/**
+	 * bytes read from the underlying stream
+	 */
+	private final byte[] buffer = new byte[BUFFERSIZE];
+	/**
+	 * index of the next unread byte of the buffer
+	 */
+	private int position = 0;
+	/**
+	 * number of bytes in the buffer
+	 */
+	private int limit = 0;
+	/**
+	 * id of the last node read
+	 */
+	private long lastId = 0;
+	/**
+	 * last document order key read
+	 */
+	private long lastOrderKey = OXPathExtractionNode.UNORDERED;
+	/**
+	 * document order key of the next node, or {@code OXPathExtractionNode.UNORDERED}
+	 */
+	private long orderKey = OXPathExtractionNode.UNORDERED;
+	/**
+	 * the labels read so far, in the order of their dictionary indices
+	 */
+	private final List<String> labels = new ArrayList<String>();
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
+
+/**
+ * Writes {@code OXPathExtractionNode} objects to a remote {@code OXPathOutputHandler} in a compact binary format, in place of
+ * Java serialization.  Pass it wherever the evaluation expects an {@code ObjectOutputStream}; the handler recognizes the format
+ * from its header (see {@code OXPathBinaryInputStream.open(InputStream)}).
+ * <p>
+ * The stream starts with the four bytes {@code MAGIC} and the format {@code VERSION}.  Each node follows as a frame: a tag byte
+ * ({@code NODE}, {@code VALUENODE}, {@code CLOSE} or {@code END}), then for the first two the id as a zigzag varint delta from
+ * the previous id, the parent as a zigzag varint delta from the id, the label, and for {@code VALUENODE} the value.  A
+ * {@code CLOSE} frame (see {@code OXPathExtractionNode.returnCloseNode}) holds the closed id as a zigzag varint delta from the
+ * previous id.  A node carrying a document order key (see {@code OXPathExtractionNode.getOrderKey()}) is preceded by an
+ * {@code ORDER} frame holding the key as a zigzag varint delta from the previous key; streams of nodes without keys have none.
+ * A label is a varint
+ * index into the labels seen so far on the stream, or 0 followed by the label itself, which is then given the next index
+ * (until the dictionary holds {@code MAXLABELS} labels).  Strings are a varint byte length followed by UTF-8.  Since ids are
+ * handed out in sequence and labels come from the extraction markers of one expression, a node typically takes 4 bytes plus
+ * its value.
+ * <p>
+ * Frames are collected in a buffer and written out once it holds {@code flushBytes} bytes, once {@code flushMillis} have passed
+ * since the last write-out (checked when a node is written), on the end node, and on {@code flush()}.  Nothing written is
+ * retained beyond the label dictionary, so {@code reset()} isn't needed.  Only {@code writeObject} of extraction nodes,
+ * {@code flush}, {@code reset} and {@code close} are supported.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathBinaryOutputStream extends ObjectOutputStream {
+
+	/**
+	 * Creates a stream flushing every {@code DEFAULTFLUSHBYTES} bytes or {@code DEFAULTFLUSHMILLIS} milliseconds
+	 * @param iOut the underlying stream
+	 * @throws IOException in case the header can't be written
+	 */
+	public OXPathBinaryOutputStream(OutputStream iOut) throws IOException {
+		this(iOut, DEFAULTFLUSHBYTES, DEFAULTFLUSHMILLIS);
+	}
+
+	/**
+	 * Creates a stream
+	 * @param iOut the underlying stream
+	 * @param iFlushBytes number of buffered bytes that causes a write-out
+	 * @param iFlushMillis time since the last write-out after which the next node causes a write-out
+	 * @throws IOException in case the header can't be written
+	 * @throws IllegalArgumentException if {@code iFlushBytes} isn't positive or {@code iFlushMillis} is negative
+	 */
+	public OXPathBinaryOutputStream(OutputStream iOut, int iFlushBytes, long iFlushMillis) throws IOException {
+		super();
+		if (iFlushBytes <= 0) throw new IllegalArgumentException("flush size must be positive: " + iFlushBytes);
+		if (iFlushMillis < 0) throw new IllegalArgumentException("flush interval may not be negative: " + iFlushMillis);
+		this.out = iOut;
+		this.flushBytes = iFlushBytes;
+		this.flushNanos = iFlushMillis * 1000000L;
+		this.buffer = new byte[Math.max(iFlushBytes, MAXVARINT) + MAXVARINT];
+		for (byte b : MAGIC) this.put(b);
+		this.put(VERSION);
+		this.writeOut();
+	}
+
+	/**
+	 * Writes the extraction node as a frame
+	 * @param obj the extraction node
+	 * @throws IOException in case the stream is closed or can't be written
+	 * @throws NotSerializableException if {@code obj} isn't an {@code OXPathExtractionNode}
+	 */
+	@Override
+	protected void writeObjectOverride(Object obj) throws IOException {
+		if (this.closed) throw new IOException("Stream closed");
+		if (!(obj instanceof OXPathExtractionNode)) throw new NotSerializableException("Binary extraction streams only carry OXPathExtractionNode objects, not " + ((obj == null)?"null":obj.getClass().getName()));
+		OXPathExtractionNode node = (OXPathExtractionNode) obj;
+		if (node.isEndNode()) {
+			this.put(END);
+			this.flush();
+			return;
+		}
+		if (node.isCloseNode()) {
+			this.put(CLOSE);
+			this.putVarLong(zigzag(this.lastId - node.getClosedId()));
+			if (this.count >= this.flushBytes || System.nanoTime() - this.lastWriteOut >= this.flushNanos) this.writeOut();
+			return;
+		}
+		if (node.getOrderKey() != OXPathExtractionNode.UNORDERED) {
+			this.put(ORDER);
+			this.putVarLong(zigzag(node.getOrderKey() - this.lastOrderKey));
+			this.lastOrderKey = node.getOrderKey();
+		}
+		String value = node.getValue();
+		boolean isValued = (value != null) && (value.length() > 0);
+		this.put(isValued?VALUENODE:NODE);
+		this.putVarLong(zigzag((long) node.getId() - this.lastId));
+		this.putVarLong(zigzag((long) node.getId() - node.getParent()));
+		this.lastId = node.getId();
+		this.putLabel(node.getLabel());
+		if (isValued) this.putString(value);
+		if (this.count >= this.flushBytes || System.nanoTime() - this.lastWriteOut >= this.flushNanos) this.writeOut();
+	}
+
+	/**
+	 * Writes out the buffered frames and flushes the underlying stream
+	 * @throws IOException in case the underlying stream can't be written
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (!this.closed) this.writeOut();
+	}
+
+	/**
+	 * Does nothing; the stream keeps no table of written objects
+	 */
+	@Override
+	public void reset() {}
+
+	/**
+	 * Writes out the buffered frames and closes the underlying stream
+	 * @throws IOException in case the underlying stream can't be written or closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) return;
+		try {
+			this.writeOut();
+		} finally {
+			this.closed = true;
+			this.out.close();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written to the underlying stream so far, header included
+	 * @return the number of bytes written to the underlying stream so far
+	 */
+	public long getBytesWritten() {
+		return this.written;
+	}
+
+	/**
+	 * Writes the buffered bytes to the underlying stream and flushes it
+	 * @throws IOException in case the underlying stream can't be written
+	 */
+	private void writeOut() throws IOException {
+		if (this.count > 0) {
+			this.out.write(this.buffer, 0, this.count);
+			this.written += this.count;
+			this.count = 0;
+		}
+		this.out.flush();
+		this.lastWriteOut = System.nanoTime();
+	}
+
+	/**
+	 * Buffers the label as a dictionary reference, adding it to the dictionary on its first occurrence
+	 * @param label the label
+	 * @throws IOException in case a full buffer can't be written out
+	 */
+	private void putLabel(String label) throws IOException {
+		Integer index = this.labels.get(label);
+		if (index != null) {
+			this.putVarLong(index.intValue());
+			return;
+		}
+		this.put((byte) 0);
+		this.putString(label);
+		if (this.labels.size() < MAXLABELS) this.labels.put(label, Integer.valueOf(this.labels.size() + 1));
+	}
+
+	/**
+	 * Buffers the string as its UTF-8 length and bytes
+	 * @param s the string
+	 * @throws IOException in case a full buffer can't be written out
+	 */
+	private void putString(String s) throws IOException {
+		int length = s.length();
+		int bytes = 0;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) bytes += 1;
+			else if (c < 0x800) bytes += 2;
+			else if (isPairAt(s, i)) {
+				bytes += 4;
+				i++;
+			}
+			else bytes += isSurrogate(c)?1:3;
+		}
+		this.putVarLong(bytes);
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (this.count + 4 > this.buffer.length) this.writeOut();
+			if (c < 0x80) this.buffer[this.count++] = (byte) c;
+			else if (c < 0x800) {
+				this.buffer[this.count++] = (byte) (0xc0 | (c >> 6));
+				this.buffer[this.count++] = (byte) (0x80 | (c & 0x3f));
+			}
+			else if (isPairAt(s, i)) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				this.buffer[this.count++] = (byte) (0xf0 | (cp >> 18));
+				this.buffer[this.count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				this.buffer[this.count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				this.buffer[this.count++] = (byte) (0x80 | (cp & 0x3f));
+			}
+			else if (isSurrogate(c)) this.buffer[this.count++] = '?';//unpaired surrogates are written as '?', as by the JDK encoder
+			else {
+				this.buffer[this.count++] = (byte) (0xe0 | (c >> 12));
+				this.buffer[this.count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				this.buffer[this.count++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+	/**
+	 * Buffers the unsigned value as a varint: 7 bits per byte, low bits first, the high bit set on all but the last byte
+	 * @param v the value, treated as unsigned
+	 * @throws IOException in case a full buffer can't be written out
+	 */
+	private void putVarLong(long v) throws IOException {
+		if (this.count + MAXVARINT > this.buffer.length) this.writeOut();
+		while ((v & ~0x7fL) != 0) {
+			this.buffer[this.count++] = (byte) ((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		this.buffer[this.count++] = (byte) v;
+	}
+
+	/**
+	 * Buffers the byte
+	 * @param b the byte
+	 * @throws IOException in case a full buffer can't be written out
+	 */
+	private void put(byte b) throws IOException {
+		if (this.count == this.buffer.length) this.writeOut();
+		this.buffer[this.count++] = b;
+	}
+
+	/**
+	 * Returns {@code true} if a surrogate pair starts at the index; {@code false} otherwise
+	 * @param s the string
+	 * @param i the index
+	 * @return {@code true} if a surrogate pair starts at the index; {@code false} otherwise
+	 */
+	private static boolean isPairAt(String s, int i) {
+		return Character.isHighSurrogate(s.charAt(i)) && (i + 1 < s.length()) && Character.isLowSurrogate(s.charAt(i + 1));
+	}
+
+	/**
+	 * Returns {@code true} if the character is a (high or low) surrogate; {@code false} otherwise
+	 * @param c the character
+	 * @return {@code true} if the character is a surrogate; {@code false} otherwise
+	 */
+	private static boolean isSurrogate(char c) {
+		return (c >= Character.MIN_SURROGATE) && (c <= Character.MAX_SURROGATE);
+	}
+
+	/**
+	 * Maps a signed value to an unsigned one, small magnitudes to small values
+	 * @param v the signed value
+	 * @return the unsigned value
+	 */
+	private static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	/**
+	 * first bytes of the stream, distinct from the first byte of a Java serialization stream
+	 */
+	static final byte[] MAGIC = { 'O', 'X', 'P', 'B' };
+	/**
+	 * version of the format
+	 */
+	static final byte VERSION = 1;
+	/**
+	 * tag of a node without value
+	 */
+	static final byte NODE = 1;
+	/**
+	 * tag of a node with value
+	 */
+	static final byte VALUENODE = 2;
+	/**
+	 * tag of the end node
+	 */
+	static final byte END = 3;
+	/**
+	 * tag of close nodes
+	 */
+	static final byte CLOSE = 4;
+	/**
+	 * tag of the document order key of the next node
+	 */
+	static final byte ORDER = 5;
+	/**
+	 * largest number of labels given dictionary indices on a stream; later new labels are always written in full
+	 */
+	static final int MAXLABELS = 4096;
+	/**
+	 * longest varint, in bytes
+	 */
+	private static final int MAXVARINT = 10;
+	/**
+	 * default number of buffered bytes that causes a write-out
+	 */
+	public static final int DEFAULTFLUSHBYTES = 8192;
+	/**
+	 * default time since the last write-out after which the next node causes a write-out
+	 */
+	public static final long DEFAULTFLUSHMILLIS = 50;
+	/**
+	 * the underlying stream
+	 */
+	private final OutputStream out;
+	/**
+	 * number of buffered bytes that causes a write-out
+	 */
+	private final int flushBytes;
+	/**
+	 * time since the last write-out after which the next node causes a write-out, in nanoseconds
+	 */
+	private final long flushNanos;
+	/**
+	 * buffered frames
+	 */
+	private final byte[] buffer;
+	/**
+	 * number of buffered bytes
+	 */
+	private int count = 0;
+	/**
+	 * number of bytes written to the underlying stream
+	 */
+	private long written = 0;
+	/**
+	 * time of the last write-out, as {@code System.nanoTime()}
+	 */
+	private long lastWriteOut;
+	/**
+	 * id of the last node written
+	 */
+	private long lastId = 0;
+	/**
+	 * last document order key written
+	 */
+	private long lastOrderKey = OXPathExtractionNode.UNORDERED;
+	/**
+	 * dictionary indices of the labels written so far, from 1
+	 */
+	private final Map<String, Integer> labels = new HashMap<String, Integer>();
+	/**
+	 * {@code true} once the stream is closed
+	 */
+	private boolean closed = false;
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+
+/**
+ * Writes OXPath output as comma or tab separated values while it is received, flattening each record (an extraction node
+ * directly below the results node) into rows.  Columns are named by label paths: the record's label, followed by the labels of
+ * the nodes below it, separated by <tt>/</tt>.  A node is a field if it has no children, and a tuple otherwise; the record
+ * yields a row per tuple without tuples below it, holding the values of that tuple, of the tuples above it and of the fields
+ * of all of these.  So a record <tt>listing</tt> holding <tt>item</tt> tuples, each with a <tt>price</tt> field, gives a row per
+ * <tt>item</tt>, with the columns <tt>listing/item</tt> and <tt>listing/item/price</tt>.  A tuple has a column of its own only
+ * if it has a value.  Values of fields repeating within a tuple are joined, separated by <tt>"; "</tt>.
+ * <p>
+ * The columns are set by {@code setColumns}, or else taken from the rows of the first record in their order of appearance;
+ * values in other columns are dropped, with a warning for each such column.  The header row is written before the first row.
+ * An orphan (see {@code OXPathRecordOutputHandler}) is flattened as a record, so its columns start with its own label.
+ * <p>
+ * Rows are encoded straight into the buffer of an {@code OXPathChannelWriter}, written to the channel of the output stream.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathCSVOutputHandler extends OXPathRecordOutputHandler {
+
+	/**
+	 * Format of the rows
+	 */
+	public enum Format {
+		/**
+		 * comma separated values, quoted as by RFC 4180
+		 */
+		CSV,
+		/**
+		 * tab separated values, with tabs, line breaks and backslashes escaped by backslashes
+		 */
+		TSV
+	}
+
+	/**
+	 * Constructs the handler, writing to the output stream, which is left open
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iOut the stream to write the rows to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	public OXPathCSVOutputHandler(String host, int port, Logger logger, OutputStream iOut, CountDownLatch iLatch) {
+		super(host, port, logger, iOut, iLatch);
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM, writing to the output stream, which is left open
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iOut the stream to write the rows to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	public OXPathCSVOutputHandler(OXPathExtractionChannel channel, Logger logger, OutputStream iOut, CountDownLatch iLatch) {
+		super(channel, logger, iOut, iLatch);
+	}
+
+	/**
+	 * Constructs the handler, writing to the file, which is closed once the output is written
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param file the file to write the rows to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 * @throws FileNotFoundException in case the file can't be opened for writing
+	 */
+	public OXPathCSVOutputHandler(String host, int port, Logger logger, File file, CountDownLatch iLatch) throws FileNotFoundException {
+		super(host, port, logger, file, iLatch);
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM, writing to the file, which is closed once the output is written
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param file the file to write the rows to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 * @throws FileNotFoundException in case the file can't be opened for writing
+	 */
+	public OXPathCSVOutputHandler(OXPathExtractionChannel channel, Logger logger, File file, CountDownLatch iLatch) throws FileNotFoundException {
+		super(channel, logger, file, iLatch);
+	}
+
+	/**
+	 * Sets the number of nodes held in memory before the oldest record is written; call before starting the handler
+	 * @param iWindow the number of nodes held in memory
+	 * @return this handler
+	 * @throws IllegalArgumentException if {@code iWindow} is negative
+	 */
+	@Override
+	public OXPathCSVOutputHandler setWindow(int iWindow) {
+		super.setWindow(iWindow);
+		return this;
+	}
+
+	/**
+	 * Sets the format of the rows ({@code Format.CSV} by default); call before starting the handler
+	 * @param iFormat the format of the rows
+	 * @return this handler
+	 */
+	public OXPathCSVOutputHandler setFormat(Format iFormat) {
+		this.format = iFormat;
+		return this;
+	}
+
+	/**
+	 * Sets the columns, as label paths; call before starting the handler.  By default, the columns are taken from the first record.
+	 * @param iColumns the label paths of the columns
+	 * @return this handler
+	 */
+	public OXPathCSVOutputHandler setColumns(List<String> iColumns) {
+		this.columns = new ArrayList<String>(iColumns);
+		return this;
+	}
+
+	/**
+	 * Opens the writer on the channel of the output stream, and writes the header row if the columns are set
+	 * @throws IOException in case the output can't be written
+	 */
+	@Override
+	protected void begin() throws IOException {
+		this.writer = new OXPathChannelWriter(OXPathChannelWriter.channelOf(this.getOutputStream()));
+		if (this.columns != null) this.writeRow(this.columns);
+	}
+
+	/**
+	 * Writes the rows of the record, preceded by the header row if the columns are taken from this record
+	 * @param record the record
+	 * @throws IOException in case the output can't be written
+	 */
+	@Override
+	protected void writeRecord(Record record) throws IOException {
+		List<Map<String,String>> rows = new ArrayList<Map<String,String>>();
+		this.flatten(record, null, new LinkedHashMap<String,String>(), rows);
+		if (this.columns == null) {
+			this.columns = new ArrayList<String>();
+			Set<String> seen = new HashSet<String>();
+			for (Map<String,String> row : rows) {
+				for (String column : row.keySet()) {
+					if (seen.add(column)) this.columns.add(column);
+				}
+			}
+			this.writeRow(this.columns);
+		}
+		List<String> cells = new ArrayList<String>(this.columns.size());
+		for (Map<String,String> row : rows) {
+			cells.clear();
+			for (String column : this.columns) {
+				String value = row.remove(column);
+				cells.add((value == null)?"":value);
+			}
+			for (String column : row.keySet()) {
+				if (this.dropped.add(column)) this.logger.warn("Values of column {} aren't written, as it isn't one of the columns", column);
+			}
+			this.writeRow(cells);
+		}
+	}
+
+	/**
+	 * Writes out the rows still buffered
+	 * @throws IOException in case the output can't be written
+	 */
+	@Override
+	protected void end() throws IOException {
+		this.writer.flush();
+	}
+
+	/**
+	 * Closes the writer (the stream is left to {@code OXPathRecordOutputHandler})
+	 * @throws IOException in case the writer can't be closed
+	 */
+	@Override
+	protected void release() throws IOException {
+		if (this.writer != null) this.writer.close();
+	}
+
+	/**
+	 * Adds the rows of the tuple to {@code rows}
+	 * @param tuple the tuple
+	 * @param prefix label path of the parent of the tuple, or {@code null} for a record
+	 * @param inherited values of the tuples above and their fields, by column
+	 * @param rows the rows
+	 */
+	private void flatten(Record tuple, String prefix, Map<String,String> inherited, List<Map<String,String>> rows) {
+		String path = (prefix == null)?tuple.getLabel():prefix + "/" + tuple.getLabel();
+		Map<String,String> values = new LinkedHashMap<String,String>(inherited);
+		if (tuple.getValue().length() > 0) put(values, path, tuple.getValue());
+		List<Record> tuples = new ArrayList<Record>();
+		for (Record child : tuple.getChildren()) {
+			if (child.hasChildren()) tuples.add(child);
+			else put(values, path + "/" + child.getLabel(), child.getValue());
+		}
+		if (tuples.isEmpty()) rows.add(values);
+		for (Record child : tuples) this.flatten(child, path, values, rows);
+	}
+
+	/**
+	 * Puts the value in the column, joined to a value already there
+	 * @param values values by column
+	 * @param column the column
+	 * @param value the value
+	 */
+	private static void put(Map<String,String> values, String column, String value) {
+		String present = values.get(column);
+		if (present == null || present.length() == 0) values.put(column, value);
+		else if (value.length() > 0) values.put(column, present + "; " + value);
+	}
+
+	/**
+	 * Writes the cells as a row
+	 * @param cells the cells
+	 * @throws IOException in case the output can't be written
+	 */
+	private void writeRow(List<String> cells) throws IOException {
+		for (int i = 0; i < cells.size(); i++) {
+			if (i > 0) this.writer.write((this.format == Format.TSV)?'\t':',');
+			if (this.format == Format.TSV) this.writeTSVCell(cells.get(i));
+			else this.writeCSVCell(cells.get(i));
+		}
+		this.writer.write((this.format == Format.TSV)?"\n":"\r\n");
+	}
+
+	/**
+	 * Writes the cell, quoted if it holds a comma, quote or line break
+	 * @param cell the cell
+	 * @throws IOException in case the output can't be written
+	 */
+	private void writeCSVCell(String cell) throws IOException {
+		boolean isQuoted = false;
+		for (int i = 0; i < cell.length() && !isQuoted; i++) {
+			char c = cell.charAt(i);
+			isQuoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (!isQuoted) {
+			this.writer.write(cell);
+			return;
+		}
+		this.writer.write('"');
+		int start = 0;
+		int quote;
+		while ((quote = cell.indexOf('"', start)) >= 0) {
+			this.writer.write(cell, start, quote + 1 - start);
+			this.writer.write('"');
+			start = quote + 1;
+		}
+		this.writer.write(cell, start, cell.length() - start);
+		this.writer.write('"');
+	}
+
+	/**
+	 * Writes the cell, with tabs, line breaks and backslashes escaped
+	 * @param cell the cell
+	 * @throws IOException in case the output can't be written
+	 */
+	private void writeTSVCell(String cell) throws IOException {
+		int start = 0;
+		for (int i = 0; i < cell.length(); i++) {
+			char c = cell.charAt(i);
+			String escape = (c == '\t')?"\\t":(c == '\n')?"\\n":(c == '\r')?"\\r":(c == '\\')?"\\\\":null;
+			if (escape != null) {
+				this.writer.write(cell, start, i - start);
+				this.writer.write(escape);
+				start = i + 1;
+			}
+		}
+		this.writer.write(cell, start, cell.length() - start);
+	}
+
+	/**
+	 * format of the rows
+	 */
+	private Format format = Format.CSV;
+	/**
+	 * label paths of the columns, {@code null} until set or taken from the first record
+	 */
+	private List<String> columns;
+	/**
+	 * columns whose values are dropped, so far
+	 */
+	private final Set<String> dropped = new HashSet<String>();
+	/**
+	 * the writer of the rows
+	 */
+	private OXPathChannelWriter writer;
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+
+/**
+ * {@code Writer} encoding text as UTF-8 into a direct buffer, written to a {@code WritableByteChannel} whenever it fills up (and
+ * on {@code flush()}).  Unlike an {@code OutputStreamWriter} over a {@code BufferedOutputStream}, the text is encoded straight
+ * into the buffer handed to the channel, so a file is written without copies through the heap.  Unpaired surrogates are
+ * replaced.  Closing the writer writes out the buffer, but leaves the channel open.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathChannelWriter extends Writer {
+
+	/**
+	 * Creates a writer with a buffer of {@code DEFAULTBUFFERSIZE} characters
+	 * @param iChannel the channel to write to
+	 */
+	public OXPathChannelWriter(WritableByteChannel iChannel) {
+		this(iChannel, DEFAULTBUFFERSIZE);
+	}
+
+	/**
+	 * Creates a writer
+	 * @param iChannel the channel to write to
+	 * @param bufferSize number of characters buffered before they are encoded
+	 * @throws IllegalArgumentException if {@code bufferSize} isn't positive
+	 */
+	public OXPathChannelWriter(WritableByteChannel iChannel, int bufferSize) {
+		if (bufferSize <= 0) throw new IllegalArgumentException("buffer size must be positive: " + bufferSize);
+		this.channel = iChannel;
+		this.encoder = Charset.forName("UTF-8").newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.chars = CharBuffer.allocate(bufferSize);
+		this.bytes = ByteBuffer.allocateDirect((int) Math.ceil(bufferSize * this.encoder.maxBytesPerChar()));
+	}
+
+	/**
+	 * Returns a channel writing to the stream: the stream's own channel for a file, or else a channel wrapping the stream
+	 * @param out the stream
+	 * @return a channel writing to the stream
+	 */
+	public static WritableByteChannel channelOf(OutputStream out) {
+		return (out instanceof FileOutputStream)?((FileOutputStream) out).getChannel():Channels.newChannel(out);
+	}
+
+	/**
+	 * Writes the characters
+	 * @param cbuf the characters
+	 * @param off index of the first character written
+	 * @param len number of characters written
+	 * @throws IOException in case the writer is closed or the channel can't be written
+	 */
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		this.ensureOpen();
+		while (len > 0) {
+			int n = Math.min(len, this.chars.remaining());
+			this.chars.put(cbuf, off, n);
+			off += n;
+			len -= n;
+			if (!this.chars.hasRemaining()) this.encode(false);
+		}
+	}
+
+	/**
+	 * Writes the characters of the string
+	 * @param str the string
+	 * @param off index of the first character written
+	 * @param len number of characters written
+	 * @throws IOException in case the writer is closed or the channel can't be written
+	 */
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		this.ensureOpen();
+		while (len > 0) {
+			int n = Math.min(len, this.chars.remaining());
+			this.chars.put(str, off, off + n);
+			off += n;
+			len -= n;
+			if (!this.chars.hasRemaining()) this.encode(false);
+		}
+	}
+
+	/**
+	 * Writes the character
+	 * @param c the character
+	 * @throws IOException in case the writer is closed or the channel can't be written
+	 */
+	@Override
+	public void write(int c) throws IOException {
+		this.ensureOpen();
+		if (!this.chars.hasRemaining()) this.encode(false);
+		this.chars.put((char) c);
+	}
+
+	/**
+	 * Writes out the buffered text (except a trailing high surrogate, awaiting its pair)
+	 * @throws IOException in case the writer is closed or the channel can't be written
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.ensureOpen();
+		this.encode(false);
+		this.drain();
+	}
+
+	/**
+	 * Writes out the buffered text and closes the writer; the channel is left open
+	 * @throws IOException in case the channel can't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) return;
+		this.encode(true);
+		while (this.encoder.flush(this.bytes).isOverflow()) this.drain();
+		this.drain();
+		this.closed = true;
+	}
+
+	/**
+	 * Returns the number of bytes written to the channel so far
+	 * @return the number of bytes written to the channel so far
+	 */
+	public long getBytesWritten() {
+		return this.bytesWritten;
+	}
+
+	/**
+	 * Encodes the buffered characters, writing out the byte buffer whenever it is full
+	 * @param endOfInput {@code true} if no characters follow
+	 * @throws IOException in case the channel can't be written
+	 */
+	private void encode(boolean endOfInput) throws IOException {
+		this.chars.flip();
+		while (true) {
+			CoderResult result = this.encoder.encode(this.chars, this.bytes, endOfInput);
+			if (result.isOverflow()) this.drain();
+			else break;
+		}
+		this.chars.compact();
+	}
+
+	/**
+	 * Writes the byte buffer to the channel
+	 * @throws IOException in case the channel can't be written
+	 */
+	private void drain() throws IOException {
+		this.bytes.flip();
+		while (this.bytes.hasRemaining()) this.bytesWritten += this.channel.write(this.bytes);
+		this.bytes.clear();
+	}
+
+	/**
+	 * Checks that the writer is open
+	 * @throws IOException if the writer is closed
+	 */
+	private void ensureOpen() throws IOException {
+		if (this.closed) throw new IOException("Writer closed");
+	}
+
+	/**
+	 * default number of characters buffered before they are encoded
+	 */
+	public static final int DEFAULTBUFFERSIZE = 16384;
+	/**
+	 * the channel written to
+	 */
+	private final WritableByteChannel channel;
+	/**
+	 * the UTF-8 encoder
+	 */
+	private final CharsetEncoder encoder;
+	/**
+	 * characters not encoded yet
+	 */
+	private final CharBuffer chars;
+	/**
+	 * bytes not written yet
+	 */
+	private final ByteBuffer bytes;
+	/**
+	 * number of bytes written to the channel so far
+	 */
+	private long bytesWritten = 0;
+	/**
+	 * {@code true} once the writer is closed
+	 */
+	private boolean closed = false;
+}
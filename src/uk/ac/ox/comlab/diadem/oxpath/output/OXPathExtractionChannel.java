@@ -0,0 +1,230 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathRingBuffer;
+
+/**
+ * In-process channel from the OXPath evaluation to an {@code OXPathOutputHandler} in the same JVM, replacing the loopback
+ * socket and Java serialization.  Extraction nodes are handed over by reference through an {@code OXPathRingBuffer}.
+ * <p>
+ * Both ends keep the stream types of the socket channel, so no other code changes: {@code getOutputStream()} is passed
+ * wherever the evaluation expects an {@code ObjectOutputStream} (e.g. {@code OXPathNavigator.evaluateOXPathQuery}), and the
+ * handler reads {@code getInputStream()} as it would a socket stream.  Only {@code writeObject}, {@code readObject},
+ * {@code flush}, {@code reset} and {@code close} are supported on these streams; nothing is serialized.  Closing the output
+ * stream closes the channel, after which the handler reads the remaining objects and then gets an {@code EOFException}, as
+ * with a closed socket.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathExtractionChannel {
+
+	/**
+	 * Creates a channel buffering up to {@code DEFAULTCAPACITY} extraction nodes
+	 * @throws IOException if the streams can't be created
+	 */
+	public OXPathExtractionChannel() throws IOException {
+		this(DEFAULTCAPACITY);
+	}
+
+	/**
+	 * Creates a channel
+	 * @param capacity minimum number of extraction nodes buffered before the evaluation waits for the handler
+	 * @throws IOException if the streams can't be created
+	 */
+	public OXPathExtractionChannel(int capacity) throws IOException {
+		this.buffer = new OXPathRingBuffer<Object>(capacity);
+		this.out = new ChannelOutputStream();
+		this.in = new ChannelInputStream();
+	}
+
+	/**
+	 * Returns the stream for the evaluation to write extraction nodes into
+	 * @return the stream for the evaluation to write extraction nodes into
+	 */
+	public ObjectOutputStream getOutputStream() {
+		return this.out;
+	}
+
+	/**
+	 * Returns the stream for the handler to read extraction nodes from; must be read by a single thread
+	 * @return the stream for the handler to read extraction nodes from
+	 */
+	public ObjectInputStream getInputStream() {
+		return this.in;
+	}
+
+	/**
+	 * Closes the channel; equivalent to closing the output stream
+	 */
+	public void close() {
+		this.buffer.close();
+	}
+
+	/**
+	 * Hands the object over to the reading end if the channel has room, without waiting
+	 * @param obj the object
+	 * @return {@code true} if the object was handed over, {@code false} if the channel is full or closed
+	 */
+	boolean offer(Object obj) {
+		return this.buffer.offer(obj);
+	}
+
+	/**
+	 * Returns the number of objects waiting in the channel; only a snapshot while the channel is in use
+	 * @return the number of objects waiting in the channel
+	 */
+	int size() {
+		return this.buffer.size();
+	}
+
+	/**
+	 * Writing end of the channel
+	 * @author AndrewJSel
+	 *
+	 */
+	private class ChannelOutputStream extends ObjectOutputStream {
+
+		/**
+		 * Creates the stream
+		 * @throws IOException never; declared by the superclass
+		 */
+		ChannelOutputStream() throws IOException {
+			super();
+		}
+
+		/**
+		 * Hands the object over to the reading end, waiting while the channel is full
+		 * @param obj the object
+		 * @throws IOException if the channel is closed or the thread is interrupted
+		 */
+		@Override
+		protected void writeObjectOverride(Object obj) throws IOException {
+			try {
+				if (!OXPathExtractionChannel.this.buffer.put(obj)) throw new IOException("Extraction channel is closed");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the extraction channel");
+			}
+		}
+
+		/**
+		 * Does nothing; objects are visible to the reading end once written
+		 */
+		@Override
+		public void flush() {}
+
+		/**
+		 * Does nothing; the channel keeps no table of written objects
+		 */
+		@Override
+		public void reset() {}
+
+		/**
+		 * Closes the channel
+		 */
+		@Override
+		public void close() {
+			OXPathExtractionChannel.this.close();
+		}
+	}
+
+	/**
+	 * Reading end of the channel
+	 * @author AndrewJSel
+	 *
+	 */
+	private class ChannelInputStream extends ObjectInputStream {
+
+		/**
+		 * Creates the stream
+		 * @throws IOException never; declared by the superclass
+		 */
+		ChannelInputStream() throws IOException {
+			super();
+		}
+
+		/**
+		 * Returns the next object of the channel, waiting while the channel is empty
+		 * @return the next object of the channel
+		 * @throws IOException if the channel is closed and empty, or the thread is interrupted
+		 */
+		@Override
+		protected Object readObjectOverride() throws IOException {
+			try {
+				Object next = OXPathExtractionChannel.this.buffer.take();
+				if (next == null) throw new EOFException("Extraction channel is closed");
+				return next;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the extraction channel");
+			}
+		}
+
+		/**
+		 * Returns the number of objects waiting in the channel
+		 * @return the number of objects waiting in the channel
+		 */
+		@Override
+		public int available() {
+			return OXPathExtractionChannel.this.buffer.size();
+		}
+
+		/**
+		 * Does nothing; the writing end closes the channel
+		 */
+		@Override
+		public void close() {}
+	}
+
+	/**
+	 * default number of extraction nodes buffered before the evaluation waits for the handler
+	 */
+	public static final int DEFAULTCAPACITY = 4096;
+	/**
+	 * buffer of the extraction nodes in transit
+	 */
+	private final OXPathRingBuffer<Object> buffer;
+	/**
+	 * the writing end
+	 */
+	private final ChannelOutputStream out;
+	/**
+	 * the reading end
+	 */
+	private final ChannelInputStream in;
+}
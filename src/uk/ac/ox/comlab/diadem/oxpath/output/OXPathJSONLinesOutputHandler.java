@@ -0,0 +1,256 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+
+/**
+ * Writes OXPath output as JSON Lines while it is received: one line per record (an extraction node directly below the results
+ * node), holding a JSON object with the label of the record as its only member.  A node without children is written as its value
+ * (a string, empty if the node has no value); a node with children as an object with a member per child label, holding the
+ * child or, if the label repeats, an array of the children in the order they were extracted.  The value of a node with children
+ * is held in its <tt>#text</tt> member.  An orphan (see {@code OXPathRecordOutputHandler}) has an additional <tt>#parent</tt>
+ * member holding the id of its parent.
+ * <p>
+ * Lines are encoded straight into the buffer of an {@code OXPathChannelWriter}, written to the channel of the output stream.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathJSONLinesOutputHandler extends OXPathRecordOutputHandler {
+
+	/**
+	 * Constructs the handler, writing to the output stream, which is left open
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iOut the stream to write the JSON lines to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	public OXPathJSONLinesOutputHandler(String host, int port, Logger logger, OutputStream iOut, CountDownLatch iLatch) {
+		super(host, port, logger, iOut, iLatch);
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM, writing to the output stream, which is left open
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iOut the stream to write the JSON lines to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	public OXPathJSONLinesOutputHandler(OXPathExtractionChannel channel, Logger logger, OutputStream iOut, CountDownLatch iLatch) {
+		super(channel, logger, iOut, iLatch);
+	}
+
+	/**
+	 * Constructs the handler, writing to the file, which is closed once the output is written
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param file the file to write the JSON lines to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 * @throws FileNotFoundException in case the file can't be opened for writing
+	 */
+	public OXPathJSONLinesOutputHandler(String host, int port, Logger logger, File file, CountDownLatch iLatch) throws FileNotFoundException {
+		super(host, port, logger, file, iLatch);
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM, writing to the file, which is closed once the output is written
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param file the file to write the JSON lines to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 * @throws FileNotFoundException in case the file can't be opened for writing
+	 */
+	public OXPathJSONLinesOutputHandler(OXPathExtractionChannel channel, Logger logger, File file, CountDownLatch iLatch) throws FileNotFoundException {
+		super(channel, logger, file, iLatch);
+	}
+
+	/**
+	 * Sets the number of nodes held in memory before the oldest record is written; call before starting the handler
+	 * @param iWindow the number of nodes held in memory
+	 * @return this handler
+	 * @throws IllegalArgumentException if {@code iWindow} is negative
+	 */
+	@Override
+	public OXPathJSONLinesOutputHandler setWindow(int iWindow) {
+		super.setWindow(iWindow);
+		return this;
+	}
+
+	/**
+	 * Opens the writer on the channel of the output stream
+	 * @throws IOException in case the output can't be written
+	 */
+	@Override
+	protected void begin() throws IOException {
+		this.writer = new OXPathChannelWriter(OXPathChannelWriter.channelOf(this.getOutputStream()));
+	}
+
+	/**
+	 * Writes the record as a line
+	 * @param record the record
+	 * @throws IOException in case the output can't be written
+	 */
+	@Override
+	protected void writeRecord(Record record) throws IOException {
+		this.writer.write('{');
+		this.writeString(record.getLabel());
+		this.writer.write(':');
+		this.writeContent(record);
+		if (record.isOrphan()) {
+			this.writer.write(",\"#parent\":");
+			this.writer.write(Integer.toString(record.getParent()));
+		}
+		this.writer.write("}\n");
+	}
+
+	/**
+	 * Writes out the lines still buffered
+	 * @throws IOException in case the output can't be written
+	 */
+	@Override
+	protected void end() throws IOException {
+		this.writer.flush();
+	}
+
+	/**
+	 * Closes the writer (the stream is left to {@code OXPathRecordOutputHandler})
+	 * @throws IOException in case the writer can't be closed
+	 */
+	@Override
+	protected void release() throws IOException {
+		if (this.writer != null) this.writer.close();
+	}
+
+	/**
+	 * Writes the content of the node: its value if it has no children, otherwise an object of its value and children
+	 * @param record the node
+	 * @throws IOException in case the output can't be written
+	 */
+	private void writeContent(Record record) throws IOException {
+		if (!record.hasChildren()) {
+			this.writeString(record.getValue());
+			return;
+		}
+		Map<String,List<Record>> byLabel = new LinkedHashMap<String,List<Record>>();
+		for (Record child : record.getChildren()) {
+			List<Record> sameLabel = byLabel.get(child.getLabel());
+			if (sameLabel == null) {
+				sameLabel = new ArrayList<Record>(1);
+				byLabel.put(child.getLabel(), sameLabel);
+			}
+			sameLabel.add(child);
+		}
+		this.writer.write('{');
+		boolean isFirst = true;
+		if (record.getValue().length() > 0) {
+			this.writer.write("\"#text\":");
+			this.writeString(record.getValue());
+			isFirst = false;
+		}
+		for (Map.Entry<String,List<Record>> member : byLabel.entrySet()) {
+			if (!isFirst) this.writer.write(',');
+			isFirst = false;
+			this.writeString(member.getKey());
+			this.writer.write(':');
+			List<Record> children = member.getValue();
+			if (children.size() == 1) this.writeContent(children.get(0));
+			else {
+				this.writer.write('[');
+				for (int i = 0; i < children.size(); i++) {
+					if (i > 0) this.writer.write(',');
+					this.writeContent(children.get(i));
+				}
+				this.writer.write(']');
+			}
+		}
+		this.writer.write('}');
+	}
+
+	/**
+	 * Writes the string as a JSON string literal
+	 * @param s the string
+	 * @throws IOException in case the output can't be written
+	 */
+	private void writeString(String s) throws IOException {
+		this.writer.write('"');
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			String escape = escape(s.charAt(i));
+			if (escape != null) {
+				this.writer.write(s, start, i - start);
+				this.writer.write(escape);
+				start = i + 1;
+			}
+		}
+		this.writer.write(s, start, s.length() - start);
+		this.writer.write('"');
+	}
+
+	/**
+	 * Returns the escape sequence of the character within a JSON string; line and paragraph separators are escaped as well, so the
+	 * output is also valid JavaScript
+	 * @param c the character
+	 * @return the escape sequence of the character, or {@code null} if it is written as it is
+	 */
+	private static String escape(char c) {
+		switch (c) {
+		case '"': return "\\\"";
+		case '\\': return "\\\\";
+		case '\b': return "\\b";
+		case '\f': return "\\f";
+		case '\n': return "\\n";
+		case '\r': return "\\r";
+		case '\t': return "\\t";
+		case '\u2028': return "\\u2028";
+		case '\u2029': return "\\u2029";
+		default:
+			if (c < 0x20) return String.format("\\u%04x", (int) c);
+			return null;
+		}
+	}
+
+	/**
+	 * the writer of the lines
+	 */
+	private OXPathChannelWriter writer;
+}
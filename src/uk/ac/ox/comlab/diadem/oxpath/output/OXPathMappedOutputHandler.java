@@ -0,0 +1,140 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
+
+/**
+ * Handles output from OXPath expressions like {@code OXPathNodeOutputHandler}, but appends the nodes to an
+ * {@code OXPathMappedResultStore} instead of a list on the heap, so outputs of tens of millions of nodes don't burden the heap or
+ * the garbage collector.  Once the latch is counted down, the sealed store is returned by {@code returnStore()}; the caller walks
+ * it with cursors and closes it when done.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathMappedOutputHandler extends OXPathOutputHandler {
+
+	/**
+	 * Constructs the handler
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param directory the directory of the store's segment files, which must exist
+	 * @param iLatch countdown latch that lets the caller know that the store is complete
+	 */
+	public OXPathMappedOutputHandler(String host, int port, Logger logger, File directory, CountDownLatch iLatch) {
+		super(host, port, logger);
+		this.store = new OXPathMappedResultStore(directory);
+		this.latch = iLatch;
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param directory the directory of the store's segment files, which must exist
+	 * @param iLatch countdown latch that lets the caller know that the store is complete
+	 */
+	public OXPathMappedOutputHandler(OXPathExtractionChannel channel, Logger logger, File directory, CountDownLatch iLatch) {
+		super(channel, logger);
+		this.store = new OXPathMappedResultStore(directory);
+		this.latch = iLatch;
+	}
+
+	/**
+	 * Runs the thread receiving the OXPath output, appending each node to the store and sealing it once the end node is received.
+	 * Completion can be tested with {@code this.isOutputFinished()}.
+	 */
+	@Override
+	public void run() {
+		try {
+			ObjectInputStream in = this.openInput();
+			boolean done = false;
+			while (!done) {
+				Object outRaw = in.readObject();
+				if (outRaw == null) continue;
+				OXPathExtractionNode node = (OXPathExtractionNode) outRaw;
+				if (node.isEndNode()) done = true;
+				else if (!node.isCloseNode()) this.store.append(node);
+			}
+			in.close();
+			this.store.seal();
+			this.outputFinished(true);
+		} catch (Exception e) {
+			this.logger.error("Problem storing the OXPath output: " + e.getMessage());
+		} finally {
+			this.latch.countDown();
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the store is complete and sealed; {@code false} otherwise (including after an error)
+	 * @return {@code true} if the store is complete and sealed; {@code false} otherwise
+	 */
+	public synchronized boolean isOutputFinished() {
+		return this.outputFinished;
+	}
+
+	/**
+	 * Sets the output finished flag in object state
+	 * @param setter {@code true} when output is finished
+	 */
+	private synchronized void outputFinished(boolean setter) {
+		this.outputFinished = setter;
+	}
+
+	/**
+	 * Returns the store of the output, as long as it is complete; returns {@code null} otherwise
+	 * @return the store of the output, as long as it is complete; returns {@code null} otherwise
+	 */
+	public OXPathMappedResultStore returnStore() {
+		return (this.isOutputFinished())?this.store:null;
+	}
+
+	/**
+	 * the store of the output
+	 */
+	private final OXPathMappedResultStore store;
+	/**
+	 * {@code true} once the store is complete and sealed
+	 */
+	private boolean outputFinished = false;
+	/**
+	 * countdown latch that lets the caller know that the store is complete
+	 */
+	private final CountDownLatch latch;
+}
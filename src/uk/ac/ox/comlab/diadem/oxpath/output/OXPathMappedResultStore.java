@@ -0,0 +1,536 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
+
+/**
+ * Store of OXPath output kept in memory-mapped files instead of on the Java heap, for outputs too large for
+ * {@code OXPathNodeOutputHandler}.  Extraction nodes are appended as fixed-width rows (id, parent, label id, and the position
+ * and length of the value) to segment files; values are appended, as UTF-8, to a separate value heap, and labels are interned
+ * in a dictionary (the only part on the heap).  Once the output is complete, {@code seal()} builds an index from each parent
+ * id to the range of its children, in the order they were extracted, so {@code Cursor}s can walk the result tree, decoding
+ * only the labels and values asked for.
+ * <p>
+ * Nodes are appended by a single thread; after {@code seal()}, any number of threads may read.  The files live in the directory
+ * given until {@code close()} deletes them.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathMappedResultStore implements Iterable<OXPathExtractionNode>, Closeable {
+
+	/**
+	 * Creates an empty store, with segment files of {@code DEFAULTSEGMENTBYTES} bytes
+	 * @param iDirectory the directory of the segment files, which must exist and not hold another store
+	 */
+	public OXPathMappedResultStore(File iDirectory) {
+		this(iDirectory, DEFAULTSEGMENTBYTES);
+	}
+
+	/**
+	 * Creates an empty store
+	 * @param iDirectory the directory of the segment files, which must exist and not hold another store
+	 * @param segmentBytes size of a segment file, a power of two of at least 4096
+	 * @throws IllegalArgumentException if {@code segmentBytes} isn't a power of two of at least 4096
+	 */
+	public OXPathMappedResultStore(File iDirectory, int segmentBytes) {
+		if (segmentBytes < 4096 || Integer.bitCount(segmentBytes) != 1) throw new IllegalArgumentException("segment size must be a power of two of at least 4096: " + segmentBytes);
+		this.rows = new MappedSegments(iDirectory, "nodes", segmentBytes);
+		this.values = new MappedSegments(iDirectory, "values", segmentBytes);
+		this.ids = new MappedSegments(iDirectory, "ids", segmentBytes);
+		this.offsets = new MappedSegments(iDirectory, "offsets", segmentBytes);
+		this.children = new MappedSegments(iDirectory, "children", segmentBytes);
+	}
+
+	/**
+	 * Appends the extraction node
+	 * @param node the extraction node, with a positive id not appended before
+	 * @throws IOException in case the segment files can't be extended
+	 * @throws IllegalArgumentException if the id of the node isn't positive or was appended before
+	 * @throws IllegalStateException if the store is sealed
+	 */
+	public void append(OXPathExtractionNode node) throws IOException {
+		if (this.sealed) throw new IllegalStateException("Store is sealed");
+		int id = node.getId();
+		if (id <= RESULTS) throw new IllegalArgumentException("Not an extraction node: " + node);
+		if (this.rowOf(id) >= 0) throw new IllegalArgumentException("Node " + id + " appended twice");
+		byte[] value = node.getValue().getBytes(UTF8);
+		long rowPos = (long) this.rowCount * ROWBYTES;
+		this.rows.ensure(rowPos + ROWBYTES);
+		this.values.ensure(this.valueEnd + value.length);
+		this.ids.ensure(4L * id + 4);
+		this.values.put(this.valueEnd, value);
+		this.rows.putInt(rowPos + IDCOLUMN, id);
+		this.rows.putInt(rowPos + PARENTCOLUMN, node.getParent());
+		this.rows.putInt(rowPos + LABELCOLUMN, this.labelId(node.getLabel()));
+		this.rows.putInt(rowPos + LENGTHCOLUMN, value.length);
+		this.rows.putLong(rowPos + OFFSETCOLUMN, this.valueEnd);
+		this.ids.putInt(4L * id, this.rowCount + 1);
+		this.valueEnd += value.length;
+		this.maxId = Math.max(this.maxId, id);
+		this.maxKey = Math.max(this.maxKey, Math.max(id, node.getParent()));
+		this.rowCount++;
+	}
+
+	/**
+	 * Builds the index from parent ids to children, after which no more nodes can be appended; called once the output is complete.
+	 * Makes two passes over the rows: one counting the children of each parent, one placing each child in its parent's range.
+	 * @throws IOException in case the index files can't be created
+	 * @throws IllegalStateException if the store is sealed
+	 */
+	public void seal() throws IOException {
+		if (this.sealed) throw new IllegalStateException("Store is sealed");
+		int keys = this.maxKey + 1;
+		this.offsets.ensure(4L * keys + 4);
+		this.children.ensure(4L * this.rowCount);
+		for (int row = 0; row < this.rowCount; row++) {
+			int parent = this.parentOf(row);
+			if (parent >= 0) this.offsets.putInt(4L * parent, this.offsets.getInt(4L * parent) + 1);
+		}
+		//running sums: each parent's entry becomes the end of its range...
+		int end = 0;
+		for (int key = 0; key < keys; key++) {
+			end += this.offsets.getInt(4L * key);
+			this.offsets.putInt(4L * key, end);
+		}
+		this.offsets.putInt(4L * keys, end);
+		//...and placing the children from the last one back leaves it at the start
+		for (int row = this.rowCount - 1; row >= 0; row--) {
+			int parent = this.parentOf(row);
+			if (parent < 0) continue;
+			int pos = this.offsets.getInt(4L * parent) - 1;
+			this.offsets.putInt(4L * parent, pos);
+			this.children.putInt(4L * pos, row);
+		}
+		this.keys = keys;
+		this.sealed = true;
+	}
+
+	/**
+	 * Returns {@code true} if the store is sealed
+	 * @return {@code true} if the store is sealed, {@code false} otherwise
+	 */
+	public boolean isSealed() {
+		return this.sealed;
+	}
+
+	/**
+	 * Returns the number of extraction nodes appended
+	 * @return the number of extraction nodes appended
+	 */
+	public int size() {
+		return this.rowCount;
+	}
+
+	/**
+	 * Returns the number of bytes of the values appended
+	 * @return the number of bytes of the values appended
+	 */
+	public long getValueBytes() {
+		return this.valueEnd;
+	}
+
+	/**
+	 * Returns a cursor over the records, i.e., the extraction nodes directly below the results node
+	 * @return a cursor over the records
+	 * @throws IllegalStateException if the store isn't sealed
+	 */
+	public Cursor records() {
+		return this.children(RESULTS);
+	}
+
+	/**
+	 * Returns a cursor over the children of the extraction node, in the order they were extracted
+	 * @param id the id of the extraction node, or {@code RESULTS}
+	 * @return a cursor over the children of the extraction node (empty if it has none or isn't in the store)
+	 * @throws IllegalStateException if the store isn't sealed
+	 */
+	public Cursor children(int id) {
+		if (!this.sealed) throw new IllegalStateException("Store isn't sealed");
+		if (id < 0 || id >= this.keys) return new Cursor(0, 0);
+		return new Cursor(this.offsets.getInt(4L * id), this.offsets.getInt(4L * id + 4));
+	}
+
+	/**
+	 * Returns the extraction node with the id, read into the heap
+	 * @param id the id
+	 * @return the extraction node with the id, or {@code null} if it isn't in the store
+	 */
+	public OXPathExtractionNode getNode(int id) {
+		int row = this.rowOf(id);
+		return (row < 0)?null:this.nodeAt(row);
+	}
+
+	/**
+	 * Returns an iterator over the extraction nodes in the order they were appended, reading each into the heap as it is reached
+	 * @return an iterator over the extraction nodes
+	 */
+	@Override
+	public Iterator<OXPathExtractionNode> iterator() {
+		return new Iterator<OXPathExtractionNode>() {
+			@Override
+			public boolean hasNext() {
+				return this.row < OXPathMappedResultStore.this.rowCount;
+			}
+
+			@Override
+			public OXPathExtractionNode next() {
+				if (!this.hasNext()) throw new NoSuchElementException();
+				return OXPathMappedResultStore.this.nodeAt(this.row++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("The store is append-only");
+			}
+
+			/**
+			 * the next row
+			 */
+			private int row = 0;
+		};
+	}
+
+	/**
+	 * Deletes the segment files; the store can't be used afterwards
+	 */
+	@Override
+	public void close() {
+		this.rows.delete();
+		this.values.delete();
+		this.ids.delete();
+		this.offsets.delete();
+		this.children.delete();
+	}
+
+	/**
+	 * Cursor over a range of sibling extraction nodes, positioned before the first one.  Reads the columns of the current node from
+	 * the mapped files on each call, so walking the tree keeps nothing on the heap beyond the cursors of the path walked.
+	 */
+	public final class Cursor {
+
+		/**
+		 * Creates the cursor over the range of the children index
+		 * @param iFrom first position in the range
+		 * @param iTo position after the range
+		 */
+		private Cursor(int iFrom, int iTo) {
+			this.pos = iFrom - 1;
+			this.to = iTo;
+			this.count = iTo - iFrom;
+		}
+
+		/**
+		 * Moves to the next node
+		 * @return {@code true} if there is a next node, {@code false} if the cursor is past the last one
+		 */
+		public boolean next() {
+			if (this.pos + 1 >= this.to) {
+				this.pos = this.to;
+				this.row = -1;
+				return false;
+			}
+			this.pos++;
+			this.row = OXPathMappedResultStore.this.children.getInt(4L * this.pos);
+			return true;
+		}
+
+		/**
+		 * Returns the number of nodes in the range
+		 * @return the number of nodes in the range
+		 */
+		public int getCount() {
+			return this.count;
+		}
+
+		/**
+		 * Returns the id of the current node
+		 * @return the id of the current node
+		 * @throws IllegalStateException if the cursor isn't on a node
+		 */
+		public int getId() {
+			return OXPathMappedResultStore.this.rows.getInt(this.rowPos() + IDCOLUMN);
+		}
+
+		/**
+		 * Returns the parent id of the current node
+		 * @return the parent id of the current node
+		 * @throws IllegalStateException if the cursor isn't on a node
+		 */
+		public int getParent() {
+			return OXPathMappedResultStore.this.parentOf(this.currentRow());
+		}
+
+		/**
+		 * Returns the label of the current node
+		 * @return the label of the current node
+		 * @throws IllegalStateException if the cursor isn't on a node
+		 */
+		public String getLabel() {
+			return OXPathMappedResultStore.this.labels.get(OXPathMappedResultStore.this.rows.getInt(this.rowPos() + LABELCOLUMN));
+		}
+
+		/**
+		 * Returns the value of the current node, decoded from the value heap
+		 * @return the value of the current node ({@code ""} if it has none)
+		 * @throws IllegalStateException if the cursor isn't on a node
+		 */
+		public String getValue() {
+			return OXPathMappedResultStore.this.valueOf(this.currentRow());
+		}
+
+		/**
+		 * Returns the number of children of the current node
+		 * @return the number of children of the current node
+		 * @throws IllegalStateException if the cursor isn't on a node
+		 */
+		public int getChildCount() {
+			int id = this.getId();
+			MappedSegments offsets = OXPathMappedResultStore.this.offsets;
+			return (id >= OXPathMappedResultStore.this.keys)?0:offsets.getInt(4L * id + 4) - offsets.getInt(4L * id);
+		}
+
+		/**
+		 * Returns a cursor over the children of the current node
+		 * @return a cursor over the children of the current node
+		 * @throws IllegalStateException if the cursor isn't on a node
+		 */
+		public Cursor children() {
+			return OXPathMappedResultStore.this.children(this.getId());
+		}
+
+		/**
+		 * Returns the current node, read into the heap
+		 * @return the current node
+		 * @throws IllegalStateException if the cursor isn't on a node
+		 */
+		public OXPathExtractionNode toNode() {
+			return OXPathMappedResultStore.this.nodeAt(this.currentRow());
+		}
+
+		/**
+		 * Returns the row of the current node
+		 * @return the row of the current node
+		 * @throws IllegalStateException if the cursor isn't on a node
+		 */
+		private int currentRow() {
+			if (this.row < 0) throw new IllegalStateException("Cursor isn't on a node");
+			return this.row;
+		}
+
+		/**
+		 * Returns the position of the row of the current node
+		 * @return the position of the row of the current node
+		 * @throws IllegalStateException if the cursor isn't on a node
+		 */
+		private long rowPos() {
+			return (long) this.currentRow() * ROWBYTES;
+		}
+
+		/**
+		 * current position in the children index
+		 */
+		private int pos;
+		/**
+		 * position after the range
+		 */
+		private final int to;
+		/**
+		 * number of nodes in the range
+		 */
+		private final int count;
+		/**
+		 * row of the current node, or -1 if the cursor isn't on a node
+		 */
+		private int row = -1;
+	}
+
+	/**
+	 * Returns the row of the node with the id
+	 * @param id the id
+	 * @return the row of the node with the id, or -1 if it isn't in the store
+	 */
+	private int rowOf(int id) {
+		if (id <= RESULTS || id > this.maxId) return -1;
+		return this.ids.getInt(4L * id) - 1;
+	}
+
+	/**
+	 * Returns the parent id of the node in the row
+	 * @param row the row
+	 * @return the parent id of the node in the row
+	 */
+	private int parentOf(int row) {
+		return this.rows.getInt((long) row * ROWBYTES + PARENTCOLUMN);
+	}
+
+	/**
+	 * Returns the value of the node in the row, decoded from the value heap
+	 * @param row the row
+	 * @return the value of the node in the row
+	 */
+	private String valueOf(int row) {
+		long rowPos = (long) row * ROWBYTES;
+		byte[] bytes = new byte[this.rows.getInt(rowPos + LENGTHCOLUMN)];
+		this.values.get(this.rows.getLong(rowPos + OFFSETCOLUMN), bytes);
+		try {
+			return new String(bytes, UTF8);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(UTF8 + " not supported", e);
+		}
+	}
+
+	/**
+	 * Returns the node in the row, read into the heap
+	 * @param row the row
+	 * @return the node in the row
+	 */
+	private OXPathExtractionNode nodeAt(int row) {
+		long rowPos = (long) row * ROWBYTES;
+		return new OXPathExtractionNode(this.rows.getInt(rowPos + IDCOLUMN), this.parentOf(row), this.labels.get(this.rows.getInt(rowPos + LABELCOLUMN)), this.valueOf(row));
+	}
+
+	/**
+	 * Returns the id of the label, interning it if it is new
+	 * @param label the label
+	 * @return the id of the label
+	 */
+	private int labelId(String label) {
+		Integer id = this.labelIds.get(label);
+		if (id == null) {
+			id = this.labels.size();
+			this.labels.add(label);
+			this.labelIds.put(label, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Id of the results node, the parent of all records
+	 */
+	public static final int RESULTS = 0;
+	/**
+	 * Default size of a segment file
+	 */
+	public static final int DEFAULTSEGMENTBYTES = 1 << 26;
+	/**
+	 * Bytes per row
+	 */
+	private static final int ROWBYTES = 24;
+	/**
+	 * Offset of the id within a row
+	 */
+	private static final int IDCOLUMN = 0;
+	/**
+	 * Offset of the parent id within a row
+	 */
+	private static final int PARENTCOLUMN = 4;
+	/**
+	 * Offset of the label id within a row
+	 */
+	private static final int LABELCOLUMN = 8;
+	/**
+	 * Offset of the value length within a row
+	 */
+	private static final int LENGTHCOLUMN = 12;
+	/**
+	 * Offset of the value position within a row (a multiple of 8, so the {@code long} never straddles segments)
+	 */
+	private static final int OFFSETCOLUMN = 16;
+	/**
+	 * Encoding of the value heap
+	 */
+	private static final String UTF8 = "UTF-8";
+
+	/**
+	 * the rows of the nodes, in the order they were appended
+	 */
+	private final MappedSegments rows;
+	/**
+	 * the value heap
+	 */
+	private final MappedSegments values;
+	/**
+	 * for each id, the row of its node plus one (0 if the id isn't in the store)
+	 */
+	private final MappedSegments ids;
+	/**
+	 * for each parent id, the start of its range in {@code children}; the range ends at the start of the next id's range
+	 */
+	private final MappedSegments offsets;
+	/**
+	 * rows of the nodes, grouped by parent
+	 */
+	private final MappedSegments children;
+	/**
+	 * the labels, by id
+	 */
+	private final List<String> labels = new ArrayList<String>();
+	/**
+	 * the ids of the labels
+	 */
+	private final Map<String,Integer> labelIds = new HashMap<String,Integer>();
+	/**
+	 * number of nodes appended
+	 */
+	private int rowCount = 0;
+	/**
+	 * end of the value heap
+	 */
+	private long valueEnd = 0;
+	/**
+	 * largest id appended
+	 */
+	private int maxId = RESULTS;
+	/**
+	 * largest id or parent id appended
+	 */
+	private int maxKey = RESULTS;
+	/**
+	 * number of entries of {@code offsets} with a range, once sealed
+	 */
+	private int keys = 0;
+	/**
+	 * {@code true} once the index is built
+	 */
+	private boolean sealed = false;
+}
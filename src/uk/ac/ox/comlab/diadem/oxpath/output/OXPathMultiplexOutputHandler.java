@@ -0,0 +1,268 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
+
+/**
+ * Handler fanning OXPath output out to several handlers, the sinks, so one evaluation can feed e.g. an XML document, a database
+ * and a metrics consumer.  The output is received and decoded once; each object is then handed by reference to every sink.
+ * <p>
+ * Each sink is an ordinary {@code OXPathOutputHandler}, running on its own thread and reading from an
+ * {@code OXPathExtractionChannel} of its own, obtained from {@code addSink} before the multiplexer is started:
+ * <pre>
+ * OXPathMultiplexOutputHandler mux = new OXPathMultiplexOutputHandler(channel, logger);
+ * OXPathXMLOutputHandler xml = new OXPathXMLOutputHandler(mux.addSink("xml"), logger, latch);
+ * xml.start();
+ * mux.start();
+ * </pre>
+ * The channel is the sink's bounded queue, so a sink slower than the others only holds the multiplexer up once its queue is
+ * full.  What happens then is the sink's {@code LagPolicy}: the multiplexer waits for room (and so do the other sinks, once
+ * their queues are empty), or the sink is detached and its channel closed, so it reads the end of its input without the end
+ * node, as after a lost connection.  Counters of each sink are available through {@code getSinkStatistics()}.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathMultiplexOutputHandler extends OXPathOutputHandler {
+
+	/**
+	 * What happens when a sink's queue is full
+	 */
+	public enum LagPolicy {
+		/**
+		 * the multiplexer waits until the sink takes an object; no output is lost
+		 */
+		BLOCK,
+		/**
+		 * the sink is detached, so the other sinks carry on
+		 */
+		DETACH
+	}
+
+	/**
+	 * Constructs the multiplexer
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 */
+	public OXPathMultiplexOutputHandler(String host, int port, Logger logger) {
+		super(host, port, logger);
+	}
+
+	/**
+	 * Constructs the multiplexer for an evaluation in the same JVM
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 */
+	public OXPathMultiplexOutputHandler(OXPathExtractionChannel channel, Logger logger) {
+		super(channel, logger);
+	}
+
+	/**
+	 * Adds a sink with a queue of {@code OXPathExtractionChannel.DEFAULTCAPACITY} objects, which the multiplexer waits on when full
+	 * @param name name of the sink, in its counters and in log messages
+	 * @return the channel to construct the sink's handler with
+	 * @throws IOException if the channel can't be created
+	 * @throws IllegalStateException if the multiplexer is started
+	 */
+	public OXPathExtractionChannel addSink(String name) throws IOException {
+		return this.addSink(name, OXPathExtractionChannel.DEFAULTCAPACITY, LagPolicy.BLOCK);
+	}
+
+	/**
+	 * Adds a sink
+	 * @param name name of the sink, in its counters and in log messages
+	 * @param capacity minimum number of objects the sink's queue holds
+	 * @param policy what happens when the sink's queue is full
+	 * @return the channel to construct the sink's handler with
+	 * @throws IOException if the channel can't be created
+	 * @throws IllegalStateException if the multiplexer is started
+	 */
+	public synchronized OXPathExtractionChannel addSink(String name, int capacity, LagPolicy policy) throws IOException {
+		if (this.started) throw new IllegalStateException("Sinks must be added before the multiplexer is started");
+		Sink sink = new Sink(name, new OXPathExtractionChannel(capacity), policy);
+		this.sinks.add(sink);
+		return sink.channel;
+	}
+
+	/**
+	 * Starts the multiplexer; no sinks can be added afterwards
+	 */
+	@Override
+	public synchronized void start() {
+		this.started = true;
+		super.start();
+	}
+
+	/**
+	 * Runs the thread receiving the OXPath output and handing each object to the sinks, until the end node is handed over.  The
+	 * sinks' channels are closed once the multiplexer is done, also after an error.
+	 */
+	@Override
+	public void run() {
+		this.startNanos = System.nanoTime();
+		try {
+			ObjectInputStream in = this.openInput();
+			boolean done = false;
+			while (!done) {
+				Object outRaw;
+				try {
+					outRaw = in.readObject();
+				} catch (EOFException e) {
+					this.logger.warn("Extraction stream ended without the end node");
+					break;
+				}
+				if (outRaw == null) continue;
+				for (Sink sink : this.sinks) {
+					if (!sink.detached) this.deliver(sink, outRaw);
+				}
+				done = ((OXPathExtractionNode) outRaw).isEndNode();
+			}
+			in.close();
+		} catch (Exception e) {
+			this.logger.error("Problem multiplexing the OXPath output: " + e.getMessage());
+		} finally {
+			this.finishNanos = System.nanoTime();
+			for (Sink sink : this.sinks) sink.channel.close();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the counters of each sink, in the order the sinks were added
+	 * @return a snapshot of the counters of each sink
+	 */
+	public synchronized List<OXPathSinkStatistics> getSinkStatistics() {
+		long start = this.startNanos;
+		long finish = this.finishNanos;
+		long elapsed = (start == 0)?0:(((finish == 0)?System.nanoTime():finish) - start);
+		List<OXPathSinkStatistics> statistics = new ArrayList<OXPathSinkStatistics>(this.sinks.size());
+		for (Sink sink : this.sinks) {
+			long delivered = sink.delivered;
+			long lag = Math.min(delivered, sink.channel.size());
+			statistics.add(new OXPathSinkStatistics(sink.name, delivered, lag, Math.max(lag, sink.maxLag), sink.blockedNanos, elapsed, sink.detached));
+		}
+		return statistics;
+	}
+
+	/**
+	 * Hands the object to the sink, applying its policy if its queue is full
+	 * @param sink the sink
+	 * @param obj the object
+	 * @throws IOException if the thread is interrupted while waiting for the sink
+	 */
+	private void deliver(Sink sink, Object obj) throws IOException {
+		if (!sink.channel.offer(obj)) {
+			if (sink.policy == LagPolicy.DETACH) {
+				sink.detached = true;
+				sink.channel.close();
+				this.logger.warn("Output sink {} fell {} objects behind and is detached", sink.name, sink.channel.size());
+				return;
+			}
+			long start = System.nanoTime();
+			sink.channel.getOutputStream().writeObject(obj);
+			sink.blockedNanos += System.nanoTime() - start;
+		}
+		sink.delivered++;
+		sink.maxLag = Math.max(sink.maxLag, sink.channel.size());
+	}
+
+	/**
+	 * A sink and its counters; the counters are only written by the multiplexer thread
+	 */
+	private static final class Sink {
+
+		/**
+		 * Creates the sink
+		 * @param iName name of the sink
+		 * @param iChannel the sink's queue
+		 * @param iPolicy what happens when the sink's queue is full
+		 */
+		Sink(String iName, OXPathExtractionChannel iChannel, LagPolicy iPolicy) {
+			this.name = iName;
+			this.channel = iChannel;
+			this.policy = iPolicy;
+		}
+
+		/**
+		 * name of the sink
+		 */
+		final String name;
+		/**
+		 * the sink's queue
+		 */
+		final OXPathExtractionChannel channel;
+		/**
+		 * what happens when the sink's queue is full
+		 */
+		final LagPolicy policy;
+		/**
+		 * number of objects put in the sink's queue
+		 */
+		volatile long delivered = 0;
+		/**
+		 * largest number of objects seen waiting in the sink's queue
+		 */
+		volatile long maxLag = 0;
+		/**
+		 * time spent waiting for room in the sink's queue, in nanoseconds
+		 */
+		volatile long blockedNanos = 0;
+		/**
+		 * {@code true} once the sink is detached
+		 */
+		volatile boolean detached = false;
+	}
+
+	/**
+	 * the sinks, in the order they were added; not changed once the multiplexer is started
+	 */
+	private final List<Sink> sinks = new ArrayList<Sink>();
+	/**
+	 * {@code true} once the multiplexer is started
+	 */
+	private boolean started = false;
+	/**
+	 * time the multiplexer started running, by {@code System.nanoTime()}, or 0
+	 */
+	private volatile long startNanos = 0;
+	/**
+	 * time the multiplexer finished, by {@code System.nanoTime()}, or 0
+	 */
+	private volatile long finishNanos = 0;
+}
@@ -31,7 +31,6 @@
 package uk.ac.ox.comlab.diadem.oxpath.output;
 
 import java.io.ObjectInputStream;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.concurrent.CountDownLatch;
 
@@ -60,6 +59,18 @@ public class OXPathNodeOutputHandler extends OXPathOutputHandler {
 		nodes = new ArrayList<OXPathExtractionNode>();
 	}
 	
+	/**
+	 * Constructs the NodeOutputHandler object for an evaluation in the same JVM.
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iLatch countdown latch that lets the caller know that the output list is completely built
+	 */
+	public OXPathNodeOutputHandler(OXPathExtractionChannel channel, Logger logger, CountDownLatch iLatch) {
+		super(channel,logger);
+		this.latch = iLatch;
+		nodes = new ArrayList<OXPathExtractionNode>();
+	}
+	
 	/**
 	 * Runs the thread receiving the OXPath output.  Upon call to {@code this.finishWithOuput()}, all nodes received
 	 * on the target output stream are built into an XML document.  This process can be tested if finished with 
@@ -69,7 +80,7 @@ public class OXPathNodeOutputHandler extends OXPathOutputHandler {
 	@Override
 	public void run() {
 		try {
-			ObjectInputStream in = new ObjectInputStream(new Socket(host,port).getInputStream());
+			ObjectInputStream in = this.openInput();
 			boolean done = false;
 			while (!done) {
 				Object outRaw = in.readObject();
@@ -77,6 +88,7 @@ public class OXPathNodeOutputHandler extends OXPathOutputHandler {
 				if (outRaw!=null) {
 					node = ((OXPathExtractionNode) outRaw);
 					if (node.getId()==-1) done=true;
+					else if (node.isCloseNode()) continue;
 					else nodes.add(node);
 				}
 			}
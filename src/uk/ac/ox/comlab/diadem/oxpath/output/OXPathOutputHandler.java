@@ -30,7 +30,10 @@
  */
 package uk.ac.ox.comlab.diadem.oxpath.output;
 
+import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.net.Socket;
+
 import org.slf4j.Logger;
 
 /**
@@ -53,6 +56,11 @@ public abstract class OXPathOutputHandler extends Thread {
 	protected String host;
 	protected int port;
 	
+	/**
+	 * In-process channel receiving OXPath output, or {@code null} if the output is received from {@code host} and {@code port}
+	 */
+	protected final OXPathExtractionChannel channel;
+	
 	/**
 	 * Constructor that takes an output stream and a logger to incorporate into an OXPath process
 	 * @param iHost the host for the stream receiving {@code OXPathExtractionNode} instances
@@ -63,8 +71,31 @@ public abstract class OXPathOutputHandler extends Thread {
 		logger = iLogger;
 		host = iHost;
 		port = iPort;
+		channel = null;
 	}	
 	
+	/**
+	 * Constructor that takes an in-process channel and a logger to incorporate into an OXPath process running in the same JVM
+	 * @param iChannel the channel receiving {@code OXPathExtractionNode} instances
+	 * @param iLogger the logging environment associated with OXPath
+	 */
+	public OXPathOutputHandler(OXPathExtractionChannel iChannel, Logger iLogger) {
+		logger = iLogger;
+		channel = iChannel;
+	}
+	
+	/**
+	 * Opens the input receiving OXPath output: the reading end of the channel if the handler was created with one, or a socket
+	 * stream from {@code host} and {@code port} otherwise, in the binary format of {@code OXPathBinaryOutputStream} or as Java 
+	 * serialization, whichever the sender uses.  Called once, from {@code run()}.
+	 * @return the input receiving OXPath output
+	 * @throws IOException in case the socket can't be opened
+	 */
+	protected ObjectInputStream openInput() throws IOException {
+		this.in = (this.channel != null)?this.channel.getInputStream():OXPathBinaryInputStream.open(new Socket(host,port).getInputStream());
+		return this.in;
+	}
+	
 	/**
 	 * Returns the {@code ObjectInputStream} object associated with OXPath output.  Not a defensive copy, but the 
 	 * actual object so the handler is exposed to all input
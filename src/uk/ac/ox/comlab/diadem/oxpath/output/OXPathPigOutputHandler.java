@@ -26,26 +26,544 @@
  */
 /**
  * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
- * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations. 
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
  */
 package uk.ac.ox.comlab.diadem.oxpath.output;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
 import org.slf4j.Logger;
 
 /**
+ * Writes OXPath output as bulk files for Hadoop ingestion, while it is received: tab separated lines that {@code PigStorage}
+ * loads with the schema
+ * <pre>
+ * (record:int, id:int, parent:int, label:chararray, value:chararray)
+ * </pre>
+ * one line per extraction node, where <tt>record</tt> is the id of the record (the extraction node directly below the results
+ * node, or an orphan, see {@code OXPathRecordOutputHandler}) the node belongs to.  {@code PigStorage} has no escapes, so tabs,
+ * line breaks and backslashes in labels and values are written as <tt>\t</tt>, <tt>\n</tt>, <tt>\r</tt> and <tt>\\</tt>.
+ * <p>
+ * Records are hash partitioned by their id over {@code partitions} partitions, so all lines of a record are in the same file.
+ * Each partition is written by a thread of its own, which takes blocks of lines from a bounded queue, encodes them and (by
+ * default) gzip compresses them.  A partition's file is rolled once it holds {@code rollRecords} records, or once it holds
+ * {@code rollBytes} bytes, checked after each block.  A file is written under a hidden name (starting with <tt>.</tt>, which Hadoop skips) and
+ * committed by renaming it to <tt>part-</tt><i>partition</i><tt>-</tt><i>sequence</i> (with <tt>.gz</tt> if compressed) once
+ * it is rolled or the output ends, so readers only ever see complete files.  After an error, the files not yet committed are
+ * deleted.  The committed files are available through {@code getCommittedFiles()}.
  * @author AndrewJSel
  *
  */
-public class OXPathPigOutputHandler extends OXPathOutputHandler {
+public class OXPathPigOutputHandler extends OXPathRecordOutputHandler {
 
 	/**
-	 * Standard constructor inherited from parent {@code OXPathOutputHandler}
+	 * Constructs the handler
 	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
 	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
 	 * @param iLogger the logging environment associated with OXPath
+	 * @param iDirectory the directory of the files, which must exist
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	public OXPathPigOutputHandler(String host, int port, Logger iLogger, File iDirectory, CountDownLatch iLatch) {
+		super(host, port, iLogger, iLatch);
+		this.directory = iDirectory;
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param iLogger the logging environment associated with OXPath
+	 * @param iDirectory the directory of the files, which must exist
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	public OXPathPigOutputHandler(OXPathExtractionChannel channel, Logger iLogger, File iDirectory, CountDownLatch iLatch) {
+		super(channel, iLogger, iLatch);
+		this.directory = iDirectory;
+	}
+
+	/**
+	 * Sets the number of nodes held in memory before the oldest record is written; call before starting the handler
+	 * @param iWindow the number of nodes held in memory
+	 * @return this handler
+	 * @throws IllegalArgumentException if {@code iWindow} is negative
+	 */
+	@Override
+	public OXPathPigOutputHandler setWindow(int iWindow) {
+		super.setWindow(iWindow);
+		return this;
+	}
+
+	/**
+	 * Sets the number of partitions, each written by a thread of its own ({@code DEFAULTPARTITIONS} by default); call before
+	 * starting the handler
+	 * @param iPartitions the number of partitions
+	 * @return this handler
+	 * @throws IllegalArgumentException if {@code iPartitions} isn't positive
+	 */
+	public OXPathPigOutputHandler setPartitions(int iPartitions) {
+		if (iPartitions <= 0) throw new IllegalArgumentException("number of partitions must be positive: " + iPartitions);
+		this.partitionCount = iPartitions;
+		return this;
+	}
+
+	/**
+	 * Sets the limits at which a file is rolled ({@code DEFAULTROLLBYTES} bytes and no record limit by default); call before
+	 * starting the handler
+	 * @param iRollBytes the number of bytes (as written to disk) after which a file is rolled, or 0 for no limit
+	 * @param iRollRecords the number of records after which a file is rolled, or 0 for no limit
+	 * @return this handler
+	 * @throws IllegalArgumentException if a limit is negative
+	 */
+	public OXPathPigOutputHandler setRoll(long iRollBytes, long iRollRecords) {
+		if (iRollBytes < 0 || iRollRecords < 0) throw new IllegalArgumentException("roll limits may not be negative: " + iRollBytes + ", " + iRollRecords);
+		this.rollBytes = iRollBytes;
+		this.rollRecords = iRollRecords;
+		return this;
+	}
+
+	/**
+	 * Switches gzip compression of the files on or off (it is on by default); call before starting the handler
+	 * @param iCompressed {@code true} to compress the files, {@code false} otherwise
+	 * @return this handler
+	 */
+	public OXPathPigOutputHandler setCompressed(boolean iCompressed) {
+		this.compressed = iCompressed;
+		return this;
+	}
+
+	/**
+	 * Returns the files committed so far, in the order they were committed
+	 * @return the files committed so far
+	 */
+	public List<File> getCommittedFiles() {
+		synchronized (this.committed) {
+			return new ArrayList<File>(this.committed);
+		}
+	}
+
+	/**
+	 * Starts the writer thread of each partition
+	 * @throws IOException never; declared by {@code OXPathRecordOutputHandler}
+	 */
+	@Override
+	protected void begin() throws IOException {
+		this.partitions = new Partition[this.partitionCount];
+		for (int i = 0; i < this.partitionCount; i++) {
+			this.partitions[i] = new Partition(i);
+			this.partitions[i].thread.start();
+		}
+	}
+
+	/**
+	 * Appends the lines of the record to the block of its partition, handing the block to the partition's writer once it is full
+	 * @param record the record
+	 * @throws IOException in case a writer failed, or the handler is interrupted while waiting for a writer
+	 */
+	@Override
+	protected void writeRecord(Record record) throws IOException {
+		Partition partition = this.partitions[partitionOf(record.getId(), this.partitionCount)];
+		this.appendLines(partition.block, record, String.valueOf(record.getId()));
+		partition.blockRecords++;
+		partition.fileRecords++;
+		if (this.rollRecords > 0 && partition.fileRecords >= this.rollRecords) {
+			//the block ends the file, so it holds exactly rollRecords records (fewer if the writer rolled it by size)
+			partition.fileRecords = 0;
+			partition.handOver(true);
+		}
+		else if (partition.block.length() >= BLOCKCHARS) partition.handOver(false);
+	}
+
+	/**
+	 * Hands the last blocks to the writers and waits for them to commit their files
+	 * @throws IOException in case a writer failed, or the handler is interrupted while waiting for a writer
+	 */
+	@Override
+	protected void end() throws IOException {
+		for (Partition partition : this.partitions) {
+			if (partition.blockRecords > 0) partition.handOver(false);
+			partition.put(new Block(null, false));
+		}
+		for (Partition partition : this.partitions) partition.join();
+		for (Partition partition : this.partitions) partition.checkFailure();
+	}
+
+	/**
+	 * Stops the writers, if still running after an error, and deletes the files they didn't commit
+	 * @throws IOException never
+	 */
+	@Override
+	protected void release() throws IOException {
+		if (this.partitions == null) return;
+		for (Partition partition : this.partitions) {
+			if (partition.thread.isAlive()) {
+				partition.thread.interrupt();
+				try {
+					partition.thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			partition.discard();
+		}
+	}
+
+	/**
+	 * Appends a line for the node and each of its descendants
+	 * @param block the block
+	 * @param node the node
+	 * @param record the id of the record, as written
+	 */
+	private void appendLines(StringBuilder block, Record node, String record) {
+		block.append(record).append('\t').append(node.getId()).append('\t').append(node.getParent()).append('\t');
+		appendEscaped(block, node.getLabel());
+		block.append('\t');
+		appendEscaped(block, node.getValue());
+		block.append('\n');
+		for (Record child : node.getChildren()) this.appendLines(block, child, record);
+	}
+
+	/**
+	 * Appends the string, with tabs, line breaks and backslashes escaped
+	 * @param block the block
+	 * @param s the string
+	 */
+	private static void appendEscaped(StringBuilder block, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\t': block.append("\\t"); break;
+			case '\n': block.append("\\n"); break;
+			case '\r': block.append("\\r"); break;
+			case '\\': block.append("\\\\"); break;
+			default: block.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Returns the partition of a record
+	 * @param id the id of the record
+	 * @param partitions the number of partitions
+	 * @return the partition of the record
 	 */
-	public OXPathPigOutputHandler(String host, int port, Logger iLogger) {
-		super(host, port, iLogger);
+	static int partitionOf(int id, int partitions) {
+		//Fibonacci hashing spreads the consecutive ids of records evenly, whatever the number of partitions
+		return (int) (((id * 0x9E3779B9L) & 0xFFFFFFFFL) % partitions);
 	}
 
+	/**
+	 * Lines of one or more records, handed to a writer as a whole
+	 */
+	private static final class Block {
+
+		/**
+		 * Creates the block
+		 * @param iText the lines, or {@code null} for the block ending the output
+		 * @param iRoll {@code true} if the file is rolled after the block
+		 */
+		Block(String iText, boolean iRoll) {
+			this.text = iText;
+			this.roll = iRoll;
+		}
+
+		/**
+		 * the lines, or {@code null} for the block ending the output
+		 */
+		final String text;
+		/**
+		 * {@code true} if the file is rolled after the block
+		 */
+		final boolean roll;
+	}
+
+	/**
+	 * A partition: the block being filled by the handler, and the thread writing the partition's files
+	 */
+	private final class Partition implements Runnable {
+
+		/**
+		 * Creates the partition and its (unstarted) writer thread
+		 * @param iIndex the number of the partition
+		 */
+		Partition(int iIndex) {
+			this.index = iIndex;
+			this.thread = new Thread(this, "oxpath-pig-writer-" + iIndex);
+			this.thread.setDaemon(true);
+		}
+
+		/**
+		 * Hands the block being filled to the writer, and starts a new one
+		 * @param roll {@code true} if the file is rolled after the block
+		 * @throws IOException in case the writer failed, or the handler is interrupted while waiting for the writer
+		 */
+		void handOver(boolean roll) throws IOException {
+			this.put(new Block(this.block.toString(), roll));
+			this.block.setLength(0);
+			this.blockRecords = 0;
+		}
+
+		/**
+		 * Queues the block for the writer, waiting while the queue is full
+		 * @param b the block
+		 * @throws IOException in case the writer failed, or the handler is interrupted while waiting for the writer
+		 */
+		void put(Block b) throws IOException {
+			this.checkFailure();
+			try {
+				while (!this.queue.offer(b, 100, TimeUnit.MILLISECONDS)) this.checkFailure();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for writer " + this.index);
+			}
+		}
+
+		/**
+		 * Waits for the writer to finish
+		 * @throws IOException in case the handler is interrupted while waiting
+		 */
+		void join() throws IOException {
+			try {
+				this.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for writer " + this.index);
+			}
+		}
+
+		/**
+		 * Throws if the writer failed
+		 * @throws IOException if the writer failed
+		 */
+		void checkFailure() throws IOException {
+			IOException e = this.failure;
+			if (e != null) throw new IOException("Writer of partition " + this.index + " failed: " + e.getMessage());
+		}
+
+		/**
+		 * Writes the blocks taken from the queue, rolling files as they fill up, until the block ending the output
+		 */
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Block b = this.queue.take();
+					if (b.text == null) break;
+					if (this.out == null) this.open();
+					this.out.write(b.text.getBytes("UTF-8"));
+					if (b.roll || this.isFull()) this.commit();
+				}
+				if (this.out != null) this.commit();
+			} catch (InterruptedException e) {
+				this.failure = new IOException("interrupted");
+			} catch (IOException e) {
+				this.failure = e;
+				OXPathPigOutputHandler.this.logger.error("Problem writing partition " + this.index + " of the Pig output: " + e.getMessage());
+			} catch (RuntimeException e) {
+				this.failure = new IOException(e.toString());
+				OXPathPigOutputHandler.this.logger.error("Problem writing partition " + this.index + " of the Pig output: " + e);
+			}
+			//wake the handler, should it wait on a full queue
+			this.queue.clear();
+		}
+
+		/**
+		 * Returns {@code true} once the current file has reached the size limit; the compressed size is as flushed so far
+		 * @return {@code true} if the current file is to be rolled, {@code false} otherwise
+		 */
+		private boolean isFull() {
+			return (OXPathPigOutputHandler.this.rollBytes > 0 && this.counter.count >= OXPathPigOutputHandler.this.rollBytes);
+		}
+
+		/**
+		 * Opens the next file of the partition under its hidden name
+		 * @throws IOException in case the file can't be opened
+		 */
+		private void open() throws IOException {
+			String name = String.format("part-%05d-%05d", this.index, this.sequence++) + ((OXPathPigOutputHandler.this.compressed)?".gz":"");
+			this.target = new File(OXPathPigOutputHandler.this.directory, name);
+			this.file = new File(OXPathPigOutputHandler.this.directory, "." + name + ".inprogress");
+			this.counter = new CountingOutputStream(new FileOutputStream(this.file));
+			this.out = (OXPathPigOutputHandler.this.compressed)?new GZIPOutputStream(this.counter, BUFFERBYTES):this.counter;
+		}
+
+		/**
+		 * Closes the current file and commits it by renaming it to its final name
+		 * @throws IOException in case the file can't be closed or renamed
+		 */
+		private void commit() throws IOException {
+			this.out.close();
+			this.out = null;
+			if (this.target.exists() || !this.file.renameTo(this.target)) throw new IOException("Can't commit " + this.file + " as " + this.target);
+			this.file = null;
+			synchronized (OXPathPigOutputHandler.this.committed) {
+				OXPathPigOutputHandler.this.committed.add(this.target);
+			}
+		}
+
+		/**
+		 * Closes and deletes the file not committed, if any
+		 */
+		void discard() {
+			if (this.file == null) return;
+			try {
+				if (this.out != null) this.out.close();
+			} catch (IOException ignored) {}
+			this.out = null;
+			this.file.delete();
+			this.file = null;
+		}
+
+		/**
+		 * the number of the partition
+		 */
+		private final int index;
+		/**
+		 * the writer thread
+		 */
+		final Thread thread;
+		/**
+		 * blocks waiting for the writer
+		 */
+		private final BlockingQueue<Block> queue = new ArrayBlockingQueue<Block>(QUEUEBLOCKS);
+		/**
+		 * the block being filled by the handler
+		 */
+		final StringBuilder block = new StringBuilder(BLOCKCHARS + BLOCKCHARS / 4);
+		/**
+		 * the number of records in the block being filled
+		 */
+		int blockRecords = 0;
+		/**
+		 * the number of records handed to the writer, or in the block being filled, since the last roll by record count
+		 */
+		int fileRecords = 0;
+		/**
+		 * failure of the writer, or {@code null}
+		 */
+		private volatile IOException failure = null;
+		/**
+		 * sequence number of the next file of the partition
+		 */
+		private int sequence = 0;
+		/**
+		 * the current file, under its hidden name, or {@code null}
+		 */
+		private File file;
+		/**
+		 * the name the current file is committed under
+		 */
+		private File target;
+		/**
+		 * counts the bytes written to the current file
+		 */
+		private CountingOutputStream counter;
+		/**
+		 * stream writing the current file, or {@code null} between files
+		 */
+		private OutputStream out;
+	}
+
+	/**
+	 * Stream counting the bytes written through it
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+
+		/**
+		 * Creates the stream
+		 * @param iOut the underlying stream
+		 */
+		CountingOutputStream(OutputStream iOut) {
+			super(iOut);
+		}
+
+		/**
+		 * Writes the byte
+		 * @param b the byte
+		 * @throws IOException in case the underlying stream can't be written
+		 */
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		/**
+		 * Writes the bytes
+		 * @param b the bytes
+		 * @param off offset of the first byte written
+		 * @param len number of bytes written
+		 * @throws IOException in case the underlying stream can't be written
+		 */
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+
+		/**
+		 * number of bytes written
+		 */
+		long count = 0;
+	}
+
+	/**
+	 * Default number of partitions
+	 */
+	public static final int DEFAULTPARTITIONS = 4;
+	/**
+	 * Default number of bytes after which a file is rolled
+	 */
+	public static final long DEFAULTROLLBYTES = 128L << 20;
+	/**
+	 * Number of characters of lines after which a block is handed to its writer
+	 */
+	private static final int BLOCKCHARS = 64 << 10;
+	/**
+	 * Number of blocks waiting for a writer before the handler waits
+	 */
+	private static final int QUEUEBLOCKS = 4;
+	/**
+	 * Size of the compression buffer of a file
+	 */
+	private static final int BUFFERBYTES = 64 << 10;
+
+	/**
+	 * the directory of the files
+	 */
+	private final File directory;
+	/**
+	 * the number of partitions
+	 */
+	private int partitionCount = DEFAULTPARTITIONS;
+	/**
+	 * the number of bytes after which a file is rolled, or 0
+	 */
+	private long rollBytes = DEFAULTROLLBYTES;
+	/**
+	 * the number of records after which a file is rolled, or 0
+	 */
+	private long rollRecords = 0;
+	/**
+	 * {@code true} if the files are gzip compressed
+	 */
+	private boolean compressed = true;
+	/**
+	 * the partitions, once the output has begun
+	 */
+	private Partition[] partitions;
+	/**
+	 * the files committed, in order
+	 */
+	private final List<File> committed = new ArrayList<File>();
 }
@@ -0,0 +1,480 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
+
+/**
+ * Abstract handler writing OXPath output record by record as it is received, rather than once the whole output is built in
+ * memory.  A record is an extraction node directly below the results node, with its descendants; subclasses write each
+ * complete record to the output stream ({@code writeRecord}), between {@code begin()} and {@code end()}.
+ * <p>
+ * A record is handed to {@code writeRecord} once it has left the reorder window: the most recent {@code window} nodes, held in
+ * memory.  Iterative evaluation extracts each record before the next, so a record is complete long before it leaves the window;
+ * set-based evaluation (after positional predicates) extracts a set of siblings before their children, so the window must be
+ * large enough to hold the records of a set.  A node whose parent has already been written is logged and handed over as a
+ * record of its own, marked as an orphan.  If the evaluation signals complete records (see
+ * {@code PAATEvalVisitor.setRecordClosing}), a record is written as soon as it and the records received before it are closed,
+ * without waiting to leave the window.  Memory is bounded by the window, regardless of the size of the output.
+ * @author AndrewJSel
+ *
+ */
+public abstract class OXPathRecordOutputHandler extends OXPathOutputHandler {
+
+	/**
+	 * Constructs the handler, writing to the output stream, which is left open
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iOut the stream to write the output to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	public OXPathRecordOutputHandler(String host, int port, Logger logger, OutputStream iOut, CountDownLatch iLatch) {
+		super(host, port, logger);
+		this.out = iOut;
+		this.ownsOut = false;
+		this.latch = iLatch;
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM, writing to the output stream, which is left open
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iOut the stream to write the output to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	public OXPathRecordOutputHandler(OXPathExtractionChannel channel, Logger logger, OutputStream iOut, CountDownLatch iLatch) {
+		super(channel, logger);
+		this.out = iOut;
+		this.ownsOut = false;
+		this.latch = iLatch;
+	}
+
+	/**
+	 * Constructs the handler, writing to the file, which is closed once the output is written
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param file the file to write the output to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 * @throws FileNotFoundException in case the file can't be opened for writing
+	 */
+	public OXPathRecordOutputHandler(String host, int port, Logger logger, File file, CountDownLatch iLatch) throws FileNotFoundException {
+		super(host, port, logger);
+		this.out = new FileOutputStream(file);
+		this.ownsOut = true;
+		this.latch = iLatch;
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM, writing to the file, which is closed once the output is written
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param file the file to write the output to
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 * @throws FileNotFoundException in case the file can't be opened for writing
+	 */
+	public OXPathRecordOutputHandler(OXPathExtractionChannel channel, Logger logger, File file, CountDownLatch iLatch) throws FileNotFoundException {
+		super(channel, logger);
+		this.out = new FileOutputStream(file);
+		this.ownsOut = true;
+		this.latch = iLatch;
+	}
+
+	/**
+	 * Constructs the handler for subclasses writing elsewhere than to a single stream (e.g. to several files)
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	protected OXPathRecordOutputHandler(String host, int port, Logger logger, CountDownLatch iLatch) {
+		super(host, port, logger);
+		this.out = null;
+		this.ownsOut = false;
+		this.latch = iLatch;
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM, for subclasses writing elsewhere than to a single stream
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iLatch countdown latch that lets the caller know that the output is completely written
+	 */
+	protected OXPathRecordOutputHandler(OXPathExtractionChannel channel, Logger logger, CountDownLatch iLatch) {
+		super(channel, logger);
+		this.out = null;
+		this.ownsOut = false;
+		this.latch = iLatch;
+	}
+
+	/**
+	 * Sets the number of nodes held in memory before the oldest record is written; call before starting the handler
+	 * @param iWindow the number of nodes held in memory
+	 * @return this handler
+	 * @throws IllegalArgumentException if {@code iWindow} is negative
+	 */
+	public OXPathRecordOutputHandler setWindow(int iWindow) {
+		if (iWindow < 0) throw new IllegalArgumentException("window may not be negative: " + iWindow);
+		this.window = iWindow;
+		return this;
+	}
+
+	/**
+	 * Runs the thread receiving the OXPath output, writing each record once it is complete or leaves the reorder window, and the
+	 * rest once the end node is received.  Completion can be tested with {@code this.isOutputWritten()}.
+	 */
+	@Override
+	public void run() {
+		try {
+			ObjectInputStream in = this.openInput();
+			this.begin();
+			boolean done = false;
+			while (!done) {
+				Object outRaw;
+				try {
+					outRaw = in.readObject();
+				} catch (EOFException e) {
+					this.logger.warn("Extraction stream ended without the end node; writing the output received");
+					break;
+				}
+				if (outRaw!=null) {
+					OXPathExtractionNode node = (OXPathExtractionNode) outRaw;
+					if (node.isEndNode()) done = true;
+					else if (node.isCloseNode()) this.close(node.getClosedId());
+					else this.receive(node);
+				}
+			}
+			in.close();
+			while (!this.records.isEmpty()) this.write(this.records.poll());
+			this.end();
+			this.setOutputWritten(true);
+		} catch (Exception e) {
+			logger.error("Problem writing the " + this.getClass().getSimpleName() + " output.  Please see log for further information.",e);
+		} finally {
+			try {
+				this.release();
+				if (this.ownsOut) this.out.close();
+				else if (this.out != null) this.out.flush();
+			} catch (Exception e) {
+				logger.error("Problem closing the " + this.getClass().getSimpleName() + " output.",e);
+			}
+			this.latch.countDown();
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the output is completely written; {@code false} otherwise (including after an error)
+	 * @return {@code true} if the output is completely written; {@code false} otherwise
+	 */
+	public synchronized boolean isOutputWritten() {
+		return this.outputWritten;
+	}
+
+	/**
+	 * Returns the number of nodes written so far
+	 * @return the number of nodes written so far
+	 */
+	public synchronized long getNodesWritten() {
+		return this.nodesWritten;
+	}
+
+	/**
+	 * Returns the stream the output is written to
+	 * @return the stream the output is written to, or {@code null} if the subclass writes elsewhere
+	 */
+	protected OutputStream getOutputStream() {
+		return this.out;
+	}
+
+	/**
+	 * Starts the output, before any record is written
+	 * @throws IOException in case the output can't be written
+	 */
+	protected abstract void begin() throws IOException;
+
+	/**
+	 * Writes the record with its descendants
+	 * @param record the record
+	 * @throws IOException in case the output can't be written
+	 */
+	protected abstract void writeRecord(Record record) throws IOException;
+
+	/**
+	 * Ends the output, once all records are written, and flushes it
+	 * @throws IOException in case the output can't be written
+	 */
+	protected abstract void end() throws IOException;
+
+	/**
+	 * Releases the resources of the output, whether or not it was completely written; called before the stream is closed (if the
+	 * handler opened it) or flushed
+	 * @throws IOException in case the resources can't be released
+	 */
+	protected abstract void release() throws IOException;
+
+	/**
+	 * Sets the written flag in object state
+	 * @param setter {@code true} when the output is written
+	 */
+	private synchronized void setOutputWritten(boolean setter) {
+		this.outputWritten = setter;
+	}
+
+	/**
+	 * Adds the node to the window, writing the oldest records while the window is exceeded
+	 * @param node the node
+	 * @throws IOException in case the output can't be written
+	 */
+	private void receive(OXPathExtractionNode node) throws IOException {
+		Record record = new Record(node);
+		Record parent = this.pending.get(node.getParent());
+		if (parent != null) parent.add(record);
+		else {
+			if (node.getParent() != RESULTSID) {
+				this.logger.warn("Extraction node " + node.getId() + " arrived after its parent " + node.getParent() + " was written; writing it as a record (consider a larger window)");
+				record.isOrphan = true;
+			}
+			this.records.add(record);
+		}
+		this.pending.put(node.getId(), record);
+		while (this.pending.size() > this.window && !this.records.isEmpty()) this.write(this.records.poll());
+	}
+
+	/**
+	 * Marks the node as complete, writing the oldest records while they are complete
+	 * @param id id of the complete node
+	 * @throws IOException in case the output can't be written
+	 */
+	private void close(int id) throws IOException {
+		Record record = this.pending.get(id);
+		if (record == null) return;//already written, or merged and closed again
+		record.isClosed = true;
+		while (!this.records.isEmpty() && this.records.peek().isClosed) this.write(this.records.poll());
+	}
+
+	/**
+	 * Removes the record and its descendants from the window and writes them
+	 * @param record the record
+	 * @throws IOException in case the output can't be written
+	 */
+	private void write(Record record) throws IOException {
+		int removed = this.remove(record);
+		this.writeRecord(record);
+		synchronized (this) {
+			this.nodesWritten += removed;
+		}
+	}
+
+	/**
+	 * Removes the record and its descendants from the window
+	 * @param record the record
+	 * @return the number of nodes removed
+	 */
+	private int remove(Record record) {
+		this.pending.remove(record.id);
+		int removed = 1;
+		for (Record child : record.getChildren()) removed += this.remove(child);
+		return removed;
+	}
+
+	/**
+	 * An extraction node with the descendants received so far
+	 * @author AndrewJSel
+	 *
+	 */
+	public static final class Record {
+
+		/**
+		 * Creates the record of the node
+		 * @param node the node
+		 */
+		Record(OXPathExtractionNode node) {
+			this.id = node.getId();
+			this.parent = node.getParent();
+			this.label = node.getLabel();
+			this.value = (node.getValue() == null)?"":node.getValue();
+		}
+
+		/**
+		 * Adds the child record
+		 * @param child the child record
+		 */
+		void add(Record child) {
+			if (this.children == null) this.children = new ArrayList<Record>(2);
+			this.children.add(child);
+		}
+
+		/**
+		 * Returns the id of the node
+		 * @return the id of the node
+		 */
+		public int getId() {
+			return this.id;
+		}
+
+		/**
+		 * Returns the id of the parent of the node
+		 * @return the id of the parent of the node
+		 */
+		public int getParent() {
+			return this.parent;
+		}
+
+		/**
+		 * Returns the label of the node
+		 * @return the label of the node
+		 */
+		public String getLabel() {
+			return this.label;
+		}
+
+		/**
+		 * Returns the value of the node ({@code ""} if it has none)
+		 * @return the value of the node
+		 */
+		public String getValue() {
+			return this.value;
+		}
+
+		/**
+		 * Returns the children of the node, in order of extraction
+		 * @return the children of the node, in order of extraction
+		 */
+		public List<Record> getChildren() {
+			return (this.children == null)?Collections.<Record>emptyList():Collections.unmodifiableList(this.children);
+		}
+
+		/**
+		 * Returns {@code true} if the node has children
+		 * @return {@code true} if the node has children, {@code false} otherwise
+		 */
+		public boolean hasChildren() {
+			return this.children != null;
+		}
+
+		/**
+		 * Returns {@code true} if the parent of the node was written before the node arrived, so the node is written as a record
+		 * of its own
+		 * @return {@code true} if the node is an orphan, {@code false} otherwise
+		 */
+		public boolean isOrphan() {
+			return this.isOrphan;
+		}
+
+		/**
+		 * id of the node
+		 */
+		private final int id;
+		/**
+		 * id of the parent of the node
+		 */
+		private final int parent;
+		/**
+		 * label of the node
+		 */
+		private final String label;
+		/**
+		 * value of the node
+		 */
+		private final String value;
+		/**
+		 * the child records received so far, or {@code null} if none
+		 */
+		private List<Record> children;
+		/**
+		 * {@code true} if the parent was written before the node arrived
+		 */
+		private boolean isOrphan = false;
+		/**
+		 * {@code true} if the node can gain no further children
+		 */
+		private boolean isClosed = false;
+	}
+
+	/**
+	 * id of the results node, parent of the records
+	 */
+	private static final int RESULTSID = 0;
+	/**
+	 * default number of nodes held in memory before the oldest record is written
+	 */
+	public static final int DEFAULTWINDOW = 8192;
+	/**
+	 * the stream the output is written to
+	 */
+	private final OutputStream out;
+	/**
+	 * {@code true} if the handler opened {@code out} and closes it
+	 */
+	private final boolean ownsOut;
+	/**
+	 * Instance field referencing the countdown latch
+	 */
+	private final CountDownLatch latch;
+	/**
+	 * number of nodes held in memory before the oldest record is written
+	 */
+	private int window = DEFAULTWINDOW;
+	/**
+	 * nodes in the window by id, descendants included
+	 */
+	private final Map<Integer, Record> pending = new HashMap<Integer, Record>();
+	/**
+	 * records in the window, in order of arrival
+	 */
+	private final ArrayDeque<Record> records = new ArrayDeque<Record>();
+	/**
+	 * number of nodes written so far
+	 */
+	private long nodesWritten = 0;
+	/**
+	 * Instance field encoding whether the output is written or not
+	 */
+	private boolean outputWritten = false;
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Comparator;
+
+import org.slf4j.Logger;
+
+import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
+import uk.ac.ox.comlab.diadem.oxpath.utils.OXPathExternalSorter;
+
+/**
+ * Output stage putting the siblings of each extraction node in document order, whatever order PAAT extracted them in.  The
+ * handler receives the output, sorts it by {@code SIBLINGORDER} and writes it to another stream, e.g. the output stream of an
+ * {@code OXPathExtractionChannel} read by the handler producing the final output:
+ * <pre>
+ * OXPathExtractionChannel sorted = new OXPathExtractionChannel();
+ * new OXPathSiblingOrderOutputHandler(channel, logger, sorted.getOutputStream(), budget, null).start();
+ * new OXPathNodeOutputHandler(sorted, logger, latch).start();
+ * </pre>
+ * The nodes need document order keys (see {@code PAATEvalVisitor.setDocumentOrdering}); siblings without keys keep the order of
+ * their ids.  Parents still precede their children in the sorted output, as the extractor numbers a node after its parent, so
+ * any handler building the tree by id reads it as before.  The sort holds at most {@code budget} nodes in memory and spills
+ * sorted runs to disk beyond that (see {@code OXPathExternalSorter}), so the ordered output of n nodes costs O(n log n) time with
+ * bounded heap.  Nothing is written before the end node is received, and close nodes are dropped, as records no longer complete
+ * in the order they are written.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathSiblingOrderOutputHandler extends OXPathOutputHandler {
+
+	/**
+	 * Constructs the handler
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iTarget the stream the sorted nodes are written to; closed once the end node is written
+	 * @param iBudget the number of nodes held in memory before a sorted run is written to disk
+	 * @param iDirectory the directory of the sorted runs, or {@code null} for the default temporary directory
+	 */
+	public OXPathSiblingOrderOutputHandler(String host, int port, Logger logger, ObjectOutputStream iTarget, int iBudget, File iDirectory) {
+		super(host, port, logger);
+		this.target = iTarget;
+		this.sorter = new OXPathExternalSorter<OXPathExtractionNode>(SIBLINGORDER, iBudget, iDirectory);
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iTarget the stream the sorted nodes are written to; closed once the end node is written
+	 * @param iBudget the number of nodes held in memory before a sorted run is written to disk
+	 * @param iDirectory the directory of the sorted runs, or {@code null} for the default temporary directory
+	 */
+	public OXPathSiblingOrderOutputHandler(OXPathExtractionChannel channel, Logger logger, ObjectOutputStream iTarget, int iBudget, File iDirectory) {
+		super(channel, logger);
+		this.target = iTarget;
+		this.sorter = new OXPathExternalSorter<OXPathExtractionNode>(SIBLINGORDER, iBudget, iDirectory);
+	}
+
+	/**
+	 * Runs the thread receiving the OXPath output; once the end node is received, writes the nodes in sibling order followed by
+	 * the end node.  The target stream is closed in any case, so its reader doesn't wait on a failed sort.
+	 */
+	@Override
+	public void run() {
+		try {
+			ObjectInputStream in = this.openInput();
+			boolean done = false;
+			while (!done) {
+				Object outRaw;
+				try {
+					outRaw = in.readObject();
+				} catch (EOFException e) {
+					this.logger.warn("Extraction stream ended without the end node");
+					break;
+				}
+				if (outRaw == null) continue;
+				OXPathExtractionNode node = (OXPathExtractionNode) outRaw;
+				if (node.isEndNode()) done = true;
+				else if (!node.isCloseNode()) this.sorter.add(node);
+			}
+			in.close();
+			if (done) {
+				OXPathExtractionNode node;
+				while ((node = this.sorter.next()) != null) this.target.writeObject(node);
+				this.target.writeObject(OXPathExtractionNode.returnEndNode());
+				if (this.sorter.getRunCount() > 0) this.logger.info("Sorted {} extraction nodes in {} runs on disk", this.sorter.getCount(), this.sorter.getRunCount());
+			}
+		} catch (Exception e) {
+			this.logger.error("Problem sorting the OXPath output: " + e.getMessage());
+		} finally {
+			this.sorter.close();
+			try {
+				this.target.close();
+			} catch (IOException ignored) {}
+		}
+	}
+
+	/**
+	 * Order of extraction nodes by parent, then by document order key, then by id: the children of each node come together, in
+	 * the document order of their context nodes, and nodes with equal keys (e.g. several markers on the same context node) in the
+	 * order they were extracted
+	 */
+	public static final Comparator<OXPathExtractionNode> SIBLINGORDER = new SiblingOrder();
+
+	/**
+	 * Implementation of {@code SIBLINGORDER}
+	 */
+	private static final class SiblingOrder implements Comparator<OXPathExtractionNode>, Serializable {
+
+		/**
+		 * Compares the nodes
+		 * @param a a node
+		 * @param b another node
+		 * @return a negative number, zero or a positive number as {@code a} comes before, with, or after {@code b}
+		 */
+		@Override
+		public int compare(OXPathExtractionNode a, OXPathExtractionNode b) {
+			if (a.getParent() != b.getParent()) return (a.getParent() < b.getParent())?-1:1;
+			if (a.getOrderKey() != b.getOrderKey()) return (a.getOrderKey() < b.getOrderKey())?-1:1;
+			return (a.getId() < b.getId())?-1:((a.getId() == b.getId())?0:1);
+		}
+
+		/**
+		 * Generated serial version id
+		 */
+		private static final long serialVersionUID = 6158270331946287113L;
+	}
+
+	/**
+	 * the stream the sorted nodes are written to
+	 */
+	private final ObjectOutputStream target;
+	/**
+	 * the sort of the received nodes
+	 */
+	private final OXPathExternalSorter<OXPathExtractionNode> sorter;
+}
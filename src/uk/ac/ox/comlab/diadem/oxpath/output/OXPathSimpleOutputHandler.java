@@ -31,7 +31,6 @@
 package uk.ac.ox.comlab.diadem.oxpath.output;
 
 import java.io.ObjectInputStream;
-import java.net.Socket;
 import org.slf4j.Logger;
 import uk.ac.ox.comlab.diadem.oxpath.model.OXPathExtractionNode;
 
@@ -52,6 +51,15 @@ public class OXPathSimpleOutputHandler extends OXPathOutputHandler {
 		super(iHost, iPort, iLogger);
 	}
 	
+	/**
+	 * Constructor for the handler of an evaluation in the same JVM.
+	 * @param iChannel in-process channel receiving the output
+	 * @param iLogger logger environment
+	 */
+	public OXPathSimpleOutputHandler(OXPathExtractionChannel iChannel, Logger iLogger) {
+		super(iChannel, iLogger);
+	}
+	
 	/**
 	 * Runs the thread receiving the OXPath output.  Upon call to {@code this.finishWithOuput()}, all nodes received
 	 * on the target output stream are built into an XML document.  This process can be tested if finished with 
@@ -62,7 +70,7 @@ public class OXPathSimpleOutputHandler extends OXPathOutputHandler {
 	public void run() {
 		try {
 			ObjectInputStream in=null;
-			in = new ObjectInputStream(new Socket(host,port).getInputStream());
+			in = this.openInput();
 			boolean done = false;
 			while (!done) {
 				System.out.println("Extraction Nodes:");
@@ -71,6 +79,7 @@ public class OXPathSimpleOutputHandler extends OXPathOutputHandler {
 				if (outRaw!=null) {
 					node = ((OXPathExtractionNode) outRaw);
 					if (node.isEndNode()) done=true;
+					else if (node.isCloseNode()) continue;
 					else System.out.println(node.toString());
 				}
 			}
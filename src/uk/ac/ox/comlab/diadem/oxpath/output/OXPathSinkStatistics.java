@@ -0,0 +1,162 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+/**
+ * Immutable snapshot of the counters of a sink of an {@code OXPathMultiplexOutputHandler}
+ * @author AndrewJSel
+ *
+ */
+public final class OXPathSinkStatistics {
+
+	/**
+	 * Creates a snapshot
+	 * @param iName name of the sink
+	 * @param iDelivered number of objects put in the sink's queue
+	 * @param iLag number of objects waiting in the sink's queue
+	 * @param iMaxLag largest number of objects seen waiting in the sink's queue
+	 * @param iBlockedNanos time the multiplexer spent waiting for room in the sink's queue, in nanoseconds
+	 * @param iElapsedNanos time since the multiplexer started, in nanoseconds
+	 * @param iDetached {@code true} if the sink was detached for falling behind
+	 */
+	public OXPathSinkStatistics(String iName, long iDelivered, long iLag, long iMaxLag, long iBlockedNanos, long iElapsedNanos, boolean iDetached) {
+		this.name = iName;
+		this.delivered = iDelivered;
+		this.lag = iLag;
+		this.maxLag = iMaxLag;
+		this.blockedNanos = iBlockedNanos;
+		this.elapsedNanos = iElapsedNanos;
+		this.detached = iDetached;
+	}
+
+	/**
+	 * Returns the name of the sink
+	 * @return the name of the sink
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the number of objects put in the sink's queue
+	 * @return the number of objects put in the sink's queue
+	 */
+	public long getDelivered() {
+		return this.delivered;
+	}
+
+	/**
+	 * Returns the number of objects the sink has taken from its queue
+	 * @return the number of objects the sink has taken from its queue
+	 */
+	public long getConsumed() {
+		return this.delivered - this.lag;
+	}
+
+	/**
+	 * Returns the number of objects waiting in the sink's queue
+	 * @return the number of objects waiting in the sink's queue
+	 */
+	public long getLag() {
+		return this.lag;
+	}
+
+	/**
+	 * Returns the largest number of objects seen waiting in the sink's queue
+	 * @return the largest number of objects seen waiting in the sink's queue
+	 */
+	public long getMaxLag() {
+		return this.maxLag;
+	}
+
+	/**
+	 * Returns the time the multiplexer spent waiting for room in the sink's queue, in nanoseconds
+	 * @return the time spent waiting, in nanoseconds
+	 */
+	public long getBlockedNanos() {
+		return this.blockedNanos;
+	}
+
+	/**
+	 * Returns the number of objects the sink has taken per second since the multiplexer started
+	 * @return the number of objects taken per second
+	 */
+	public double getThroughput() {
+		return (this.elapsedNanos == 0)?0:(this.getConsumed() * 1e9 / this.elapsedNanos);
+	}
+
+	/**
+	 * Returns {@code true} if the sink was detached for falling behind
+	 * @return {@code true} if the sink was detached, {@code false} otherwise
+	 */
+	public boolean isDetached() {
+		return this.detached;
+	}
+
+	/**
+	 * Returns a readable rendering of the counters
+	 * @return a readable rendering of the counters
+	 */
+	@Override
+	public String toString() {
+		return (this.name + ": delivered=" + this.delivered + ", lag=" + this.lag + ", maxLag=" + this.maxLag + ", blockedMs="
+				+ (this.blockedNanos / 1000000) + ", throughput=" + (long) this.getThroughput() + "/s" + ((this.detached)?", detached":""));
+	}
+
+	/**
+	 * name of the sink
+	 */
+	private final String name;
+	/**
+	 * number of objects put in the sink's queue
+	 */
+	private final long delivered;
+	/**
+	 * number of objects waiting in the sink's queue
+	 */
+	private final long lag;
+	/**
+	 * largest number of objects seen waiting in the sink's queue
+	 */
+	private final long maxLag;
+	/**
+	 * time the multiplexer spent waiting for room in the sink's queue, in nanoseconds
+	 */
+	private final long blockedNanos;
+	/**
+	 * time since the multiplexer started, in nanoseconds
+	 */
+	private final long elapsedNanos;
+	/**
+	 * {@code true} if the sink was detached for falling behind
+	 */
+	private final boolean detached;
+}
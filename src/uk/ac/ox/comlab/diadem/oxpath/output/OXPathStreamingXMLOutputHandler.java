@@ -0,0 +1,288 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ * Package containing consumer classes for OXPath output ({@code OXPathExtractionNode} objects).  The package
+ * consists of the {@code abstract} class {@code OXPathOutputHandler} and its children implementations.
+ */
+package uk.ac.ox.comlab.diadem.oxpath.output;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+
+/**
+ * Writes OXPath output as XML while it is received, through a StAX writer, instead of building a {@code Document} in memory as
+ * {@code OXPathXMLOutputHandler} does.  The output has the same shape: a <tt>results</tt> root with one element per
+ * extraction node, nested as the nodes are, indented by two spaces.  Values are written as escaped text, or as CDATA sections
+ * if they contain markup and the handler is in {@code ValueMode.CDATA} (the default); either way nothing is reparsed.
+ * <p>
+ * Records are written as described in {@code OXPathRecordOutputHandler}; an orphan is written below the <tt>results</tt> root
+ * with a <tt>parent</tt> attribute holding the id of its parent.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathStreamingXMLOutputHandler extends OXPathRecordOutputHandler {
+
+	/**
+	 * How values containing markup are written
+	 */
+	public enum ValueMode {
+		/**
+		 * in CDATA sections, so HTML values stay readable
+		 */
+		CDATA,
+		/**
+		 * as escaped text
+		 */
+		ESCAPED
+	}
+
+	/**
+	 * Constructs the handler, writing to the output stream, which is left open
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iOut the stream to write the XML document to
+	 * @param iLatch countdown latch that lets the caller know that the XML output document is completely written
+	 */
+	public OXPathStreamingXMLOutputHandler(String host, int port, Logger logger, OutputStream iOut, CountDownLatch iLatch) {
+		super(host, port, logger, iOut, iLatch);
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM, writing to the output stream, which is left open
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iOut the stream to write the XML document to
+	 * @param iLatch countdown latch that lets the caller know that the XML output document is completely written
+	 */
+	public OXPathStreamingXMLOutputHandler(OXPathExtractionChannel channel, Logger logger, OutputStream iOut, CountDownLatch iLatch) {
+		super(channel, logger, iOut, iLatch);
+	}
+
+	/**
+	 * Constructs the handler, writing to the file, which is closed once the document is written
+	 * @param host the host for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param port the port for the stream receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param file the file to write the XML document to
+	 * @param iLatch countdown latch that lets the caller know that the XML output document is completely written
+	 * @throws FileNotFoundException in case the file can't be opened for writing
+	 */
+	public OXPathStreamingXMLOutputHandler(String host, int port, Logger logger, File file, CountDownLatch iLatch) throws FileNotFoundException {
+		super(host, port, logger, file, iLatch);
+	}
+
+	/**
+	 * Constructs the handler for an evaluation in the same JVM, writing to the file, which is closed once the document is written
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param file the file to write the XML document to
+	 * @param iLatch countdown latch that lets the caller know that the XML output document is completely written
+	 * @throws FileNotFoundException in case the file can't be opened for writing
+	 */
+	public OXPathStreamingXMLOutputHandler(OXPathExtractionChannel channel, Logger logger, File file, CountDownLatch iLatch) throws FileNotFoundException {
+		super(channel, logger, file, iLatch);
+	}
+
+	/**
+	 * Sets the number of nodes held in memory before the oldest record is written; call before starting the handler
+	 * @param iWindow the number of nodes held in memory
+	 * @return this handler
+	 * @throws IllegalArgumentException if {@code iWindow} is negative
+	 */
+	@Override
+	public OXPathStreamingXMLOutputHandler setWindow(int iWindow) {
+		super.setWindow(iWindow);
+		return this;
+	}
+
+	/**
+	 * Sets how values containing markup are written; call before starting the handler
+	 * @param iValueMode how values containing markup are written
+	 * @return this handler
+	 */
+	public OXPathStreamingXMLOutputHandler setValueMode(ValueMode iValueMode) {
+		this.valueMode = iValueMode;
+		return this;
+	}
+
+	/**
+	 * Returns {@code true} if the output document is completely written; {@code false} otherwise (including after an error)
+	 * @return {@code true} if the output document is completely written; {@code false} otherwise
+	 */
+	public boolean isDocumentWritten() {
+		return this.isOutputWritten();
+	}
+
+	/**
+	 * Starts the document and its <tt>results</tt> root
+	 * @throws IOException in case the output can't be written
+	 */
+	@Override
+	protected void begin() throws IOException {
+		try {
+			this.writer = XMLOutputFactory.newInstance().createXMLStreamWriter(this.getOutputStream(), "UTF-8");
+			this.writer.writeStartDocument("UTF-8", "1.0");
+			this.writer.writeCharacters("\n");
+			this.writer.writeStartElement("results");
+		} catch (XMLStreamException e) {
+			throw new IOException("Problem starting the XML output", e);
+		}
+	}
+
+	/**
+	 * Writes the record as an element below the <tt>results</tt> root
+	 * @param record the record
+	 * @throws IOException in case the output can't be written
+	 */
+	@Override
+	protected void writeRecord(Record record) throws IOException {
+		try {
+			this.write(record, 1);
+		} catch (XMLStreamException e) {
+			throw new IOException("Problem writing the XML output", e);
+		}
+	}
+
+	/**
+	 * Ends the <tt>results</tt> root and the document
+	 * @throws IOException in case the output can't be written
+	 */
+	@Override
+	protected void end() throws IOException {
+		try {
+			this.writer.writeCharacters("\n");
+			this.writer.writeEndElement();
+			this.writer.writeEndDocument();
+			this.writer.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException("Problem ending the XML output", e);
+		}
+	}
+
+	/**
+	 * Closes the StAX writer (the stream is left to {@code OXPathRecordOutputHandler})
+	 * @throws IOException in case the writer can't be closed
+	 */
+	@Override
+	protected void release() throws IOException {
+		try {
+			if (this.writer != null) this.writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Problem closing the XML output", e);
+		}
+	}
+
+	/**
+	 * Writes the element of the node and its descendants
+	 * @param record the node
+	 * @param depth the depth of the element below the root
+	 * @throws XMLStreamException in case the output can't be written
+	 */
+	private void write(Record record, int depth) throws XMLStreamException {
+		this.indent(depth);
+		boolean hasValue = record.getValue().length() > 0;
+		boolean isEmpty = !hasValue && !record.hasChildren();
+		if (isEmpty) this.writer.writeEmptyElement(record.getLabel());
+		else this.writer.writeStartElement(record.getLabel());
+		if (record.isOrphan()) this.writer.writeAttribute("parent", Integer.toString(record.getParent()));
+		if (hasValue) this.writeValue(record.getValue());
+		if (record.hasChildren()) {
+			for (Record child : record.getChildren()) this.write(child, depth + 1);
+			if (!hasValue) this.indent(depth);
+		}
+		if (!isEmpty) this.writer.writeEndElement();
+	}
+
+	/**
+	 * Writes the value as text, or as CDATA sections if it contains markup and the handler is in {@code ValueMode.CDATA}
+	 * @param value the value
+	 * @throws XMLStreamException in case the output can't be written
+	 */
+	private void writeValue(String value) throws XMLStreamException {
+		value = xmlChars(value);
+		if (this.valueMode == ValueMode.CDATA && (value.indexOf('<') >= 0 || value.indexOf('&') >= 0)) {
+			//a CDATA section can't contain its terminator, so it is split between the brackets
+			int start = 0;
+			int end;
+			while ((end = value.indexOf("]]>", start)) >= 0) {
+				this.writer.writeCData(value.substring(start, end + 2));
+				start = end + 2;
+			}
+			this.writer.writeCData(value.substring(start));
+		}
+		else this.writer.writeCharacters(value);
+	}
+
+	/**
+	 * Writes a line break and the indentation of the depth
+	 * @param depth the depth
+	 * @throws XMLStreamException in case the output can't be written
+	 */
+	private void indent(int depth) throws XMLStreamException {
+		while (this.indentation.length() < 2 * depth + 1) this.indentation.append("  ");
+		this.writer.writeCharacters(this.indentation.substring(0, 2 * depth + 1));
+	}
+
+	/**
+	 * Replaces the characters XML 1.0 doesn't allow with U+FFFD
+	 * @param s the string
+	 * @return the string with only characters allowed in XML 1.0
+	 */
+	private static String xmlChars(String s) {
+		StringBuilder sb = null;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			boolean isAllowed = (c >= 0x20 && c <= 0xfffd) || c == '\t' || c == '\n' || c == '\r';
+			if (!isAllowed && sb == null) sb = new StringBuilder(s.substring(0, i));
+			if (sb != null) sb.append(isAllowed?c:'\ufffd');
+		}
+		return (sb == null)?s:sb.toString();
+	}
+
+	/**
+	 * how values containing markup are written
+	 */
+	private ValueMode valueMode = ValueMode.CDATA;
+	/**
+	 * the writer of the document
+	 */
+	private XMLStreamWriter writer;
+	/**
+	 * line break followed by spaces, cut to the indentation needed
+	 */
+	private final StringBuilder indentation = new StringBuilder("\n");
+}
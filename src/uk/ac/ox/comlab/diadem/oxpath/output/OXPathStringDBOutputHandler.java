@@ -31,7 +31,6 @@
 package uk.ac.ox.comlab.diadem.oxpath.output;
 
 import java.io.ObjectInputStream;
-import java.net.Socket;
 
 import org.slf4j.Logger;
 
@@ -59,6 +58,17 @@ public class OXPathStringDBOutputHandler extends OXPathOutputHandler {
 		
 	}
 	
+	/**
+	 * Constructor for the handler of an evaluation in the same JVM.
+	 * @param iChannel in-process channel receiving the output
+	 * @param iLogger logger environment
+	 * @param sDatabase String database to handle output
+	 */
+	public OXPathStringDBOutputHandler(OXPathExtractionChannel iChannel, Logger iLogger, StringDatabase sDatabase) {
+		super(iChannel, iLogger);
+		this.database=sDatabase;
+	}
+	
 	/**
 	 * Runs the thread receiving the OXPath output.  Upon call to {@code this.finishWithOuput()}, all nodes received
 	 * on the target output stream are built into an XML document.  This process can be tested if finished with 
@@ -68,8 +78,7 @@ public class OXPathStringDBOutputHandler extends OXPathOutputHandler {
 	@Override
 	public void run() {
 		try {
-			Socket socket = new Socket(host,port);
-			ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+			ObjectInputStream in = this.openInput();
 			boolean done = false;
 			
 			while (!done) {
@@ -78,6 +87,7 @@ public class OXPathStringDBOutputHandler extends OXPathOutputHandler {
 				if (outRaw!=null) {
 					node = ((OXPathExtractionNode) outRaw);
 					if (node.isEndNode()) done=true;
+					else if (node.isCloseNode()) continue;
 					else {
 						assert database.check(Integer.toString(node.getId()), node.toString());
 					}
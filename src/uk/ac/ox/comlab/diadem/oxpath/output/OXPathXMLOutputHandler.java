@@ -34,8 +34,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.StringWriter;
-import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -78,6 +80,18 @@ public class OXPathXMLOutputHandler extends OXPathOutputHandler {
 		nodes = new ArrayList<OXPathExtractionNode>();
 	}
 	
+	/**
+	 * Constructs the XMLOutputHandler object for an evaluation in the same JVM.
+	 * @param channel the in-process channel receiving {@code OXPathExtractionNode} instances
+	 * @param logger the logging environment associated with OXPath
+	 * @param iLatch countdown latch that lets the caller know that the XML output document is completely built
+	 */
+	public OXPathXMLOutputHandler(OXPathExtractionChannel channel, Logger logger, CountDownLatch iLatch) {
+		super(channel, logger);
+		this.latch = iLatch;
+		nodes = new ArrayList<OXPathExtractionNode>();
+	}
+	
 	/**
 	 * Runs the thread receiving the OXPath output.  Upon call to {@code this.finishWithOuput()}, all nodes received
 	 * on the target output stream are built into an XML document.  This process can be tested if finished with 
@@ -87,7 +101,7 @@ public class OXPathXMLOutputHandler extends OXPathOutputHandler {
 	@Override
 	public void run() {
 		try {
-			ObjectInputStream in = new ObjectInputStream(new Socket(host,port).getInputStream());
+			ObjectInputStream in = this.openInput();
 			boolean done = false;
 			while (!done) {
 				Object outRaw = in.readObject();
@@ -95,6 +109,7 @@ public class OXPathXMLOutputHandler extends OXPathOutputHandler {
 				if (outRaw!=null) {
 					node = ((OXPathExtractionNode) outRaw);
 					if (node.getId()==-1) done=true;
+					else if (node.isCloseNode()) continue;
 					else nodes.add(node);
 				}
 			}
@@ -143,22 +158,24 @@ public class OXPathXMLOutputHandler extends OXPathOutputHandler {
 	}
 	
 	/**
-	 * Returns output of query.  Builds the document from the nodes received on the output stream
+	 * Returns output of query.  Builds the document from the nodes received on the output stream, with the siblings of each node
+	 * in document order if the nodes carry document order keys (see {@code OXPathSiblingOrderOutputHandler.SIBLINGORDER})
 	 * @return XML Document encoding the output of the OXPath expression evaluation
 	 * @throws ParserConfigurationException in case of XML parse error
 	 * @throws IOException in case of XML parse error
 	 * @throws SAXException in case of XML parse error
 	 */
 	private Document returnOutput() throws ParserConfigurationException, SAXException, IOException {
-		//TODO: Sort siblings based on document order
+		//the whole output is in memory already, so the siblings are sorted here rather than in an external sort
+		Collections.sort(nodes, OXPathSiblingOrderOutputHandler.SIBLINGORDER);
 		DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder(); 
 		Document tempDoc = db.newDocument();
-		ArrayList<Element> elements = new ArrayList<Element>();
-		//elements are identified by position in elements rather than by name 
-		elements.add(tempDoc.createElement("results"));
+		Map<Integer,Element> elements = new HashMap<Integer,Element>(nodes.size() * 4 / 3 + 1);
+		//elements are identified by id rather than by name; a parent is always numbered, and so sorted, before its children 
+		elements.put(0, tempDoc.createElement("results"));
 		tempDoc.appendChild(elements.get(0));
 		for (OXPathExtractionNode o : nodes) {
-			elements.add(o.getId(), tempDoc.createElement(o.getLabel()));
+			elements.put(o.getId(), tempDoc.createElement(o.getLabel()));
 			elements.get(o.getParent()).appendChild(elements.get(o.getId()));
 			if (!o.getValue().equals("")) {
 				while (o.getValue().contains(LESSTHANSUB)||o.getValue().contains(GREATERTHANSUB)) {
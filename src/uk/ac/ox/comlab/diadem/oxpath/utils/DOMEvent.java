@@ -29,6 +29,9 @@
  */
 package uk.ac.ox.comlab.diadem.oxpath.utils;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * DOM Events for controlling input into the {@code OXPathWebAccessNode.fireEvent(event)} method
  * by enumeration of each of the DOM 3 Events to fire.
@@ -178,6 +181,36 @@ public enum DOMEvent {
 	@Override
 	public String toString() {return this.name;}
 	
+	/**
+	 * Returns {@code true} if the event signals a change to the DOM (the DOM 3 mutation events other than the deprecated name 
+	 * changes and the (non-bubbling) insertions into and removals from the document)
+	 * @return {@code true} if the event signals a change to the DOM, {@code false} otherwise
+	 */
+	public boolean isMutation() {
+		switch (this) {
+		case DOMSUBTREEMODIFIED :
+		case DOMNODEINSERTED :
+		case DOMNODEREMOVED :
+		case DOMATTRMODIFIED :
+		case DOMCHARACTERDATAMODIFIED :
+			return true;
+		default :
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the names of the events signalling a change to the DOM (see {@code isMutation()})
+	 * @return the names of the mutation events
+	 */
+	public static String[] getMutationEventNames() {
+		List<String> names = new ArrayList<String>();
+		for (DOMEvent event : values()) {
+			if (event.isMutation()) names.add(event.toString());
+		}
+		return names.toArray(new String[names.size()]);
+	}
+	
 	/**
 	 * private instance field storing the enum value's name
 	 */
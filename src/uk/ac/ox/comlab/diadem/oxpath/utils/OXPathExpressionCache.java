@@ -0,0 +1,251 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *Package with utilities for supporting OXPath expression evaluation
+ */
+package uk.ac.ox.comlab.diadem.oxpath.utils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNode;
+import diadem.common.web.dom.xpath.DOMXPathEvaluator;
+import diadem.common.web.dom.xpath.DOMXPathExpression;
+import diadem.common.web.dom.xpath.DOMXPathNSResolver;
+import diadem.common.web.dom.xpath.DOMXPathResult;
+
+/**
+ * Per-{@code DOMDocument} cache of compiled XPath expressions, keyed by expression text.  OXPath sends the browser the same small 
+ * set of step expressions for every context node of a page; with this cache, each expression is parsed by the browser once per
+ * page, and every expression of a page shares a single namespace resolver created on the document (OXPath pages are HTML, so 
+ * resolving prefixes against the document rather than each context node doesn't change results).
+ * <p>
+ * Entries of a page are dropped with {@code clear(page)}, which PAAT calls whenever it frees a page, or once more than 
+ * {@code MAXPAGES} more recently used pages have entries (so pages that are never cleared don't accumulate).  Hit and miss 
+ * counters are kept both overall and per page.
+ * @author AndrewJSel
+ *
+ */
+public final class OXPathExpressionCache {
+
+	/**
+	 * Evaluates the XPath expression relative to the context node, compiling the expression only if it hasn't been used on the
+	 * document of {@code context} before
+	 * @param expression XPath expression as a {@code String}
+	 * @param context context node of the evaluation
+	 * @param resultType one of the {@code DOMXPathResult} type constants
+	 * @return the result of the evaluation
+	 */
+	public static DOMXPathResult evaluate(String expression, DOMNode context, short resultType) {
+		DOMDocument document = (context instanceof DOMDocument)?(DOMDocument)context:context.getOwnerDocument();
+		if (document == null) {//no document to attach the entry to
+			DOMXPathEvaluator evaluator = context.getXPathEvaluator();
+			return evaluator.evaluate(expression, context, evaluator.createNSResolver(context), resultType, null);
+		}
+		return (DOMXPathResult) getEntry(document).getExpression(expression).evaluate(context, resultType, null);
+	}
+
+	/**
+	 * Removes all compiled expressions of the input document
+	 * @param page the page whose expressions are removed
+	 * @return {@code true} if any expressions were cached for the page, {@code false} otherwise
+	 */
+	public static Boolean clear(DOMDocument page) {
+		synchronized (entries) {
+			return (entries.remove(page)!=null);
+		}
+	}
+
+	/**
+	 * Returns the number of lookups, over all pages, answered from the cache
+	 * @return the number of lookups answered from the cache
+	 */
+	public static long getHits() {
+		synchronized (entries) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Returns the number of lookups, over all pages, that required compiling the expression
+	 * @return the number of lookups that required compiling the expression
+	 */
+	public static long getMisses() {
+		synchronized (entries) {
+			return misses;
+		}
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache for the page (since the page was last cleared)
+	 * @param page the page
+	 * @return the number of lookups answered from the cache for the page
+	 */
+	public static long getHits(DOMDocument page) {
+		OXPathExpressionCache entry = peekEntry(page);
+		return (entry == null)?0:entry.getPageHits();
+	}
+
+	/**
+	 * Returns the number of lookups that required compiling the expression for the page (since the page was last cleared)
+	 * @param page the page
+	 * @return the number of lookups that required compiling the expression for the page
+	 */
+	public static long getMisses(DOMDocument page) {
+		OXPathExpressionCache entry = peekEntry(page);
+		return (entry == null)?0:entry.getPageMisses();
+	}
+
+	/**
+	 * Returns the entry for the page, creating it if necessary
+	 * @param page the page
+	 * @return the entry for the page
+	 */
+	private static OXPathExpressionCache getEntry(DOMDocument page) {
+		synchronized (entries) {
+			OXPathExpressionCache entry = entries.get(page);
+			if (entry == null) {
+				entry = new OXPathExpressionCache(page);
+				entries.put(page, entry);
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Returns the entry for the page without creating it
+	 * @param page the page
+	 * @return the entry for the page, or {@code null} if there is none
+	 */
+	private static OXPathExpressionCache peekEntry(DOMDocument page) {
+		synchronized (entries) {
+			return entries.get(page);
+		}
+	}
+
+	/**
+	 * Records a lookup in the overall counters
+	 * @param hit {@code true} for a hit, {@code false} for a miss
+	 */
+	private static void count(boolean hit) {
+		synchronized (entries) {
+			if (hit) hits++;
+			else misses++;
+		}
+	}
+
+	/**
+	 * Constructs an empty entry for the page; the resolver is created on the first miss
+	 * @param iPage the page of the entry
+	 */
+	private OXPathExpressionCache(DOMDocument iPage) {
+		this.page = iPage;
+	}
+
+	/**
+	 * Returns the compiled form of the expression for this page
+	 * @param expression XPath expression as a {@code String}
+	 * @return the compiled expression
+	 */
+	private synchronized DOMXPathExpression getExpression(String expression) {
+		DOMXPathExpression compiled = this.expressions.get(expression);
+		boolean hit = (compiled != null);
+		if (hit) this.pageHits++;
+		else {
+			this.pageMisses++;
+			DOMXPathEvaluator evaluator = this.page.getXPathEvaluator();
+			if (this.resolver == null) this.resolver = evaluator.createNSResolver(this.page);
+			compiled = evaluator.createExpression(expression, this.resolver);
+			this.expressions.put(expression, compiled);
+		}
+		count(hit);
+		return compiled;
+	}
+
+	/**
+	 * Returns the number of hits for this page
+	 * @return the number of hits for this page
+	 */
+	private synchronized long getPageHits() {
+		return this.pageHits;
+	}
+
+	/**
+	 * Returns the number of misses for this page
+	 * @return the number of misses for this page
+	 */
+	private synchronized long getPageMisses() {
+		return this.pageMisses;
+	}
+
+	/**
+	 * the page of this entry
+	 */
+	private final DOMDocument page;
+	/**
+	 * namespace resolver shared by all expressions of the page
+	 */
+	private DOMXPathNSResolver resolver;
+	/**
+	 * compiled expressions of the page, keyed by expression text
+	 */
+	private final Map<String,DOMXPathExpression> expressions = new HashMap<String,DOMXPathExpression>();
+	/**
+	 * number of hits for this page
+	 */
+	private long pageHits = 0;
+	/**
+	 * number of misses for this page
+	 */
+	private long pageMisses = 0;
+
+	/**
+	 * entries of the open pages
+	 */
+	private static final Map<DOMDocument,OXPathExpressionCache> entries = new LinkedHashMap<DOMDocument,OXPathExpressionCache>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<DOMDocument,OXPathExpressionCache> eldest) {
+			return (this.size() > MAXPAGES);
+		}
+	};
+	/**
+	 * number of hits over all pages
+	 */
+	private static long hits = 0;
+	/**
+	 * number of misses over all pages
+	 */
+	private static long misses = 0;
+	/**
+	 * Maximum number of pages with cached expressions, in least recently used order
+	 */
+	public static final int MAXPAGES = 256;
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *Package with utilities for supporting OXPath expression evaluation
+ */
+package uk.ac.ox.comlab.diadem.oxpath.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts a sequence of elements of any length in bounded memory.  Elements are collected in memory until the budget is reached;
+ * the collected elements are then sorted and written to a temporary file as a sorted run.  Once all elements are added,
+ * {@code next()} merges the runs and the elements still in memory, so sorting n elements costs O(n log n) comparisons with at
+ * most {@code budget} elements held, plus one per open run.  Runs are merged at most {@code MAXFANIN} at a time, in extra passes
+ * if there are more, so the number of open files stays bounded too.
+ * <p>
+ * The sort is stable: elements comparing equal come out in the order they were added.  Call {@code close()} once done, which
+ * deletes the run files (also if the elements were not all taken).
+ * @author AndrewJSel
+ *
+ * @param <E> type of the elements
+ */
+public class OXPathExternalSorter<E extends Serializable> implements Closeable {
+
+	/**
+	 * Creates an empty sorter
+	 * @param iComparator the order of the elements
+	 * @param iBudget the number of elements held in memory before a run is written
+	 * @param iDirectory the directory of the run files, or {@code null} for the default temporary directory
+	 * @throws IllegalArgumentException if {@code iBudget} isn't positive
+	 */
+	public OXPathExternalSorter(Comparator<? super E> iComparator, int iBudget, File iDirectory) {
+		if (iBudget <= 0) throw new IllegalArgumentException("sort memory budget must be positive: " + iBudget);
+		this.comparator = iComparator;
+		this.budget = iBudget;
+		this.directory = iDirectory;
+		this.buffer = new ArrayList<E>(Math.min(iBudget, 1024));
+	}
+
+	/**
+	 * Adds the element, writing a sorted run if the memory budget is reached
+	 * @param e the element
+	 * @throws IOException in case the run can't be written
+	 * @throws IllegalStateException if elements are already being taken
+	 */
+	public void add(E e) throws IOException {
+		if (this.merge != null) throw new IllegalStateException("Elements can't be added once sorted elements are taken");
+		this.buffer.add(e);
+		this.count++;
+		if (this.buffer.size() >= this.budget) {
+			Collections.sort(this.buffer, this.comparator);
+			this.runs.add(this.writeRun(this.buffer.iterator()));
+			this.buffer.clear();
+		}
+	}
+
+	/**
+	 * Returns the next element in sorted order; the first call ends the adding of elements
+	 * @return the next element in sorted order, or {@code null} once all elements are taken
+	 * @throws IOException in case a run can't be read or merged
+	 */
+	public E next() throws IOException {
+		if (this.merge == null) {
+			while (this.runs.size() > MAXFANIN) this.mergePass();
+			Collections.sort(this.buffer, this.comparator);
+			List<Source<E>> sources = new ArrayList<Source<E>>();
+			for (Run run : this.runs) sources.add(new Source<E>(run, sources.size()));
+			sources.add(new Source<E>(this.buffer.iterator(), this.runs.size()));
+			this.merge = this.open(sources);
+		}
+		return this.poll(this.merge);
+	}
+
+	/**
+	 * Returns the number of elements added
+	 * @return the number of elements added
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the number of sorted runs written to disk so far, including those of extra merge passes
+	 * @return the number of runs written
+	 */
+	public int getRunCount() {
+		return this.runsWritten;
+	}
+
+	/**
+	 * Closes the open runs and deletes the run files
+	 */
+	@Override
+	public void close() {
+		if (this.merge != null) {
+			for (Source<E> source : this.merge) source.close();
+			this.merge.clear();
+		}
+		for (Run run : this.runs) run.file.delete();
+		this.runs.clear();
+		this.buffer.clear();
+	}
+
+	/**
+	 * Merges the runs {@code MAXFANIN} at a time, in order, replacing them by the merged runs
+	 * @throws IOException in case a run can't be read or written
+	 */
+	private void mergePass() throws IOException {
+		List<Run> merged = new ArrayList<Run>();
+		for (int i = 0; i < this.runs.size(); i += MAXFANIN) {
+			List<Run> group = this.runs.subList(i, Math.min(i + MAXFANIN, this.runs.size()));
+			List<Source<E>> sources = new ArrayList<Source<E>>(group.size());
+			for (Run run : group) sources.add(new Source<E>(run, sources.size()));
+			final PriorityQueue<Source<E>> queue = this.open(sources);
+			try {
+				merged.add(this.writeRun(new Iterator<E>() {
+					@Override
+					public boolean hasNext() {
+						return !queue.isEmpty();
+					}
+					@Override
+					public E next() {
+						try {
+							return OXPathExternalSorter.this.poll(queue);
+						} catch (IOException e) {
+							throw new IllegalStateException(e);
+						}
+					}
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				}));
+			} catch (IllegalStateException e) {
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				throw e;
+			} finally {
+				for (Source<E> source : queue) source.close();
+				for (Run run : group) run.file.delete();
+			}
+		}
+		this.runs.clear();
+		this.runs.addAll(merged);
+	}
+
+	/**
+	 * Reads the first element of each source and queues the sources that aren't empty
+	 * @param sources the sources, in the order of their elements
+	 * @return the queue of the sources, by their next element
+	 * @throws IOException in case a run can't be read
+	 */
+	private PriorityQueue<Source<E>> open(List<Source<E>> sources) throws IOException {
+		PriorityQueue<Source<E>> queue = new PriorityQueue<Source<E>>(Math.max(1, sources.size()), new Comparator<Source<E>>() {
+			@Override
+			public int compare(Source<E> a, Source<E> b) {
+				int c = OXPathExternalSorter.this.comparator.compare(a.head, b.head);
+				//ties go to the earlier source, which keeps the sort stable
+				return (c != 0)?c:(a.index - b.index);
+			}
+		});
+		for (Source<E> source : sources) {
+			if (source.advance()) queue.add(source);
+		}
+		return queue;
+	}
+
+	/**
+	 * Takes the least element from the queued sources
+	 * @param queue the queue of the sources
+	 * @return the least element, or {@code null} if the sources are exhausted
+	 * @throws IOException in case a run can't be read
+	 */
+	private E poll(PriorityQueue<Source<E>> queue) throws IOException {
+		Source<E> source = queue.poll();
+		if (source == null) return null;
+		E e = source.head;
+		if (source.advance()) queue.add(source);
+		return e;
+	}
+
+	/**
+	 * Writes the elements to a new run file
+	 * @param elements the elements, in sorted order
+	 * @return the run
+	 * @throws IOException in case the file can't be written
+	 */
+	private Run writeRun(Iterator<E> elements) throws IOException {
+		File file = File.createTempFile("oxpath-sort", ".run", this.directory);
+		file.deleteOnExit();
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		long written = 0;
+		try {
+			while (elements.hasNext()) {
+				out.writeObject(elements.next());
+				//forget the written objects, which the stream would otherwise keep for back references
+				if (++written % RESETINTERVAL == 0) out.reset();
+			}
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		} finally {
+			out.close();
+		}
+		this.runsWritten++;
+		return new Run(file, written);
+	}
+
+	/**
+	 * A sorted run on disk
+	 */
+	private static final class Run {
+
+		/**
+		 * Creates the run
+		 * @param iFile the run file
+		 * @param iLength the number of elements in the run
+		 */
+		Run(File iFile, long iLength) {
+			this.file = iFile;
+			this.length = iLength;
+		}
+
+		/**
+		 * the run file
+		 */
+		final File file;
+		/**
+		 * the number of elements in the run
+		 */
+		final long length;
+	}
+
+	/**
+	 * A sorted sequence being merged: a run on disk, or the elements still in memory
+	 * @param <E> type of the elements
+	 */
+	private static final class Source<E> {
+
+		/**
+		 * Creates a source reading a run
+		 * @param iRun the run
+		 * @param iIndex position of the source among those merged
+		 */
+		Source(Run iRun, int iIndex) {
+			this.run = iRun;
+			this.remaining = iRun.length;
+			this.elements = null;
+			this.index = iIndex;
+		}
+
+		/**
+		 * Creates a source taking elements held in memory
+		 * @param iElements the elements, in sorted order
+		 * @param iIndex position of the source among those merged
+		 */
+		Source(Iterator<E> iElements, int iIndex) {
+			this.run = null;
+			this.remaining = 0;
+			this.elements = iElements;
+			this.index = iIndex;
+		}
+
+		/**
+		 * Moves to the next element, closing the run once it is exhausted
+		 * @return {@code true} if there is a next element, {@code false} otherwise
+		 * @throws IOException in case the run can't be read
+		 */
+		@SuppressWarnings("unchecked")
+		boolean advance() throws IOException {
+			if (this.elements != null) {
+				this.head = (this.elements.hasNext())?this.elements.next():null;
+				return (this.head != null);
+			}
+			if (this.remaining == 0) {
+				this.close();
+				return false;
+			}
+			if (this.in == null) this.in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(this.run.file)));
+			try {
+				this.head = (E) this.in.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Unreadable element in sort run: " + e.getMessage());
+			}
+			this.remaining--;
+			return true;
+		}
+
+		/**
+		 * Closes the run file, if open
+		 */
+		void close() {
+			this.head = null;
+			if (this.in == null) return;
+			try {
+				this.in.close();
+			} catch (IOException ignored) {}
+			this.in = null;
+		}
+
+		/**
+		 * the run, or {@code null} for elements held in memory
+		 */
+		private final Run run;
+		/**
+		 * elements held in memory, or {@code null} for a run
+		 */
+		private final Iterator<E> elements;
+		/**
+		 * position of the source among those merged, breaking ties
+		 */
+		final int index;
+		/**
+		 * number of elements of the run not yet read
+		 */
+		private long remaining;
+		/**
+		 * stream reading the run, once opened
+		 */
+		private ObjectInputStream in;
+		/**
+		 * the current element
+		 */
+		E head;
+	}
+
+	/**
+	 * Maximum number of runs merged at once
+	 */
+	public static final int MAXFANIN = 64;
+	/**
+	 * Number of elements written to a run between resets of the object stream
+	 */
+	private static final int RESETINTERVAL = 1024;
+
+	/**
+	 * the order of the elements
+	 */
+	private final Comparator<? super E> comparator;
+	/**
+	 * the number of elements held in memory before a run is written
+	 */
+	private final int budget;
+	/**
+	 * the directory of the run files, or {@code null} for the default temporary directory
+	 */
+	private final File directory;
+	/**
+	 * the elements not yet written to a run
+	 */
+	private final List<E> buffer;
+	/**
+	 * the runs written, in the order of their elements
+	 */
+	private final List<Run> runs = new ArrayList<Run>();
+	/**
+	 * the sources being merged by {@code next()}, or {@code null} while elements are added
+	 */
+	private PriorityQueue<Source<E>> merge = null;
+	/**
+	 * number of elements added
+	 */
+	private long count = 0;
+	/**
+	 * number of runs written
+	 */
+	private int runsWritten = 0;
+}
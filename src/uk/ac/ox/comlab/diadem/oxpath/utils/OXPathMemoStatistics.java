@@ -0,0 +1,133 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *Package with utilities for supporting OXPath expression evaluation
+ */
+package uk.ac.ox.comlab.diadem.oxpath.utils;
+
+/**
+ * Immutable snapshot of the counters of an {@code OXPathMemoStore}, either for a single page or for the whole store
+ * @author AndrewJSel
+ *
+ */
+public final class OXPathMemoStatistics {
+
+	/**
+	 * Creates a snapshot
+	 * @param iHits number of lookups answered
+	 * @param iMisses number of lookups not answered
+	 * @param iEvictions number of entries evicted to respect the bound
+	 * @param iSize number of resident entries
+	 */
+	public OXPathMemoStatistics(long iHits, long iMisses, long iEvictions, long iSize) {
+		this.hits = iHits;
+		this.misses = iMisses;
+		this.evictions = iEvictions;
+		this.size = iSize;
+	}
+
+	/**
+	 * Returns the number of lookups answered
+	 * @return the number of lookups answered
+	 */
+	public long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Returns the number of lookups not answered
+	 * @return the number of lookups not answered
+	 */
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Returns the number of entries evicted to respect the bound (entries dropped by {@code clear} aren't counted)
+	 * @return the number of entries evicted
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * Returns the number of resident entries
+	 * @return the number of resident entries
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the fraction of lookups answered, or 0 if there were none
+	 * @return the fraction of lookups answered
+	 */
+	public double getHitRate() {
+		long lookups = this.hits + this.misses;
+		return (lookups == 0)?0:((double)this.hits / lookups);
+	}
+
+	/**
+	 * Returns the sum of this snapshot and another one
+	 * @param other the other snapshot
+	 * @return the sum of the two snapshots
+	 */
+	public OXPathMemoStatistics plus(OXPathMemoStatistics other) {
+		return new OXPathMemoStatistics(this.hits + other.hits, this.misses + other.misses, this.evictions + other.evictions, this.size + other.size);
+	}
+
+	/**
+	 * Returns a readable rendering of the counters
+	 * @return a readable rendering of the counters
+	 */
+	@Override
+	public String toString() {
+		return ("hits=" + this.hits + ", misses=" + this.misses + ", evictions=" + this.evictions + ", size=" + this.size);
+	}
+
+	/**
+	 * Snapshot with all counters at zero
+	 */
+	public static final OXPathMemoStatistics EMPTY = new OXPathMemoStatistics(0, 0, 0, 0);
+
+	/**
+	 * number of lookups answered
+	 */
+	private final long hits;
+	/**
+	 * number of lookups not answered
+	 */
+	private final long misses;
+	/**
+	 * number of entries evicted to respect the bound
+	 */
+	private final long evictions;
+	/**
+	 * number of resident entries
+	 */
+	private final long size;
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *Package with utilities for supporting OXPath expression evaluation
+ */
+package uk.ac.ox.comlab.diadem.oxpath.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import diadem.common.web.dom.DOMDocument;
+import diadem.common.web.dom.DOMNode;
+
+/**
+ * Memo storage for OXPath's memoized functions, without reflection on the lookup path (unlike {@code OXPathMemoizer}).  Results
+ * are held in one {@code OXPathMemoTable} per page, so all results of a page can be dropped with {@code clear(page)} once PAAT 
+ * closes it.  Pages are spread over a fixed number of lock stripes, so concurrent evaluations on different pages rarely contend; 
+ * the stripes only serve locking, the bound and the page order below are shared by the whole store.
+ * <p>
+ * Callers compose keys from three object parts and an {@code int} part (see {@code OXPathMemoTable}) and distinguish a stored 
+ * {@code null} from an absent key through the {@code MISS} sentinel.
+ * <p>
+ * The store is bounded by a maximum number of resident entries.  When the store exceeds it, the tables of the least recently 
+ * used pages (across all stripes) are dropped first; this also reclaims pages whose {@code clear} was never reached (e.g. 
+ * because the browser window was gone when PAAT tried to free it).  Pages are held strongly rather than through weak 
+ * references because the browser bindings hand out a fresh {@code DOMDocument} wrapper on every call, so a weakly held wrapper
+ * would be reclaimed while its page is still open.  If the page being written to alone exceeds the bound, its own entries are
+ * evicted by the CLOCK policy of {@code OXPathMemoTable}.
+ * <p>
+ * A store created with eviction disabled (for memoized functions whose results must not be forgotten while the page is open)
+ * never evicts: the bound isn't enforced, and the results of a page are only dropped by {@code clear(page)}.
+ * <p>
+ * Hits, misses, evictions and resident sizes are counted per page ({@code getStatistics(page)}) and in total 
+ * ({@code getStatistics()}); the totals include pages that have since been cleared or evicted.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathMemoStore implements OXPathCache {
+
+	/**
+	 * Creates an empty store bounded by the default maximum number of entries, with eviction enabled
+	 */
+	public OXPathMemoStore() {
+		this(getDefaultMaxEntries(), true);
+	}
+
+	/**
+	 * Creates an empty store
+	 * @param iMaxEntries maximum number of resident entries (not enforced without eviction)
+	 * @param iEvict {@code true} if pages and entries may be evicted to keep within {@code iMaxEntries}, {@code false} if results
+	 * are only dropped by {@code clear(page)}
+	 * @throws IllegalArgumentException if {@code iMaxEntries} isn't positive
+	 */
+	public OXPathMemoStore(int iMaxEntries, boolean iEvict) {
+		if (iMaxEntries <= 0) throw new IllegalArgumentException("maximum number of memo entries must be positive: " + iMaxEntries);
+		this.maxEntries = iMaxEntries;
+		this.evict = iEvict;
+		this.stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) this.stripes[i] = new Stripe();
+	}
+
+	/**
+	 * Returns the page a memoized result depends on: the node itself if it is a document, its owner document otherwise
+	 * @param context the context node of the memoized call
+	 * @return the page of the context node
+	 */
+	public static DOMDocument pageOf(DOMNode context) {
+		return (context instanceof DOMDocument)?(DOMDocument)context:context.getOwnerDocument();
+	}
+
+	/**
+	 * Returns the value memoized for the key on the page
+	 * @param page the page of the key
+	 * @param a first key part
+	 * @param b second key part
+	 * @param c third key part
+	 * @param d {@code int} key part
+	 * @return the memoized value (possibly {@code null}), or {@code MISS} if there is none
+	 */
+	public Object get(DOMDocument page, Object a, Object b, Object c, int d) {
+		int hash = OXPathMemoTable.hash(a, b, c, d);
+		Stripe stripe = this.stripeOf(page);
+		synchronized (stripe) {
+			Page entry = stripe.tables.get(page);
+			if (entry == null) {
+				stripe.retiredMisses++;
+				return MISS;
+			}
+			entry.used = System.nanoTime();
+			return entry.table.get(hash, a, b, c, d);
+		}
+	}
+
+	/**
+	 * Memoizes the value for the key on the page, evicting pages or entries if the bound is exceeded (and eviction is enabled)
+	 * @param page the page of the key
+	 * @param a first key part
+	 * @param b second key part
+	 * @param c third key part
+	 * @param d {@code int} key part
+	 * @param value the value to memoize
+	 */
+	public void put(DOMDocument page, Object a, Object b, Object c, int d, Object value) {
+		int hash = OXPathMemoTable.hash(a, b, c, d);
+		Stripe stripe = this.stripeOf(page);
+		Page entry;
+		synchronized (stripe) {
+			entry = stripe.tables.get(page);
+			if (entry == null) {
+				entry = new Page();
+				stripe.tables.put(page, entry);
+			}
+			entry.used = System.nanoTime();
+			if (!entry.table.put(hash, a, b, c, d, value)) return;
+		}
+		if (this.resident.incrementAndGet() > this.maxEntries && this.evict) this.shrink(stripe, page, entry);
+	}
+
+	/**
+	 * Clears all memoized data for the input {@code DOMDocument}
+	 * @param page {@code DOMDocument} we are removing all memoized results for, presumably because the page is being closed in PAAT
+	 * @return {@code true} if any results were memoized for the page, {@code false} otherwise
+	 */
+	@Override
+	public Boolean clear(DOMDocument page) {
+		Stripe stripe = this.stripeOf(page);
+		synchronized (stripe) {
+			Page entry = stripe.tables.remove(page);
+			if (entry == null) return false;
+			this.retire(stripe, entry.table, false);
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the counters of the page, or {@code OXPathMemoStatistics.EMPTY} if no results are resident for it
+	 * @param page the page
+	 * @return the counters of the page
+	 */
+	public OXPathMemoStatistics getStatistics(DOMDocument page) {
+		Stripe stripe = this.stripeOf(page);
+		synchronized (stripe) {
+			Page entry = stripe.tables.get(page);
+			return (entry == null)?OXPathMemoStatistics.EMPTY:statisticsOf(entry.table);
+		}
+	}
+
+	/**
+	 * Returns the counters of the whole store, including pages that have been cleared or evicted
+	 * @return the counters of the whole store
+	 */
+	public OXPathMemoStatistics getStatistics() {
+		OXPathMemoStatistics total = new OXPathMemoStatistics(0, 0, 0, this.resident.get());
+		for (Stripe stripe : this.stripes) {
+			synchronized (stripe) {
+				total = total.plus(new OXPathMemoStatistics(stripe.retiredHits, stripe.retiredMisses, stripe.retiredEvictions, 0));
+				for (Page entry : stripe.tables.values()) {
+					total = total.plus(new OXPathMemoStatistics(entry.table.getHits(), entry.table.getMisses(), entry.table.getEvictions(), 0));
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the maximum number of resident entries (not enforced if eviction is disabled)
+	 * @return the maximum number of resident entries
+	 */
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	/**
+	 * Returns the maximum number of entries of stores created with the no-argument constructor
+	 * @return the default maximum number of entries
+	 */
+	public static synchronized int getDefaultMaxEntries() {
+		return defaultMaxEntries;
+	}
+
+	/**
+	 * Sets the maximum number of entries of stores created afterwards with the no-argument constructor
+	 * @param maxEntries the default maximum number of entries
+	 * @throws IllegalArgumentException if {@code maxEntries} isn't positive
+	 */
+	public static synchronized void setDefaultMaxEntries(int maxEntries) {
+		if (maxEntries <= 0) throw new IllegalArgumentException("maximum number of memo entries must be positive: " + maxEntries);
+		defaultMaxEntries = maxEntries;
+	}
+
+	/**
+	 * Brings the store back within the bound, first by dropping the least recently used pages other than the current one, then by
+	 * evicting entries of the current page.  Shrinking threads take turns, and hold one stripe lock at a time, so they can't 
+	 * deadlock with each other or with readers.
+	 * @param current the stripe of the page being written to (its lock isn't held)
+	 * @param page the page being written to
+	 * @param entry the table of {@code page}
+	 */
+	private void shrink(Stripe current, DOMDocument page, Page entry) {
+		synchronized (this.shrinking) {
+			while (this.resident.get() > this.maxEntries) {
+				//the eldest page of each stripe (in access order) is the candidate of the stripe
+				Stripe victimStripe = null;
+				DOMDocument victim = null;
+				long oldest = Long.MAX_VALUE;
+				for (Stripe stripe : this.stripes) {
+					synchronized (stripe) {
+						for (Map.Entry<DOMDocument,Page> candidate : stripe.tables.entrySet()) {
+							if (candidate.getValue() == entry) continue;
+							if (victim == null || candidate.getValue().used - oldest < 0) {
+								victimStripe = stripe;
+								victim = candidate.getKey();
+								oldest = candidate.getValue().used;
+							}
+							break;
+						}
+					}
+				}
+				if (victim == null) break;
+				synchronized (victimStripe) {
+					Page evicted = victimStripe.tables.remove(victim);
+					if (evicted != null) this.retire(victimStripe, evicted.table, true);
+				}
+			}
+			synchronized (current) {
+				int resident = this.resident.get();
+				if (resident > this.maxEntries && current.tables.get(page) == entry) {
+					//evict an eighth of the bound beyond the excess, so a full page doesn't sweep the clock on every put
+					int excess = resident - this.maxEntries + (this.maxEntries >>> 3);
+					this.resident.addAndGet(-entry.table.evict(excess));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops a removed table from the resident size and folds its counters into the retired counters of its stripe
+	 * @param stripe the stripe of the table (its lock is held)
+	 * @param table the removed table
+	 * @param evicted {@code true} if the table was evicted (its entries count as evictions), {@code false} if it was cleared
+	 */
+	private void retire(Stripe stripe, OXPathMemoTable table, boolean evicted) {
+		this.resident.addAndGet(-table.size());
+		stripe.retiredHits += table.getHits();
+		stripe.retiredMisses += table.getMisses();
+		stripe.retiredEvictions += table.getEvictions() + (evicted?table.size():0);
+	}
+
+	/**
+	 * Returns the counters of a table
+	 * @param table the table
+	 * @return the counters of the table
+	 */
+	private static OXPathMemoStatistics statisticsOf(OXPathMemoTable table) {
+		return new OXPathMemoStatistics(table.getHits(), table.getMisses(), table.getEvictions(), table.size());
+	}
+
+	/**
+	 * Returns the stripe holding the page
+	 * @param page the page
+	 * @return the stripe holding the page
+	 */
+	private Stripe stripeOf(DOMDocument page) {
+		int h = (page == null)?0:page.hashCode();
+		h ^= (h >>> 16);
+		return this.stripes[h & (STRIPES - 1)];
+	}
+
+	/**
+	 * The table of a page, with the time the page was last used
+	 * @author AndrewJSel
+	 *
+	 */
+	private static final class Page {
+
+		/**
+		 * the results of the page
+		 */
+		private final OXPathMemoTable table = new OXPathMemoTable();
+		/**
+		 * {@code System.nanoTime()} of the last lookup or write on the page (guarded by the lock of its stripe)
+		 */
+		private long used;
+	}
+
+	/**
+	 * A lock stripe, holding the tables of the pages hashed to it in least recently used order, together with the counters of 
+	 * the tables it has dropped
+	 * @author AndrewJSel
+	 *
+	 */
+	private static final class Stripe {
+
+		/**
+		 * tables of the pages in this stripe, in access order
+		 */
+		private final LinkedHashMap<DOMDocument,Page> tables = new LinkedHashMap<DOMDocument,Page>(16, 0.75f, true);
+		/**
+		 * hits of the tables dropped from this stripe
+		 */
+		private long retiredHits = 0;
+		/**
+		 * misses of the tables dropped from this stripe, and lookups on pages without a table
+		 */
+		private long retiredMisses = 0;
+		/**
+		 * evictions of the tables dropped from this stripe, including the entries of evicted tables
+		 */
+		private long retiredEvictions = 0;
+	}
+
+	/**
+	 * the lock stripes
+	 */
+	private final Stripe[] stripes;
+	/**
+	 * maximum number of resident entries
+	 */
+	private final int maxEntries;
+	/**
+	 * {@code true} if pages and entries may be evicted to keep within {@code maxEntries}
+	 */
+	private final boolean evict;
+	/**
+	 * number of entries resident in all tables
+	 */
+	private final AtomicInteger resident = new AtomicInteger();
+	/**
+	 * lock taken by threads shrinking the store, one at a time
+	 */
+	private final Object shrinking = new Object();
+
+	/**
+	 * Returned by {@code get} if no value is memoized for the key
+	 */
+	public static final Object MISS = new Object();
+	/**
+	 * Number of lock stripes (a power of two)
+	 */
+	private static final int STRIPES = 16;
+	/**
+	 * Maximum number of entries of stores created with the no-argument constructor, unless changed by {@code setDefaultMaxEntries}
+	 */
+	public static final int DEFAULTMAXENTRIES = 1 << 20;
+	/**
+	 * current maximum number of entries of stores created with the no-argument constructor
+	 */
+	private static int defaultMaxEntries = DEFAULTMAXENTRIES;
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *Package with utilities for supporting OXPath expression evaluation
+ */
+package uk.ac.ox.comlab.diadem.oxpath.utils;
+
+/**
+ * Open-addressing (linear probing) hash table used by {@code OXPathMemoStore} to hold the memoized results of a single page.  Keys
+ * are composed of three object parts and an {@code int} part, stored in parallel arrays together with the precomputed hash of the 
+ * key, so no key object is allocated per call and most mismatches are rejected on the hash alone.  Object parts are compared by 
+ * identity first and {@code equals} second; {@code null} parts are allowed.
+ * <p>
+ * Entries can be evicted with {@code evict(count)}, which approximates LRU with the CLOCK policy: each entry has a reference bit 
+ * set on insertion and on every hit, and the clock hand evicts the first entry whose bit is clear, clearing bits as it passes.  
+ * The table also counts its hits, misses and evictions.
+ * <p>
+ * Not thread-safe; {@code OXPathMemoStore} guards each table with the lock of its stripe.
+ * @author AndrewJSel
+ *
+ */
+public class OXPathMemoTable {
+
+	/**
+	 * Creates an empty table
+	 */
+	public OXPathMemoTable() {
+		this.allocate(INITIALCAPACITY);
+	}
+
+	/**
+	 * Computes the hash of a key
+	 * @param a first key part
+	 * @param b second key part
+	 * @param c third key part
+	 * @param d {@code int} key part
+	 * @return the hash of the key
+	 */
+	public static int hash(Object a, Object b, Object c, int d) {
+		int h = (a == null)?0:a.hashCode();
+		h = 31 * h + ((b == null)?0:b.hashCode());
+		h = 31 * h + ((c == null)?0:c.hashCode());
+		h = 31 * h + d;
+		//spread the bits, as we index with the low bits only
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the value stored for the key
+	 * @param hash hash of the key, as computed by {@code hash(a,b,c,d)}
+	 * @param a first key part
+	 * @param b second key part
+	 * @param c third key part
+	 * @param d {@code int} key part
+	 * @return the value stored for the key (possibly {@code null}), or {@code OXPathMemoStore.MISS} if there is none
+	 */
+	public Object get(int hash, Object a, Object b, Object c, int d) {
+		int index = this.find(hash, a, b, c, d);
+		if (index < 0) {
+			this.misses++;
+			return OXPathMemoStore.MISS;
+		}
+		this.hits++;
+		this.referenced[index] = true;
+		return this.values[index];
+	}
+
+	/**
+	 * Stores the value for the key, replacing any previous value
+	 * @param hash hash of the key, as computed by {@code hash(a,b,c,d)}
+	 * @param a first key part
+	 * @param b second key part
+	 * @param c third key part
+	 * @param d {@code int} key part
+	 * @param value the value to store
+	 * @return {@code true} if the key was added, {@code false} if an existing value was replaced
+	 */
+	public boolean put(int hash, Object a, Object b, Object c, int d, Object value) {
+		int index = this.find(hash, a, b, c, d);
+		if (index >= 0) {
+			this.values[index] = value;
+			this.referenced[index] = true;
+			return false;
+		}
+		if ((this.size + 1) * 4 > this.used.length * 3) this.resize(this.used.length * 2);
+		index = this.slot(hash);
+		this.used[index] = true;
+		this.hashes[index] = hash;
+		this.keysA[index] = a;
+		this.keysB[index] = b;
+		this.keysC[index] = c;
+		this.keysD[index] = d;
+		this.values[index] = value;
+		this.referenced[index] = true;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Evicts up to {@code count} entries chosen by the CLOCK policy
+	 * @param count the number of entries to evict
+	 * @return the number of entries evicted
+	 */
+	public int evict(int count) {
+		int evicted = 0;
+		while (evicted < count && this.size > 0) {
+			if (this.hand >= this.used.length) this.hand = 0;
+			if (!this.used[this.hand]) this.hand++;
+			else if (this.referenced[this.hand]) this.referenced[this.hand++] = false;
+			else {//an entry may be shifted into this slot, so the hand stays
+				this.removeAt(this.hand);
+				evicted++;
+			}
+		}
+		this.evictions += evicted;
+		return evicted;
+	}
+
+	/**
+	 * Returns the number of lookups answered by the table
+	 * @return the number of lookups answered by the table
+	 */
+	public long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Returns the number of lookups not answered by the table
+	 * @return the number of lookups not answered by the table
+	 */
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Returns the number of entries evicted from the table
+	 * @return the number of entries evicted from the table
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * Returns the number of entries in the table
+	 * @return the number of entries in the table
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes all entries from the table (the counters are kept)
+	 */
+	public void clear() {
+		this.allocate(INITIALCAPACITY);
+	}
+
+	/**
+	 * Returns the index of the key, or -1 if absent
+	 * @param hash hash of the key
+	 * @param a first key part
+	 * @param b second key part
+	 * @param c third key part
+	 * @param d {@code int} key part
+	 * @return the index of the key, or -1 if absent
+	 */
+	private int find(int hash, Object a, Object b, Object c, int d) {
+		int mask = this.used.length - 1;
+		for (int i = hash & mask; this.used[i]; i = (i + 1) & mask) {
+			if (this.hashes[i] == hash && this.keysD[i] == d && same(this.keysA[i], a) && same(this.keysB[i], b) && same(this.keysC[i], c)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the entry at {@code index}, shifting back later entries of the probe sequence so that no lookup stops early at the
+	 * freed slot
+	 * @param index the slot of the entry to remove
+	 */
+	private void removeAt(int index) {
+		int mask = this.used.length - 1;
+		int free = index;
+		for (int j = (free + 1) & mask; this.used[j]; j = (j + 1) & mask) {
+			int home = this.hashes[j] & mask;
+			//the entry at j can fill the free slot only if its home slot doesn't lie cyclically in (free, j]
+			boolean stays = (free <= j)?(free < home && home <= j):(free < home || home <= j);
+			if (stays) continue;
+			this.move(j, free);
+			free = j;
+		}
+		this.used[free] = false;
+		this.referenced[free] = false;
+		this.keysA[free] = null;
+		this.keysB[free] = null;
+		this.keysC[free] = null;
+		this.values[free] = null;
+		this.size--;
+	}
+
+	/**
+	 * Moves the entry at {@code from} to the (free) slot {@code to}
+	 * @param from the slot of the entry
+	 * @param to the free slot
+	 */
+	private void move(int from, int to) {
+		this.used[to] = true;
+		this.referenced[to] = this.referenced[from];
+		this.hashes[to] = this.hashes[from];
+		this.keysA[to] = this.keysA[from];
+		this.keysB[to] = this.keysB[from];
+		this.keysC[to] = this.keysC[from];
+		this.keysD[to] = this.keysD[from];
+		this.values[to] = this.values[from];
+	}
+
+	/**
+	 * Returns the first free slot for the hash
+	 * @param hash the hash of a key not in the table
+	 * @return the first free slot for the hash
+	 */
+	private int slot(int hash) {
+		int mask = this.used.length - 1;
+		int i = hash & mask;
+		while (this.used[i]) i = (i + 1) & mask;
+		return i;
+	}
+
+	/**
+	 * Rehashes the entries into arrays of the new capacity
+	 * @param capacity the new capacity (a power of two)
+	 */
+	private void resize(int capacity) {
+		boolean[] oldUsed = this.used;
+		boolean[] oldReferenced = this.referenced;
+		int[] oldHashes = this.hashes;
+		Object[] oldA = this.keysA;
+		Object[] oldB = this.keysB;
+		Object[] oldC = this.keysC;
+		int[] oldD = this.keysD;
+		Object[] oldValues = this.values;
+		this.allocate(capacity);
+		for (int i = 0; i < oldUsed.length; i++) {
+			if (!oldUsed[i]) continue;
+			int index = this.slot(oldHashes[i]);
+			this.used[index] = true;
+			this.referenced[index] = oldReferenced[i];
+			this.hashes[index] = oldHashes[i];
+			this.keysA[index] = oldA[i];
+			this.keysB[index] = oldB[i];
+			this.keysC[index] = oldC[i];
+			this.keysD[index] = oldD[i];
+			this.values[index] = oldValues[i];
+			this.size++;
+		}
+	}
+
+	/**
+	 * Allocates empty arrays of the given capacity
+	 * @param capacity the capacity (a power of two)
+	 */
+	private void allocate(int capacity) {
+		this.used = new boolean[capacity];
+		this.referenced = new boolean[capacity];
+		this.hashes = new int[capacity];
+		this.keysA = new Object[capacity];
+		this.keysB = new Object[capacity];
+		this.keysC = new Object[capacity];
+		this.keysD = new int[capacity];
+		this.values = new Object[capacity];
+		this.size = 0;
+		this.hand = 0;
+	}
+
+	/**
+	 * Compares two key parts
+	 * @param x first key part
+	 * @param y second key part
+	 * @return {@code true} if the key parts are identical or equal
+	 */
+	private static boolean same(Object x, Object y) {
+		return (x == y) || (x != null && x.equals(y));
+	}
+
+	@Override
+	public String toString() {
+		return (this.getClass() + "[size=" + this.size + ", capacity=" + this.used.length + "]");
+	}
+
+	/**
+	 * slots holding an entry
+	 */
+	private boolean[] used;
+	/**
+	 * CLOCK reference bits of the slots
+	 */
+	private boolean[] referenced;
+	/**
+	 * precomputed hashes of the keys
+	 */
+	private int[] hashes;
+	/**
+	 * first key parts
+	 */
+	private Object[] keysA;
+	/**
+	 * second key parts
+	 */
+	private Object[] keysB;
+	/**
+	 * third key parts
+	 */
+	private Object[] keysC;
+	/**
+	 * {@code int} key parts
+	 */
+	private int[] keysD;
+	/**
+	 * stored values
+	 */
+	private Object[] values;
+	/**
+	 * number of entries
+	 */
+	private int size;
+	/**
+	 * position of the CLOCK hand
+	 */
+	private int hand;
+	/**
+	 * number of lookups answered by the table
+	 */
+	private long hits = 0;
+	/**
+	 * number of lookups not answered by the table
+	 */
+	private long misses = 0;
+	/**
+	 * number of entries evicted from the table
+	 */
+	private long evictions = 0;
+
+	/**
+	 * Initial capacity of the table (a power of two)
+	 */
+	private static final int INITIALCAPACITY = 64;
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c)2011, DIADEM Team
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the DIADEM team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL DIADEM Team BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *Package with utilities for supporting OXPath expression evaluation
+ */
+package uk.ac.ox.comlab.diadem.oxpath.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer handing objects from producer threads to a single consumer thread without locks on the consumer side.
+ * Producers are serialized by a producer lock (uncontended in the common single-producer case, as the extractor already
+ * synchronizes its writes); the consumer must always be the same thread.
+ * <p>
+ * Each side publishes its counter with an ordered (lazy) write and keeps a cached copy of the other side's counter, re-reading
+ * the shared counter only when the cached copy says the buffer is full (producer) or empty (consumer).  A consumer that falls
+ * behind therefore takes every element published since its last look in one batch, touching shared state once per batch
+ * rather than once per element.  A side that can't proceed spins briefly, then yields, then parks with a growing timeout.
+ * <p>
+ * Once {@code close()} is called, {@code put} fails and {@code take} returns {@code null} after the remaining elements are
+ * taken.
+ * @author AndrewJSel
+ *
+ * @param <E> type of the elements
+ */
+public class OXPathRingBuffer<E> {
+
+	/**
+	 * Creates an empty buffer
+	 * @param iCapacity minimum number of elements the buffer holds; rounded up to a power of two
+	 * @throws IllegalArgumentException if {@code iCapacity} isn't positive or exceeds {@code MAXCAPACITY}
+	 */
+	public OXPathRingBuffer(int iCapacity) {
+		if (iCapacity <= 0 || iCapacity > MAXCAPACITY) throw new IllegalArgumentException("ring buffer capacity out of range: " + iCapacity);
+		int capacity = Integer.highestOneBit(iCapacity);
+		if (capacity < iCapacity) capacity <<= 1;
+		this.buffer = new Object[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Adds the element, waiting while the buffer is full
+	 * @param e the element
+	 * @return {@code true} if the element was added, {@code false} if the buffer is closed
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 * @throws NullPointerException if {@code e} is {@code null}
+	 */
+	public boolean put(E e) throws InterruptedException {
+		if (e == null) throw new NullPointerException("ring buffer elements may not be null");
+		synchronized (this.producerLock) {
+			long t = this.tail.get();
+			int idle = 0;
+			while (t - this.cachedHead >= this.buffer.length) {
+				if (this.closed) return false;
+				this.cachedHead = this.head.get();
+				if (t - this.cachedHead < this.buffer.length) break;
+				idle = idle(idle);
+			}
+			if (this.closed) return false;
+			this.buffer[(int) t & this.mask] = e;
+			this.tail.lazySet(t + 1);
+			return true;
+		}
+	}
+
+	/**
+	 * Adds the element if the buffer has room, without waiting
+	 * @param e the element
+	 * @return {@code true} if the element was added, {@code false} if the buffer is full or closed
+	 * @throws NullPointerException if {@code e} is {@code null}
+	 */
+	public boolean offer(E e) {
+		if (e == null) throw new NullPointerException("ring buffer elements may not be null");
+		synchronized (this.producerLock) {
+			if (this.closed) return false;
+			long t = this.tail.get();
+			if (t - this.cachedHead >= this.buffer.length) {
+				this.cachedHead = this.head.get();
+				if (t - this.cachedHead >= this.buffer.length) return false;
+			}
+			this.buffer[(int) t & this.mask] = e;
+			this.tail.lazySet(t + 1);
+			return true;
+		}
+	}
+
+	/**
+	 * Removes the oldest element, waiting while the buffer is empty; must only be called by the consumer thread
+	 * @return the oldest element, or {@code null} if the buffer is closed and empty
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	@SuppressWarnings("unchecked")
+	public E take() throws InterruptedException {
+		long h = this.head.get();
+		int idle = 0;
+		while (h >= this.cachedTail) {
+			//read the flag before the counter, so elements put before close() are still seen
+			boolean isClosed = this.closed;
+			this.cachedTail = this.tail.get();
+			if (h < this.cachedTail) break;
+			if (isClosed) return null;
+			idle = idle(idle);
+		}
+		int slot = (int) h & this.mask;
+		E e = (E) this.buffer[slot];
+		this.buffer[slot] = null;
+		this.head.lazySet(h + 1);
+		return e;
+	}
+
+	/**
+	 * Closes the buffer; waiting producers give up, and the consumer gets {@code null} once the buffer is empty
+	 */
+	public void close() {
+		this.closed = true;
+	}
+
+	/**
+	 * Returns {@code true} if the buffer is closed; {@code false} otherwise
+	 * @return {@code true} if the buffer is closed; {@code false} otherwise
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Returns the number of elements in the buffer; only a snapshot when other threads use the buffer
+	 * @return the number of elements in the buffer
+	 */
+	public int size() {
+		long h = this.head.get();
+		return (int) Math.max(0, this.tail.get() - h);
+	}
+
+	/**
+	 * Returns the capacity of the buffer
+	 * @return the capacity of the buffer
+	 */
+	public int capacity() {
+		return this.buffer.length;
+	}
+
+	/**
+	 * Waits for the other side of the buffer: spins, then yields, then parks for a timeout doubling up to {@code MAXPARKNANOS}
+	 * @param idle number of times the caller has waited so far
+	 * @return the incremented number of waits (capped once the longest timeout is reached)
+	 * @throws InterruptedException if the thread is interrupted
+	 */
+	private static int idle(int idle) throws InterruptedException {
+		if (Thread.interrupted()) throw new InterruptedException();
+		if (idle >= SPINS + YIELDS) LockSupport.parkNanos(Math.min(MAXPARKNANOS, MINPARKNANOS << Math.min(idle - SPINS - YIELDS, 16)));
+		else if (idle >= SPINS) Thread.yield();
+		return Math.min(idle + 1, SPINS + YIELDS + 16);
+	}
+
+	/**
+	 * largest capacity of a buffer
+	 */
+	public static final int MAXCAPACITY = 1 << 30;
+	/**
+	 * number of busy spins before yielding
+	 */
+	private static final int SPINS = 64;
+	/**
+	 * number of yields before parking
+	 */
+	private static final int YIELDS = 64;
+	/**
+	 * first parking timeout
+	 */
+	private static final long MINPARKNANOS = 1000L;
+	/**
+	 * longest parking timeout
+	 */
+	private static final long MAXPARKNANOS = 1000000L;
+	/**
+	 * the slots of the buffer
+	 */
+	private final Object[] buffer;
+	/**
+	 * mask mapping counters to slots
+	 */
+	private final int mask;
+	/**
+	 * number of elements taken; written by the consumer only
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * number of elements put; written by the producers only
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	/**
+	 * the producers' last reading of {@code head}
+	 */
+	private long cachedHead;
+	/**
+	 * the consumer's last reading of {@code tail}
+	 */
+	private long cachedTail;
+	/**
+	 * serializes producers
+	 */
+	private final Object producerLock = new Object();
+	/**
+	 * {@code true} once the buffer is closed
+	 */
+	private volatile boolean closed = false;
+}